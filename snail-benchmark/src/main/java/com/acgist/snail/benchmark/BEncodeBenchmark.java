@@ -0,0 +1,74 @@
+package com.acgist.snail.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.context.exception.PacketSizeException;
+import com.acgist.snail.format.BEncodeCursor;
+import com.acgist.snail.format.BEncodeDecoder;
+import com.acgist.snail.format.BEncodeEncoder;
+import com.acgist.snail.logger.LoggerConfig;
+import com.acgist.snail.pojo.bean.Torrent;
+import com.acgist.snail.pojo.bean.TorrentInfo;
+
+/**
+ * <p>B编码性能测试</p>
+ * <p>测试数据：{@link BenchmarkDataset#torrent()}</p>
+ * 
+ * @author acgist
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BEncodeBenchmark {
+	
+	/**
+	 * <p>种子数据</p>
+	 */
+	private byte[] bytes;
+	/**
+	 * <p>种子信息</p>
+	 */
+	private Map<String, Object> torrent;
+	
+	@Setup
+	public void setup() {
+		LoggerConfig.off();
+		this.torrent = BenchmarkDataset.torrent();
+		this.bytes = BEncodeEncoder.encodeMap(this.torrent);
+	}
+	
+	@Benchmark
+	public Map<String, Object> decode() throws PacketSizeException {
+		return BEncodeDecoder.newInstance(this.bytes).nextMap();
+	}
+	
+	/**
+	 * <p>游标读取：只读取Piece大小</p>
+	 */
+	@Benchmark
+	public Long cursor() throws PacketSizeException {
+		final BEncodeCursor info = BEncodeCursor.newInstance(this.bytes).get(Torrent.ATTR_INFO);
+		return info.getLong(TorrentInfo.ATTR_PIECE_LENGTH);
+	}
+	
+	@Benchmark
+	public byte[] encode() {
+		return BEncodeEncoder.encodeMap(this.torrent);
+	}
+
+}
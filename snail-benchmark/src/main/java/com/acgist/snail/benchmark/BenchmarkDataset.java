@@ -0,0 +1,301 @@
+package com.acgist.snail.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.acgist.snail.config.DhtConfig;
+import com.acgist.snail.config.PeerConfig;
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.format.BEncodeEncoder;
+import com.acgist.snail.format.JSON;
+import com.acgist.snail.pojo.bean.Torrent;
+import com.acgist.snail.pojo.bean.TorrentFile;
+import com.acgist.snail.pojo.bean.TorrentInfo;
+import com.acgist.snail.utils.DigestUtils;
+import com.acgist.snail.utils.FileUtils;
+
+/**
+ * <p>性能测试数据</p>
+ * <p>所有数据使用固定种子生成：保证每次测试数据一致</p>
+ * 
+ * @author acgist
+ */
+public final class BenchmarkDataset {
+	
+	/**
+	 * <p>随机数种子：{@value}</p>
+	 */
+	public static final long SEED = 20201017L;
+	/**
+	 * <p>Piece大小：{@value}</p>
+	 */
+	public static final int PIECE_LENGTH = 256 * SystemConfig.ONE_KB;
+	/**
+	 * <p>Slice大小：{@value}</p>
+	 */
+	public static final int SLICE_LENGTH = SystemConfig.DEFAULT_EXCHANGE_BYTES_LENGTH;
+	/**
+	 * <p>种子文件数量：{@value}</p>
+	 */
+	public static final int TORRENT_FILE_SIZE = 8;
+	/**
+	 * <p>种子文件平均大小：{@value}</p>
+	 * <p>文件大小随机浮动：保证Piece跨越文件</p>
+	 */
+	public static final int TORRENT_FILE_LENGTH = 8 * SystemConfig.ONE_MB;
+	/**
+	 * <p>种子名称：{@value}</p>
+	 */
+	public static final String TORRENT_NAME = "snail-benchmark";
+	
+	private BenchmarkDataset() {
+	}
+	
+	/**
+	 * <p>生成随机数据</p>
+	 * 
+	 * @param seed 随机数种子
+	 * @param length 数据长度
+	 * 
+	 * @return 随机数据
+	 */
+	public static final byte[] bytes(long seed, int length) {
+		final byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * <p>生成随机数据</p>
+	 * 
+	 * @param length 数据长度
+	 * 
+	 * @return 随机数据
+	 */
+	public static final byte[] bytes(int length) {
+		return bytes(SEED, length);
+	}
+	
+	/**
+	 * <p>生成NodeId列表</p>
+	 * 
+	 * @param size 数量
+	 * 
+	 * @return NodeId列表
+	 */
+	public static final List<byte[]> nodeIds(int size) {
+		final Random random = new Random(SEED);
+		final List<byte[]> list = new ArrayList<>(size);
+		for (int index = 0; index < size; index++) {
+			final byte[] nodeId = new byte[DhtConfig.NODE_ID_LENGTH];
+			random.nextBytes(nodeId);
+			list.add(nodeId);
+		}
+		return list;
+	}
+	
+	/**
+	 * <p>生成种子文件大小列表</p>
+	 * 
+	 * @return 种子文件大小列表
+	 */
+	public static final long[] torrentFileLengths() {
+		final Random random = new Random(SEED);
+		final long[] lengths = new long[TORRENT_FILE_SIZE];
+		for (int index = 0; index < TORRENT_FILE_SIZE; index++) {
+			lengths[index] = TORRENT_FILE_LENGTH / 2 + random.nextInt(TORRENT_FILE_LENGTH);
+		}
+		return lengths;
+	}
+	
+	/**
+	 * <p>获取种子文件总大小</p>
+	 * 
+	 * @return 种子文件总大小
+	 */
+	public static final long torrentLength() {
+		long length = 0L;
+		for (long fileLength : torrentFileLengths()) {
+			length += fileLength;
+		}
+		return length;
+	}
+	
+	/**
+	 * <p>获取Piece数量</p>
+	 * 
+	 * @return Piece数量
+	 */
+	public static final int pieceSize() {
+		return (int) ((torrentLength() + PIECE_LENGTH - 1) / PIECE_LENGTH);
+	}
+	
+	/**
+	 * <p>获取Piece数据长度</p>
+	 * <p>最后一个Piece数据长度可能小于Piece大小</p>
+	 * 
+	 * @param index Piece索引
+	 * 
+	 * @return Piece数据长度
+	 */
+	public static final int pieceLength(int index) {
+		return (int) Math.min(PIECE_LENGTH, torrentLength() - (long) index * PIECE_LENGTH);
+	}
+	
+	/**
+	 * <p>生成Piece数据</p>
+	 * 
+	 * @param index Piece索引
+	 * 
+	 * @return Piece数据
+	 */
+	public static final byte[] piece(int index) {
+		return bytes(SEED + index, pieceLength(index));
+	}
+	
+	/**
+	 * <p>生成种子信息</p>
+	 * 
+	 * @return 种子信息
+	 */
+	public static final Map<String, Object> torrent() {
+		final long[] lengths = torrentFileLengths();
+		final List<Object> files = new ArrayList<>(lengths.length);
+		for (int index = 0; index < lengths.length; index++) {
+			final Map<String, Object> file = new LinkedHashMap<>();
+			file.put(TorrentFile.ATTR_LENGTH, lengths[index]);
+			file.put(TorrentFile.ATTR_PATH, List.of("folder-" + (index % 2), "file-" + index + ".dat"));
+			files.add(file);
+		}
+		final int pieceSize = pieceSize();
+		final MessageDigest digest = DigestUtils.sha1();
+		final ByteBuffer pieces = ByteBuffer.allocate(pieceSize * SystemConfig.SHA1_HASH_LENGTH);
+		for (int index = 0; index < pieceSize; index++) {
+			pieces.put(digest.digest(piece(index)));
+		}
+		final Map<String, Object> info = new LinkedHashMap<>();
+		info.put(TorrentInfo.ATTR_FILES, files);
+		info.put(TorrentInfo.ATTR_NAME, TORRENT_NAME);
+		info.put(TorrentInfo.ATTR_PIECE_LENGTH, (long) PIECE_LENGTH);
+		info.put(TorrentInfo.ATTR_PIECES, pieces.array());
+		final Map<String, Object> torrent = new LinkedHashMap<>();
+		torrent.put(Torrent.ATTR_ANNOUNCE, "udp://tracker.acgist.com:6969/announce");
+		torrent.put(Torrent.ATTR_CREATED_BY, TORRENT_NAME);
+		torrent.put(Torrent.ATTR_CREATION_DATE, SEED);
+		torrent.put(Torrent.ATTR_INFO, info);
+		return torrent;
+	}
+	
+	/**
+	 * <p>生成种子文件</p>
+	 * 
+	 * @param folder 种子文件目录
+	 * 
+	 * @return 种子文件路径
+	 * 
+	 * @throws IOException IO异常
+	 */
+	public static final String torrentFile(File folder) throws IOException {
+		final File file = new File(folder, TORRENT_NAME + ".torrent");
+		Files.write(file.toPath(), BEncodeEncoder.encodeMap(torrent()));
+		return file.getAbsolutePath();
+	}
+	
+	/**
+	 * <p>生成Peer消息流</p>
+	 * <p>消息类型：HAVE、REQUEST、PIECE</p>
+	 * <p>没有心跳消息：心跳消息需要响应（需要连接通道）</p>
+	 * 
+	 * @param size 消息数量
+	 * 
+	 * @return Peer消息流
+	 */
+	public static final byte[] peerMessages(int size) {
+		final Random random = new Random(SEED);
+		final byte[] slice = bytes(SLICE_LENGTH);
+		final ByteBuffer buffer = ByteBuffer.allocate(size * (SLICE_LENGTH + 13));
+		for (int index = 0; index < size; index++) {
+			final int piece = random.nextInt(pieceSize());
+			final int begin = random.nextInt(PIECE_LENGTH / SLICE_LENGTH) * SLICE_LENGTH;
+			switch (index % 8) {
+			case 0:
+			case 1:
+			case 2:
+				buffer.putInt(5).put(PeerConfig.Type.HAVE.id()).putInt(piece);
+				break;
+			case 3:
+			case 4:
+				buffer.putInt(13).put(PeerConfig.Type.REQUEST.id()).putInt(piece).putInt(begin).putInt(SLICE_LENGTH);
+				break;
+			default:
+				buffer.putInt(9 + SLICE_LENGTH).put(PeerConfig.Type.PIECE.id()).putInt(piece).putInt(begin).put(slice);
+				break;
+			}
+		}
+		buffer.flip();
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * <p>生成JSON数据</p>
+	 * <p>模拟任务列表消息</p>
+	 * 
+	 * @param size 任务数量
+	 * 
+	 * @return JSON数据
+	 */
+	public static final String json(int size) {
+		final Random random = new Random(SEED);
+		final List<Object> tasks = new ArrayList<>(size);
+		for (int index = 0; index < size; index++) {
+			final Map<Object, Object> task = new HashMap<>();
+			task.put("id", "task-" + index);
+			task.put("name", "测试任务-" + index + "\t\"snail\"");
+			task.put("type", "TORRENT");
+			task.put("status", "DOWNLOAD");
+			task.put("size", random.nextLong() & Long.MAX_VALUE);
+			task.put("progress", random.nextDouble());
+			task.put("completed", random.nextBoolean());
+			task.put("files", List.of("folder-0/file-0.dat", "folder-1/file-1.dat"));
+			tasks.add(task);
+		}
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("tasks", tasks);
+		map.put("total", size);
+		return JSON.ofMap(map).toJSON();
+	}
+	
+	/**
+	 * <p>创建临时目录</p>
+	 * 
+	 * @return 临时目录
+	 * 
+	 * @throws IOException IO异常
+	 */
+	public static final File tempFolder() throws IOException {
+		return Files.createTempDirectory(TORRENT_NAME).toFile();
+	}
+	
+	/**
+	 * <p>删除临时目录</p>
+	 * 
+	 * @param folder 临时目录
+	 */
+	public static final void deleteFolder(File folder) {
+		if(folder != null) {
+			FileUtils.delete(folder);
+		}
+	}
+
+}
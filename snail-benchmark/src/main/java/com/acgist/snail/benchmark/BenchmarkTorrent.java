@@ -0,0 +1,127 @@
+package com.acgist.snail.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.acgist.snail.context.TorrentContext;
+import com.acgist.snail.context.exception.DownloadException;
+import com.acgist.snail.net.torrent.TorrentStreamGroup;
+import com.acgist.snail.pojo.ITaskSessionStatus.Status;
+import com.acgist.snail.pojo.bean.TorrentPiece;
+import com.acgist.snail.pojo.entity.TaskEntity;
+import com.acgist.snail.pojo.session.TaskSession;
+import com.acgist.snail.pojo.session.TorrentSession;
+import com.acgist.snail.pojo.wrapper.MultifileSelectorWrapper;
+import com.acgist.snail.protocol.Protocol.Type;
+
+/**
+ * <p>性能测试BT任务</p>
+ * <p>使用{@link BenchmarkDataset#torrent()}生成种子，下载目录使用临时目录。</p>
+ * 
+ * @author acgist
+ */
+public final class BenchmarkTorrent {
+	
+	/**
+	 * <p>临时目录</p>
+	 */
+	private final File folder;
+	/**
+	 * <p>BT任务信息</p>
+	 */
+	private final TorrentSession torrentSession;
+	/**
+	 * <p>文件流组</p>
+	 */
+	private final TorrentStreamGroup torrentStreamGroup;
+	
+	/**
+	 * @param folder 临时目录
+	 * @param torrentSession BT任务信息
+	 */
+	private BenchmarkTorrent(File folder, TorrentSession torrentSession) {
+		this.folder = folder;
+		this.torrentSession = torrentSession;
+		this.torrentStreamGroup = torrentSession.torrentStreamGroup();
+	}
+	
+	/**
+	 * <p>创建BT任务</p>
+	 * <p>选择下载所有文件，任务只开启上传（不会连接Tracker、DHT）。</p>
+	 * 
+	 * @return BT任务
+	 * 
+	 * @throws IOException IO异常
+	 * @throws DownloadException 下载异常
+	 */
+	public static final BenchmarkTorrent newInstance() throws IOException, DownloadException {
+		final File folder = BenchmarkDataset.tempFolder();
+		final String path = BenchmarkDataset.torrentFile(folder);
+		final TorrentSession torrentSession = TorrentContext.getInstance().newTorrentSession(path);
+		final List<String> list = new ArrayList<>();
+		torrentSession.torrent().getInfo().files().forEach(file -> {
+			file.selected(true);
+			list.add(file.path());
+		});
+		final TaskEntity entity = new TaskEntity();
+		entity.setFile(folder.getAbsolutePath());
+		entity.setType(Type.TORRENT);
+		entity.setStatus(Status.AWAIT);
+		entity.setDescription(MultifileSelectorWrapper.newEncoder(list).serialize());
+		torrentSession.upload(TaskSession.newInstance(entity));
+		return new BenchmarkTorrent(folder, torrentSession);
+	}
+	
+	/**
+	 * <p>获取文件流组</p>
+	 * 
+	 * @return 文件流组
+	 */
+	public TorrentStreamGroup torrentStreamGroup() {
+		return this.torrentStreamGroup;
+	}
+	
+	/**
+	 * <p>创建Piece</p>
+	 * 
+	 * @param index Piece索引
+	 * 
+	 * @return Piece
+	 */
+	public TorrentPiece piece(int index) {
+		final byte[] bytes = BenchmarkDataset.piece(index);
+		final TorrentPiece piece = TorrentPiece.newInstance(
+			BenchmarkDataset.PIECE_LENGTH,
+			index,
+			0,
+			bytes.length,
+			this.torrentStreamGroup.pieceHash(index),
+			false
+		);
+		piece.write(0, bytes);
+		return piece;
+	}
+	
+	/**
+	 * <p>写入所有Piece并刷出缓存</p>
+	 */
+	public void writeAll() {
+		final int pieceSize = BenchmarkDataset.pieceSize();
+		for (int index = 0; index < pieceSize; index++) {
+			this.torrentStreamGroup.write(this.piece(index));
+		}
+		this.torrentStreamGroup.flush();
+	}
+	
+	/**
+	 * <p>释放资源：释放任务、删除临时目录</p>
+	 */
+	public void release() {
+		this.torrentSession.releaseUpload();
+		this.torrentSession.delete();
+		BenchmarkDataset.deleteFolder(this.folder);
+	}
+	
+}
@@ -0,0 +1,66 @@
+package com.acgist.snail.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.format.JSON;
+import com.acgist.snail.logger.LoggerConfig;
+
+/**
+ * <p>JSON性能测试</p>
+ * <p>测试数据：{@link BenchmarkDataset#json(int)}</p>
+ * 
+ * @author acgist
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JSONBenchmark {
+	
+	/**
+	 * <p>任务数量</p>
+	 */
+	@Param({"10", "1000"})
+	private int size;
+	/**
+	 * <p>JSON数据</p>
+	 */
+	private String content;
+	/**
+	 * <p>JSON对象</p>
+	 */
+	private Map<Object, Object> map;
+	
+	@Setup
+	public void setup() {
+		LoggerConfig.off();
+		this.content = BenchmarkDataset.json(this.size);
+		this.map = JSON.ofString(this.content).getMap();
+	}
+	
+	@Benchmark
+	public JSON deserialize() {
+		return JSON.ofString(this.content);
+	}
+	
+	@Benchmark
+	public String serialize() {
+		return JSON.ofMap(this.map).toJSON();
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.acgist.snail.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.context.exception.NetException;
+import com.acgist.snail.logger.LoggerConfig;
+import com.acgist.snail.net.torrent.crypt.MSECipher;
+import com.acgist.snail.pojo.bean.InfoHash;
+
+/**
+ * <p>MSE加密性能测试</p>
+ * <p>加密解密直接修改缓冲数据（不用复制）：每次测试数据不同不影响结果</p>
+ * 
+ * @author acgist
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MSECipherBenchmark {
+	
+	/**
+	 * <p>加密数据</p>
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * <p>加密</p>
+	 */
+	private MSECipher sender;
+	/**
+	 * <p>解密</p>
+	 */
+	private MSECipher recver;
+	
+	@Setup
+	public void setup() throws NetException {
+		LoggerConfig.off();
+		final byte[] secret = BenchmarkDataset.bytes(96);
+		final InfoHash infoHash = InfoHash.newInstance(BenchmarkDataset.bytes(128));
+		this.sender = MSECipher.newSender(secret, infoHash);
+		this.recver = MSECipher.newRecver(secret, infoHash);
+		this.buffer = ByteBuffer.wrap(BenchmarkDataset.bytes(BenchmarkDataset.SLICE_LENGTH));
+	}
+	
+	@Benchmark
+	public ByteBuffer encrypt() {
+		this.buffer.clear();
+		this.sender.encrypt(this.buffer);
+		return this.buffer;
+	}
+	
+	@Benchmark
+	public ByteBuffer decrypt() {
+		this.buffer.clear();
+		this.recver.decrypt(this.buffer);
+		return this.buffer;
+	}
+
+}
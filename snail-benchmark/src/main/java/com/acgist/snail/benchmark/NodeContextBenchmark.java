@@ -0,0 +1,65 @@
+package com.acgist.snail.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.context.NodeContext;
+import com.acgist.snail.logger.LoggerConfig;
+import com.acgist.snail.pojo.session.NodeSession;
+
+/**
+ * <p>DHT节点查找性能测试</p>
+ * 
+ * @author acgist
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeContextBenchmark {
+	
+	/**
+	 * <p>节点数量：{@value}</p>
+	 */
+	private static final int NODE_SIZE = 10000;
+	
+	/**
+	 * <p>查找序号</p>
+	 */
+	private int index;
+	/**
+	 * <p>查找目标</p>
+	 */
+	private List<byte[]> targets;
+	
+	@Setup
+	public void setup() {
+		LoggerConfig.off();
+		final NodeContext context = NodeContext.getInstance();
+		int port = 10000;
+		for (byte[] nodeId : BenchmarkDataset.nodeIds(NODE_SIZE)) {
+			context.newNodeSession(nodeId, "192.168.1." + (port % 255), port++);
+		}
+		this.targets = BenchmarkDataset.nodeIds(NODE_SIZE * 2).subList(NODE_SIZE, NODE_SIZE * 2);
+	}
+	
+	@Benchmark
+	public List<NodeSession> findNode() {
+		final byte[] target = this.targets.get(this.index++ % NODE_SIZE);
+		return NodeContext.getInstance().findNode(target);
+	}
+
+}
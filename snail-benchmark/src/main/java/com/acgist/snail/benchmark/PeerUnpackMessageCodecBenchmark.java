@@ -0,0 +1,134 @@
+package com.acgist.snail.benchmark;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.config.PeerConfig;
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.exception.NetException;
+import com.acgist.snail.logger.LoggerConfig;
+import com.acgist.snail.net.IMessageEncryptSender;
+import com.acgist.snail.net.torrent.peer.PeerSubMessageHandler;
+import com.acgist.snail.net.torrent.peer.PeerUnpackMessageCodec;
+import com.acgist.snail.utils.ArrayUtils;
+
+/**
+ * <p>Peer消息拆包性能测试</p>
+ * <p>拆包先处理一条种子信息不存在的握手消息：消息代理已经握手并且没有Peer信息，之后只读取消息类型，测试结果就是拆包消耗。</p>
+ * 
+ * @author acgist
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeerUnpackMessageCodecBenchmark {
+	
+	/**
+	 * <p>消息数量：{@value}</p>
+	 */
+	private static final int MESSAGE_SIZE = 256;
+	
+	/**
+	 * <p>每次读取数据大小</p>
+	 * <p>模拟TCP接收缓冲：消息可能跨越多次读取</p>
+	 */
+	@Param({"1024", "16384", "65536"})
+	private int readLength;
+	/**
+	 * <p>消息数据</p>
+	 */
+	private byte[] messages;
+	/**
+	 * <p>接收缓冲</p>
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * <p>拆包</p>
+	 */
+	private PeerUnpackMessageCodec codec;
+	
+	@Setup
+	public void setup() throws NetException {
+		LoggerConfig.off();
+		final PeerSubMessageHandler handler = PeerSubMessageHandler.newInstance();
+		handler.messageEncryptSender(new DiscardMessageSender());
+		this.codec = new PeerUnpackMessageCodec(handler);
+		// 握手：种子信息不存在时消息代理关闭连接，不会创建Peer信息。
+		final ByteBuffer handshake = ByteBuffer.allocate(PeerConfig.HANDSHAKE_LENGTH);
+		handshake.put((byte) PeerConfig.PROTOCOL_NAME_LENGTH);
+		handshake.put(PeerConfig.PROTOCOL_NAME_BYTES);
+		handshake.put(PeerConfig.RESERVED);
+		handshake.put(ArrayUtils.random(SystemConfig.SHA1_HASH_LENGTH));
+		handshake.put(ArrayUtils.random(PeerConfig.PEER_ID_LENGTH));
+		handshake.flip();
+		this.codec.decode(handshake);
+		if(!handler.handshake()) {
+			throw new IllegalStateException("握手失败");
+		}
+		this.messages = BenchmarkDataset.peerMessages(MESSAGE_SIZE);
+		this.buffer = ByteBuffer.allocate(this.readLength);
+	}
+	
+	@Benchmark
+	public int decode() throws NetException {
+		int position = 0;
+		while(position < this.messages.length) {
+			final int length = Math.min(this.readLength, this.messages.length - position);
+			this.buffer.clear();
+			this.buffer.put(this.messages, position, length);
+			this.buffer.flip();
+			this.codec.decode(this.buffer);
+			position += length;
+		}
+		return position;
+	}
+	
+	/**
+	 * <p>丢弃消息代理</p>
+	 * <p>握手失败关闭连接时使用</p>
+	 * 
+	 * @author acgist
+	 */
+	private static final class DiscardMessageSender implements IMessageEncryptSender {
+		
+		@Override
+		public boolean available() {
+			return false;
+		}
+		
+		@Override
+		public void send(ByteBuffer buffer, int timeout) throws NetException {
+		}
+		
+		@Override
+		public void sendEncrypt(ByteBuffer buffer, int timeout) throws NetException {
+		}
+		
+		@Override
+		public InetSocketAddress remoteSocketAddress() {
+			return null;
+		}
+		
+		@Override
+		public void close() {
+		}
+		
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.acgist.snail.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.context.exception.DownloadException;
+import com.acgist.snail.context.exception.NetException;
+import com.acgist.snail.logger.LoggerConfig;
+import com.acgist.snail.net.torrent.TorrentStreamGroup;
+import com.acgist.snail.pojo.bean.TorrentPiece;
+
+/**
+ * <p>文件流组性能测试：挑选Piece、读取Piece</p>
+ * <p>写入性能测试：{@link TorrentStreamGroupWriteBenchmark}</p>
+ * 
+ * @author acgist
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TorrentStreamGroupBenchmark {
+	
+	/**
+	 * <p>挑选Piece：没有下载任何Piece</p>
+	 * <p>Peer只有后半部分Piece：需要跳过前半部分Piece</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class PickState {
+		
+		private BitSet peerPieces;
+		private BitSet suggestPieces;
+		private BenchmarkTorrent torrent;
+		
+		@Setup
+		public void setup() throws IOException, DownloadException {
+			LoggerConfig.off();
+			final int pieceSize = BenchmarkDataset.pieceSize();
+			this.torrent = BenchmarkTorrent.newInstance();
+			this.peerPieces = new BitSet();
+			this.peerPieces.set(pieceSize / 2, pieceSize);
+			this.suggestPieces = new BitSet();
+		}
+		
+		@TearDown
+		public void tearDown() {
+			this.torrent.release();
+		}
+		
+	}
+	
+	/**
+	 * <p>读取Piece：所有Piece已经下载完成</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class ReadState {
+		
+		private int index;
+		private ByteBuffer buffer;
+		private BenchmarkTorrent torrent;
+		
+		@Setup
+		public void setup() throws IOException, DownloadException {
+			LoggerConfig.off();
+			this.buffer = ByteBuffer.allocate(BenchmarkDataset.SLICE_LENGTH);
+			this.torrent = BenchmarkTorrent.newInstance();
+			this.torrent.writeAll();
+		}
+		
+		@TearDown
+		public void tearDown() {
+			this.torrent.release();
+		}
+		
+	}
+	
+	@Benchmark
+	public TorrentPiece pick(PickState state) {
+		final TorrentStreamGroup group = state.torrent.torrentStreamGroup();
+		final TorrentPiece piece = group.pick(state.peerPieces, state.suggestPieces);
+		if(piece != null) {
+			// 设置失败：下次可以重新挑选
+			group.undone(piece);
+		}
+		return piece;
+	}
+	
+	@Benchmark
+	public ByteBuffer read(ReadState state) throws NetException {
+		final int slices = BenchmarkDataset.PIECE_LENGTH / BenchmarkDataset.SLICE_LENGTH;
+		// 最后一个Piece可能不够完整Piece大小：不读取
+		final int index = state.index++ % ((BenchmarkDataset.pieceSize() - 1) * slices);
+		state.buffer.clear();
+		state.torrent.torrentStreamGroup().read(
+			index / slices,
+			(index % slices) * BenchmarkDataset.SLICE_LENGTH,
+			BenchmarkDataset.SLICE_LENGTH,
+			state.buffer
+		);
+		return state.buffer;
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.acgist.snail.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.context.exception.DownloadException;
+import com.acgist.snail.logger.LoggerConfig;
+import com.acgist.snail.net.torrent.TorrentStreamGroup;
+import com.acgist.snail.pojo.bean.TorrentPiece;
+
+/**
+ * <p>文件流组性能测试：写入所有Piece并刷出缓存</p>
+ * <p>每次迭代使用新的临时目录：Piece写入之后不能重复写入</p>
+ * 
+ * @author acgist
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TorrentStreamGroupWriteBenchmark {
+	
+	/**
+	 * <p>Piece列表</p>
+	 */
+	private List<TorrentPiece> pieces;
+	/**
+	 * <p>BT任务</p>
+	 */
+	private BenchmarkTorrent torrent;
+	
+	@Setup(Level.Iteration)
+	public void setup() throws IOException, DownloadException {
+		LoggerConfig.off();
+		this.torrent = BenchmarkTorrent.newInstance();
+		final int pieceSize = BenchmarkDataset.pieceSize();
+		this.pieces = new ArrayList<>(pieceSize);
+		for (int index = 0; index < pieceSize; index++) {
+			this.pieces.add(this.torrent.piece(index));
+		}
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		this.torrent.release();
+	}
+	
+	@Benchmark
+	public TorrentStreamGroup write() {
+		final TorrentStreamGroup group = this.torrent.torrentStreamGroup();
+		for (TorrentPiece piece : this.pieces) {
+			group.write(piece);
+		}
+		group.flush();
+		return group;
+	}
+
+}
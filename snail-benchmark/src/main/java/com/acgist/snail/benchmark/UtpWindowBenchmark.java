@@ -0,0 +1,118 @@
+package com.acgist.snail.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acgist.snail.logger.LoggerConfig;
+import com.acgist.snail.net.codec.IMessageCodec;
+import com.acgist.snail.net.torrent.utp.UtpWindow;
+import com.acgist.snail.net.torrent.utp.UtpWindowData;
+
+/**
+ * <p>UTP窗口性能测试</p>
+ * 
+ * @author acgist
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtpWindowBenchmark {
+	
+	/**
+	 * <p>乱序数据包数量：{@value}</p>
+	 */
+	private static final int BATCH_SIZE = 16;
+	/**
+	 * <p>窗口大小：{@value}</p>
+	 */
+	private static final int WND_SIZE = 1024 * 1024;
+	
+	/**
+	 * <p>数据包</p>
+	 */
+	private byte[] data;
+	/**
+	 * <p>接收编号</p>
+	 */
+	private short seqnr;
+	/**
+	 * <p>发送窗口</p>
+	 */
+	private UtpWindow sendWindow;
+	/**
+	 * <p>接收窗口</p>
+	 */
+	private UtpWindow recvWindow;
+	
+	@Setup
+	public void setup() {
+		LoggerConfig.off();
+		this.data = BenchmarkDataset.bytes(1024);
+		this.sendWindow = UtpWindow.newSendInstance();
+		this.recvWindow = UtpWindow.newRecvInstance(new IMessageCodec<ByteBuffer>() {
+		});
+		this.recvWindow.connect(0, this.seqnr);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		this.sendWindow.close();
+		this.recvWindow.close();
+	}
+	
+	/**
+	 * <p>发送数据并且响应</p>
+	 * <p>发送数据需要更新时间戳：用来计算超时时间</p>
+	 * 
+	 * @return 是否丢包
+	 */
+	@Benchmark
+	public boolean send() {
+		final UtpWindowData windowData = this.sendWindow.build(this.data);
+		windowData.pushUpdateGetTimestamp();
+		return this.sendWindow.ack(windowData.getSeqnr(), WND_SIZE);
+	}
+	
+	/**
+	 * <p>顺序接收数据</p>
+	 * 
+	 * @throws IOException IO异常
+	 */
+	@Benchmark
+	public void receive() throws IOException {
+		this.recvWindow.receive(0, ++this.seqnr, ByteBuffer.wrap(this.data));
+	}
+	
+	/**
+	 * <p>乱序接收数据：倒序接收一批数据包，最后一个数据包接收之后合并所有数据。</p>
+	 * 
+	 * @throws IOException IO异常
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void receiveReorder() throws IOException {
+		final short seqnr = this.seqnr;
+		for (int index = BATCH_SIZE; index > 0; index--) {
+			this.recvWindow.receive(0, (short) (seqnr + index), ByteBuffer.wrap(this.data));
+		}
+		this.seqnr = (short) (seqnr + BATCH_SIZE);
+	}
+
+}
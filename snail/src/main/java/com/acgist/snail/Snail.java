@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import com.acgist.snail.config.DhtConfig;
 import com.acgist.snail.config.TrackerConfig;
 import com.acgist.snail.context.EntityContext;
+import com.acgist.snail.context.MetricsContext;
 import com.acgist.snail.context.NatContext;
 import com.acgist.snail.context.ProtocolContext;
 import com.acgist.snail.context.TaskContext;
@@ -18,6 +19,7 @@ import com.acgist.snail.context.initializer.DhtInitializer;
 import com.acgist.snail.context.initializer.EntityInitializer;
 import com.acgist.snail.context.initializer.Initializer;
 import com.acgist.snail.context.initializer.LocalServiceDiscoveryInitializer;
+import com.acgist.snail.context.initializer.MetricsInitializer;
 import com.acgist.snail.context.initializer.NatInitializer;
 import com.acgist.snail.context.initializer.TaskInitializer;
 import com.acgist.snail.context.initializer.TorrentInitializer;
@@ -160,7 +162,8 @@ public final class Snail {
 				DhtConfig.getInstance().persistent();
 				TrackerConfig.getInstance().persistent();
 			}
-			EntityContext.getInstance().persistent();
+			EntityContext.getInstance().shutdown();
+			MetricsContext.getInstance().shutdown();
 		}
 	}
 	
@@ -244,6 +247,7 @@ public final class Snail {
 		 */
 		private List<Initializer> buildInitializers() {
 			final List<Initializer> list = new ArrayList<>();
+			list.add(MetricsInitializer.newInstance());
 			if(INSTANCE.buildTorrent) {
 				list.add(NatInitializer.newInstance());
 				list.add(DhtInitializer.newInstance());
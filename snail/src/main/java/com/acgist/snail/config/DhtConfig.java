@@ -169,9 +169,9 @@ public final class DhtConfig extends PropertiesConfig {
 	 */
 	public static final int MAX_NODE_SIZE = 1024;
 	/**
-	 * <p>DHT请求清理周期（分钟）：{@value}</p>
+	 * <p>DHT请求超时时间轮刻度（秒）：{@value}</p>
 	 */
-	public static final int DHT_REQUEST_CLEAN_INTERVAL = 10;
+	public static final int DHT_REQUEST_TIMEOUT_TICK = 1;
 	/**
 	 * <p>DHT响应超时：{@value}</p>
 	 */
@@ -43,7 +43,7 @@ public final class DownloadConfig extends PropertiesConfig {
 	 * <p>下载速度和上传速度的比例：{@value}</p>
 	 * <p>比例={@link #downloadBufferByte}/{@link #uploadBufferByte}</p>
 	 */
-	private static final int DOWNLOAD_UPLOAD_SCALE = 4;
+	public static final int DOWNLOAD_UPLOAD_SCALE = 4;
 	/**
 	 * <p>下载目录配置名称：{@value}</p>
 	 * 
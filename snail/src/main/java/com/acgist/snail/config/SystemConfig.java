@@ -317,6 +317,46 @@ public final class SystemConfig extends PropertiesConfig {
 	 * <p>Peer（连接、接入）优化周期（秒）</p>
 	 */
 	private int peerOptimizeInterval;
+	/**
+	 * <p>使用内存映射做种</p>
+	 */
+	private boolean seedMapped;
+	/**
+	 * <p>Piece选择使用最少优先（关闭使用顺序选择）</p>
+	 */
+	private boolean pieceRarest;
+	/**
+	 * <p>UDP消息处理线程数量</p>
+	 */
+	private int udpThreadSize;
+	/**
+	 * <p>HTTP分段下载连接数量（小于等于一：不分段）</p>
+	 */
+	private int httpSegmentSize;
+	/**
+	 * <p>是否使用HTTP连接池</p>
+	 */
+	private boolean httpPooled;
+	/**
+	 * <p>BT任务文件校验线程数量</p>
+	 */
+	private int verifyThreadSize;
+	/**
+	 * <p>限速突发时间（秒）</p>
+	 */
+	private int limitBurst;
+	/**
+	 * <p>全局下载速度（KB）</p>
+	 */
+	private int limitGlobal;
+	/**
+	 * <p>单个Peer下载速度（KB）</p>
+	 */
+	private int limitPeer;
+	/**
+	 * <p>指标导出时间（秒）（小于等于零：不导出文件）</p>
+	 */
+	private int metricsInterval;
 	/**
 	 * <p>软件信息</p>
 	 * 
@@ -362,6 +402,16 @@ public final class SystemConfig extends PropertiesConfig {
 		this.haveInterval = this.getInteger("acgist.have.interval", 30);
 		this.trackerInterval = this.getInteger("acgist.tracker.interval", 120);
 		this.peerOptimizeInterval = this.getInteger("acgist.peer.optimize.interval", 60);
+		this.seedMapped = this.getBoolean("acgist.seed.mapped", true);
+		this.pieceRarest = this.getBoolean("acgist.piece.rarest", true);
+		this.udpThreadSize = this.getInteger("acgist.udp.thread.size", 4);
+		this.httpSegmentSize = this.getInteger("acgist.http.segment.size", 4);
+		this.httpPooled = this.getBoolean("acgist.http.pooled", true);
+		this.verifyThreadSize = this.getInteger("acgist.verify.thread.size", 4);
+		this.limitBurst = this.getInteger("acgist.limit.burst", 2);
+		this.limitGlobal = this.getInteger("acgist.limit.global", 0);
+		this.limitPeer = this.getInteger("acgist.limit.peer", 0);
+		this.metricsInterval = this.getInteger("acgist.metrics.interval", 0);
 		this.nameEnAndVersion = this.nameEn + " " + this.version;
 	}
 
@@ -392,6 +442,16 @@ public final class SystemConfig extends PropertiesConfig {
 		LOGGER.debug("Have消息执行周期（秒）：{}", this.haveInterval);
 		LOGGER.debug("Tracker执行周期（秒）：{}", this.trackerInterval);
 		LOGGER.debug("Peer（连接、接入）优化周期（秒）：{}", this.peerOptimizeInterval);
+		LOGGER.debug("使用内存映射做种：{}", this.seedMapped);
+		LOGGER.debug("Piece选择使用最少优先（关闭使用顺序选择）：{}", this.pieceRarest);
+		LOGGER.debug("UDP消息处理线程数量：{}", this.udpThreadSize);
+		LOGGER.debug("HTTP分段下载连接数量（小于等于一：不分段）：{}", this.httpSegmentSize);
+		LOGGER.debug("是否使用HTTP连接池：{}", this.httpPooled);
+		LOGGER.debug("BT任务文件校验线程数量：{}", this.verifyThreadSize);
+		LOGGER.debug("限速突发时间（秒）：{}", this.limitBurst);
+		LOGGER.debug("全局下载速度（KB）：{}", this.limitGlobal);
+		LOGGER.debug("单个Peer下载速度（KB）：{}", this.limitPeer);
+		LOGGER.debug("指标导出时间（秒）（小于等于零：不导出文件）：{}", this.metricsInterval);
 		LOGGER.debug("软件信息：{}", this.nameEnAndVersion);
 	}
 	
@@ -626,6 +686,96 @@ public final class SystemConfig extends PropertiesConfig {
 		return INSTANCE.peerOptimizeInterval;
 	}
 
+	/**
+	 * <p>判断是否使用内存映射做种</p>
+	 * 
+	 * @return 是否使用内存映射做种
+	 */
+	public static final boolean isSeedMapped() {
+		return INSTANCE.seedMapped;
+	}
+	
+	/**
+	 * <p>判断是否Piece选择使用最少优先（关闭使用顺序选择）</p>
+	 * 
+	 * @return 是否Piece选择使用最少优先（关闭使用顺序选择）
+	 */
+	public static final boolean isPieceRarest() {
+		return INSTANCE.pieceRarest;
+	}
+	
+	/**
+	 * <p>获取UDP消息处理线程数量</p>
+	 * 
+	 * @return UDP消息处理线程数量
+	 */
+	public static final int getUdpThreadSize() {
+		return INSTANCE.udpThreadSize;
+	}
+	
+	/**
+	 * <p>获取HTTP分段下载连接数量（小于等于一：不分段）</p>
+	 * 
+	 * @return HTTP分段下载连接数量（小于等于一：不分段）
+	 */
+	public static final int getHttpSegmentSize() {
+		return INSTANCE.httpSegmentSize;
+	}
+	
+	/**
+	 * <p>判断是否使用HTTP连接池</p>
+	 * 
+	 * @return 是否使用HTTP连接池
+	 */
+	public static final boolean isHttpPooled() {
+		return INSTANCE.httpPooled;
+	}
+	
+	/**
+	 * <p>获取BT任务文件校验线程数量</p>
+	 * 
+	 * @return BT任务文件校验线程数量
+	 */
+	public static final int getVerifyThreadSize() {
+		return INSTANCE.verifyThreadSize;
+	}
+	
+	/**
+	 * <p>获取限速突发时间（秒）</p>
+	 * 
+	 * @return 限速突发时间（秒）
+	 */
+	public static final int getLimitBurst() {
+		return INSTANCE.limitBurst;
+	}
+	
+	/**
+	 * <p>获取全局下载速度（KB）</p>
+	 * 
+	 * @return 全局下载速度（KB）
+	 */
+	public static final int getLimitGlobal() {
+		return INSTANCE.limitGlobal;
+	}
+	
+	/**
+	 * <p>获取单个Peer下载速度（KB）</p>
+	 * 
+	 * @return 单个Peer下载速度（KB）
+	 */
+	public static final int getLimitPeer() {
+		return INSTANCE.limitPeer;
+	}
+	
+	/**
+	 * <p>获取指标导出时间（秒）（小于等于零：不导出文件）</p>
+	 * 
+	 * @return 指标导出时间（秒）（小于等于零：不导出文件）
+	 */
+	public static final int getMetricsInterval() {
+		return INSTANCE.metricsInterval;
+	}
+	
 	/**
 	 * <p>获取用户工作目录</p>
 	 * 
@@ -1,7 +1,5 @@
 package com.acgist.snail.context;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -12,8 +10,8 @@ import com.acgist.snail.IContext;
 import com.acgist.snail.config.DhtConfig;
 import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.net.torrent.dht.DhtRequest;
+import com.acgist.snail.net.torrent.dht.DhtRequestTable;
 import com.acgist.snail.net.torrent.dht.DhtResponse;
-import com.acgist.snail.utils.ArrayUtils;
 import com.acgist.snail.utils.NumberUtils;
 
 /**
@@ -54,16 +52,21 @@ public final class DhtContext implements IContext {
 	 */
 	private int requestId = MIN_ID_VALUE;
 	/**
-	 * <p>DHT请求列表</p>
+	 * <p>DHT请求事务表</p>
 	 */
-	private final List<DhtRequest> requests;
+	private final DhtRequestTable requests;
+	/**
+	 * <p>DHT请求数量</p>
+	 */
+	private final MetricsContext.Counter requestCounter;
 	
 	/**
 	 * <p>禁止创建实例</p>
 	 */
 	private DhtContext() {
 		this.token = this.buildToken();
-		this.requests = new LinkedList<>();
+		this.requests = new DhtRequestTable(DhtConfig.DHT_TIMEOUT, TimeUnit.SECONDS.toMillis(DhtConfig.DHT_REQUEST_TIMEOUT_TICK));
+		this.requestCounter = MetricsContext.getInstance().counter("snail_dht_request_total", "DHT请求数量");
 		this.register();
 	}
 	
@@ -73,11 +76,15 @@ public final class DhtContext implements IContext {
 	private void register() {
 		LOGGER.debug("注册DHT服务：定时任务");
 		SystemThreadContext.timerFixedDelay(
-			DhtConfig.DHT_REQUEST_CLEAN_INTERVAL,
-			DhtConfig.DHT_REQUEST_CLEAN_INTERVAL,
-			TimeUnit.MINUTES,
+			DhtConfig.DHT_REQUEST_TIMEOUT_TICK,
+			DhtConfig.DHT_REQUEST_TIMEOUT_TICK,
+			TimeUnit.SECONDS,
 			this::timeout
 		);
+		final MetricsContext metricsContext = MetricsContext.getInstance();
+		metricsContext.gauge("snail_dht_inflight", "DHT等待响应请求数量", this::inflightSize);
+		metricsContext.counter("snail_dht_response_total", "DHT响应请求数量", this::responseCount);
+		metricsContext.counter("snail_dht_timeout_total", "DHT超时请求数量", this::timeoutCount);
 	}
 	
 	/**
@@ -133,13 +140,8 @@ public final class DhtContext implements IContext {
 		if(request == null) {
 			return;
 		}
-		synchronized (this.requests) {
-			final DhtRequest oldRequest = this.remove(request.getT());
-			if(oldRequest != null) {
-				LOGGER.warn("旧DHT请求没有收到响应（删除）");
-			}
-			this.requests.add(request);
-		}
+		this.requestCounter.increment();
+		this.requests.put(request);
 	}
 	
 	/**
@@ -156,10 +158,7 @@ public final class DhtContext implements IContext {
 		}
 		// 设置节点为可用状态
 		NodeContext.getInstance().available(response.getNodeId());
-		DhtRequest request;
-		synchronized (this.requests) {
-			request = this.remove(response.getT());
-		}
+		final DhtRequest request = this.requests.remove(response.getT());
 		if(request != null) {
 			request.setResponse(response);
 		}
@@ -167,42 +166,40 @@ public final class DhtContext implements IContext {
 	}
 	
 	/**
-	 * <p>处理DHT超时请求</p>
+	 * <p>获取等待响应DHT请求数量</p>
+	 * 
+	 * @return 等待响应DHT请求数量
 	 */
-	private void timeout() {
-		LOGGER.debug("处理DHT超时请求");
-		final long timeout = DhtConfig.DHT_TIMEOUT;
-		final long timestamp = System.currentTimeMillis();
-		synchronized (this.requests) {
-			DhtRequest request;
-			final var iterator = this.requests.iterator();
-			while(iterator.hasNext()) {
-				request = iterator.next();
-				if(timestamp - request.getTimestamp() > timeout) {
-					iterator.remove();
-				}
-			}
-		}
+	public int inflightSize() {
+		return this.requests.inflightSize();
 	}
 	
 	/**
-	 * <p>移除并返回请求</p>
+	 * <p>获取超时DHT请求数量</p>
 	 * 
-	 * @param id 消息ID
+	 * @return 超时DHT请求数量
+	 */
+	public long timeoutCount() {
+		return this.requests.timeoutCount();
+	}
+	
+	/**
+	 * <p>获取响应DHT请求数量</p>
 	 * 
-	 * @return 请求
+	 * @return 响应DHT请求数量
 	 */
-	private DhtRequest remove(byte[] id) {
-		DhtRequest request;
-		final var iterator = this.requests.iterator();
-		while(iterator.hasNext()) {
-			request = iterator.next();
-			if(ArrayUtils.equals(id, request.getT())) {
-				iterator.remove();
-				return request;
-			}
+	public long responseCount() {
+		return this.requests.responseCount();
+	}
+	
+	/**
+	 * <p>处理DHT超时请求</p>
+	 */
+	private void timeout() {
+		final int count = this.requests.timeout(System.currentTimeMillis());
+		if(count > 0) {
+			LOGGER.debug("处理DHT超时请求：{}", count);
 		}
-		return null;
 	}
 
 }
@@ -8,9 +8,14 @@ import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -18,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.IContext;
 import com.acgist.snail.config.DownloadConfig;
+import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.context.exception.EntityException;
 import com.acgist.snail.pojo.entity.ConfigEntity;
 import com.acgist.snail.pojo.entity.Entity;
@@ -26,6 +32,8 @@ import com.acgist.snail.utils.FileUtils;
 
 /**
  * <p>实体上下文</p>
+ * <p>实体保存在快照文件和日志文件：修改实体追加写入日志，日志超过{@link #JOURNAL_COMPACT_SIZE}时重新保存快照并且清空日志。</p>
+ * <p>加载实体时先加载快照然后重放日志</p>
  * 
  * @author acgist
  */
@@ -43,22 +51,48 @@ public final class EntityContext implements IContext {
 	 * <p>实体文件名称：{@value}</p>
 	 */
 	private static final String ENTITY_FILE_PATH = "./config/snail.entities";
+	/**
+	 * <p>实体快照临时文件名称：{@value}</p>
+	 * <p>快照写入临时文件成功后替换实体文件：防止写入时程序崩溃损坏实体文件</p>
+	 */
+	private static final String ENTITY_TEMP_FILE_PATH = ENTITY_FILE_PATH + ".tmp";
+	/**
+	 * <p>实体日志文件名称：{@value}</p>
+	 */
+	private static final String ENTITY_JOURNAL_PATH = ENTITY_FILE_PATH + ".journal";
+	/**
+	 * <p>日志压缩大小：{@value}</p>
+	 * <p>日志超过这个大小时保存快照并且清空日志</p>
+	 */
+	private static final long JOURNAL_COMPACT_SIZE = 4L * SystemConfig.ONE_MB;
 
 	/**
 	 * <p>任务列表</p>
+	 * <p>实体ID=任务</p>
 	 */
-	private final List<TaskEntity> taskEntities;
+	private final Map<String, TaskEntity> taskEntities;
 	/**
 	 * <p>配置列表</p>
+	 * <p>实体ID=配置</p>
+	 */
+	private final Map<String, ConfigEntity> configEntities;
+	/**
+	 * <p>实体日志</p>
 	 */
-	private final List<ConfigEntity> configEntities;
+	private final EntityJournal journal;
+	/**
+	 * <p>快照锁</p>
+	 * <p>同时只能保存一个快照</p>
+	 */
+	private final Object persistentLock = new Object();
 	
 	/**
 	 * <p>禁止创建实例</p>
 	 */
 	private EntityContext() {
-		this.taskEntities = new ArrayList<>();
-		this.configEntities = new ArrayList<>();
+		this.taskEntities = new LinkedHashMap<>();
+		this.configEntities = new LinkedHashMap<>();
+		this.journal = new EntityJournal(ENTITY_JOURNAL_PATH);
 	}
 	
 	/**
@@ -67,7 +101,9 @@ public final class EntityContext implements IContext {
 	 * @return 所有任务列表
 	 */
 	public List<TaskEntity> allTask() {
-		return this.taskEntities;
+		synchronized (this) {
+			return new ArrayList<>(this.taskEntities.values());
+		}
 	}
 	
 	/**
@@ -76,7 +112,9 @@ public final class EntityContext implements IContext {
 	 * @return 所有配置列表
 	 */
 	public List<ConfigEntity> allConfig() {
-		return this.configEntities;
+		synchronized (this) {
+			return new ArrayList<>(this.configEntities.values());
+		}
 	}
 	
 	/**
@@ -113,9 +151,10 @@ public final class EntityContext implements IContext {
 	public void save(TaskEntity entity) {
 		this.buildSave(entity);
 		synchronized (this) {
-			this.taskEntities.add(entity);
+			this.taskEntities.put(entity.getId(), entity);
+			this.journal.save(entity);
 		}
-		this.persistent();
+		this.compact();
 	}
 
 	/**
@@ -125,7 +164,14 @@ public final class EntityContext implements IContext {
 	 */
 	public void update(TaskEntity entity) {
 		this.buildUpdate(entity);
-		this.persistent();
+		synchronized (this) {
+			if(this.taskEntities.containsKey(entity.getId())) {
+				this.journal.save(entity);
+			} else {
+				LOGGER.warn("更新任务不存在：{}", entity.getId());
+			}
+		}
+		this.compact();
 	}
 	
 	/**
@@ -160,9 +206,10 @@ public final class EntityContext implements IContext {
 	public void save(ConfigEntity entity) {
 		this.buildSave(entity);
 		synchronized (this) {
-			this.configEntities.add(entity);
+			this.configEntities.put(entity.getId(), entity);
+			this.journal.save(entity);
 		}
-		this.persistent();
+		this.compact();
 	}
 
 	/**
@@ -172,7 +219,14 @@ public final class EntityContext implements IContext {
 	 */
 	public void update(ConfigEntity entity) {
 		this.buildUpdate(entity);
-		this.persistent();
+		synchronized (this) {
+			if(this.configEntities.containsKey(entity.getId())) {
+				this.journal.save(entity);
+			} else {
+				LOGGER.warn("更新配置不存在：{}", entity.getId());
+			}
+		}
+		this.compact();
 	}
 	
 	/**
@@ -195,7 +249,7 @@ public final class EntityContext implements IContext {
 	 */
 	public ConfigEntity findConfigByName(String name) {
 		synchronized (this) {
-			return this.configEntities.stream()
+			return this.configEntities.values().stream()
 				.filter(entity -> entity.getName().equals(name))
 				.findFirst()
 				.orElse(null);
@@ -251,63 +305,146 @@ public final class EntityContext implements IContext {
 		synchronized (this) {
 			// 使用或者判断：任务删除成功不再删除配置
 			success =
-				this.taskEntities.removeIf(entity -> entity.getId().equals(id)) ||
-				this.configEntities.removeIf(entity -> entity.getId().equals(id));
+				this.taskEntities.remove(id) != null ||
+				this.configEntities.remove(id) != null;
+			if(success) {
+				// 删除成功写入日志
+				this.journal.delete(id);
+			}
 		}
 		if(success) {
-			// 删除成功保存实体
-			this.persistent();
+			this.compact();
 		}
 		return success;
 	}
 	
 	/**
 	 * <p>加载实体</p>
+	 * <p>加载快照然后重放日志</p>
 	 */
 	public void load() {
+		synchronized (this) {
+			this.taskEntities.clear();
+			this.configEntities.clear();
+			this.loadSnapshot();
+			this.journal.replay(this::put, this::remove);
+			LOGGER.debug("加载任务实体数量：{}", this.taskEntities.size());
+			LOGGER.debug("加载配置实体数量：{}", this.configEntities.size());
+		}
+	}
+	
+	/**
+	 * <p>加载快照</p>
+	 */
+	private void loadSnapshot() {
 		final File file = new File(ENTITY_FILE_PATH);
 		if(!file.exists()) {
 			return;
 		}
 		try (ObjectInput input = new ObjectInputStream(new FileInputStream(file))) {
 			final List<?> list = (List<?>) input.readObject();
-			synchronized (this) {
-				this.taskEntities.clear();
-				this.configEntities.clear();
-				list.forEach(object -> {
-					if(object instanceof TaskEntity) {
-						this.taskEntities.add((TaskEntity) object);
-					} else if(object instanceof ConfigEntity) {
-						this.configEntities.add((ConfigEntity) object);
-					} else {
-						LOGGER.warn("未知实体类型：{}", object);
-					}
-				});
-				LOGGER.debug("加载任务实体数量：{}", this.taskEntities.size());
-				LOGGER.debug("加载配置实体数量：{}", this.configEntities.size());
-			}
+			list.forEach(object -> {
+				if(object instanceof Entity) {
+					this.put((Entity) object);
+				} else {
+					LOGGER.warn("未知实体类型：{}", object);
+				}
+			});
 		} catch (IOException | ClassNotFoundException e) {
 			LOGGER.error("加载实体异常", e);
 		}
 	}
 	
+	/**
+	 * <p>添加（替换）实体</p>
+	 * 
+	 * @param entity 实体
+	 */
+	private void put(Entity entity) {
+		if(entity instanceof TaskEntity) {
+			this.taskEntities.put(entity.getId(), (TaskEntity) entity);
+		} else if(entity instanceof ConfigEntity) {
+			this.configEntities.put(entity.getId(), (ConfigEntity) entity);
+		} else {
+			LOGGER.warn("未知实体类型：{}", entity);
+		}
+	}
+	
+	/**
+	 * <p>移除实体</p>
+	 * 
+	 * @param id 实体ID
+	 */
+	private void remove(String id) {
+		if(this.taskEntities.remove(id) == null) {
+			this.configEntities.remove(id);
+		}
+	}
+	
+	/**
+	 * <p>压缩日志</p>
+	 * <p>日志超过{@link #JOURNAL_COMPACT_SIZE}时保存快照</p>
+	 */
+	private void compact() {
+		if(this.journal.size() > JOURNAL_COMPACT_SIZE) {
+			LOGGER.debug("压缩实体日志：{}", this.journal.size());
+			this.persistent();
+		}
+	}
+	
 	/**
 	 * <p>保存实体</p>
+	 * <p>复制实体列表和日志大小以后释放实体锁再写入快照：保存期间可以修改实体</p>
+	 * <p>保存快照成功后只清除复制时已有的日志记录：保存期间追加的记录在快照之后重放</p>
 	 */
 	public void persistent() {
 		LOGGER.debug("保存实体");
-		final List<Entity> list = new ArrayList<>();
-		synchronized (this) {
-			list.addAll(this.taskEntities);
-			list.addAll(this.configEntities);
-		}
-		final File file = new File(ENTITY_FILE_PATH);
-		FileUtils.buildFolder(file, true);
-		try (ObjectOutput output = new ObjectOutputStream(new FileOutputStream(file))) {
-			output.writeObject(list);
-		} catch (IOException e) {
-			LOGGER.error("保存实体异常", e);
+		synchronized (this.persistentLock) {
+			final long position;
+			final List<Entity> list = new ArrayList<>();
+			synchronized (this) {
+				list.addAll(this.taskEntities.values());
+				list.addAll(this.configEntities.values());
+				position = this.journal.size();
+			}
+			final File file = new File(ENTITY_FILE_PATH);
+			final File tempFile = new File(ENTITY_TEMP_FILE_PATH);
+			FileUtils.buildFolder(file, true);
+			try (
+				final FileOutputStream stream = new FileOutputStream(tempFile);
+				final ObjectOutput output = new ObjectOutputStream(stream);
+			) {
+				output.writeObject(list);
+				output.flush();
+				// 替换实体文件之前刷盘：防止替换以后快照数据没有写入
+				stream.getFD().sync();
+			} catch (IOException e) {
+				LOGGER.error("保存实体异常", e);
+				return;
+			}
+			try {
+				try {
+					Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					LOGGER.debug("文件系统不支持原子移动：{}", file, e);
+					Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				LOGGER.error("保存实体异常", e);
+				return;
+			}
+			// 快照已经包含复制时日志所有记录
+			this.journal.reset(position);
 		}
 	}
 	
+	/**
+	 * <p>关闭实体上下文</p>
+	 * <p>关闭前保存快照然后关闭日志</p>
+	 */
+	public void shutdown() {
+		this.persistent();
+		this.journal.close();
+	}
+	
 }
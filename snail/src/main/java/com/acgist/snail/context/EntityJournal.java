@@ -0,0 +1,553 @@
+package com.acgist.snail.context;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.pojo.ITaskSession.FileType;
+import com.acgist.snail.pojo.ITaskSessionStatus.Status;
+import com.acgist.snail.pojo.entity.ConfigEntity;
+import com.acgist.snail.pojo.entity.Entity;
+import com.acgist.snail.pojo.entity.TaskEntity;
+import com.acgist.snail.protocol.Protocol.Type;
+import com.acgist.snail.utils.FileUtils;
+
+/**
+ * <p>实体日志</p>
+ * <p>实体修改追加写入日志文件，不用每次修改都重写所有实体。</p>
+ * <p>记录格式：记录类型（1字节）+数据长度（4字节）+数据+校验码（4字节，CRC32：记录类型和数据）</p>
+ * <p>加载日志时遇到不完整或者校验失败的记录（写入时程序崩溃）直接截断后面的数据</p>
+ * <p>保存和更新记录保存实体完整数据，删除记录只保存实体ID：重复重放结果一致</p>
+ * <p>每条记录写入后强制刷盘：方法返回后程序崩溃不会丢失记录</p>
+ * 
+ * @author acgist
+ */
+public final class EntityJournal {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(EntityJournal.class);
+	
+	/**
+	 * <p>记录类型：任务</p>
+	 */
+	private static final byte TYPE_TASK = 1;
+	/**
+	 * <p>记录类型：配置</p>
+	 */
+	private static final byte TYPE_CONFIG = 2;
+	/**
+	 * <p>记录类型：删除</p>
+	 */
+	private static final byte TYPE_DELETE = 3;
+	/**
+	 * <p>记录头部长度：{@value}</p>
+	 * <p>记录类型（1字节）+数据长度（4字节）</p>
+	 */
+	private static final int HEADER_LENGTH = 5;
+	/**
+	 * <p>校验码长度：{@value}</p>
+	 */
+	private static final int CHECKSUM_LENGTH = 4;
+	
+	/**
+	 * <p>日志文件</p>
+	 */
+	private final File file;
+	/**
+	 * <p>日志临时文件</p>
+	 * <p>清除快照已经包含的记录时使用</p>
+	 */
+	private final File tempFile;
+	/**
+	 * <p>日志文件通道</p>
+	 */
+	private FileChannel channel;
+	/**
+	 * <p>日志文件大小</p>
+	 */
+	private long size;
+	
+	/**
+	 * @param path 日志文件路径
+	 */
+	public EntityJournal(String path) {
+		this.file = new File(path);
+		this.tempFile = new File(path + ".tmp");
+	}
+	
+	/**
+	 * <p>重放日志</p>
+	 * <p>按照写入顺序重放所有有效记录，然后截断无效数据。</p>
+	 * 
+	 * @param save 保存（更新）实体
+	 * @param delete 删除实体
+	 * 
+	 * @return 重放记录数量
+	 */
+	public synchronized int replay(Consumer<Entity> save, Consumer<String> delete) {
+		if(!this.file.exists()) {
+			return 0;
+		}
+		int count = 0;
+		long position = 0L;
+		final CRC32 crc32 = new CRC32();
+		try (
+			final FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+			final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		) {
+			final long fileSize = channel.size();
+			while(position + HEADER_LENGTH + CHECKSUM_LENGTH <= fileSize) {
+				final byte type = input.readByte();
+				final int length = input.readInt();
+				if(length < 0 || position + HEADER_LENGTH + length + CHECKSUM_LENGTH > fileSize) {
+					LOGGER.warn("实体日志记录不完整：{}-{}", position, length);
+					break;
+				}
+				final byte[] bytes = new byte[length];
+				input.readFully(bytes);
+				final int checksum = input.readInt();
+				crc32.reset();
+				crc32.update(type);
+				crc32.update(bytes);
+				if((int) crc32.getValue() != checksum) {
+					LOGGER.warn("实体日志记录校验失败：{}", position);
+					break;
+				}
+				position += HEADER_LENGTH + length + CHECKSUM_LENGTH;
+				count++;
+				try {
+					if(type == TYPE_DELETE) {
+						delete.accept(new String(bytes, StandardCharsets.UTF_8));
+					} else {
+						save.accept(decode(type, bytes));
+					}
+				} catch (IOException | IllegalArgumentException e) {
+					LOGGER.error("实体日志记录解析异常：{}", type, e);
+				}
+			}
+		} catch (EOFException e) {
+			LOGGER.warn("实体日志记录不完整：{}", position, e);
+		} catch (IOException e) {
+			LOGGER.error("加载实体日志异常", e);
+		}
+		// 截断无效数据
+		try {
+			final FileChannel channel = this.channel();
+			channel.truncate(position);
+			channel.force(false);
+			this.size = position;
+		} catch (IOException e) {
+			LOGGER.error("截断实体日志异常", e);
+		}
+		LOGGER.debug("重放实体日志记录数量：{}", count);
+		return count;
+	}
+	
+	/**
+	 * <p>写入保存（更新）记录</p>
+	 * 
+	 * @param entity 实体
+	 */
+	public void save(Entity entity) {
+		try {
+			if(entity instanceof TaskEntity) {
+				this.append(TYPE_TASK, encode((TaskEntity) entity));
+			} else if(entity instanceof ConfigEntity) {
+				this.append(TYPE_CONFIG, encode((ConfigEntity) entity));
+			} else {
+				LOGGER.warn("未知实体类型：{}", entity);
+			}
+		} catch (IOException e) {
+			LOGGER.error("写入实体日志异常：{}", entity, e);
+		}
+	}
+	
+	/**
+	 * <p>写入删除记录</p>
+	 * 
+	 * @param id 实体ID
+	 */
+	public void delete(String id) {
+		try {
+			this.append(TYPE_DELETE, id.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			LOGGER.error("写入实体日志异常：{}", id, e);
+		}
+	}
+	
+	/**
+	 * <p>获取日志文件大小</p>
+	 * 
+	 * @return 日志文件大小
+	 */
+	public synchronized long size() {
+		return this.size;
+	}
+	
+	/**
+	 * <p>清空日志</p>
+	 * 
+	 * @see #reset(long)
+	 */
+	public void reset() {
+		this.reset(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * <p>清除指定位置之前的记录</p>
+	 * <p>实体快照保存成功后调用：保存快照期间追加的记录需要保留</p>
+	 * <p>保留记录先写入临时文件然后替换日志文件：防止替换时程序崩溃损坏日志文件</p>
+	 * 
+	 * @param position 快照包含的日志大小
+	 */
+	public synchronized void reset(long position) {
+		try {
+			if(position >= this.size) {
+				final FileChannel channel = this.channel();
+				channel.truncate(0L);
+				channel.force(false);
+				this.size = 0L;
+				return;
+			}
+			try (
+				final FileChannel tempChannel = FileChannel.open(
+					this.tempFile.toPath(),
+					StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING
+				);
+			) {
+				final FileChannel channel = this.channel();
+				long pos = position;
+				while(pos < this.size) {
+					pos += channel.transferTo(pos, this.size - pos, tempChannel);
+				}
+				tempChannel.force(false);
+			}
+			// 替换日志文件之前关闭通道：部分系统不能替换打开的文件
+			this.close();
+			try {
+				Files.move(this.tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				LOGGER.debug("文件系统不支持原子移动：{}", this.file, e);
+				Files.move(this.tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			// 重新打开日志文件通道并且更新日志文件大小
+			this.channel();
+		} catch (IOException e) {
+			LOGGER.error("清空实体日志异常", e);
+		}
+	}
+	
+	/**
+	 * <p>关闭日志</p>
+	 */
+	public synchronized void close() {
+		if(this.channel == null) {
+			return;
+		}
+		try {
+			this.channel.force(false);
+			this.channel.close();
+		} catch (IOException e) {
+			LOGGER.error("关闭实体日志异常", e);
+		} finally {
+			this.channel = null;
+		}
+	}
+	
+	/**
+	 * <p>追加记录</p>
+	 * <p>写入完成强制刷盘</p>
+	 * 
+	 * @param type 记录类型
+	 * @param bytes 记录数据
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private synchronized void append(byte type, byte[] bytes) throws IOException {
+		final CRC32 crc32 = new CRC32();
+		crc32.update(type);
+		crc32.update(bytes);
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + bytes.length + CHECKSUM_LENGTH);
+		buffer.put(type);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		buffer.putInt((int) crc32.getValue());
+		buffer.flip();
+		final FileChannel channel = this.channel();
+		while(buffer.hasRemaining()) {
+			this.size += channel.write(buffer, this.size);
+		}
+		channel.force(false);
+	}
+	
+	/**
+	 * <p>获取日志文件通道</p>
+	 * 
+	 * @return 日志文件通道
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private FileChannel channel() throws IOException {
+		if(this.channel == null) {
+			FileUtils.buildFolder(this.file, true);
+			this.channel = FileChannel.open(
+				this.file.toPath(),
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE
+			);
+			this.size = this.channel.size();
+		}
+		return this.channel;
+	}
+	
+	/**
+	 * <p>编码任务</p>
+	 * 
+	 * @param entity 任务
+	 * 
+	 * @return 任务数据
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final byte[] encode(TaskEntity entity) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(bytes);
+		writeEntity(output, entity);
+		writeString(output, entity.getName());
+		writeString(output, entity.getType() == null ? null : entity.getType().name());
+		writeString(output, entity.getFileType() == null ? null : entity.getFileType().name());
+		writeString(output, entity.getFile());
+		writeString(output, entity.getUrl());
+		writeString(output, entity.getTorrent());
+		writeString(output, entity.getStatus() == null ? null : entity.getStatus().name());
+		writeLong(output, entity.getSize());
+		writeDate(output, entity.getEndDate());
+		writeString(output, entity.getDescription());
+		writeBytes(output, entity.getPayload());
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * <p>编码配置</p>
+	 * 
+	 * @param entity 配置
+	 * 
+	 * @return 配置数据
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final byte[] encode(ConfigEntity entity) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(bytes);
+		writeEntity(output, entity);
+		writeString(output, entity.getName());
+		writeString(output, entity.getValue());
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * <p>解码实体</p>
+	 * 
+	 * @param type 记录类型
+	 * @param bytes 实体数据
+	 * 
+	 * @return 实体
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final Entity decode(byte type, byte[] bytes) throws IOException {
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+		if(type == TYPE_TASK) {
+			final TaskEntity entity = new TaskEntity();
+			readEntity(input, entity);
+			entity.setName(readString(input));
+			final String taskType = readString(input);
+			entity.setType(taskType == null ? null : Type.valueOf(taskType));
+			final String fileType = readString(input);
+			entity.setFileType(fileType == null ? null : FileType.valueOf(fileType));
+			entity.setFile(readString(input));
+			entity.setUrl(readString(input));
+			entity.setTorrent(readString(input));
+			final String status = readString(input);
+			entity.setStatus(status == null ? null : Status.valueOf(status));
+			entity.setSize(readLong(input));
+			entity.setEndDate(readDate(input));
+			entity.setDescription(readString(input));
+			entity.setPayload(readBytes(input));
+			return entity;
+		} else if(type == TYPE_CONFIG) {
+			final ConfigEntity entity = new ConfigEntity();
+			readEntity(input, entity);
+			entity.setName(readString(input));
+			entity.setValue(readString(input));
+			return entity;
+		}
+		throw new IllegalArgumentException("未知实体日志记录类型：" + type);
+	}
+	
+	/**
+	 * <p>写入实体公共字段</p>
+	 * 
+	 * @param output 输出流
+	 * @param entity 实体
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final void writeEntity(DataOutputStream output, Entity entity) throws IOException {
+		writeString(output, entity.getId());
+		writeDate(output, entity.getCreateDate());
+		writeDate(output, entity.getModifyDate());
+	}
+	
+	/**
+	 * <p>读取实体公共字段</p>
+	 * 
+	 * @param input 输入流
+	 * @param entity 实体
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final void readEntity(DataInputStream input, Entity entity) throws IOException {
+		entity.setId(readString(input));
+		entity.setCreateDate(readDate(input));
+		entity.setModifyDate(readDate(input));
+	}
+	
+	/**
+	 * <p>写入字符串</p>
+	 * 
+	 * @param output 输出流
+	 * @param value 字符串（可以为空）
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final void writeString(DataOutputStream output, String value) throws IOException {
+		writeBytes(output, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * <p>读取字符串</p>
+	 * 
+	 * @param input 输入流
+	 * 
+	 * @return 字符串
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final String readString(DataInputStream input) throws IOException {
+		final byte[] bytes = readBytes(input);
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * <p>写入字节数组</p>
+	 * 
+	 * @param output 输出流
+	 * @param value 字节数组（可以为空）
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final void writeBytes(DataOutputStream output, byte[] value) throws IOException {
+		if(value == null) {
+			output.writeInt(-1);
+		} else {
+			output.writeInt(value.length);
+			output.write(value);
+		}
+	}
+	
+	/**
+	 * <p>读取字节数组</p>
+	 * 
+	 * @param input 输入流
+	 * 
+	 * @return 字节数组
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final byte[] readBytes(DataInputStream input) throws IOException {
+		final int length = input.readInt();
+		if(length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * <p>写入长整数</p>
+	 * 
+	 * @param output 输出流
+	 * @param value 长整数（可以为空）
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final void writeLong(DataOutputStream output, Long value) throws IOException {
+		output.writeBoolean(value != null);
+		if(value != null) {
+			output.writeLong(value);
+		}
+	}
+	
+	/**
+	 * <p>读取长整数</p>
+	 * 
+	 * @param input 输入流
+	 * 
+	 * @return 长整数
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final Long readLong(DataInputStream input) throws IOException {
+		return input.readBoolean() ? input.readLong() : null;
+	}
+	
+	/**
+	 * <p>写入时间</p>
+	 * 
+	 * @param output 输出流
+	 * @param value 时间（可以为空）
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final void writeDate(DataOutputStream output, Date value) throws IOException {
+		writeLong(output, value == null ? null : value.getTime());
+	}
+	
+	/**
+	 * <p>读取时间</p>
+	 * 
+	 * @param input 输入流
+	 * 
+	 * @return 时间
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final Date readDate(DataInputStream input) throws IOException {
+		final Long value = readLong(input);
+		return value == null ? null : new Date(value);
+	}
+
+}
@@ -7,9 +7,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.IContext;
+import com.acgist.snail.context.exception.DownloadException;
+import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.pojo.ITaskSession;
 import com.acgist.snail.pojo.bean.M3u8;
 import com.acgist.snail.pojo.session.HlsSession;
+import com.acgist.snail.protocol.hls.M3u8Builder;
 
 /**
  * <p>HLS上下文</p>
@@ -63,11 +66,25 @@ public final class HlsContext implements IContext {
 	 * @param taskSession 任务信息
 	 * 
 	 * @return HLS任务信息
+	 * 
+	 * @throws NetException 网络异常
+	 * @throws DownloadException 下载异常
 	 */
-	public HlsSession hlsSession(ITaskSession taskSession) {
+	public HlsSession hlsSession(ITaskSession taskSession) throws NetException, DownloadException {
 		final String id = taskSession.getId();
-		final M3u8 m3u8 = this.m3u8s.get(id);
-		return this.sessions.computeIfAbsent(id, key -> HlsSession.newInstance(m3u8, taskSession));
+		final HlsSession hlsSession = this.sessions.get(id);
+		if(hlsSession != null) {
+			return hlsSession;
+		}
+		M3u8 m3u8 = this.m3u8s.get(id);
+		if(m3u8 == null) {
+			// 重启任务没有M3U8：重新加载获取加密套件和直播信息
+			LOGGER.debug("重新加载M3U8：{}", taskSession.getUrl());
+			m3u8 = M3u8Builder.load(taskSession.getUrl());
+			this.m3u8(id, m3u8);
+		}
+		final M3u8 sessionM3u8 = m3u8;
+		return this.sessions.computeIfAbsent(id, key -> HlsSession.newInstance(sessionM3u8, taskSession));
 	}
 	
 	/**
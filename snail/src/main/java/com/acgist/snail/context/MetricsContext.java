@@ -0,0 +1,476 @@
+package com.acgist.snail.context;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.IContext;
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.utils.FileUtils;
+
+/**
+ * <p>运行指标上下文</p>
+ * <p>指标类型：计数器、仪表、延迟直方图</p>
+ * <p>指标名称可以包含标签：{@code snail_torrent_peer{infohash="..."}}</p>
+ * <p>导出格式：Prometheus文本格式（系统消息、定时导出文件）</p>
+ * <p>写入数据使用分段累加（{@link LongAdder}）：读取（导出）时才汇总</p>
+ * 
+ * @author acgist
+ */
+public final class MetricsContext implements IContext {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetricsContext.class);
+	
+	private static final MetricsContext INSTANCE = new MetricsContext();
+	
+	public static final MetricsContext getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * <p>指标导出文件：{@value}</p>
+	 */
+	private static final String METRICS_FILE = "./logs/snail.metrics";
+	
+	/**
+	 * <p>指标类型</p>
+	 * 
+	 * @author acgist
+	 */
+	public enum Type {
+	
+		/** 计数器 */
+		COUNTER("counter"),
+		/** 仪表 */
+		GAUGE("gauge"),
+		/** 直方图 */
+		HISTOGRAM("histogram");
+	
+		/**
+		 * <p>类型名称</p>
+		 */
+		private final String value;
+	
+		/**
+		 * @param value 类型名称
+		 */
+		private Type(String value) {
+			this.value = value;
+		}
+	
+		/**
+		 * <p>获取类型名称</p>
+		 * 
+		 * @return 类型名称
+		 */
+		public String value() {
+			return this.value;
+		}
+	
+	}
+	
+	/**
+	 * <p>指标</p>
+	 * 
+	 * @author acgist
+	 */
+	public abstract static class Metric {
+	
+		/**
+		 * <p>指标类型</p>
+		 */
+		private final Type type;
+		/**
+		 * <p>指标描述</p>
+		 */
+		private final String help;
+	
+		/**
+		 * @param type 指标类型
+		 * @param help 指标描述
+		 */
+		protected Metric(Type type, String help) {
+			this.type = type;
+			this.help = help;
+		}
+	
+		/**
+		 * <p>获取指标类型</p>
+		 * 
+		 * @return 指标类型
+		 */
+		public Type type() {
+			return this.type;
+		}
+	
+		/**
+		 * <p>获取指标描述</p>
+		 * 
+		 * @return 指标描述
+		 */
+		public String help() {
+			return this.help;
+		}
+	
+		/**
+		 * <p>导出指标数据</p>
+		 * 
+		 * @param name 指标名称（包含标签）
+		 * @param builder 导出数据
+		 */
+		protected abstract void export(String name, StringBuilder builder);
+	
+	}
+	
+	/**
+	 * <p>计数器</p>
+	 * 
+	 * @author acgist
+	 */
+	public static final class Counter extends Metric {
+	
+		/**
+		 * <p>计数</p>
+		 */
+		private final LongAdder count = new LongAdder();
+	
+		/**
+		 * @param help 指标描述
+		 */
+		private Counter(String help) {
+			super(Type.COUNTER, help);
+		}
+	
+		/**
+		 * <p>计数加一</p>
+		 */
+		public void increment() {
+			this.count.increment();
+		}
+	
+		/**
+		 * <p>计数累加</p>
+		 * 
+		 * @param value 累加数量
+		 */
+		public void add(long value) {
+			this.count.add(value);
+		}
+	
+		/**
+		 * <p>获取计数</p>
+		 * 
+		 * @return 计数
+		 */
+		public long get() {
+			return this.count.sum();
+		}
+	
+		@Override
+		protected void export(String name, StringBuilder builder) {
+			builder.append(name).append(' ').append(this.get()).append(SystemConfig.LINE_SEPARATOR);
+		}
+	
+	}
+	
+	/**
+	 * <p>仪表</p>
+	 * <p>导出时读取数据：可以用来导出已有计数（计数器类型）</p>
+	 * 
+	 * @author acgist
+	 */
+	public static final class Gauge extends Metric {
+	
+		/**
+		 * <p>数据来源</p>
+		 */
+		private final LongSupplier supplier;
+	
+		/**
+		 * @param type 指标类型
+		 * @param help 指标描述
+		 * @param supplier 数据来源
+		 */
+		private Gauge(Type type, String help, LongSupplier supplier) {
+			super(type, help);
+			this.supplier = supplier;
+		}
+	
+		/**
+		 * <p>获取数据</p>
+		 * 
+		 * @return 数据
+		 */
+		public long get() {
+			return this.supplier.getAsLong();
+		}
+	
+		@Override
+		protected void export(String name, StringBuilder builder) {
+			builder.append(name).append(' ').append(this.get()).append(SystemConfig.LINE_SEPARATOR);
+		}
+	
+	}
+	
+	/**
+	 * <p>延迟直方图</p>
+	 * <p>记录纳秒，导出单位：秒</p>
+	 * 
+	 * @author acgist
+	 */
+	public static final class Histogram extends Metric {
+	
+		/**
+		 * <p>区间上限（纳秒）</p>
+		 */
+		private static final long[] BUCKETS = {
+			100_000L, 500_000L,
+			1_000_000L, 5_000_000L,
+			10_000_000L, 50_000_000L,
+			100_000_000L, 500_000_000L,
+			1_000_000_000L, 5_000_000_000L
+		};
+	
+		/**
+		 * <p>区间计数</p>
+		 * <p>最后一个区间：超过最大区间上限</p>
+		 */
+		private final LongAdder[] counts;
+		/**
+		 * <p>累计时间（纳秒）</p>
+		 */
+		private final LongAdder sum = new LongAdder();
+	
+		/**
+		 * @param help 指标描述
+		 */
+		private Histogram(String help) {
+			super(Type.HISTOGRAM, help);
+			this.counts = new LongAdder[BUCKETS.length + 1];
+			for (int index = 0; index < this.counts.length; index++) {
+				this.counts[index] = new LongAdder();
+			}
+		}
+	
+		/**
+		 * <p>记录时间</p>
+		 * 
+		 * @param nanos 时间（纳秒）
+		 */
+		public void record(long nanos) {
+			int index = 0;
+			while(index < BUCKETS.length && nanos > BUCKETS[index]) {
+				index++;
+			}
+			this.counts[index].increment();
+			this.sum.add(nanos);
+		}
+	
+		/**
+		 * <p>记录开始时间至今的时间</p>
+		 * 
+		 * @param beginNanos 开始时间（纳秒）
+		 * 
+		 * @see System#nanoTime()
+		 */
+		public void recordSince(long beginNanos) {
+			this.record(System.nanoTime() - beginNanos);
+		}
+	
+		/**
+		 * <p>获取记录次数</p>
+		 * 
+		 * @return 记录次数
+		 */
+		public long count() {
+			long count = 0L;
+			for (LongAdder adder : this.counts) {
+				count += adder.sum();
+			}
+			return count;
+		}
+	
+		@Override
+		protected void export(String name, StringBuilder builder) {
+			// 标签：区间标签追加到已有标签
+			final int labelIndex = name.indexOf('{');
+			final String baseName = labelIndex < 0 ? name : name.substring(0, labelIndex);
+			final String labels = labelIndex < 0 ? "" : name.substring(labelIndex + 1, name.length() - 1) + ",";
+			long count = 0L;
+			for (int index = 0; index < this.counts.length; index++) {
+				count += this.counts[index].sum();
+				final String le = index < BUCKETS.length ? Double.toString(BUCKETS[index] / 1E9D) : "+Inf";
+				builder.append(baseName).append("_bucket{").append(labels).append("le=\"").append(le).append("\"} ")
+					.append(count).append(SystemConfig.LINE_SEPARATOR);
+			}
+			final String suffix = labelIndex < 0 ? "" : name.substring(labelIndex);
+			builder.append(baseName).append("_sum").append(suffix).append(' ').append(this.sum.sum() / 1E9D).append(SystemConfig.LINE_SEPARATOR);
+			builder.append(baseName).append("_count").append(suffix).append(' ').append(count).append(SystemConfig.LINE_SEPARATOR);
+		}
+	
+	}
+	
+	/**
+	 * <p>指标集合</p>
+	 * <p>指标名称（包含标签）=指标</p>
+	 */
+	private final Map<String, Metric> metrics;
+	/**
+	 * <p>导出文件定时任务</p>
+	 */
+	private volatile ScheduledFuture<?> exportTimer;
+	
+	/**
+	 * <p>禁止创建实例</p>
+	 */
+	private MetricsContext() {
+		this.metrics = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * <p>注册定时导出文件</p>
+	 * 
+	 * @see SystemConfig#getMetricsInterval()
+	 */
+	public void register() {
+		final int interval = SystemConfig.getMetricsInterval();
+		if(interval <= 0 || this.exportTimer != null) {
+			return;
+		}
+		LOGGER.debug("注册指标导出定时任务：{}", interval);
+		this.exportTimer = SystemThreadContext.timerFixedDelay(
+			interval,
+			interval,
+			TimeUnit.SECONDS,
+			this::exportFile
+		);
+	}
+	
+	/**
+	 * <p>获取计数器</p>
+	 * <p>计数器不存在时创建</p>
+	 * 
+	 * @param name 指标名称
+	 * @param help 指标描述
+	 * 
+	 * @return 计数器
+	 */
+	public Counter counter(String name, String help) {
+		return (Counter) this.metrics.computeIfAbsent(name, key -> new Counter(help));
+	}
+	
+	/**
+	 * <p>注册计数器</p>
+	 * <p>导出已有计数：相同名称指标直接覆盖</p>
+	 * 
+	 * @param name 指标名称
+	 * @param help 指标描述
+	 * @param supplier 数据来源
+	 */
+	public void counter(String name, String help, LongSupplier supplier) {
+		this.metrics.put(name, new Gauge(Type.COUNTER, help, supplier));
+	}
+	
+	/**
+	 * <p>注册仪表</p>
+	 * <p>相同名称指标直接覆盖</p>
+	 * 
+	 * @param name 指标名称
+	 * @param help 指标描述
+	 * @param supplier 数据来源
+	 */
+	public void gauge(String name, String help, LongSupplier supplier) {
+		this.metrics.put(name, new Gauge(Type.GAUGE, help, supplier));
+	}
+	
+	/**
+	 * <p>获取延迟直方图</p>
+	 * <p>延迟直方图不存在时创建</p>
+	 * 
+	 * @param name 指标名称
+	 * @param help 指标描述
+	 * 
+	 * @return 延迟直方图
+	 */
+	public Histogram histogram(String name, String help) {
+		return (Histogram) this.metrics.computeIfAbsent(name, key -> new Histogram(help));
+	}
+	
+	/**
+	 * <p>获取指标</p>
+	 * 
+	 * @param name 指标名称
+	 * 
+	 * @return 指标
+	 */
+	public Metric get(String name) {
+		return this.metrics.get(name);
+	}
+	
+	/**
+	 * <p>删除指标</p>
+	 * <p>释放资源时删除：防止指标持有已经释放的对象</p>
+	 * 
+	 * @param name 指标名称
+	 */
+	public void remove(String name) {
+		this.metrics.remove(name);
+	}
+	
+	/**
+	 * <p>导出指标（Prometheus文本格式）</p>
+	 * 
+	 * @return 指标数据
+	 */
+	public String export() {
+		// 排序：相同指标不同标签连续输出
+		final Map<String, Metric> metrics = new TreeMap<>(this.metrics);
+		final StringBuilder builder = new StringBuilder();
+		String lastName = null;
+		for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+			final String name = entry.getKey();
+			final Metric metric = entry.getValue();
+			final int labelIndex = name.indexOf('{');
+			final String baseName = labelIndex < 0 ? name : name.substring(0, labelIndex);
+			if(!baseName.equals(lastName)) {
+				lastName = baseName;
+				builder.append("# HELP ").append(baseName).append(' ').append(metric.help()).append(SystemConfig.LINE_SEPARATOR);
+				builder.append("# TYPE ").append(baseName).append(' ').append(metric.type().value()).append(SystemConfig.LINE_SEPARATOR);
+			}
+			try {
+				metric.export(name, builder);
+			} catch (Exception e) {
+				LOGGER.error("导出指标异常：{}", name, e);
+			}
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * <p>导出指标文件</p>
+	 */
+	public void exportFile() {
+		FileUtils.write(METRICS_FILE, this.export().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * <p>关闭定时导出文件</p>
+	 * <p>关闭前导出一次：保存最新指标</p>
+	 */
+	public void shutdown() {
+		if(this.exportTimer != null) {
+			SystemThreadContext.shutdownNow(this.exportTimer);
+			this.exportTimer = null;
+			this.exportFile();
+		}
+	}
+
+}
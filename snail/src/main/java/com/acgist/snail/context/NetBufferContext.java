@@ -0,0 +1,206 @@
+package com.acgist.snail.context;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.IContext;
+import com.acgist.snail.config.SystemConfig;
+
+/**
+ * <p>网络缓冲上下文</p>
+ * <p>TCP/UDP接收消息使用直接内存缓冲，消息处理完成后回收重复使用：减少直接内存创建和回收</p>
+ * <p>缓冲按照容量分类：容量等于数据长度向上取整的二的幂</p>
+ * <p>回收缓冲总大小超过限制时直接丢弃（由垃圾回收释放）</p>
+ * <p>只回收上下文借出的缓冲：切片、副本和其他缓冲直接忽略</p>
+ * 
+ * @author acgist
+ */
+public final class NetBufferContext implements IContext {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(NetBufferContext.class);
+	
+	private static final NetBufferContext INSTANCE = new NetBufferContext();
+	
+	public static final NetBufferContext getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * <p>最小缓冲容量（位移）：{@value}</p>
+	 * <p>1KB</p>
+	 */
+	private static final int MIN_CAPACITY_SHIFT = 10;
+	/**
+	 * <p>最大缓冲容量（位移）：{@value}</p>
+	 * <p>64KB：超过最大缓冲容量不会回收</p>
+	 */
+	private static final int MAX_CAPACITY_SHIFT = 16;
+	/**
+	 * <p>回收缓冲最大大小：{@value}</p>
+	 */
+	private static final long MAX_SIZE = 8L * SystemConfig.ONE_MB;
+	
+	/**
+	 * <p>回收缓冲</p>
+	 * <p>数组索引=缓冲容量位移-最小缓冲容量位移</p>
+	 */
+	private final Queue<ByteBuffer>[] buffers;
+	/**
+	 * <p>借出缓冲</p>
+	 * <p>缓冲比较内容：使用对象地址判断是否借出</p>
+	 * <p>借出缓冲必须回收：没有回收的缓冲不会释放</p>
+	 */
+	private final Set<ByteBuffer> borrowBuffers;
+	/**
+	 * <p>回收缓冲大小</p>
+	 */
+	private final AtomicLong size;
+	/**
+	 * <p>正在使用缓冲数量</p>
+	 */
+	private final AtomicInteger borrowSize;
+	/**
+	 * <p>命中次数</p>
+	 */
+	private final AtomicLong hitCount;
+	/**
+	 * <p>没有命中次数</p>
+	 */
+	private final AtomicLong missCount;
+	
+	/**
+	 * <p>禁止创建实例</p>
+	 */
+	@SuppressWarnings("unchecked")
+	private NetBufferContext() {
+		this.buffers = (Queue<ByteBuffer>[]) new Queue<?>[MAX_CAPACITY_SHIFT - MIN_CAPACITY_SHIFT + 1];
+		for (int index = 0; index < this.buffers.length; index++) {
+			this.buffers[index] = new ConcurrentLinkedQueue<>();
+		}
+		this.borrowBuffers = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.size = new AtomicLong(0);
+		this.borrowSize = new AtomicInteger(0);
+		this.hitCount = new AtomicLong(0);
+		this.missCount = new AtomicLong(0);
+	}
+	
+	/**
+	 * <p>获取缓冲</p>
+	 * <p>缓冲位置：{@code 0}</p>
+	 * <p>缓冲限制：数据长度</p>
+	 * <p>注意：缓冲数据不会清空，使用完成后需要{@linkplain #recycle(ByteBuffer) 回收}。</p>
+	 * 
+	 * @param length 数据长度
+	 * 
+	 * @return 缓冲
+	 */
+	public ByteBuffer borrow(int length) {
+		final int shift = shift(length);
+		ByteBuffer buffer = shift > MAX_CAPACITY_SHIFT ? null : this.buffers[shift - MIN_CAPACITY_SHIFT].poll();
+		if(buffer == null) {
+			this.missCount.incrementAndGet();
+			buffer = ByteBuffer.allocateDirect(shift > MAX_CAPACITY_SHIFT ? length : 1 << shift);
+		} else {
+			this.hitCount.incrementAndGet();
+			this.size.addAndGet(-buffer.capacity());
+		}
+		synchronized (this.borrowBuffers) {
+			this.borrowBuffers.add(buffer);
+		}
+		this.borrowSize.incrementAndGet();
+		buffer.clear().limit(length);
+		return buffer;
+	}
+	
+	/**
+	 * <p>回收缓冲</p>
+	 * <p>回收后不能继续使用缓冲</p>
+	 * <p>不是上下文借出的缓冲（切片、副本、重复回收）直接忽略</p>
+	 * 
+	 * @param buffer 缓冲
+	 */
+	public void recycle(ByteBuffer buffer) {
+		if(buffer == null || !buffer.isDirect()) {
+			return;
+		}
+		synchronized (this.borrowBuffers) {
+			if(!this.borrowBuffers.remove(buffer)) {
+				LOGGER.debug("回收网络缓冲不是借出缓冲（忽略）：{}", buffer);
+				return;
+			}
+		}
+		this.borrowSize.decrementAndGet();
+		final int capacity = buffer.capacity();
+		final int shift = shift(capacity);
+		if(shift > MAX_CAPACITY_SHIFT) {
+			// 超过最大缓冲容量
+			return;
+		}
+		if(this.size.addAndGet(capacity) > MAX_SIZE) {
+			this.size.addAndGet(-capacity);
+			LOGGER.debug("回收网络缓冲超过限制（丢弃）：{}", capacity);
+			return;
+		}
+		this.buffers[shift - MIN_CAPACITY_SHIFT].offer(buffer);
+	}
+	
+	/**
+	 * <p>获取回收缓冲大小</p>
+	 * 
+	 * @return 回收缓冲大小
+	 */
+	public long size() {
+		return this.size.get();
+	}
+	
+	/**
+	 * <p>获取正在使用缓冲数量</p>
+	 * 
+	 * @return 正在使用缓冲数量
+	 */
+	public int borrowSize() {
+		return this.borrowSize.get();
+	}
+	
+	/**
+	 * <p>获取命中次数</p>
+	 * 
+	 * @return 命中次数
+	 */
+	public long hitCount() {
+		return this.hitCount.get();
+	}
+	
+	/**
+	 * <p>获取没有命中次数</p>
+	 * 
+	 * @return 没有命中次数
+	 */
+	public long missCount() {
+		return this.missCount.get();
+	}
+	
+	/**
+	 * <p>计算缓冲容量位移</p>
+	 * 
+	 * @param length 数据长度
+	 * 
+	 * @return 缓冲容量位移
+	 */
+	private static final int shift(int length) {
+		if(length <= 1 << MIN_CAPACITY_SHIFT) {
+			return MIN_CAPACITY_SHIFT;
+		}
+		return Integer.SIZE - Integer.numberOfLeadingZeros(length - 1);
+	}
+
+}
@@ -1,9 +1,9 @@
 package com.acgist.snail.context;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,8 +12,8 @@ import com.acgist.snail.IContext;
 import com.acgist.snail.config.DhtConfig;
 import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.net.torrent.dht.DhtClient;
+import com.acgist.snail.net.torrent.dht.NodeRoutingTable;
 import com.acgist.snail.pojo.session.NodeSession;
-import com.acgist.snail.utils.ArrayUtils;
 import com.acgist.snail.utils.MapUtils;
 import com.acgist.snail.utils.NumberUtils;
 import com.acgist.snail.utils.StringUtils;
@@ -45,19 +45,18 @@ public final class NodeContext implements IContext {
 	 */
 	private final byte[] nodeId;
 	/**
-	 * <p>节点列表</p>
-	 * <p>不要使用LinkedList，大量使用索引操作所以性能很差。</p>
-	 * <p>如果节点数量很大建议使用其他数据结构</p>
+	 * <p>路由表</p>
 	 */
-	private final List<NodeSession> nodes;
+	private final NodeRoutingTable routingTable;
 	
 	/**
 	 * <p>禁止创建实例</p>
 	 */
 	private NodeContext() {
 		this.nodeId = this.buildNodeId();
-		this.nodes = new ArrayList<>();
+		this.routingTable = new NodeRoutingTable(this.nodeId, DhtConfig.DHT_TIMEOUT, this::ping);
 		this.register();
+		MetricsContext.getInstance().gauge("snail_dht_node", "DHT路由表节点数量", this.routingTable::size);
 	}
 	
 	/**
@@ -106,15 +105,38 @@ public final class NodeContext implements IContext {
 		}
 	}
 	
+	/**
+	 * <p>验证节点</p>
+	 * <p>K桶已满时验证最早响应的节点：没有响应使用替换缓存中的节点替换</p>
+	 * 
+	 * @param nodeSession 节点
+	 */
+	private void ping(NodeSession nodeSession) {
+		// 异步发送：调用时持有K桶锁
+		SystemThreadContext.submit(() -> {
+			try {
+				DhtClient.newInstance(nodeSession.getHost(), nodeSession.getPort()).verify();
+			} catch (Exception e) {
+				LOGGER.debug("验证节点异常：{}-{}", nodeSession.getHost(), nodeSession.getPort(), e);
+			}
+		});
+		SystemThreadContext.timer(DhtConfig.DHT_TIMEOUT, TimeUnit.MILLISECONDS, () -> {
+			if(nodeSession.verifyTimeout(DhtConfig.DHT_TIMEOUT)) {
+				this.routingTable.unavailable(nodeSession);
+			}
+		});
+	}
+	
 	/**
 	 * <p>获取所有节点的拷贝</p>
+	 * <p>按照节点ID排序</p>
 	 * 
 	 * @return 所有节点的拷贝
 	 */
 	public List<NodeSession> nodes() {
-		synchronized (this.nodes) {
-			return new ArrayList<>(this.nodes);
-		}
+		final List<NodeSession> nodes = this.routingTable.nodes();
+		Collections.sort(nodes);
+		return nodes;
 	}
 	
 	/**
@@ -138,32 +160,26 @@ public final class NodeContext implements IContext {
 	/**
 	 * <p>添加DHT节点</p>
 	 * <p>加入时不验证状态，使用时才验证。</p>
+	 * <p>节点已经存在返回已经存在的节点</p>
 	 * 
 	 * @param nodeId 节点ID
 	 * @param host 地址
 	 * @param port 端口
 	 * 
 	 * @return DHT节点
+	 * 
+	 * @see NodeRoutingTable#put(NodeSession)
 	 */
 	public NodeSession newNodeSession(byte[] nodeId, String host, Integer port) {
-		synchronized (this.nodes) {
-			final int[] nodeIndex = this.selectNode(nodeId);
-			final int index = nodeIndex[0];
-			final int signum = nodeIndex[1];
-			// 完全匹配
-			if(signum == 0) {
-				return this.nodes.get(index);
-			}
-			final NodeSession nodeSession = NodeSession.newInstance(nodeId, host, port);
-			if(nodeSession.getId().length == DhtConfig.NODE_ID_LENGTH) {
-				if(LOGGER.isDebugEnabled()) {
-					LOGGER.debug("添加Node：{}-{}-{}", StringUtils.hex(nodeId), nodeSession.getHost(), nodeSession.getPort());
-				}
-				// 添加指定节点位置
-				this.nodes.add(index, nodeSession);
-			}
+		final NodeSession nodeSession = NodeSession.newInstance(nodeId, host, port);
+		if(nodeSession.getId().length != DhtConfig.NODE_ID_LENGTH) {
 			return nodeSession;
 		}
+		final NodeSession oldSession = this.routingTable.put(nodeSession);
+		if(oldSession == nodeSession && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("添加Node：{}-{}-{}", StringUtils.hex(nodeId), nodeSession.getHost(), nodeSession.getPort());
+		}
+		return oldSession;
 	}
 	
 	/**
@@ -179,123 +195,31 @@ public final class NodeContext implements IContext {
 	
 	/**
 	 * <p>查找节点列表</p>
-	 * <p>如果节点数据很大，可以优化算法，分片进行查询。</p>
+	 * <p>返回XOR距离最近的可用节点：按照距离排序</p>
 	 * 
 	 * @param target InfoHash或者NodeId
 	 * 
 	 * @return 节点列表
+	 * 
+	 * @see NodeRoutingTable#findNode(byte[], int, java.util.function.Predicate)
 	 */
 	public List<NodeSession> findNode(byte[] target) {
-		List<NodeSession> closeNodes;
-		synchronized (this.nodes) {
-			final int nodeSize = this.nodes.size();
-			if(nodeSize <= MAX_NODE_SIZE) {
-				closeNodes = this.nodes.stream()
-					.filter(NodeSession::useableAndMark)
-					.collect(Collectors.toList());
-			} else {
-				closeNodes = new ArrayList<>();
-				final int[] nodeIndex = this.selectNode(target);
-				final int index = nodeIndex[0];
-				int size = 0;
-				int leftPos = 0;
-				int rightPos = 1;
-				NodeSession leftNode;
-				NodeSession rightNode;
-				while(
-					size < MAX_NODE_SIZE && // 指定数量结果
-					leftPos + rightPos < nodeSize // 轮询整个列表
-				) {
-					leftNode = this.select(index - leftPos, nodeSize);
-					if(leftNode.useableAndMark()) {
-						size++;
-						// 前面添加防止乱序
-						closeNodes.add(0, leftNode);
-					}
-					rightNode = this.select(index + rightPos, nodeSize);
-					if(rightNode.useableAndMark()) {
-						size++;
-						closeNodes.add(rightNode);
-					}
-					leftPos++;
-					rightPos++;
-				}
-			}
-		}
-		return closeNodes;
+		return this.routingTable.findNode(target, MAX_NODE_SIZE, NodeSession::useableAndMark);
 	}
 
 	/**
 	 * <p>标记节点为可用状态</p>
-	 * 
-	 * @param nodeId 节点ID
-	 */
-	public void available(byte[] nodeId) {
-		synchronized (this.nodes) {
-			final NodeSession node = this.select(nodeId);
-			if(node != null) {
-				node.setStatus(NodeSession.Status.AVAILABLE);
-			}
-		}
-	}
-
-	/**
-	 * <p>选择节点</p>
-	 * 
-	 * @param index 节点索引
-	 * @param nodeSize 节点数量
-	 * 
-	 * @return 节点
-	 */
-	private NodeSession select(int index, int nodeSize) {
-		if(index < 0) {
-			index = nodeSize + index;
-		} else if(index >= nodeSize) {
-			index = index - nodeSize;
-		}
-		return this.nodes.get(index);
-	}
-	
-	/**
-	 * <p>选择节点</p>
+	 * <p>刷新节点最后响应时间</p>
 	 * 
 	 * @param nodeId 节点ID
 	 * 
-	 * @return 节点
+	 * @see NodeRoutingTable#available(byte[])
 	 */
-	private NodeSession select(byte[] nodeId) {
-		for (NodeSession nodeSession : this.nodes) {
-			if(ArrayUtils.equals(nodeId, nodeSession.getId())) {
-				return nodeSession;
-			}
-		}
-		return null;
-	}
-	
-	/**
-	 * <p>查找最近节点信息</p>
-	 * <p>节点索引：最近节点索引</p>
-	 * <p>节点标记：等于零时表示完全匹配</p>
-	 * 
-	 * @param nodeId 节点ID
-	 * 
-	 * @return 最近节点信息：节点索引、节点标记
-	 */
-	private int[] selectNode(byte[] nodeId) {
-		int index = 0;
-		int signum = 1;
-		NodeSession nodeSession;
-		for (int jndex = 0; jndex < this.nodes.size(); jndex++) {
-			nodeSession = this.nodes.get(jndex);
-			signum = ArrayUtils.compareUnsigned(nodeId, nodeSession.getId());
-			if(signum > 0) {
-				// 尾部添加
-				index = jndex + 1;
-			} else {
-				break;
-			}
+	public void available(byte[] nodeId) {
+		if(nodeId == null) {
+			return;
 		}
-		return new int[] {index, signum};
+		this.routingTable.available(nodeId);
 	}
 	
 }
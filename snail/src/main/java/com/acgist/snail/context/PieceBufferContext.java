@@ -0,0 +1,193 @@
+package com.acgist.snail.context;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.IContext;
+import com.acgist.snail.config.DownloadConfig;
+import com.acgist.snail.config.SystemConfig;
+
+/**
+ * <p>Piece缓冲上下文</p>
+ * <p>Piece数据使用直接内存缓冲，使用完成后回收重复使用：减少大数组创建</p>
+ * <p>缓冲按照容量分类：容量等于数据长度向上取整的二的幂</p>
+ * <p>回收缓冲总大小超过限制时直接丢弃（由垃圾回收释放）</p>
+ * <p>借用缓冲总大小超过限制时不能借用：限制同时下载Piece占用内存</p>
+ * 
+ * @author acgist
+ */
+public final class PieceBufferContext implements IContext {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(PieceBufferContext.class);
+	
+	private static final PieceBufferContext INSTANCE = new PieceBufferContext();
+	
+	public static final PieceBufferContext getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * <p>最小缓冲容量：{@value}</p>
+	 */
+	private static final int MIN_CAPACITY = 16 * SystemConfig.ONE_KB;
+	/**
+	 * <p>借用缓冲限制倍数：{@value}</p>
+	 * <p>借用缓冲限制=磁盘缓存*下载任务数量*倍数</p>
+	 */
+	private static final int BORROW_SCALE = 4;
+	
+	/**
+	 * <p>回收缓冲</p>
+	 * <p>缓冲容量=缓冲队列</p>
+	 */
+	private final Map<Integer, Queue<ByteBuffer>> buffers;
+	/**
+	 * <p>回收缓冲大小</p>
+	 */
+	private final AtomicLong size;
+	/**
+	 * <p>借用缓冲大小</p>
+	 */
+	private final AtomicLong borrowSize;
+	/**
+	 * <p>命中次数</p>
+	 */
+	private final AtomicLong hitCount;
+	/**
+	 * <p>没有命中次数</p>
+	 */
+	private final AtomicLong missCount;
+	
+	/**
+	 * <p>禁止创建实例</p>
+	 */
+	private PieceBufferContext() {
+		this.buffers = new ConcurrentHashMap<>();
+		this.size = new AtomicLong(0);
+		this.borrowSize = new AtomicLong(0);
+		this.hitCount = new AtomicLong(0);
+		this.missCount = new AtomicLong(0);
+		final MetricsContext metricsContext = MetricsContext.getInstance();
+		metricsContext.gauge("snail_piece_buffer_bytes", "Piece回收缓冲大小", this::size);
+		metricsContext.gauge("snail_piece_buffer_borrow_bytes", "Piece借用缓冲大小", this::borrowSize);
+		metricsContext.counter("snail_piece_buffer_hit_total", "Piece缓冲命中次数", this::hitCount);
+		metricsContext.counter("snail_piece_buffer_miss_total", "Piece缓冲没有命中次数", this::missCount);
+	}
+	
+	/**
+	 * <p>获取缓冲</p>
+	 * <p>缓冲位置：{@code 0}</p>
+	 * <p>缓冲限制：数据长度</p>
+	 * <p>注意：缓冲数据不会清空</p>
+	 * <p>没有借用缓冲时总是可以借用：防止Piece大于借用限制时不能下载</p>
+	 * 
+	 * @param length 数据长度
+	 * 
+	 * @return 缓冲（超过借用限制：{@code null}）
+	 */
+	public ByteBuffer borrow(int length) {
+		final int capacity = capacity(length);
+		final long limit = (long) DownloadConfig.getMemoryBufferByte() * DownloadConfig.getSize() * BORROW_SCALE;
+		final long borrowSize = this.borrowSize.addAndGet(capacity);
+		if(borrowSize > limit && borrowSize != capacity) {
+			this.borrowSize.addAndGet(-capacity);
+			LOGGER.debug("借用Piece缓冲超过限制：{}", capacity);
+			return null;
+		}
+		final Queue<ByteBuffer> queue = this.buffers.get(capacity);
+		ByteBuffer buffer = queue == null ? null : queue.poll();
+		if(buffer == null) {
+			this.missCount.incrementAndGet();
+			buffer = ByteBuffer.allocateDirect(capacity);
+		} else {
+			this.hitCount.incrementAndGet();
+			this.size.addAndGet(-capacity);
+		}
+		buffer.clear().limit(length);
+		return buffer;
+	}
+	
+	/**
+	 * <p>回收缓冲</p>
+	 * <p>回收后不能继续使用缓冲</p>
+	 * 
+	 * @param buffer 缓冲
+	 */
+	public void recycle(ByteBuffer buffer) {
+		if(buffer == null || !buffer.isDirect()) {
+			return;
+		}
+		final int capacity = buffer.capacity();
+		if(capacity != capacity(capacity)) {
+			// 不是上下文创建的缓冲
+			return;
+		}
+		this.borrowSize.addAndGet(-capacity);
+		final long limit = (long) DownloadConfig.getMemoryBufferByte() * DownloadConfig.getSize();
+		if(this.size.addAndGet(capacity) > limit) {
+			this.size.addAndGet(-capacity);
+			LOGGER.debug("回收Piece缓冲超过限制（丢弃）：{}", capacity);
+			return;
+		}
+		this.buffers.computeIfAbsent(capacity, key -> new ConcurrentLinkedQueue<>()).offer(buffer);
+	}
+	
+	/**
+	 * <p>获取回收缓冲大小</p>
+	 * 
+	 * @return 回收缓冲大小
+	 */
+	public long size() {
+		return this.size.get();
+	}
+	
+	/**
+	 * <p>获取借用缓冲大小</p>
+	 * 
+	 * @return 借用缓冲大小
+	 */
+	public long borrowSize() {
+		return this.borrowSize.get();
+	}
+	
+	/**
+	 * <p>获取命中次数</p>
+	 * 
+	 * @return 命中次数
+	 */
+	public long hitCount() {
+		return this.hitCount.get();
+	}
+	
+	/**
+	 * <p>获取没有命中次数</p>
+	 * 
+	 * @return 没有命中次数
+	 */
+	public long missCount() {
+		return this.missCount.get();
+	}
+	
+	/**
+	 * <p>计算缓冲容量</p>
+	 * 
+	 * @param length 数据长度
+	 * 
+	 * @return 缓冲容量
+	 */
+	private static final int capacity(int length) {
+		if(length <= MIN_CAPACITY) {
+			return MIN_CAPACITY;
+		}
+		final int capacity = Integer.highestOneBit(length);
+		return capacity == length ? capacity : capacity << 1;
+	}
+
+}
@@ -4,6 +4,7 @@ import com.acgist.snail.IContext;
 import com.acgist.snail.pojo.ISpeedGetter;
 import com.acgist.snail.pojo.IStatisticsSession;
 import com.acgist.snail.pojo.IStatisticsSessionGetter;
+import com.acgist.snail.pojo.session.LimitSession;
 import com.acgist.snail.pojo.session.StatisticsSession;
 
 /**
@@ -30,7 +31,17 @@ public final class StatisticsContext implements IContext, ISpeedGetter, IStatist
 	 * <p>禁止创建实例</p>
 	 */
 	private StatisticsContext() {
-		this.statistics = new StatisticsSession();
+		this.statistics = new StatisticsSession(
+			LimitSession.newGlobalInstance(LimitSession.Type.UPLOAD),
+			LimitSession.newGlobalInstance(LimitSession.Type.DOWNLOAD),
+			true,
+			null
+		);
+		final MetricsContext metricsContext = MetricsContext.getInstance();
+		metricsContext.counter("snail_upload_bytes_total", "累计上传大小", this.statistics::uploadSize);
+		metricsContext.counter("snail_download_bytes_total", "累计下载大小", this.statistics::downloadSize);
+		metricsContext.gauge("snail_upload_speed", "系统上传速度", this.statistics::uploadSpeed);
+		metricsContext.gauge("snail_download_speed", "系统下载速度", this.statistics::downloadSpeed);
 	}
 	
 	@Override
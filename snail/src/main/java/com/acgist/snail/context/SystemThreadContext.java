@@ -44,6 +44,10 @@ public final class SystemThreadContext implements IContext {
 	 * <p>HLS线程：{@value}</p>
 	 */
 	public static final String SNAIL_THREAD_HLS = SNAIL_THREAD + "-HLS";
+	/**
+	 * <p>HTTP分段下载线程：{@value}</p>
+	 */
+	public static final String SNAIL_THREAD_HTTP_SEGMENT = SNAIL_THREAD + "-HTTP-Segment";
 	/**
 	 * <p>定时线程：{@value}</p>
 	 */
@@ -52,6 +56,10 @@ public final class SystemThreadContext implements IContext {
 	 * <p>BT定时线程：{@value}</p>
 	 */
 	public static final String SNAIL_THREAD_BT_TIMER = SNAIL_THREAD_BT + "-Timer";
+	/**
+	 * <p>BT文件校验线程：{@value}</p>
+	 */
+	public static final String SNAIL_THREAD_BT_VERIFY = SNAIL_THREAD_BT + "-Verify";
 	/**
 	 * <p>JavaFX平台线程：{@value}</p>
 	 */
@@ -76,6 +84,10 @@ public final class SystemThreadContext implements IContext {
 	 * <p>UDP服务端线程：{@value}</p>
 	 */
 	public static final String SNAIL_THREAD_UDP_SERVER = SNAIL_THREAD + "-UDP-Server";
+	/**
+	 * <p>UDP消息处理线程：{@value}</p>
+	 */
+	public static final String SNAIL_THREAD_UDP_HANDLER = SNAIL_THREAD + "-UDP-Handler";
 	
 	/**
 	 * <p>系统线程池：加快系统运行、防止卡顿</p>
@@ -94,6 +106,8 @@ public final class SystemThreadContext implements IContext {
 		LOGGER.debug("初始化系统线程池");
 		EXECUTOR = newExecutor(4, 20, 1000, 60L, SNAIL_THREAD);
 		EXECUTOR_TIMER = newTimerExecutor(2, SNAIL_THREAD_TIMER);
+		metrics(SNAIL_THREAD, EXECUTOR);
+		metrics(SNAIL_THREAD_TIMER, EXECUTOR_TIMER);
 	}
 	
 	/**
@@ -216,6 +230,27 @@ public final class SystemThreadContext implements IContext {
 		);
 	}
 	
+	/**
+	 * <p>注册线程池指标</p>
+	 * <p>活动线程数量、等待任务数量、完成任务数量</p>
+	 * <p>只能注册长期存在的线程池：相同名称线程池指标直接覆盖</p>
+	 * 
+	 * @param name 线程池名称
+	 * @param executor 线程池
+	 */
+	public static final void metrics(String name, ExecutorService executor) {
+		if(!(executor instanceof ThreadPoolExecutor)) {
+			return;
+		}
+		final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+		final String label = "{pool=\"" + name + "\"}";
+		final MetricsContext metricsContext = MetricsContext.getInstance();
+		metricsContext.gauge("snail_executor_active" + label, "线程池活动线程数量", threadPoolExecutor::getActiveCount);
+		metricsContext.gauge("snail_executor_pool" + label, "线程池线程数量", threadPoolExecutor::getPoolSize);
+		metricsContext.gauge("snail_executor_queue" + label, "线程池等待任务数量", () -> threadPoolExecutor.getQueue().size());
+		metricsContext.counter("snail_executor_completed_total" + label, "线程池完成任务数量", threadPoolExecutor::getCompletedTaskCount);
+	}
+	
 	/**
 	 * <p>创建线程池工厂</p>
 	 * 
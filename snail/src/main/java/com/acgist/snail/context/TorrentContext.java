@@ -15,8 +15,8 @@ import org.slf4j.LoggerFactory;
 import com.acgist.snail.IContext;
 import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
+import com.acgist.snail.format.BEncodeCursor;
 import com.acgist.snail.format.BEncodeDecoder;
-import com.acgist.snail.format.BEncodeEncoder;
 import com.acgist.snail.pojo.bean.InfoHash;
 import com.acgist.snail.pojo.bean.Torrent;
 import com.acgist.snail.pojo.session.TorrentSession;
@@ -184,14 +184,17 @@ public final class TorrentContext implements IContext {
 				throw new DownloadException("种子文件格式错误");
 			}
 			final var torrent = Torrent.valueOf(decoder);
-			// 直接转储原始信息：防止顺序不对导致种子Hash计算错误
-			final var info = decoder.getMap("info");
-			final var infoHash = InfoHash.newInstance(BEncodeEncoder.encodeMap(info));
+			// 直接使用原始信息：防止重新编码导致种子Hash计算错误
+			final var info = BEncodeCursor.newInstance(bytes).get(Torrent.ATTR_INFO);
+			if(info == null) {
+				throw new DownloadException("种子文件格式错误");
+			}
+			final var infoHash = InfoHash.newInstance(info.rawBytes());
 			torrent.infoHash(infoHash);
 			return torrent;
 		} catch (DownloadException e) {
 			throw e;
-		} catch (NetException | IOException e) {
+		} catch (NetException | IOException | IllegalArgumentException e) {
 			throw new DownloadException("种子文件加载失败", e);
 		}
 	}
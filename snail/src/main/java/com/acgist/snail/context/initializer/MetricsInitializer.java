@@ -0,0 +1,33 @@
+package com.acgist.snail.context.initializer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.context.MetricsContext;
+
+/**
+ * <p>初始化运行指标</p>
+ * 
+ * @author acgist
+ */
+public final class MetricsInitializer extends Initializer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetricsInitializer.class);
+	
+	/**
+	 * <p>禁止创建实例</p>
+	 */
+	private MetricsInitializer() {
+	}
+	
+	public static final MetricsInitializer newInstance() {
+		return new MetricsInitializer();
+	}
+	
+	@Override
+	protected void init() {
+		LOGGER.debug("初始化运行指标");
+		MetricsContext.getInstance().register();
+	}
+
+}
@@ -14,6 +14,7 @@ import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.pojo.ITaskSession;
 import com.acgist.snail.utils.IoUtils;
+import com.acgist.snail.utils.ThreadUtils;
 
 /**
  * <p>单文件任务下载器</p>
@@ -74,6 +75,11 @@ public abstract class SingleFileDownloader extends Downloader {
 					buffer.clear();
 					this.statistics.download(length);
 					this.statistics.downloadLimit(length);
+					// 限速：延迟读取数据（下载线程）
+					final long delay = this.statistics.downloadDelay();
+					if(delay > 0L) {
+						ThreadUtils.sleep(delay);
+					}
 					this.fastCheckTime = System.currentTimeMillis();
 				}
 				if(Downloader.checkFinish(length, this.taskSession.downloadSize(), fileSize)) {
@@ -7,7 +7,6 @@ import com.acgist.snail.context.HlsContext;
 import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.downloader.MultifileDownloader;
-import com.acgist.snail.net.hls.TsLinker;
 import com.acgist.snail.pojo.ITaskSession;
 import com.acgist.snail.pojo.session.HlsSession;
 
@@ -54,7 +53,7 @@ public final class HlsDownloader extends MultifileDownloader {
 		if(this.hlsSession != null) {
 			this.hlsSession.release();
 			if(this.completed) {
-				this.tsLink();
+				this.updateSize();
 				this.delete();
 			} else if(this.statusDelete()) {
 				this.delete();
@@ -85,26 +84,21 @@ public final class HlsDownloader extends MultifileDownloader {
 	 * <p>加载HLS任务信息</p>
 	 * 
 	 * @return HLS任务信息
+	 * 
+	 * @throws NetException 网络异常
+	 * @throws DownloadException 下载异常
 	 */
-	private HlsSession loadHlsSession() {
+	private HlsSession loadHlsSession() throws NetException, DownloadException {
 		return HlsContext.getInstance().hlsSession(this.taskSession);
 	}
 	
 	/**
-	 * <p>文件连接</p>
-	 * <p>任务完成时连接TS文件</p>
+	 * <p>更新文件大小</p>
+	 * <p>任务完成时TS文件已经写入完成：使用TS文件实际大小</p>
 	 */
-	private void tsLink() {
-		LOGGER.debug("HLS任务连接文件：{}", this.taskSession.getName());
-		// 连接文件
-		final TsLinker linker = TsLinker.newInstance(
-			this.taskSession.getName(),
-			this.taskSession.getFile(),
-			this.hlsSession.cipher(),
-			this.taskSession.multifileSelected()
-		);
-		final long size = linker.link();
-		// 重新设置文件大小
+	private void updateSize() {
+		final long size = this.hlsSession.tsSize();
+		LOGGER.debug("HLS任务文件大小：{}-{}", this.taskSession.getName(), size);
 		if(size >= 0L && size != this.taskSession.getSize()) {
 			this.taskSession.setSize(size);
 			this.taskSession.update();
@@ -1,7 +1,26 @@
 package com.acgist.snail.downloader.http;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.SystemThreadContext;
+import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.downloader.SingleFileDownloader;
 import com.acgist.snail.net.http.HttpClient;
@@ -9,21 +28,58 @@ import com.acgist.snail.pojo.ITaskSession;
 import com.acgist.snail.pojo.wrapper.HttpHeaderWrapper;
 import com.acgist.snail.utils.FileUtils;
 import com.acgist.snail.utils.IoUtils;
+import com.acgist.snail.utils.ThreadUtils;
 
 /**
  * <p>HTTP任务下载器</p>
+ * <p>服务端支持断点续传并且文件足够大时使用分段下载：多个连接同时下载文件不同范围</p>
+ * <p>分段下载进度保存在任务负载中，重新开始任务时继续下载没有完成的分段。</p>
  * 
  * @author acgist
  */
 public final class HttpDownloader extends SingleFileDownloader {
-
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(HttpDownloader.class);
+	
+	/**
+	 * <p>分段下载</p>
+	 */
+	private boolean segment;
+	/**
+	 * <p>下载分段</p>
+	 * <p>使用下载锁加锁</p>
+	 */
+	private List<HttpSegment> segments;
+	/**
+	 * <p>正在下载连接数量</p>
+	 * <p>使用下载锁加锁</p>
+	 */
+	private int downloadingSize;
+	/**
+	 * <p>文件通道</p>
+	 */
+	private FileChannel channel;
+	/**
+	 * <p>分段下载线程池</p>
+	 */
+	private ExecutorService executor;
+	/**
+	 * <p>分段下载输入流</p>
+	 * <p>暂停任务时关闭：快速结束分段下载</p>
+	 */
+	private final Set<InputStream> inputs = ConcurrentHashMap.newKeySet();
+	/**
+	 * <p>下载锁</p>
+	 */
+	private final Object downloadLock = new Object();
+	
 	/**
 	 * @param taskSession 任务信息
 	 */
 	private HttpDownloader(ITaskSession taskSession) {
 		super(taskSession);
 	}
-
+	
 	/**
 	 * <p>创建HTTP任务下载器</p>
 	 * 
@@ -35,8 +91,45 @@ public final class HttpDownloader extends SingleFileDownloader {
 		return new HttpDownloader(taskSession);
 	}
 	
+	@Override
+	public void open() throws NetException, DownloadException {
+		this.segment = this.segmentable() && this.openSegment();
+		if(!this.segment) {
+			super.open();
+		}
+	}
+	
+	@Override
+	public void download() throws DownloadException {
+		if(this.segment) {
+			this.downloadSegment();
+		} else {
+			super.download();
+		}
+	}
+	
+	@Override
+	public void unlockDownload() {
+		if(this.segment) {
+			// 暂停任务：关闭所有分段输入流
+			if(!this.downloadable()) {
+				this.inputs.forEach(IoUtils::close);
+			}
+			synchronized (this.downloadLock) {
+				this.downloadLock.notifyAll();
+			}
+		}
+		super.unlockDownload();
+	}
+	
 	@Override
 	public void release() {
+		if(this.segment) {
+			this.inputs.forEach(IoUtils::close);
+			SystemThreadContext.shutdownNow(this.executor);
+			this.saveSegment();
+			IoUtils.close(this.channel);
+		}
 		IoUtils.close(this.input);
 		IoUtils.close(this.output);
 		super.release();
@@ -67,14 +160,289 @@ public final class HttpDownloader extends SingleFileDownloader {
 				this.taskSession.downloadSize(0L);
 			}
 		} else if(client.requestedRangeNotSatisfiable()) {
+			// 没有读取响应数据：关闭连接
+			client.shutdown();
 			if(this.taskSession.downloadSize() == this.taskSession.getSize()) {
 				this.completed = true;
 			} else {
 				this.fail("无法满足文件下载范围：" + downloadSize);
 			}
 		} else {
+			// 没有读取响应数据：关闭连接
+			client.shutdown();
 			this.fail("HTTP请求失败：" + client.code());
 		}
 	}
+	
+	/**
+	 * <p>判断是否可以分段下载</p>
+	 * 
+	 * @return 是否可以分段下载
+	 */
+	private boolean segmentable() {
+		return
+			SystemConfig.getHttpSegmentSize() > 1 &&
+			this.taskSession.getSize() >= 2 * HttpSegment.MIN_SEGMENT_SIZE;
+	}
+	
+	/**
+	 * <p>打开分段下载</p>
+	 * <p>请求第一个没有完成的分段验证服务端是否支持断点续传：不支持时使用单连接下载</p>
+	 * 
+	 * @return 是否使用分段下载
+	 * 
+	 * @throws NetException 网络异常
+	 * @throws DownloadException 下载异常
+	 */
+	private boolean openSegment() throws NetException, DownloadException {
+		final long size = this.taskSession.getSize();
+		// 文件已经删除：忽略分段信息
+		List<HttpSegment> segments = this.taskSession.downloadFile().exists() ? HttpSegment.ofPayload(this.taskSession.getPayload(), size) : null;
+		if(segments == null) {
+			// 没有分段信息：已经下载的数据作为完成数据
+			final long downloadSize = Math.min(FileUtils.fileSize(this.taskSession.getFile()), size);
+			segments = new ArrayList<>();
+			segments.add(new HttpSegment(downloadSize, size));
+		}
+		segments.removeIf(HttpSegment::completed);
+		// 分段按照位置排序：第一个分段之前的数据全部下载完成
+		segments.sort(Comparator.comparingLong(HttpSegment::position));
+		if(segments.isEmpty()) {
+			this.segments = segments;
+			this.completed = true;
+			return true;
+		}
+		final HttpSegment first = segments.get(0);
+		final HttpClient client = this.segmentClient(first);
+		if(client == null) {
+			LOGGER.debug("HTTP服务端不支持分段下载：{}", this.taskSession.getUrl());
+			this.truncate(first.position());
+			return false;
+		}
+		try {
+			this.channel = FileChannel.open(Paths.get(this.taskSession.getFile()), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			client.shutdown();
+			throw new DownloadException("下载文件打开失败", e);
+		}
+		this.segments = segments;
+		this.taskSession.downloadSize(size - segments.stream().mapToLong(HttpSegment::remaining).sum());
+		final int segmentSize = SystemConfig.getHttpSegmentSize();
+		this.executor = SystemThreadContext.newExecutor(segmentSize, segmentSize, segmentSize, 60L, SystemThreadContext.SNAIL_THREAD_HTTP_SEGMENT);
+		first.downloading(true);
+		this.downloadingSize = 1;
+		this.executor.submit(() -> this.downloadSegment(first, client));
+		return true;
+	}
+	
+	/**
+	 * <p>分段下载</p>
+	 * <p>启动所有连接后等待分段全部完成或者所有连接结束</p>
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	private void downloadSegment() throws DownloadException {
+		if(this.completed) {
+			return;
+		}
+		final int segmentSize = SystemConfig.getHttpSegmentSize();
+		for (int index = 1; index < segmentSize; index++) {
+			final HttpSegment segment = this.nextSegment();
+			if(segment == null) {
+				break;
+			}
+			this.executor.submit(() -> this.downloadSegment(segment, null));
+		}
+		synchronized (this.downloadLock) {
+			while(this.downloadable() && this.downloadingSize > 0) {
+				try {
+					this.downloadLock.wait(Long.MAX_VALUE);
+				} catch (InterruptedException e) {
+					LOGGER.debug("线程等待异常", e);
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			this.completed = this.segments.stream().allMatch(HttpSegment::completed);
+		}
+		if(!this.completed && this.downloadable()) {
+			throw new DownloadException("HTTP分段下载失败");
+		}
+	}
+	
+	/**
+	 * <p>下载分段</p>
+	 * <p>分段下载完成后继续下载下一个分段</p>
+	 * 
+	 * @param segment 分段
+	 * @param client HTTP客户端（已经请求：第一个分段）
+	 */
+	private void downloadSegment(HttpSegment segment, HttpClient client) {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(SystemConfig.DEFAULT_EXCHANGE_BYTES_LENGTH);
+		try {
+			while(segment != null && this.downloadable()) {
+				if(client == null) {
+					client = this.segmentClient(segment);
+				}
+				if(client == null) {
+					LOGGER.debug("HTTP分段请求失败：{}", segment);
+					segment.downloading(false);
+					break;
+				}
+				this.downloadSegment(segment, client, buffer);
+				client = null;
+				segment.downloading(false);
+				if(!segment.completed()) {
+					break;
+				}
+				this.saveSegment();
+				segment = this.nextSegment();
+			}
+		} catch (Exception e) {
+			LOGGER.error("HTTP分段下载异常：{}", segment, e);
+			if(segment != null) {
+				segment.downloading(false);
+			}
+		} finally {
+			synchronized (this.downloadLock) {
+				this.downloadingSize--;
+				this.downloadLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * <p>下载分段数据</p>
+	 * 
+	 * @param segment 分段
+	 * @param client HTTP客户端
+	 * @param buffer 缓冲
+	 * 
+	 * @throws NetException 网络异常
+	 * @throws IOException IO异常
+	 */
+	private void downloadSegment(HttpSegment segment, HttpClient client, ByteBuffer buffer) throws NetException, IOException {
+		final InputStream inputStream = client.response();
+		this.inputs.add(inputStream);
+		try (final ReadableByteChannel input = Channels.newChannel(inputStream)) {
+			int length;
+			while(this.downloadable() && !segment.completed()) {
+				buffer.clear();
+				length = input.read(buffer);
+				if(length < 0) {
+					break;
+				}
+				buffer.flip();
+				length = segment.write(this.channel, buffer);
+				this.statistics.download(length);
+				this.statistics.downloadLimit(length);
+				// 限速：延迟读取数据（下载线程）
+				final long delay = this.statistics.downloadDelay();
+				if(delay > 0L) {
+					ThreadUtils.sleep(delay);
+				}
+			}
+		} finally {
+			this.inputs.remove(inputStream);
+			// 分段被拆分后剩余数据不再需要：关闭连接
+			client.shutdown();
+		}
+	}
+	
+	/**
+	 * <p>请求分段数据</p>
+	 * 
+	 * @param segment 分段
+	 * 
+	 * @return HTTP客户端（服务端不支持断点续传：{@code null}）
+	 * 
+	 * @throws NetException 网络异常
+	 */
+	private HttpClient segmentClient(HttpSegment segment) throws NetException {
+		final long position = segment.position();
+		final var client = HttpClient
+			.newDownloader(this.taskSession.getUrl())
+			.range(position)
+			.get();
+		if(client.partialContent() && client.responseHeader().range() && client.responseHeader().beginRange() == position) {
+			return client;
+		}
+		client.shutdown();
+		return null;
+	}
+	
+	/**
+	 * <p>获取下一个下载分段</p>
+	 * <p>优先选择没有下载的分段，没有时拆分剩余数据最大的分段。</p>
+	 * 
+	 * @return 下载分段（没有可以下载的分段：{@code null}）
+	 */
+	private HttpSegment nextSegment() {
+		synchronized (this.downloadLock) {
+			HttpSegment largest = null;
+			for (HttpSegment segment : this.segments) {
+				if(segment.completed()) {
+					continue;
+				}
+				if(!segment.downloading()) {
+					segment.downloading(true);
+					this.downloadingSize++;
+					return segment;
+				}
+				if(largest == null || segment.remaining() > largest.remaining()) {
+					largest = segment;
+				}
+			}
+			final HttpSegment segment = largest == null ? null : largest.split();
+			if(segment != null) {
+				LOGGER.debug("HTTP拆分分段：{}-{}", largest, segment);
+				segment.downloading(true);
+				// 拆分分段紧跟原始分段：保持分段按照位置排序
+				this.segments.add(this.segments.indexOf(largest) + 1, segment);
+				this.downloadingSize++;
+			}
+			return segment;
+		}
+	}
+	
+	/**
+	 * <p>保存分段下载进度</p>
+	 */
+	private void saveSegment() {
+		if(this.segments == null) {
+			return;
+		}
+		final byte[] payload;
+		synchronized (this.downloadLock) {
+			// 下载完成删除分段信息
+			payload = this.completed ? null : HttpSegment.toPayload(this.segments);
+		}
+		this.taskSession.setPayload(payload);
+		this.taskSession.update();
+	}
+	
+	/**
+	 * <p>截断文件</p>
+	 * <p>不支持分段下载时只保留连续下载完成的数据，使用单连接继续下载。</p>
+	 * 
+	 * @param size 文件大小
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	private void truncate(long size) throws DownloadException {
+		if(this.taskSession.getPayload() == null) {
+			return;
+		}
+		this.taskSession.setPayload(null);
+		this.taskSession.update();
+		if(FileUtils.fileSize(this.taskSession.getFile()) <= size) {
+			return;
+		}
+		try (final FileChannel fileChannel = FileChannel.open(Paths.get(this.taskSession.getFile()), StandardOpenOption.WRITE)) {
+			fileChannel.truncate(size);
+		} catch (IOException e) {
+			throw new DownloadException("下载文件截断失败", e);
+		}
+	}
 
 }
@@ -0,0 +1,208 @@
+package com.acgist.snail.downloader.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.utils.BeanUtils;
+
+/**
+ * <p>HTTP下载分段</p>
+ * <p>分段范围：[{@link #position}, {@link #end})</p>
+ * <p>下载时其他连接可以拆分剩余数据：拆分后结束位置变小，下载到结束位置后停止下载。</p>
+ * 
+ * @author acgist
+ */
+public final class HttpSegment {
+	
+	/**
+	 * <p>最小分段大小：{@value}</p>
+	 * <p>剩余数据小于两倍最小分段大小时不再拆分</p>
+	 */
+	public static final long MIN_SEGMENT_SIZE = SystemConfig.ONE_MB;
+	/**
+	 * <p>分段持久化字节长度：{@value}</p>
+	 * <p>开始位置（8字节）+结束位置（8字节）</p>
+	 */
+	private static final int PAYLOAD_LENGTH = 16;
+	
+	/**
+	 * <p>下载位置</p>
+	 */
+	private long position;
+	/**
+	 * <p>结束位置（不包含）</p>
+	 */
+	private long end;
+	/**
+	 * <p>是否正在下载</p>
+	 */
+	private boolean downloading;
+	
+	/**
+	 * @param position 下载位置
+	 * @param end 结束位置（不包含）
+	 */
+	public HttpSegment(long position, long end) {
+		this.position = position;
+		this.end = end;
+	}
+	
+	/**
+	 * <p>获取下载位置</p>
+	 * 
+	 * @return 下载位置
+	 */
+	public synchronized long position() {
+		return this.position;
+	}
+	
+	/**
+	 * <p>获取结束位置</p>
+	 * 
+	 * @return 结束位置
+	 */
+	public synchronized long end() {
+		return this.end;
+	}
+	
+	/**
+	 * <p>获取剩余数据大小</p>
+	 * 
+	 * @return 剩余数据大小
+	 */
+	public synchronized long remaining() {
+		return Math.max(0L, this.end - this.position);
+	}
+	
+	/**
+	 * <p>判断是否下载完成</p>
+	 * 
+	 * @return 是否下载完成
+	 */
+	public synchronized boolean completed() {
+		return this.position >= this.end;
+	}
+	
+	/**
+	 * <p>判断是否正在下载</p>
+	 * 
+	 * @return 是否正在下载
+	 */
+	public synchronized boolean downloading() {
+		return this.downloading;
+	}
+	
+	/**
+	 * <p>设置是否正在下载</p>
+	 * 
+	 * @param downloading 是否正在下载
+	 */
+	public synchronized void downloading(boolean downloading) {
+		this.downloading = downloading;
+	}
+	
+	/**
+	 * <p>写入数据</p>
+	 * <p>使用文件位置写入，超过结束位置的数据丢弃。</p>
+	 * 
+	 * @param channel 文件通道
+	 * @param buffer 数据
+	 * 
+	 * @return 写入数据大小
+	 * 
+	 * @throws IOException IO异常
+	 */
+	public synchronized int write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		final long remaining = this.end - this.position;
+		if(remaining <= 0L) {
+			return 0;
+		}
+		if(buffer.remaining() > remaining) {
+			buffer.limit(buffer.position() + (int) remaining);
+		}
+		int length = 0;
+		while(buffer.hasRemaining()) {
+			length += channel.write(buffer, this.position + length);
+		}
+		this.position += length;
+		return length;
+	}
+	
+	/**
+	 * <p>拆分分段</p>
+	 * <p>拆分剩余数据的后一半作为新的分段</p>
+	 * 
+	 * @return 新的分段（剩余数据太小不能拆分：{@code null}）
+	 */
+	public synchronized HttpSegment split() {
+		final long remaining = this.end - this.position;
+		if(remaining < 2 * MIN_SEGMENT_SIZE) {
+			return null;
+		}
+		final long middle = this.position + remaining / 2;
+		final HttpSegment segment = new HttpSegment(middle, this.end);
+		this.end = middle;
+		return segment;
+	}
+	
+	/**
+	 * <p>分段持久化</p>
+	 * <p>只保存没有下载完成的分段：其他数据都已经下载完成</p>
+	 * 
+	 * @param segments 分段
+	 * 
+	 * @return 持久化数据
+	 */
+	public static final byte[] toPayload(Collection<HttpSegment> segments) {
+		final List<HttpSegment> list = new ArrayList<>();
+		for (HttpSegment segment : segments) {
+			if(!segment.completed()) {
+				list.add(segment);
+			}
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(list.size() * PAYLOAD_LENGTH);
+		for (HttpSegment segment : list) {
+			synchronized (segment) {
+				buffer.putLong(segment.position);
+				buffer.putLong(segment.end);
+			}
+		}
+		return buffer.array();
+	}
+	
+	/**
+	 * <p>读取持久化分段</p>
+	 * 
+	 * @param payload 持久化数据
+	 * @param size 文件大小
+	 * 
+	 * @return 分段（数据格式错误：{@code null}）
+	 */
+	public static final List<HttpSegment> ofPayload(byte[] payload, long size) {
+		if(payload == null || payload.length % PAYLOAD_LENGTH != 0) {
+			return null;
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(payload);
+		final List<HttpSegment> segments = new ArrayList<>();
+		while(buffer.hasRemaining()) {
+			final long position = buffer.getLong();
+			final long end = buffer.getLong();
+			if(position < 0L || position > end || end > size) {
+				return null;
+			}
+			segments.add(new HttpSegment(position, end));
+		}
+		return segments;
+	}
+	
+	@Override
+	public String toString() {
+		return BeanUtils.toString(this, this.position(), this.end());
+	}
+
+}
@@ -0,0 +1,689 @@
+package com.acgist.snail.format;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.acgist.snail.context.exception.PacketSizeException;
+import com.acgist.snail.utils.StringUtils;
+
+/**
+ * <p>B编码游标</p>
+ * <p>直接读取缓冲数据（不用复制），只解析需要读取的数据，不会创建完整的Map和List。</p>
+ * <p>字节数组返回缓冲切片（{@link #buffer()}），只有调用{@link #bytes()}、{@link #string()}等方法才会复制数据。</p>
+ * <p>创建游标时验证数据格式，验证成功后读取数据不会抛出异常。</p>
+ * <p>注意：游标直接引用缓冲数据，缓冲回收之后不能继续使用游标（包括字节数组切片）。</p>
+ * 
+ * <pre>
+ * final BEncodeCursor cursor = BEncodeCursor.newInstance(buffer);
+ * final String y = cursor.getString("y");
+ * final byte[] t = cursor.getBytes("t");
+ * final BEncodeCursor a = cursor.get("a");
+ * </pre>
+ * 
+ * @author acgist
+ */
+public final class BEncodeCursor {
+	
+	/**
+	 * <p>原始数据</p>
+	 * <p>使用绝对位置读取：不会修改读取位置</p>
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * <p>开始位置（包含）：类型符号或者字节数组长度</p>
+	 */
+	private final int position;
+	/**
+	 * <p>结束位置（不包含）</p>
+	 */
+	private final int limit;
+	
+	/**
+	 * @param buffer 原始数据
+	 * @param position 开始位置
+	 * @param limit 结束位置
+	 */
+	private BEncodeCursor(ByteBuffer buffer, int position, int limit) {
+		this.buffer = buffer;
+		this.position = position;
+		this.limit = limit;
+	}
+	
+	/**
+	 * <p>创建B编码游标</p>
+	 * <p>读取缓冲当前位置的数据（不会修改缓冲读取位置）</p>
+	 * 
+	 * @param buffer 数据
+	 * 
+	 * @return B编码游标
+	 * 
+	 * @throws PacketSizeException 网络包大小异常
+	 */
+	public static final BEncodeCursor newInstance(ByteBuffer buffer) throws PacketSizeException {
+		Objects.requireNonNull(buffer, "B编码内容错误");
+		final int position = buffer.position();
+		return new BEncodeCursor(buffer, position, skip(buffer, position, buffer.limit()));
+	}
+	
+	/**
+	 * <p>创建B编码游标</p>
+	 * 
+	 * @param bytes 数据
+	 * 
+	 * @return B编码游标
+	 * 
+	 * @throws PacketSizeException 网络包大小异常
+	 */
+	public static final BEncodeCursor newInstance(byte[] bytes) throws PacketSizeException {
+		Objects.requireNonNull(bytes, "B编码内容错误");
+		return newInstance(ByteBuffer.wrap(bytes));
+	}
+	
+	/**
+	 * <p>判断是否是Map</p>
+	 * 
+	 * @return 是否是Map
+	 */
+	public boolean isMap() {
+		return this.buffer.get(this.position) == BEncodeDecoder.TYPE_D;
+	}
+	
+	/**
+	 * <p>判断是否是List</p>
+	 * 
+	 * @return 是否是List
+	 */
+	public boolean isList() {
+		return this.buffer.get(this.position) == BEncodeDecoder.TYPE_L;
+	}
+	
+	/**
+	 * <p>判断是否是数值</p>
+	 * 
+	 * @return 是否是数值
+	 */
+	public boolean isLong() {
+		return this.buffer.get(this.position) == BEncodeDecoder.TYPE_I;
+	}
+	
+	/**
+	 * <p>判断是否是字节数组</p>
+	 * 
+	 * @return 是否是字节数组
+	 */
+	public boolean isBytes() {
+		final byte value = this.buffer.get(this.position);
+		return value >= '0' && value <= '9';
+	}
+	
+	/**
+	 * <p>获取编码数据长度</p>
+	 * 
+	 * @return 编码数据长度
+	 */
+	public int length() {
+		return this.limit - this.position;
+	}
+	
+	/**
+	 * <p>获取编码数据</p>
+	 * <p>缓冲切片：不会复制数据</p>
+	 * 
+	 * @return 编码数据
+	 */
+	public ByteBuffer raw() {
+		return slice(this.position, this.limit);
+	}
+	
+	/**
+	 * <p>获取编码数据</p>
+	 * <p>复制数据：用于计算种子InfoHash等需要原始数据的场景</p>
+	 * 
+	 * @return 编码数据
+	 */
+	public byte[] rawBytes() {
+		return copy(this.position, this.limit);
+	}
+	
+	/**
+	 * <p>获取剩余数据</p>
+	 * <p>当前数据之后的所有数据：缓冲切片</p>
+	 * 
+	 * @return 剩余数据
+	 */
+	public ByteBuffer oddBuffer() {
+		return slice(this.limit, this.buffer.limit());
+	}
+	
+	/**
+	 * <p>获取数值</p>
+	 * 
+	 * @return 数值：不是数值返回{@code null}
+	 */
+	public Long longValue() {
+		if(!this.isLong()) {
+			return null;
+		}
+		long value = 0L;
+		boolean negative = false;
+		for (int index = this.position + 1; index < this.limit - 1; index++) {
+			final byte number = this.buffer.get(index);
+			if(number == '-') {
+				negative = true;
+			} else {
+				value = value * 10 + (number - '0');
+			}
+		}
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * <p>获取字节数组</p>
+	 * <p>缓冲切片：不会复制数据</p>
+	 * 
+	 * @return 字节数组：不是字节数组返回{@code null}
+	 */
+	public ByteBuffer buffer() {
+		if(!this.isBytes()) {
+			return null;
+		}
+		return slice(this.bytesPosition(), this.limit);
+	}
+	
+	/**
+	 * <p>获取字节数组</p>
+	 * 
+	 * @return 字节数组：不是字节数组返回{@code null}
+	 */
+	public byte[] bytes() {
+		if(!this.isBytes()) {
+			return null;
+		}
+		return copy(this.bytesPosition(), this.limit);
+	}
+	
+	/**
+	 * <p>获取字符串</p>
+	 * 
+	 * @return 字符串：不是字节数组返回{@code null}
+	 */
+	public String string() {
+		return this.string(null);
+	}
+	
+	/**
+	 * <p>获取字符串</p>
+	 * 
+	 * @param encoding 编码
+	 * 
+	 * @return 字符串：不是字节数组返回{@code null}
+	 */
+	public String string(String encoding) {
+		final byte[] bytes = this.bytes();
+		if(bytes == null) {
+			return null;
+		}
+		return StringUtils.getStringCharset(bytes, encoding);
+	}
+	
+	/**
+	 * <p>获取Map</p>
+	 * <p>解析当前数据：结果和{@link BEncodeDecoder#nextMap()}一致</p>
+	 * 
+	 * @return Map：不是Map返回空Map
+	 */
+	public Map<String, Object> toMap() {
+		if(!this.isMap()) {
+			return Map.of();
+		}
+		try {
+			return BEncodeDecoder.newInstance(this.raw()).nextMap();
+		} catch (PacketSizeException e) {
+			// 创建游标已经验证数据
+			throw new IllegalArgumentException("B编码错误", e);
+		}
+	}
+	
+	/**
+	 * <p>获取List</p>
+	 * <p>解析当前数据：结果和{@link BEncodeDecoder#nextList()}一致</p>
+	 * 
+	 * @return List：不是List返回空List
+	 */
+	public List<Object> toList() {
+		if(!this.isList()) {
+			return List.of();
+		}
+		try {
+			return BEncodeDecoder.newInstance(this.raw()).nextList();
+		} catch (PacketSizeException e) {
+			// 创建游标已经验证数据
+			throw new IllegalArgumentException("B编码错误", e);
+		}
+	}
+	
+	/**
+	 * <p>获取元素数量</p>
+	 * <p>Map返回键值对数量，List返回元素数量，其他类型返回{@code 0}。</p>
+	 * 
+	 * @return 元素数量
+	 */
+	public int size() {
+		final boolean map = this.isMap();
+		if(!map && !this.isList()) {
+			return 0;
+		}
+		int size = 0;
+		int index = this.position + 1;
+		while(this.buffer.get(index) != BEncodeDecoder.TYPE_E) {
+			index = this.next(index);
+			if(map) {
+				index = this.next(index);
+			}
+			size++;
+		}
+		return size;
+	}
+	
+	/**
+	 * <p>获取List元素</p>
+	 * 
+	 * @param index 索引
+	 * 
+	 * @return 元素游标：不是List或者索引越界返回{@code null}
+	 */
+	public BEncodeCursor get(int index) {
+		if(!this.isList() || index < 0) {
+			return null;
+		}
+		int position = this.position + 1;
+		while(this.buffer.get(position) != BEncodeDecoder.TYPE_E) {
+			final int limit = this.next(position);
+			if(index-- == 0) {
+				return new BEncodeCursor(this.buffer, position, limit);
+			}
+			position = limit;
+		}
+		return null;
+	}
+	
+	/**
+	 * <p>获取Map元素</p>
+	 * <p>顺序查找：跳过其他键值（不会解析）</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return 元素游标：不是Map或者没有键返回{@code null}
+	 */
+	public BEncodeCursor get(String key) {
+		if(key == null || !this.isMap()) {
+			return null;
+		}
+		int position = this.position + 1;
+		while(this.buffer.get(position) != BEncodeDecoder.TYPE_E) {
+			final int valuePosition = this.next(position);
+			final int valueLimit = this.next(valuePosition);
+			if(this.equals(position, valuePosition, key)) {
+				return new BEncodeCursor(this.buffer, valuePosition, valueLimit);
+			}
+			position = valueLimit;
+		}
+		return null;
+	}
+	
+	/**
+	 * <p>获取数值</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return 数值
+	 */
+	public Long getLong(String key) {
+		final BEncodeCursor cursor = this.get(key);
+		if(cursor == null) {
+			return null;
+		}
+		return cursor.longValue();
+	}
+	
+	/**
+	 * <p>获取数值</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return 数值
+	 */
+	public Byte getByte(String key) {
+		final Long value = this.getLong(key);
+		if(value == null) {
+			return null;
+		}
+		return value.byteValue();
+	}
+	
+	/**
+	 * <p>获取数值</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return 数值
+	 */
+	public Integer getInteger(String key) {
+		final Long value = this.getLong(key);
+		if(value == null) {
+			return null;
+		}
+		return value.intValue();
+	}
+	
+	/**
+	 * <p>获取字节数组</p>
+	 * <p>缓冲切片：不会复制数据</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return 字节数组
+	 */
+	public ByteBuffer getBuffer(String key) {
+		final BEncodeCursor cursor = this.get(key);
+		if(cursor == null) {
+			return null;
+		}
+		return cursor.buffer();
+	}
+	
+	/**
+	 * <p>获取字节数组</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return 字节数组
+	 */
+	public byte[] getBytes(String key) {
+		final BEncodeCursor cursor = this.get(key);
+		if(cursor == null) {
+			return null;
+		}
+		return cursor.bytes();
+	}
+	
+	/**
+	 * <p>获取字符串</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return 字符串
+	 */
+	public String getString(String key) {
+		return this.getString(key, null);
+	}
+	
+	/**
+	 * <p>获取字符串</p>
+	 * 
+	 * @param key 键
+	 * @param encoding 编码
+	 * 
+	 * @return 字符串
+	 */
+	public String getString(String key, String encoding) {
+		final BEncodeCursor cursor = this.get(key);
+		if(cursor == null) {
+			return null;
+		}
+		return cursor.string(encoding);
+	}
+	
+	/**
+	 * <p>获取Map</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return Map：没有键返回空Map
+	 */
+	public Map<String, Object> getMap(String key) {
+		final BEncodeCursor cursor = this.get(key);
+		if(cursor == null) {
+			return Map.of();
+		}
+		return cursor.toMap();
+	}
+	
+	/**
+	 * <p>获取List</p>
+	 * 
+	 * @param key 键
+	 * 
+	 * @return List：没有键返回空List
+	 */
+	public List<Object> getList(String key) {
+		final BEncodeCursor cursor = this.get(key);
+		if(cursor == null) {
+			return List.of();
+		}
+		return cursor.toList();
+	}
+	
+	/**
+	 * <p>获取字节数组数据开始位置</p>
+	 * 
+	 * @return 字节数组数据开始位置
+	 */
+	private int bytesPosition() {
+		int index = this.position;
+		while(this.buffer.get(index) != BEncodeDecoder.SEPARATOR) {
+			index++;
+		}
+		return index + 1;
+	}
+	
+	/**
+	 * <p>获取下一个数据开始位置</p>
+	 * <p>创建游标已经验证数据：不会抛出异常</p>
+	 * 
+	 * @param position 当前数据开始位置
+	 * 
+	 * @return 下一个数据开始位置
+	 */
+	private int next(int position) {
+		try {
+			return skip(this.buffer, position, this.limit);
+		} catch (PacketSizeException e) {
+			throw new IllegalArgumentException("B编码错误", e);
+		}
+	}
+	
+	/**
+	 * <p>判断键是否相等</p>
+	 * <p>ASCII字符直接比较字节，其他字符使用UTF-8编码转换后比较：B编码键使用UTF-8编码。</p>
+	 * 
+	 * @param position 键开始位置
+	 * @param limit 键结束位置
+	 * @param key 键
+	 * 
+	 * @return 是否相等
+	 */
+	private boolean equals(int position, int limit, String key) {
+		int index = position;
+		while(this.buffer.get(index) != BEncodeDecoder.SEPARATOR) {
+			index++;
+		}
+		index++;
+		final int length = key.length();
+		if(limit - index < length) {
+			return false;
+		}
+		for (int jndex = 0; jndex < length; jndex++) {
+			final char value = key.charAt(jndex);
+			if(value > 0x7F) {
+				return ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8)).equals(slice(index, limit));
+			}
+			if(this.buffer.get(index + jndex) != value) {
+				return false;
+			}
+		}
+		return limit - index == length;
+	}
+	
+	/**
+	 * <p>获取缓冲切片</p>
+	 * 
+	 * @param position 开始位置
+	 * @param limit 结束位置
+	 * 
+	 * @return 缓冲切片
+	 */
+	private ByteBuffer slice(int position, int limit) {
+		final ByteBuffer slice = this.buffer.duplicate();
+		slice.limit(limit).position(position);
+		return slice.slice();
+	}
+	
+	/**
+	 * <p>复制数据</p>
+	 * 
+	 * @param position 开始位置
+	 * @param limit 结束位置
+	 * 
+	 * @return 数据
+	 */
+	private byte[] copy(int position, int limit) {
+		final byte[] bytes = new byte[limit - position];
+		this.slice(position, limit).get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * <p>跳过数据</p>
+	 * <p>使用深度计数代替递归：防止恶意数据嵌套过深导致栈溢出</p>
+	 * <p>同时验证Map结构：键必须是字节数组，键值必须成对出现。</p>
+	 * 
+	 * @param buffer 数据
+	 * @param position 数据开始位置
+	 * @param limit 数据结束位置
+	 * 
+	 * @return 下一个数据开始位置
+	 * 
+	 * @throws PacketSizeException 网络包大小异常
+	 */
+	private static final int skip(ByteBuffer buffer, int position, int limit) throws PacketSizeException {
+		int depth = 0;
+		int index = position;
+		// 每层是否是Map
+		BitSet maps = null;
+		// 每层Map是否等待读取值
+		BitSet values = null;
+		do {
+			if(index >= limit) {
+				throw new IllegalArgumentException("B编码错误（数据不完整）");
+			}
+			final byte value = buffer.get(index);
+			if(depth > 0 && maps.get(depth)) {
+				if(values.get(depth)) {
+					if(value == BEncodeDecoder.TYPE_E) {
+						throw new IllegalArgumentException("B编码错误（Map缺少值）");
+					}
+				} else if(value != BEncodeDecoder.TYPE_E && (value < '0' || value > '9')) {
+					throw new IllegalArgumentException("B编码错误（Map键）：" + (char) value);
+				}
+			}
+			switch (value) {
+			case BEncodeDecoder.TYPE_D:
+			case BEncodeDecoder.TYPE_L:
+				if(maps == null) {
+					maps = new BitSet();
+					values = new BitSet();
+				}
+				depth++;
+				maps.set(depth, value == BEncodeDecoder.TYPE_D);
+				values.clear(depth);
+				index++;
+				// 容器没有结束
+				continue;
+			case BEncodeDecoder.TYPE_E:
+				if(depth <= 0) {
+					throw new IllegalArgumentException("B编码错误（结尾）");
+				}
+				depth--;
+				index++;
+				break;
+			case BEncodeDecoder.TYPE_I:
+				index = skipLong(buffer, index + 1, limit);
+				break;
+			default:
+				index = skipBytes(buffer, index, limit);
+				break;
+			}
+			// 读取完成一个元素：Map切换键值
+			if(depth > 0 && maps.get(depth)) {
+				values.flip(depth);
+			}
+		} while(depth > 0);
+		return index;
+	}
+	
+	/**
+	 * <p>跳过数值</p>
+	 * 
+	 * @param buffer 数据
+	 * @param position 数值开始位置（不含类型符号）
+	 * @param limit 数据结束位置
+	 * 
+	 * @return 下一个数据开始位置
+	 */
+	private static final int skipLong(ByteBuffer buffer, int position, int limit) {
+		long value = 0L;
+		int index = position;
+		if(index < limit && buffer.get(index) == '-') {
+			index++;
+		}
+		final int numberPosition = index;
+		while(index < limit) {
+			final byte number = buffer.get(index);
+			if(number == BEncodeDecoder.TYPE_E && index > numberPosition) {
+				return index + 1;
+			}
+			if(number < '0' || number > '9') {
+				throw new IllegalArgumentException("B编码错误（数值）：" + (char) number);
+			}
+			value = BEncodeDecoder.nextLong(value, number);
+			index++;
+		}
+		throw new IllegalArgumentException("B编码错误（数据不完整）");
+	}
+	
+	/**
+	 * <p>跳过字节数组</p>
+	 * 
+	 * @param buffer 数据
+	 * @param position 字节数组开始位置（长度）
+	 * @param limit 数据结束位置
+	 * 
+	 * @return 下一个数据开始位置
+	 * 
+	 * @throws PacketSizeException 网络包大小异常
+	 */
+	private static final int skipBytes(ByteBuffer buffer, int position, int limit) throws PacketSizeException {
+		int length = -1;
+		int index = position;
+		while(index < limit) {
+			final byte number = buffer.get(index++);
+			if(number == BEncodeDecoder.SEPARATOR && length >= 0) {
+				if(limit - index < length) {
+					throw new IllegalArgumentException("B编码错误（数据不完整）");
+				}
+				return index + length;
+			}
+			if(number < '0' || number > '9') {
+				throw new IllegalArgumentException("B编码错误（未知类型）：" + (char) number);
+			}
+			length = BEncodeDecoder.nextLength(length, number);
+		}
+		throw new IllegalArgumentException("B编码错误（数据不完整）");
+	}
+
+}
@@ -1,7 +1,5 @@
 package com.acgist.snail.format;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -44,6 +42,7 @@ import com.acgist.snail.utils.StringUtils;
  * </table>
  * <p>所有类型除了Long，其他均为byte[]，需要自己进行类型转换。</p>
  * <p>使用以下方法进行解析：{@link #nextType()}、{@link #nextMap()}、{@link #nextList()}</p>
+ * <p>只需要读取部分数据时使用{@link BEncodeCursor}（不用解析所有数据）</p>
  * 
  * @author acgist
  */
@@ -107,19 +106,18 @@ public final class BEncodeDecoder {
 	 */
 	private Map<String, Object> map;
 	/**
-	 * <p>原始数据（不需要关闭）</p>
+	 * <p>原始数据</p>
 	 */
-	private final ByteArrayInputStream inputStream;
+	private final ByteBuffer buffer;
 	
 	/**
-	 * @param bytes 数据
+	 * @param buffer 数据
 	 */
-	private BEncodeDecoder(byte[] bytes) {
-		Objects.requireNonNull(bytes, "B编码内容错误");
-		if(bytes.length < 2) {
+	private BEncodeDecoder(ByteBuffer buffer) {
+		if(buffer.remaining() < 2) {
 			throw new IllegalArgumentException("B编码内容错误");
 		}
-		this.inputStream = new ByteArrayInputStream(bytes);
+		this.buffer = buffer;
 	}
 	
 	/**
@@ -130,7 +128,8 @@ public final class BEncodeDecoder {
 	 * @return B编码解码器
 	 */
 	public static final BEncodeDecoder newInstance(byte[] bytes) {
-		return new BEncodeDecoder(bytes);
+		Objects.requireNonNull(bytes, "B编码内容错误");
+		return new BEncodeDecoder(ByteBuffer.wrap(bytes));
 	}
 	
 	/**
@@ -142,11 +141,13 @@ public final class BEncodeDecoder {
 	 */
 	public static final BEncodeDecoder newInstance(String content) {
 		Objects.requireNonNull(content, "B编码内容错误");
-		return new BEncodeDecoder(content.getBytes());
+		return newInstance(content.getBytes());
 	}
 	
 	/**
 	 * <p>创建B编码解码器</p>
+	 * <p>直接读取缓冲数据（不用复制），读取剩余所有数据（缓冲读取位置设置为结束位置）。</p>
+	 * <p>解析结果不会引用缓冲数据：缓冲可以在解析完成后回收</p>
 	 * 
 	 * @param buffer 数据
 	 * 
@@ -154,9 +155,9 @@ public final class BEncodeDecoder {
 	 */
 	public static final BEncodeDecoder newInstance(ByteBuffer buffer) {
 		Objects.requireNonNull(buffer, "B编码内容错误");
-		final byte[] bytes = new byte[buffer.remaining()];
-		buffer.get(bytes);
-		return new BEncodeDecoder(bytes);
+		final ByteBuffer slice = buffer.slice();
+		buffer.position(buffer.limit());
+		return new BEncodeDecoder(slice);
 	}
 	
 	/**
@@ -193,20 +194,19 @@ public final class BEncodeDecoder {
 	 */
 	public Type nextType() throws PacketSizeException {
 		// 是否含有数据
-		final boolean noneData = this.inputStream == null || this.inputStream.available() <= 0;
-		if(noneData) {
+		if(!this.buffer.hasRemaining()) {
 			LOGGER.warn("B编码没有数据");
 			this.type = Type.NONE;
 			return this.type;
 		}
-		final char charType = (char) this.inputStream.read();
+		final char charType = (char) this.buffer.get();
 		switch (charType) {
 		case TYPE_D:
-			this.map = readMap(this.inputStream);
+			this.map = readMap(this.buffer);
 			this.type = Type.MAP;
 			break;
 		case TYPE_L:
-			this.list = readList(this.inputStream);
+			this.list = readList(this.buffer);
 			this.type = Type.LIST;
 			break;
 		default:
@@ -255,10 +255,9 @@ public final class BEncodeDecoder {
 	 * @return 剩余所有数据
 	 */
 	public byte[] oddBytes() {
-		if(this.inputStream == null) {
-			return new byte[0];
-		}
-		return this.inputStream.readAllBytes();
+		final byte[] bytes = new byte[this.buffer.remaining()];
+		this.buffer.get(bytes);
+		return bytes;
 	}
 
 	/**
@@ -274,35 +273,72 @@ public final class BEncodeDecoder {
 	/**
 	 * <p>读取数值</p>
 	 * 
-	 * @param inputStream 数据
+	 * @param buffer 数据
 	 * 
 	 * @return 数值
 	 * 
 	 * @see #TYPE_I
 	 */
-	private static final Long readLong(ByteArrayInputStream inputStream) {
-		int index;
-		char indexChar;
-		final StringBuilder valueBuilder = new StringBuilder();
-		while((index = inputStream.read()) != -1) {
-			indexChar = (char) index;
-			if(indexChar == TYPE_E) {
-				final var number = valueBuilder.toString();
-				if(!StringUtils.isNumeric(number)) {
-					throw new IllegalArgumentException("B编码错误（数值）：" + number);
+	private static final Long readLong(ByteBuffer buffer) {
+		byte index;
+		long value = 0L;
+		boolean numeric = false;
+		boolean negative = false;
+		while(buffer.hasRemaining()) {
+			index = buffer.get();
+			if(index == TYPE_E) {
+				if(!numeric) {
+					throw new IllegalArgumentException("B编码错误（数值）：" + (negative ? "-" : ""));
 				}
-				return Long.valueOf(number);
+				return negative ? -value : value;
+			} else if(index >= '0' && index <= '9') {
+				value = nextLong(value, index);
+				numeric = true;
+			} else if(index == '-' && !numeric && !negative) {
+				negative = true;
 			} else {
-				valueBuilder.append(indexChar);
+				throw new IllegalArgumentException("B编码错误（数值）：" + (char) index);
 			}
 		}
 		return 0L;
 	}
 	
+	/**
+	 * <p>累加数值</p>
+	 * 
+	 * @param value 当前数值
+	 * @param index 数字字符
+	 * 
+	 * @return 数值
+	 */
+	static final long nextLong(long value, byte index) {
+		final int number = index - '0';
+		if(value > (Long.MAX_VALUE - number) / 10) {
+			throw new IllegalArgumentException("B编码错误（数值溢出）：" + value);
+		}
+		return value * 10 + number;
+	}
+	
+	/**
+	 * <p>累加字节数组长度</p>
+	 * 
+	 * @param length 当前长度：{@code -1}-没有长度
+	 * @param index 数字字符
+	 * 
+	 * @return 字节数组长度
+	 * 
+	 * @throws PacketSizeException 网络包大小异常
+	 */
+	static final int nextLength(int length, byte index) throws PacketSizeException {
+		final int nextLength = (length < 0 ? 0 : length * 10) + (index - '0');
+		PacketSizeException.verify(nextLength);
+		return nextLength;
+	}
+	
 	/**
 	 * <p>读取List</p>
 	 * 
-	 * @param inputStream 数据
+	 * @param buffer 数据
 	 * 
 	 * @return List
 	 * 
@@ -310,24 +346,23 @@ public final class BEncodeDecoder {
 	 * 
 	 * @see #TYPE_L
 	 */
-	private static final List<Object> readList(ByteArrayInputStream inputStream) throws PacketSizeException {
-		int index;
-		char indexChar;
+	private static final List<Object> readList(ByteBuffer buffer) throws PacketSizeException {
+		byte index;
+		int length = -1;
 		final List<Object> list = new ArrayList<>();
-		final StringBuilder lengthBuilder = new StringBuilder();
-		while ((index = inputStream.read()) != -1) {
-			indexChar = (char) index;
-			switch (indexChar) {
+		while (buffer.hasRemaining()) {
+			index = buffer.get();
+			switch (index) {
 			case TYPE_E:
 				return list;
 			case TYPE_I:
-				list.add(readLong(inputStream));
+				list.add(readLong(buffer));
 				break;
 			case TYPE_L:
-				list.add(readList(inputStream));
+				list.add(readList(buffer));
 				break;
 			case TYPE_D:
-				list.add(readMap(inputStream));
+				list.add(readMap(buffer));
 				break;
 			case '0':
 			case '1':
@@ -339,18 +374,19 @@ public final class BEncodeDecoder {
 			case '7':
 			case '8':
 			case '9':
-				lengthBuilder.append(indexChar);
+				length = nextLength(length, index);
 				break;
 			case SEPARATOR:
-				if(lengthBuilder.length() > 0) {
-					final byte[] bytes = readBytes(lengthBuilder, inputStream);
+				if(length >= 0) {
+					final byte[] bytes = readBytes(length, buffer);
 					list.add(bytes);
+					length = -1;
 				} else {
-					LOGGER.warn("B编码错误（长度）：{}", lengthBuilder);
+					LOGGER.warn("B编码错误（长度）：{}", length);
 				}
 				break;
 			default:
-				LOGGER.warn("B编码错误（未知类型）：{}", indexChar);
+				LOGGER.warn("B编码错误（未知类型）：{}", (char) index);
 				break;
 			}
 		}
@@ -360,7 +396,7 @@ public final class BEncodeDecoder {
 	/**
 	 * <p>读取Map</p>
 	 * 
-	 * @param inputStream 数据
+	 * @param buffer 数据
 	 * 
 	 * @return Map
 	 * 
@@ -368,20 +404,19 @@ public final class BEncodeDecoder {
 	 * 
 	 * @see #TYPE_D
 	 */
-	private static final Map<String, Object> readMap(ByteArrayInputStream inputStream) throws PacketSizeException {
-		int index;
-		char indexChar;
+	private static final Map<String, Object> readMap(ByteBuffer buffer) throws PacketSizeException {
+		byte index;
+		int length = -1;
 		String key = null;
 		final Map<String, Object> map = new LinkedHashMap<>();
-		final StringBuilder lengthBuilder = new StringBuilder();
-		while ((index = inputStream.read()) != -1) {
-			indexChar = (char) index;
-			switch (indexChar) {
+		while (buffer.hasRemaining()) {
+			index = buffer.get();
+			switch (index) {
 			case TYPE_E:
 				return map;
 			case TYPE_I:
 				if(key != null) {
-					map.put(key, readLong(inputStream));
+					map.put(key, readLong(buffer));
 					key = null;
 				} else {
 					LOGGER.warn("B编码key为空跳过（I）");
@@ -389,7 +424,7 @@ public final class BEncodeDecoder {
 				break;
 			case TYPE_L:
 				if(key != null) {
-					map.put(key, readList(inputStream));
+					map.put(key, readList(buffer));
 					key = null;
 				} else {
 					LOGGER.warn("B编码key为空跳过（L）");
@@ -397,7 +432,7 @@ public final class BEncodeDecoder {
 				break;
 			case TYPE_D:
 				if(key != null) {
-					map.put(key, readMap(inputStream));
+					map.put(key, readMap(buffer));
 					key = null;
 				} else {
 					LOGGER.warn("B编码key为空跳过（D）");
@@ -413,23 +448,24 @@ public final class BEncodeDecoder {
 			case '7':
 			case '8':
 			case '9':
-				lengthBuilder.append(indexChar);
+				length = nextLength(length, index);
 				break;
 			case SEPARATOR:
-				if(lengthBuilder.length() > 0) {
-					final byte[] bytes = readBytes(lengthBuilder, inputStream);
+				if(length >= 0) {
+					final byte[] bytes = readBytes(length, buffer);
 					if (key == null) {
 						key = new String(bytes);
 					} else {
 						map.put(key, bytes);
 						key = null;
 					}
+					length = -1;
 				} else {
-					LOGGER.warn("B编码错误（长度）：{}", lengthBuilder);
+					LOGGER.warn("B编码错误（长度）：{}", length);
 				}
 				break;
 			default:
-				LOGGER.warn("B编码错误（未知类型）：{}", indexChar);
+				LOGGER.warn("B编码错误（未知类型）：{}", (char) index);
 				break;
 			}
 		}
@@ -438,30 +474,19 @@ public final class BEncodeDecoder {
 	
 	/**
 	 * <p>读取符合长度的字节数组</p>
+	 * <p>复制数据：解析结果不能引用原始数据</p>
 	 * 
-	 * @param lengthBuilder 字节数组长度
-	 * @param inputStream 数据
+	 * @param length 字节数组长度
+	 * @param buffer 数据
 	 * 
 	 * @return 字节数组
-	 * 
-	 * @throws PacketSizeException 网络包大小异常
 	 */
-	private static final byte[] readBytes(StringBuilder lengthBuilder, ByteArrayInputStream inputStream) throws PacketSizeException {
-		final var number = lengthBuilder.toString();
-		if(!StringUtils.isNumeric(number)) {
-			throw new IllegalArgumentException("B编码错误（数值）：" + number);
-		}
-		final int length = Integer.parseInt(number);
-		PacketSizeException.verify(length);
-		lengthBuilder.setLength(0); // 清空长度
+	private static final byte[] readBytes(int length, ByteBuffer buffer) {
 		final byte[] bytes = new byte[length];
-		try {
-			final int readLength = inputStream.read(bytes);
-			if(readLength != length) {
-				LOGGER.warn("B编码错误（读取长度和实际长度不符）：{}-{}", length, readLength);
-			}
-		} catch (IOException e) {
-			LOGGER.error("B编码读取异常", e);
+		final int readLength = Math.min(length, buffer.remaining());
+		buffer.get(bytes, 0, readLength);
+		if(readLength != length) {
+			LOGGER.warn("B编码错误（读取长度和实际长度不符）：{}-{}", length, readLength);
 		}
 		return bytes;
 	}
@@ -7,6 +7,7 @@ import com.acgist.snail.context.exception.NetException;
 
 /**
  * <p>消息发送代理接口</p>
+ * <p>注意：消息缓冲在消息处理完成后回收重复使用，需要保留的数据必须复制。</p>
  * 
  * @author acgist
  */
@@ -74,6 +74,7 @@ public interface IMessageSender {
 	/**
 	 * <p>消息发送</p>
 	 * <p>所有其他消息发送均使用此方法发送</p>
+	 * <p>直接内存缓冲（{@linkplain com.acgist.snail.context.NetBufferContext 网络缓冲}）发送完成后由发送者回收：发送后不能继续使用</p>
 	 * 
 	 * @param buffer 消息内容
 	 * @param timeout 超时时间
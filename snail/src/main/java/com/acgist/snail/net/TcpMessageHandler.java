@@ -5,15 +5,16 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.NetBufferContext;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.net.codec.IMessageCodec;
 import com.acgist.snail.utils.IoUtils;
@@ -28,10 +29,43 @@ public abstract class TcpMessageHandler implements CompletionHandler<Integer, By
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(TcpMessageHandler.class);
 	
+	/**
+	 * <p>发送队列最大数据大小：{@value}</p>
+	 * <p>超过后发送线程等待发送队列数据发送（背压）</p>
+	 */
+	private static final int MAX_WRITE_QUEUE_SIZE = SystemConfig.ONE_MB;
+	/**
+	 * <p>单次聚合发送最大消息数量：{@value}</p>
+	 */
+	private static final int MAX_GATHER_SIZE = 64;
+	/**
+	 * <p>发送超时时间（秒）：{@value}</p>
+	 * <p>超时关闭通道：防止Peer不读数据导致发送队列一直占用</p>
+	 */
+	private static final int WRITE_TIMEOUT = SystemConfig.DOWNLOAD_TIMEOUT;
+	
 	/**
 	 * <p>是否关闭</p>
 	 */
 	private volatile boolean close = false;
+	/**
+	 * <p>是否正在发送</p>
+	 * <p>使用发送队列加锁</p>
+	 */
+	private boolean writing = false;
+	/**
+	 * <p>发送队列数据大小</p>
+	 * <p>使用发送队列加锁</p>
+	 */
+	private long writeQueueSize = 0L;
+	/**
+	 * <p>发送队列</p>
+	 */
+	private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+	/**
+	 * <p>发送完成处理器</p>
+	 */
+	private final WriteHandler writeHandler = new WriteHandler();
 	/**
 	 * <p>Socket</p>
 	 */
@@ -74,33 +108,72 @@ public abstract class TcpMessageHandler implements CompletionHandler<Integer, By
 	/**
 	 * {@inheritDoc}
 	 * 
-	 * <p>阻塞线程：等待发送完成，防止多线程同时写导致WritePendingException。</p>
-	 * <p>超时时间：超时异常会导致数据并没有发送完成而释放了锁，从而引起一连串的WritePendingException异常。</p>
-	 * <p>建议：除了第一条消息（连接）以外的所有消息都不要使用超时时间。</p>
+	 * <p>消息放入发送队列后直接返回，发送队列异步聚合发送：多条小消息使用一次系统调用发送。</p>
+	 * <p>发送队列数据超过限制时等待发送（背压），超时时间：等待发送队列的时间。</p>
+	 * <p>注意：消息放入发送队列后不能继续修改</p>
 	 */
 	@Override
 	public void send(ByteBuffer buffer, int timeout) throws NetException {
-		this.check(buffer);
-		synchronized (this.socket) {
+		synchronized (this.writeQueue) {
 			try {
-				int size;
-				final Future<Integer> future = this.socket.write(buffer);
-				if(timeout <= TIMEOUT_NONE) {
-					size = future.get();
-				} else {
-					size = future.get(timeout, TimeUnit.SECONDS);
-				}
-				if(size <= 0) {
-					LOGGER.warn("TCP消息发送失败：{}-{}", this.socket, size);
-				}
+				this.check(buffer);
+				this.awaitWrite(timeout);
+			} catch (NetException e) {
+				NetBufferContext.getInstance().recycle(buffer);
+				throw e;
+			}
+			this.writeQueue.offer(buffer);
+			this.writeQueueSize += buffer.remaining();
+			if(!this.writing) {
+				this.writing = true;
+				this.write();
+			}
+		}
+	}
+	
+	/**
+	 * <p>发送队列数据超过限制时等待发送</p>
+	 * 
+	 * @param timeout 超时时间（秒）
+	 * 
+	 * @throws NetException 网络异常
+	 */
+	private void awaitWrite(int timeout) throws NetException {
+		final long deadline = timeout <= TIMEOUT_NONE ? Long.MAX_VALUE : System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+		while(this.writeQueueSize >= MAX_WRITE_QUEUE_SIZE) {
+			if(!this.available()) {
+				throw new NetException("消息发送失败：通道不可用");
+			}
+			final long wait = deadline - System.currentTimeMillis();
+			if(wait <= 0) {
+				throw new NetException("消息发送失败：发送队列已满");
+			}
+			try {
+				this.writeQueue.wait(wait);
 			} catch (InterruptedException e) {
 				Thread.currentThread().interrupt();
 				throw new NetException(e);
-			} catch (TimeoutException | ExecutionException e) {
-				throw new NetException(e);
 			}
 		}
 	}
+	
+	/**
+	 * <p>聚合发送队列消息</p>
+	 * <p>使用发送队列加锁</p>
+	 */
+	private void write() {
+		final int size = Math.min(this.writeQueue.size(), MAX_GATHER_SIZE);
+		final ByteBuffer[] buffers = new ByteBuffer[size];
+		final Iterator<ByteBuffer> iterator = this.writeQueue.iterator();
+		for (int index = 0; index < size; index++) {
+			buffers[index] = iterator.next();
+		}
+		try {
+			this.socket.write(buffers, 0, size, WRITE_TIMEOUT, TimeUnit.SECONDS, buffers, this.writeHandler);
+		} catch (Exception e) {
+			this.writeHandler.failed(e, buffers);
+		}
+	}
 
 	@Override
 	public InetSocketAddress remoteSocketAddress() {
@@ -112,9 +185,20 @@ public abstract class TcpMessageHandler implements CompletionHandler<Integer, By
 		return null;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>正在发送时等待发送队列数据发送完成后关闭通道</p>
+	 */
 	@Override
 	public void close() {
 		this.close = true;
+		synchronized (this.writeQueue) {
+			this.writeQueue.notifyAll();
+			if(this.writing) {
+				return;
+			}
+		}
 		IoUtils.close(this.socket);
 	}
 	
@@ -134,25 +218,71 @@ public abstract class TcpMessageHandler implements CompletionHandler<Integer, By
 				LOGGER.error("TCP消息接收异常", e);
 			}
 		}
+		// 消息处理完成回收缓冲
+		NetBufferContext.getInstance().recycle(buffer);
 		this.loopMessage();
 	}
 	
 	@Override
 	public void failed(Throwable throwable, ByteBuffer buffer) {
+		NetBufferContext.getInstance().recycle(buffer);
 		LOGGER.error("TCP消息处理异常", throwable);
 	}
 	
 	/**
 	 * <p>消息轮询</p>
+	 * <p>缓冲从{@linkplain NetBufferContext 网络缓冲}获取，消息处理完成后回收。</p>
 	 */
 	private void loopMessage() {
 		if(this.available()) {
 //			final ByteBuffer buffer = ByteBuffer.allocate(SystemConfig.TCP_BUFFER_LENGTH);
-			final ByteBuffer buffer = ByteBuffer.allocateDirect(SystemConfig.TCP_BUFFER_LENGTH);
+			final ByteBuffer buffer = NetBufferContext.getInstance().borrow(SystemConfig.TCP_BUFFER_LENGTH);
 			this.socket.read(buffer, buffer, this);
 		} else {
 			LOGGER.debug("TCP消息代理退出消息轮询");
 		}
 	}
+	
+	/**
+	 * <p>发送完成处理器</p>
+	 * 
+	 * @author acgist
+	 */
+	private final class WriteHandler implements CompletionHandler<Long, ByteBuffer[]> {
+		
+		@Override
+		public void completed(Long result, ByteBuffer[] buffers) {
+			synchronized (TcpMessageHandler.this.writeQueue) {
+				final Deque<ByteBuffer> writeQueue = TcpMessageHandler.this.writeQueue;
+				TcpMessageHandler.this.writeQueueSize -= result;
+				// 移除发送完成消息：没有发送完成的消息继续发送
+				while(!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+					NetBufferContext.getInstance().recycle(writeQueue.poll());
+				}
+				writeQueue.notifyAll();
+				if(!writeQueue.isEmpty() && TcpMessageHandler.this.socket.isOpen()) {
+					TcpMessageHandler.this.write();
+					return;
+				}
+				TcpMessageHandler.this.writing = false;
+			}
+			if(TcpMessageHandler.this.close) {
+				IoUtils.close(TcpMessageHandler.this.socket);
+			}
+		}
+		
+		@Override
+		public void failed(Throwable throwable, ByteBuffer[] buffers) {
+			LOGGER.error("TCP消息发送异常", throwable);
+			synchronized (TcpMessageHandler.this.writeQueue) {
+				TcpMessageHandler.this.writeQueue.forEach(NetBufferContext.getInstance()::recycle);
+				TcpMessageHandler.this.writeQueue.clear();
+				TcpMessageHandler.this.writeQueueSize = 0L;
+				TcpMessageHandler.this.writing = false;
+			}
+			TcpMessageHandler.this.close();
+		}
+		
+	}
 
 }
@@ -9,6 +9,7 @@ import java.nio.channels.DatagramChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.acgist.snail.context.NetBufferContext;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.net.codec.IMessageCodec;
 
@@ -105,8 +106,8 @@ public abstract class UdpMessageHandler implements IMessageSender, IMessageRecei
 	 * @throws NetException 网络异常
 	 */
 	protected final void send(ByteBuffer buffer, SocketAddress socketAddress) throws NetException {
-		this.check(buffer);
 		try {
+			this.check(buffer);
 			// UDP不用加锁
 			final int size = this.channel.send(buffer, socketAddress);
 			if(size <= 0) {
@@ -114,6 +115,8 @@ public abstract class UdpMessageHandler implements IMessageSender, IMessageRecei
 			}
 		} catch (IOException e) {
 			throw new NetException(e);
+		} finally {
+			NetBufferContext.getInstance().recycle(buffer);
 		}
 	}
 	
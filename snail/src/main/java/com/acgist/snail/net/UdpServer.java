@@ -12,11 +12,13 @@ import java.nio.channels.Selector;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.NetBufferContext;
 import com.acgist.snail.context.SystemThreadContext;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.utils.IoUtils;
@@ -32,13 +34,33 @@ public abstract class UdpServer<T extends UdpAcceptHandler> implements IUdpChann
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(UdpServer.class);
 	
+	/**
+	 * <p>单次批量接收最大消息数量：{@value}</p>
+	 */
+	private static final int MAX_BATCH_SIZE = 64;
+	/**
+	 * <p>消息处理分片等待队列长度：{@value}</p>
+	 * <p>队列已满丢弃消息</p>
+	 */
+	private static final int SHARD_QUEUE_SIZE = 1024;
+	
 	/**
 	 * <p>UDP服务端消息处理器线程</p>
 	 */
 	private static final ExecutorService EXECUTOR;
+	/**
+	 * <p>UDP消息处理分片</p>
+	 * <p>每个分片单线程处理：同一个远程地址的消息分配到同一个分片，保证消息处理顺序（UTP）。</p>
+	 * <p>没有分片时直接在消息轮询线程处理</p>
+	 */
+	private static final ExecutorService[] SHARDS;
 	
 	static {
 		EXECUTOR = SystemThreadContext.newCacheExecutor(0, 60L, SystemThreadContext.SNAIL_THREAD_UDP_SERVER);
+		SHARDS = new ExecutorService[Math.max(0, SystemConfig.getUdpThreadSize())];
+		for (int index = 0; index < SHARDS.length; index++) {
+			SHARDS[index] = SystemThreadContext.newExecutor(1, 1, SHARD_QUEUE_SIZE, 60L, SystemThreadContext.SNAIL_THREAD_UDP_HANDLER);
+		}
 	}
 	
 	/**
@@ -214,6 +236,8 @@ public abstract class UdpServer<T extends UdpAcceptHandler> implements IUdpChann
 	
 	/**
 	 * <p>接收消息</p>
+	 * <p>批量接收通道所有消息，按照远程地址分配到消息处理分片。</p>
+	 * <p>缓冲从{@linkplain NetBufferContext 网络缓冲}获取，消息处理完成后回收。</p>
 	 */
 	private void receive() {
 		try {
@@ -224,13 +248,7 @@ public abstract class UdpServer<T extends UdpAcceptHandler> implements IUdpChann
 					final SelectionKey selectionKey = iterator.next();
 					iterator.remove(); // 移除已经取出来的信息
 					if (selectionKey.isValid() && selectionKey.isReadable()) {
-//						final ByteBuffer buffer = ByteBuffer.allocate(SystemConfig.UDP_BUFFER_LENGTH);
-						final ByteBuffer buffer = ByteBuffer.allocateDirect(SystemConfig.UDP_BUFFER_LENGTH);
-						// 服务器多例：获取不同通道
-						// final DatagramChannel channel = (DatagramChannel) selectionKey.channel();
-						// 服务端单例：客户端通道=服务端通道
-						final InetSocketAddress socketAddress = (InetSocketAddress) this.channel.receive(buffer);
-						this.handler.handle(this.channel, buffer, socketAddress);
+						this.receiveBatch();
 					}
 				}
 			}
@@ -239,6 +257,72 @@ public abstract class UdpServer<T extends UdpAcceptHandler> implements IUdpChann
 		}
 	}
 	
+	/**
+	 * <p>批量接收消息</p>
+	 * <p>没有消息或者达到单次批量接收最大消息数量时返回</p>
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private void receiveBatch() throws IOException {
+		for (int index = 0; index < MAX_BATCH_SIZE; index++) {
+//			final ByteBuffer buffer = ByteBuffer.allocate(SystemConfig.UDP_BUFFER_LENGTH);
+			final ByteBuffer buffer = NetBufferContext.getInstance().borrow(SystemConfig.UDP_BUFFER_LENGTH);
+			final InetSocketAddress socketAddress;
+			try {
+				// 服务器多例：获取不同通道
+				// final DatagramChannel channel = (DatagramChannel) selectionKey.channel();
+				// 服务端单例：客户端通道=服务端通道
+				socketAddress = (InetSocketAddress) this.channel.receive(buffer);
+			} catch (IOException e) {
+				NetBufferContext.getInstance().recycle(buffer);
+				throw e;
+			}
+			if(socketAddress == null) {
+				// 没有消息
+				NetBufferContext.getInstance().recycle(buffer);
+				break;
+			}
+			this.dispatch(buffer, socketAddress);
+		}
+	}
+	
+	/**
+	 * <p>分配消息处理分片</p>
+	 * 
+	 * @param buffer 消息
+	 * @param socketAddress 地址
+	 */
+	private void dispatch(ByteBuffer buffer, InetSocketAddress socketAddress) {
+		if(SHARDS.length == 0) {
+			this.handle(buffer, socketAddress);
+			return;
+		}
+		final ExecutorService shard = SHARDS[Math.floorMod(socketAddress.hashCode(), SHARDS.length)];
+		try {
+			shard.execute(() -> this.handle(buffer, socketAddress));
+		} catch (RejectedExecutionException e) {
+			LOGGER.debug("UDP消息处理队列已满（丢弃）：{}-{}", this.name, socketAddress);
+			NetBufferContext.getInstance().recycle(buffer);
+		}
+	}
+	
+	/**
+	 * <p>处理消息</p>
+	 * 
+	 * @param buffer 消息
+	 * @param socketAddress 地址
+	 */
+	private void handle(ByteBuffer buffer, InetSocketAddress socketAddress) {
+		try {
+			this.handler.handle(this.channel, buffer, socketAddress);
+		} catch (Exception e) {
+			LOGGER.error("UDP Server消息处理异常：{}", this.name, e);
+		} finally {
+			// 消息处理完成回收缓冲
+			NetBufferContext.getInstance().recycle(buffer);
+		}
+	}
+	
 	/**
 	 * <p>获取UDP通道</p>
 	 * 
@@ -263,6 +347,9 @@ public abstract class UdpServer<T extends UdpAcceptHandler> implements IUdpChann
 	public static final void shutdown() {
 		LOGGER.debug("关闭UDP Server线程池");
 		SystemThreadContext.shutdown(EXECUTOR);
+		for (ExecutorService shard : SHARDS) {
+			SystemThreadContext.shutdown(shard);
+		}
 	}
 
 }
@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.context.GuiContext;
 import com.acgist.snail.context.GuiContext.Mode;
+import com.acgist.snail.context.MetricsContext;
 import com.acgist.snail.context.SystemContext;
 import com.acgist.snail.context.TaskContext;
 import com.acgist.snail.context.exception.DownloadException;
@@ -121,6 +122,9 @@ public final class ApplicationMessageHandler extends TcpMessageHandler implement
 		case TASK_DELETE:
 			this.onTaskDelete(message);
 			break;
+		case METRICS:
+			this.onMetrics();
+			break;
 		case SHOW:
 			this.onShow();
 			break;
@@ -285,6 +289,16 @@ public final class ApplicationMessageHandler extends TcpMessageHandler implement
 		}
 	}
 	
+	/**
+	 * <p>运行指标</p>
+	 * <p>返回运行指标（Prometheus文本格式）</p>
+	 * 
+	 * @see MetricsContext#export()
+	 */
+	private void onMetrics() {
+		this.send(ApplicationMessage.response(MetricsContext.getInstance().export()));
+	}
+	
 	/**
 	 * <p>显示窗口</p>
 	 */
@@ -1,29 +1,23 @@
 package com.acgist.snail.net.hls;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.acgist.snail.config.DownloadConfig;
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.downloader.Downloader;
 import com.acgist.snail.net.http.HttpClient;
-import com.acgist.snail.pojo.ITaskSession;
 import com.acgist.snail.pojo.session.HlsSession;
-import com.acgist.snail.utils.FileUtils;
 import com.acgist.snail.utils.IoUtils;
 
 /**
  * <p>HLS客户端</p>
+ * <p>下载数据直接写入{@linkplain TsLinker TS文件连接器}</p>
  * 
  * @author acgist
  */
@@ -36,12 +30,12 @@ public final class HlsClient implements Runnable {
 	 */
 	private final String link;
 	/**
-	 * <p>下载文件路径</p>
+	 * <p>文件索引</p>
 	 */
-	private final String path;
+	private final int index;
 	/**
 	 * <p>文件大小</p>
-	 * <p>通过HTTP HEAD请求获取</p>
+	 * <p>已下载大小+响应数据大小</p>
 	 */
 	private long size;
 	/**
@@ -57,26 +51,27 @@ public final class HlsClient implements Runnable {
 	 */
 	private final HlsSession hlsSession;
 	/**
-	 * <p>输入流</p>
+	 * <p>TS文件连接器</p>
 	 */
-	protected ReadableByteChannel input;
+	private final TsLinker linker;
 	/**
-	 * <p>输出流</p>
+	 * <p>输入流</p>
 	 */
-	protected WritableByteChannel output;
+	protected ReadableByteChannel input;
 	
 	/**
 	 * @param link 下载路径
-	 * @param taskSession 任务信息
+	 * @param index 文件索引
 	 * @param hlsSession HLS任务信息
+	 * @param linker TS文件连接器
 	 */
-	public HlsClient(String link, ITaskSession taskSession, HlsSession hlsSession) {
+	public HlsClient(String link, int index, HlsSession hlsSession, TsLinker linker) {
 		this.link = link;
-		final String fileName = FileUtils.fileName(link);
-		this.path = FileUtils.file(taskSession.getFile(), fileName);
+		this.index = index;
 		this.range = false;
 		this.completed = false;
 		this.hlsSession = hlsSession;
+		this.linker = linker;
 	}
 
 	@Override
@@ -91,37 +86,37 @@ public final class HlsClient implements Runnable {
 		}
 		LOGGER.debug("下载文件：{}", this.link);
 		// 已下载大小
-		long downloadSize = FileUtils.fileSize(this.path);
-		this.completed = this.checkCompleted(downloadSize);
-		if(this.completed) {
-			LOGGER.debug("HLS文件校验成功：{}", this.link);
-		} else {
-			int length = 0;
-			final ByteBuffer buffer = ByteBuffer.allocateDirect(SystemConfig.DEFAULT_EXCHANGE_BYTES_LENGTH);
-			try {
-				this.buildInput(downloadSize);
-				this.buildOutput();
-				// 不支持断点续传：重置已下载大小
-				if(!this.range) {
-					downloadSize = 0L;
+		long downloadSize = this.linker.size(this.index);
+		int length = 0;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(SystemConfig.DEFAULT_EXCHANGE_BYTES_LENGTH);
+		try {
+			this.buildInput(downloadSize);
+			// 不支持断点续传：重置已下载数据
+			if(!this.range && downloadSize > 0L) {
+				this.linker.reset(this.index);
+				downloadSize = 0L;
+			}
+			while(this.downloadable()) {
+				length = this.input.read(buffer);
+				if(length >= 0) {
+					buffer.flip();
+					this.linker.write(this.index, buffer);
+					buffer.clear();
+					downloadSize += length;
+					this.hlsSession.download(length); // 设置下载速度
 				}
-				while(this.downloadable()) {
-					length = this.input.read(buffer);
-					if(length >= 0) {
-						buffer.flip();
-						this.output.write(buffer);
-						buffer.clear();
-						downloadSize += length;
-						this.hlsSession.download(length); // 设置下载速度
-					}
-					if(Downloader.checkFinish(length, downloadSize, this.size)) {
-						this.completed = true;
-						break;
-					}
+				if(Downloader.checkFinish(length, downloadSize, this.size)) {
+					this.linker.complete(this.index);
+					this.completed = true;
+					break;
 				}
-			} catch (Exception e) {
-				LOGGER.error("HLS下载异常：{}", this.link, e);
 			}
+		} catch (DownloadException e) {
+			// 写入失败：数据不能恢复
+			LOGGER.error("HLS文件写入异常：{}", this.link, e);
+			this.hlsSession.fail(e.getMessage());
+		} catch (Exception e) {
+			LOGGER.error("HLS下载异常：{}", this.link, e);
 		}
 		this.release();
 		if(this.completed) {
@@ -145,37 +140,6 @@ public final class HlsClient implements Runnable {
 		return !this.completed && this.hlsSession.downloadable();
 	}
 	
-	/**
-	 * <p>校验是否完成</p>
-	 * <p>文件是否存在、大小是否正确</p>
-	 * 
-	 * @param downloadSize 已下载大小
-	 * 
-	 * @return 是否完成
-	 */
-	private boolean checkCompleted(final long downloadSize) {
-		// 如果文件已经完成直接返回完成
-		if(this.completed) {
-			return this.completed;
-		}
-		final File file = new File(this.path);
-		if(!file.exists()) {
-			return false;
-		}
-		try {
-			final var header = HttpClient
-				.newInstance(this.link)
-				.head()
-				.responseHeader();
-			// 文件实际大小
-			this.size = header.fileSize();
-			return this.size == downloadSize;
-		} catch (NetException e) {
-			LOGGER.error("HLS文件校验异常：{}", this.link, e);
-		}
-		return false;
-	}
-
 	/**
 	 * <p>创建{@linkplain #input 输入流}</p>
 	 * 
@@ -192,46 +156,34 @@ public final class HlsClient implements Runnable {
 		// 请求成功和部分请求成功
 		if(client.downloadable()) {
 			final var headers = client.responseHeader();
-			this.range = headers.range();
+			// 支持断点续传：验证开始位置
+			this.range = client.partialContent() && headers.range() && headers.verifyBeginRange(downloadSize);
+			final long fileSize = headers.fileSize();
+			// 不能获取文件大小：读取到数据结束
+			this.size = fileSize > 0L ? (this.range ? downloadSize : 0L) + fileSize : 0L;
 			this.input = Channels.newChannel(client.response());
-			if(this.range) {
-				// 支持断点续传
-				headers.verifyBeginRange(downloadSize);
-			}
 		} else {
+			// 没有读取响应数据：关闭连接
+			client.shutdown();
 			throw new NetException("HLS客户端输入流创建失败");
 		}
 	}
 	
 	/**
-	 * <p>创建{@linkplain #output 输出流}</p>
+	 * <p>获取文件索引</p>
 	 * 
-	 * @throws NetException 网络异常
+	 * @return 文件索引
 	 */
-	private void buildOutput() throws NetException {
-		try {
-			final int bufferSize = DownloadConfig.getMemoryBufferByte(this.size);
-			BufferedOutputStream outputStream;
-			if(this.range) {
-				// 支持断点续传
-				outputStream = new BufferedOutputStream(new FileOutputStream(this.path, true), bufferSize);
-			} else {
-				// 不支持断点续传
-				outputStream = new BufferedOutputStream(new FileOutputStream(this.path), bufferSize);
-			}
-			this.output = Channels.newChannel(outputStream);
-		} catch (FileNotFoundException e) {
-			throw new NetException("HLS客户端输出流创建失败", e);
-		}
+	public int index() {
+		return this.index;
 	}
-
+	
 	/**
 	 * <p>释放资源</p>
 	 */
 	public void release() {
 		LOGGER.debug("HLS客户端释放：{}", this.link);
 		IoUtils.close(this.input);
-		IoUtils.close(this.output);
 	}
 	
 }
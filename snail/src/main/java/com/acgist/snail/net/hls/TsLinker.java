@@ -1,36 +1,53 @@
 package com.acgist.snail.net.hls;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.acgist.snail.config.DownloadConfig;
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.exception.DownloadException;
+import com.acgist.snail.pojo.bean.M3u8;
+import com.acgist.snail.protocol.hls.M3u8Builder;
 import com.acgist.snail.utils.FileUtils;
+import com.acgist.snail.utils.IoUtils;
 
 /**
  * <p>TS文件连接器</p>
- * <p>将下载的文件列表链接成为一个文件</p>
+ * <p>按照文件链接列表顺序将下载数据直接写入目标文件：不用下载完成后重新读取所有文件</p>
+ * <p>当前写入文件数据直接解密写入目标文件，其他文件数据先放入内存缓存，内存缓存超过限制时写入临时文件。</p>
+ * <p>每个文件单独解密：开始写入文件时使用文件密钥和IV重新初始化加密套件</p>
+ * <p>断点续传：只保存已经连续写入完成的文件</p>
  * 
  * @author acgist
  */
 public final class TsLinker {
-
+	
 	private static final Logger LOGGER = LoggerFactory.getLogger(TsLinker.class);
 	
 	/**
 	 * <p>文件后缀</p>
 	 */
 	private static final String SUFFIX = ".ts";
+	/**
+	 * <p>持久化字节长度：{@value}</p>
+	 * <p>文件索引（4字节）+目标文件大小（8字节）</p>
+	 */
+	private static final int PAYLOAD_LENGTH = 12;
 	
 	/**
 	 * <p>任务名称</p>
@@ -42,24 +59,69 @@ public final class TsLinker {
 	private final String path;
 	/**
 	 * <p>加密套件</p>
+	 * <p>按照文件顺序解密：每个文件开始解密时重新初始化</p>
 	 */
 	private final Cipher cipher;
 	/**
-	 * <p>文件链接列表</p>
+	 * <p>加密套件初始化文件索引</p>
+	 * <p>没有初始化：-1</p>
+	 */
+	private int cipherIndex = -1;
+	/**
+	 * <p>文件解密信息</p>
+	 * <p>文件索引=文件解密信息</p>
+	 */
+	private final Map<Integer, TsCrypt> crypts;
+	/**
+	 * <p>文件数量</p>
+	 * <p>直播流媒体文件数量不断增加</p>
+	 */
+	private int linkSize;
+	/**
+	 * <p>内存缓存最大大小</p>
+	 */
+	private final long maxBufferSize;
+	/**
+	 * <p>目标文件</p>
 	 */
-	private final List<String> links;
+	private FileChannel channel;
+	/**
+	 * <p>当前写入文件索引</p>
+	 * <p>索引之前的文件已经写入完成</p>
+	 */
+	private int index;
+	/**
+	 * <p>已经写入完成文件大小</p>
+	 */
+	private long position;
+	/**
+	 * <p>当前写入文件已经下载大小</p>
+	 */
+	private long indexSize;
+	/**
+	 * <p>内存缓存大小</p>
+	 */
+	private long bufferSize;
+	/**
+	 * <p>等待写入文件</p>
+	 * <p>文件索引=等待写入文件</p>
+	 */
+	private final Map<Integer, TsSegment> segments;
 	
 	/**
 	 * @param name 任务名称
 	 * @param path 文件路径
 	 * @param cipher 加密套件
-	 * @param links 文件链接列表
+	 * @param linkSize 文件数量
 	 */
-	private TsLinker(String name, String path, Cipher cipher, List<String> links) {
+	private TsLinker(String name, String path, Cipher cipher, int linkSize) {
 		this.name = name;
 		this.path = path;
 		this.cipher = cipher;
-		this.links = links;
+		this.linkSize = linkSize;
+		this.maxBufferSize = DownloadConfig.getMemoryBufferByte();
+		this.segments = new HashMap<>();
+		this.crypts = new HashMap<>();
 	}
 	
 	/**
@@ -68,59 +130,506 @@ public final class TsLinker {
 	 * @param name 任务名称
 	 * @param path 文件路径
 	 * @param cipher 加密套件
-	 * @param links 文件链接列表
+	 * @param linkSize 文件数量
 	 * 
 	 * @return TS连接器
 	 */
-	public static final TsLinker newInstance(String name, String path, Cipher cipher, List<String> links) {
-		return new TsLinker(name, path, cipher, links);
+	public static final TsLinker newInstance(String name, String path, Cipher cipher, int linkSize) {
+		return new TsLinker(name, path, cipher, linkSize);
 	}
 	
 	/**
-	 * <p>连接文件</p>
+	 * <p>打开目标文件</p>
+	 * <p>第一次打开时使用持久化数据恢复写入进度，持久化数据错误时重新写入。</p>
+	 * 
+	 * @param payload 持久化数据
 	 * 
-	 * @return 文件大小
+	 * @return 当前写入文件索引
+	 * 
+	 * @throws DownloadException 下载异常
 	 */
-	public long link() {
-		final var files = this.links.stream()
-			.map(link -> {
-				final String fileName = FileUtils.fileName(link);
-				return Paths.get(this.path, fileName).toFile();
-			})
-			.collect(Collectors.toList());
-		final File target = Paths.get(this.path, this.name + SUFFIX).toFile();
-		try(final var output = new FileOutputStream(target)) {
-			for (File file : files) {
-				this.link(file, output);
+	public synchronized int open(byte[] payload) throws DownloadException {
+		if(this.channel != null) {
+			return this.index;
+		}
+		final boolean opened = this.index > 0 || this.indexSize > 0L || !this.segments.isEmpty();
+		try {
+			this.channel = FileChannel.open(Paths.get(this.path, this.name + SUFFIX), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if(!opened) {
+				this.load(payload);
+				this.channel.truncate(this.position);
 			}
+			this.channel.position(this.channel.size());
 		} catch (IOException e) {
-			LOGGER.error("文件连接异常", e);
+			IoUtils.close(this.channel);
+			this.channel = null;
+			throw new DownloadException("TS文件打开失败", e);
 		}
-		return FileUtils.fileSize(target.getAbsolutePath());
+		return this.index;
 	}
 	
 	/**
-	 * <p>连接文件</p>
+	 * <p>读取持久化数据</p>
 	 * 
-	 * @param file 文件
-	 * @param output 输出流
+	 * @param payload 持久化数据
 	 * 
 	 * @throws IOException IO异常
 	 */
-	private void link(File file, OutputStream output) throws IOException {
-		int length = 0;
-		final byte[] bytes = new byte[SystemConfig.DEFAULT_EXCHANGE_BYTES_LENGTH];
-		final boolean crypt = this.cipher != null;
-		try(final var input = new FileInputStream(file)) {
-			while((length = input.read(bytes)) >= 0) {
-				if(crypt) {
-					final byte[] decrypt = this.cipher.update(bytes);
-					output.write(decrypt, 0, decrypt.length);
-				} else {
-					output.write(bytes, 0, length);
+	private void load(byte[] payload) throws IOException {
+		this.index = 0;
+		this.position = 0L;
+		if(payload == null || payload.length != PAYLOAD_LENGTH) {
+			return;
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(payload);
+		final int index = buffer.getInt();
+		final long position = buffer.getLong();
+		if(index < 0 || index > this.linkSize || position < 0L || position > this.channel.size()) {
+			LOGGER.warn("TS文件持久化数据错误：{}-{}", index, position);
+			return;
+		}
+		this.index = index;
+		this.position = position;
+	}
+	
+	/**
+	 * <p>获取持久化数据</p>
+	 * 
+	 * @return 持久化数据
+	 */
+	public synchronized byte[] payload() {
+		final ByteBuffer buffer = ByteBuffer.allocate(PAYLOAD_LENGTH);
+		buffer.putInt(this.index);
+		buffer.putLong(this.position);
+		return buffer.array();
+	}
+	
+	/**
+	 * <p>设置文件解密信息</p>
+	 * <p>M3U8没有IV时使用文件序列号作为IV</p>
+	 * 
+	 * @param index 文件索引
+	 * @param sequence 文件序列号
+	 * @param m3u8 文件所属M3U8
+	 */
+	public synchronized void crypt(int index, long sequence, M3u8 m3u8) {
+		if(this.cipher == null || index < this.index) {
+			return;
+		}
+		final Key secret = m3u8.getSecret();
+		if(secret == null) {
+			LOGGER.warn("TS文件没有密钥：{}", index);
+			return;
+		}
+		final byte[] iv = m3u8.getIv() == null ? M3u8Builder.buildIv(sequence) : m3u8.getIv();
+		this.crypts.put(index, new TsCrypt(secret, new IvParameterSpec(iv)));
+	}
+	
+	/**
+	 * <p>获取文件已经下载大小</p>
+	 * 
+	 * @param index 文件索引
+	 * 
+	 * @return 已经下载大小
+	 */
+	public synchronized long size(int index) {
+		if(index == this.index) {
+			return this.indexSize;
+		}
+		final TsSegment segment = this.segments.get(index);
+		return segment == null ? 0L : segment.size;
+	}
+	
+	/**
+	 * <p>写入数据</p>
+	 * 
+	 * @param index 文件索引
+	 * @param buffer 数据
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	public synchronized void write(int index, ByteBuffer buffer) throws DownloadException {
+		if(index < this.index) {
+			LOGGER.debug("TS文件已经写入完成：{}", index);
+			return;
+		}
+		if(this.channel == null) {
+			throw new DownloadException("TS文件没有打开");
+		}
+		final int length = buffer.remaining();
+		if(index == this.index) {
+			this.indexSize += length;
+			this.decrypt(buffer);
+			return;
+		}
+		final TsSegment segment = this.segment(index);
+		segment.size += length;
+		if(segment.spill == null && this.bufferSize + length <= this.maxBufferSize) {
+			final byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			segment.buffers.add(bytes);
+			this.bufferSize += length;
+			return;
+		}
+		try {
+			if(segment.spill == null) {
+				LOGGER.debug("TS文件内存缓存超过限制（写入临时文件）：{}", segment.file);
+				segment.spill = FileChannel.open(Paths.get(segment.file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				for (byte[] bytes : segment.buffers) {
+					write(segment.spill, ByteBuffer.wrap(bytes));
+				}
+				this.bufferSize -= segment.release();
+			}
+			write(segment.spill, buffer);
+		} catch (IOException e) {
+			throw new DownloadException("TS临时文件写入失败：" + segment.file, e);
+		}
+	}
+	
+	/**
+	 * <p>文件下载完成</p>
+	 * <p>如果是当前写入文件：写入后面所有已经下载完成的文件</p>
+	 * 
+	 * @param index 文件索引
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	public synchronized void complete(int index) throws DownloadException {
+		if(index < this.index) {
+			return;
+		}
+		if(this.channel == null) {
+			throw new DownloadException("TS文件没有打开");
+		}
+		if(index > this.index) {
+			this.segment(index).completed = true;
+			return;
+		}
+		this.finish();
+		TsSegment segment;
+		while((segment = this.segments.remove(this.index)) != null) {
+			// 等待写入文件变成当前写入文件
+			this.indexSize = segment.size;
+			this.flush(segment);
+			if(!segment.completed) {
+				break;
+			}
+			this.finish();
+		}
+	}
+	
+	/**
+	 * <p>重置文件</p>
+	 * <p>文件不支持断点续传需要重新下载时删除已经下载数据</p>
+	 * 
+	 * @param index 文件索引
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	public synchronized void reset(int index) throws DownloadException {
+		if(index < this.index) {
+			return;
+		}
+		if(index > this.index) {
+			final TsSegment segment = this.segments.remove(index);
+			if(segment != null) {
+				this.bufferSize -= segment.release();
+				segment.delete();
+			}
+			return;
+		}
+		this.indexSize = 0L;
+		// 重新写入时重新初始化加密套件
+		this.cipherIndex = -1;
+		try {
+			this.channel.truncate(this.position);
+			this.channel.position(this.position);
+		} catch (IOException e) {
+			throw new DownloadException("TS文件重置失败", e);
+		}
+	}
+	
+	/**
+	 * <p>判断是否写入完成</p>
+	 * 
+	 * @return 是否写入完成
+	 */
+	public synchronized boolean completed() {
+		return this.index >= this.linkSize;
+	}
+	
+	/**
+	 * <p>设置文件数量</p>
+	 * 
+	 * @param linkSize 文件数量
+	 */
+	public synchronized void linkSize(int linkSize) {
+		this.linkSize = linkSize;
+	}
+	
+	/**
+	 * <p>获取已经写入完成文件数量</p>
+	 * 
+	 * @return 已经写入完成文件数量
+	 */
+	public synchronized int index() {
+		return this.index;
+	}
+	
+	/**
+	 * <p>获取已经写入完成文件大小</p>
+	 * 
+	 * @return 已经写入完成文件大小
+	 */
+	public synchronized long position() {
+		return this.position;
+	}
+	
+	/**
+	 * <p>释放资源</p>
+	 * <p>关闭目标文件：等待写入文件保留在内存中继续下载</p>
+	 */
+	public synchronized void release() {
+		LOGGER.debug("TS连接器释放：{}", this.name);
+		IoUtils.close(this.channel);
+		this.channel = null;
+	}
+	
+	/**
+	 * <p>删除临时文件</p>
+	 */
+	public synchronized void delete() {
+		this.segments.values().forEach(segment -> {
+			this.bufferSize -= segment.release();
+			segment.delete();
+		});
+		this.segments.clear();
+		this.crypts.clear();
+	}
+	
+	/**
+	 * <p>获取等待写入文件</p>
+	 * <p>临时文件名称：任务名称-文件索引.ts</p>
+	 * 
+	 * @param index 文件索引
+	 * 
+	 * @return 等待写入文件
+	 */
+	private TsSegment segment(int index) {
+		return this.segments.computeIfAbsent(index, key -> new TsSegment(FileUtils.file(this.path, this.name + "-" + key + SUFFIX)));
+	}
+	
+	/**
+	 * <p>当前写入文件写入完成</p>
+	 * <p>解密失败时重置当前写入文件：目标文件只保留已经写入完成的文件</p>
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	private void finish() throws DownloadException {
+		if(this.cipherIndex == this.index) {
+			try {
+				// 完成解密：去掉填充
+				final byte[] bytes = this.cipher.doFinal();
+				if(bytes != null) {
+					write(this.channel, ByteBuffer.wrap(bytes));
 				}
+			} catch (GeneralSecurityException e) {
+				this.reset(this.index);
+				throw new DownloadException("TS文件解密失败：" + this.index, e);
+			} catch (IOException e) {
+				throw new DownloadException("TS文件写入失败", e);
+			}
+		}
+		this.cipherIndex = -1;
+		this.crypts.remove(this.index);
+		try {
+			this.position = this.channel.position();
+		} catch (IOException e) {
+			throw new DownloadException("TS文件写入失败", e);
+		}
+		this.index++;
+		this.indexSize = 0L;
+	}
+	
+	/**
+	 * <p>写入等待写入文件数据</p>
+	 * 
+	 * @param segment 等待写入文件
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	private void flush(TsSegment segment) throws DownloadException {
+		for (byte[] bytes : segment.buffers) {
+			this.decrypt(ByteBuffer.wrap(bytes));
+		}
+		this.bufferSize -= segment.release();
+		if(segment.spill == null) {
+			return;
+		}
+		try {
+			segment.spill.position(0L);
+			final ByteBuffer buffer = ByteBuffer.allocate(SystemConfig.DEFAULT_EXCHANGE_BYTES_LENGTH);
+			while(segment.spill.read(buffer) >= 0) {
+				buffer.flip();
+				this.decrypt(buffer);
+				buffer.clear();
+			}
+		} catch (IOException e) {
+			throw new DownloadException("TS临时文件读取失败：" + segment.file, e);
+		} finally {
+			segment.delete();
+		}
+	}
+	
+	/**
+	 * <p>解密数据写入目标文件</p>
+	 * 
+	 * @param buffer 数据
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	private void decrypt(ByteBuffer buffer) throws DownloadException {
+		try {
+			if(this.cipher == null) {
+				write(this.channel, buffer);
+				return;
+			}
+			this.initCipher();
+			final byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			final byte[] decrypt = this.cipher.update(bytes);
+			if(decrypt != null) {
+				write(this.channel, ByteBuffer.wrap(decrypt));
+			}
+		} catch (IOException e) {
+			throw new DownloadException("TS文件写入失败", e);
+		}
+	}
+	
+	/**
+	 * <p>使用当前写入文件解密信息初始化加密套件</p>
+	 * 
+	 * @throws DownloadException 下载异常
+	 */
+	private void initCipher() throws DownloadException {
+		if(this.cipherIndex == this.index) {
+			return;
+		}
+		final TsCrypt crypt = this.crypts.get(this.index);
+		if(crypt == null) {
+			throw new DownloadException("TS文件没有解密信息：" + this.index);
+		}
+		try {
+			this.cipher.init(Cipher.DECRYPT_MODE, crypt.secret, crypt.iv);
+		} catch (GeneralSecurityException e) {
+			throw new DownloadException("TS文件加密套件初始化失败：" + this.index, e);
+		}
+		this.cipherIndex = this.index;
+	}
+	
+	/**
+	 * <p>写入数据</p>
+	 * 
+	 * @param channel 文件
+	 * @param buffer 数据
+	 * 
+	 * @throws IOException IO异常
+	 */
+	private static final void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	/**
+	 * <p>等待写入文件</p>
+	 * 
+	 * @author acgist
+	 */
+	private static final class TsSegment {
+	
+		/**
+		 * <p>临时文件路径</p>
+		 */
+		private final String file;
+		/**
+		 * <p>已经下载大小</p>
+		 */
+		private long size;
+		/**
+		 * <p>是否下载完成</p>
+		 */
+		private boolean completed;
+		/**
+		 * <p>内存缓存</p>
+		 */
+		private final List<byte[]> buffers;
+		/**
+		 * <p>临时文件</p>
+		 * <p>内存缓存超过限制时使用</p>
+		 */
+		private FileChannel spill;
+	
+		/**
+		 * @param file 临时文件路径
+		 */
+		private TsSegment(String file) {
+			this.file = file;
+			this.buffers = new ArrayList<>();
+		}
+	
+		/**
+		 * <p>释放内存缓存</p>
+		 * 
+		 * @return 释放内存缓存大小
+		 */
+		private long release() {
+			long size = 0L;
+			for (byte[] bytes : this.buffers) {
+				size += bytes.length;
 			}
+			this.buffers.clear();
+			return size;
 		}
+	
+		/**
+		 * <p>删除临时文件</p>
+		 */
+		private void delete() {
+			if(this.spill != null) {
+				IoUtils.close(this.spill);
+				this.spill = null;
+				FileUtils.delete(this.file);
+			}
+		}
+	
 	}
 	
+	/**
+	 * <p>文件解密信息</p>
+	 * 
+	 * @author acgist
+	 */
+	private static final class TsCrypt {
+	
+		/**
+		 * <p>密钥</p>
+		 */
+		private final Key secret;
+		/**
+		 * <p>IV</p>
+		 */
+		private final IvParameterSpec iv;
+	
+		/**
+		 * @param secret 密钥
+		 * @param iv IV
+		 */
+		private TsCrypt(Key secret, IvParameterSpec iv) {
+			this.secret = secret;
+			this.iv = iv;
+		}
+	
+	}
+
 }
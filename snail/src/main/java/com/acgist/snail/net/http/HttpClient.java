@@ -1,17 +1,29 @@
 package com.acgist.snail.net.http;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
 import java.net.URL;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.Arrays;
+import java.time.Duration;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.net.ssl.HostnameVerifier;
@@ -24,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.SystemThreadContext;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.pojo.wrapper.HttpHeaderWrapper;
 import com.acgist.snail.utils.IoUtils;
@@ -34,6 +47,8 @@ import com.acgist.snail.utils.UrlUtils;
  * <p>HTTP客户端</p>
  * <p>配置参考：https://docs.oracle.com/javase/8/docs/technotes/guides/security/StandardNames.html</p>
  * <p>推荐直接使用HTTP协议下载：HTTPS下载CPU占用较高</p>
+ * <p>使用HTTP连接池时所有客户端共享{@linkplain java.net.http.HttpClient 连接池}：相同地址端口复用长连接，HTTPS通过ALPN协商使用HTTP/2多路复用。</p>
+ * <p>连接池不能设置域名验证：使用JDK默认域名验证（证书域名必须匹配请求域名），比{@link SnailHostnameVerifier}更加严格。</p>
  * 
  * @author acgist
  */
@@ -127,6 +142,18 @@ public final class HttpClient {
 	 * <p>HTTP客户端信息（User-Agent）</p>
 	 */
 	private static final String USER_AGENT;
+	/**
+	 * <p>连接池禁止设置的请求头</p>
+	 * <p>连接池自动管理：小写</p>
+	 */
+	private static final Set<String> POOLED_RESTRICTED_HEADERS = Set.of(
+		"connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning"
+	);
+	/**
+	 * <p>共享HTTP客户端（连接池）</p>
+	 * <p>没有使用HTTP连接池：{@code null}</p>
+	 */
+	private static final java.net.http.HttpClient POOLED_CLIENT;
 	
 	static {
 		final StringBuilder userAgentBuilder = new StringBuilder();
@@ -148,6 +175,11 @@ public final class HttpClient {
 			HttpsURLConnection.setDefaultHostnameVerifier(SnailHostnameVerifier.INSTANCE);
 			HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
 		}
+		if(SystemConfig.isHttpPooled()) {
+			POOLED_CLIENT = buildPooledClient(sslContext);
+		} else {
+			POOLED_CLIENT = null;
+		}
 	}
 	
 	/**
@@ -156,8 +188,28 @@ public final class HttpClient {
 	private final String url;
 	/**
 	 * <p>请求连接</p>
+	 * <p>使用HTTP连接池：{@code null}</p>
 	 */
 	private final HttpURLConnection httpURLConnection;
+	/**
+	 * <p>连接池请求</p>
+	 * <p>没有使用HTTP连接池：{@code null}</p>
+	 */
+	private final HttpRequest.Builder httpRequestBuilder;
+	/**
+	 * <p>连接池响应</p>
+	 * <p>响应数据流由连接池异步读取</p>
+	 */
+	private HttpResponse<InputStream> httpResponse;
+	/**
+	 * <p>连接池响应数据流</p>
+	 */
+	private TimeoutInputStream httpResponseStream;
+	/**
+	 * <p>响应超时时间（单位：毫秒）</p>
+	 * <p>连接池响应数据流读取超时时间</p>
+	 */
+	private final int receiveTimeout;
 	/**
 	 * <p>状态码</p>
 	 */
@@ -176,7 +228,16 @@ public final class HttpClient {
 	 */
 	private HttpClient(String url, int connectTimeout, int receiveTimeout) throws NetException {
 		this.url = url;
-		this.httpURLConnection = this.buildHttpURLConnection(connectTimeout, receiveTimeout);
+		this.receiveTimeout = receiveTimeout;
+		final URI uri = POOLED_CLIENT == null ? null : this.buildURI();
+		if(uri == null) {
+			this.httpRequestBuilder = null;
+			this.httpURLConnection = this.buildHttpURLConnection(connectTimeout, receiveTimeout);
+		} else {
+			// 连接池连接超时时间统一配置
+			this.httpRequestBuilder = this.buildHttpRequestBuilder(uri, receiveTimeout);
+			this.httpURLConnection = null;
+		}
 		this.buildDefaultHeader();
 	}
 	
@@ -227,7 +288,10 @@ public final class HttpClient {
 	 * @return {@link HttpClient}
 	 */
 	public HttpClient cache() {
-		this.httpURLConnection.setUseCaches(true);
+		// 连接池不支持缓存
+		if(this.httpURLConnection != null) {
+			this.httpURLConnection.setUseCaches(true);
+		}
 		return this;
 	}
 	
@@ -240,13 +304,18 @@ public final class HttpClient {
 	 * @return {@link HttpClient}
 	 */
 	public HttpClient header(String key, String value) {
-		this.httpURLConnection.setRequestProperty(key, value);
+		if(this.httpURLConnection != null) {
+			this.httpURLConnection.setRequestProperty(key, value);
+		} else if(!POOLED_RESTRICTED_HEADERS.contains(key.toLowerCase())) {
+			this.httpRequestBuilder.setHeader(key, value);
+		}
 		return this;
 	}
 	
 	/**
 	 * <p>启用长连接</p>
 	 * <p>系统默认使用长连接</p>
+	 * <p>连接池自动管理长连接：忽略</p>
 	 * 
 	 * @return {@link HttpClient}
 	 */
@@ -256,6 +325,7 @@ public final class HttpClient {
 	
 	/**
 	 * <p>禁用长连接</p>
+	 * <p>连接池自动管理长连接：忽略</p>
 	 * 
 	 * @return {@link HttpClient}
 	 */
@@ -344,6 +414,9 @@ public final class HttpClient {
 	 * @throws NetException 网络异常
 	 */
 	public HttpClient execute(Method method, String body) throws NetException {
+		if(this.httpRequestBuilder != null) {
+			return this.executePooled(method, body);
+		}
 		OutputStream output = null;
 		try {
 			// 设置请求方式
@@ -377,6 +450,40 @@ public final class HttpClient {
 		return this;
 	}
 	
+	/**
+	 * <p>使用连接池执行请求</p>
+	 * <p>请求发送和响应数据读取都由连接池异步处理：响应头读取完成后返回，响应数据流式读取。</p>
+	 * 
+	 * @param method 请求方法
+	 * @param body 请求数据
+	 * 
+	 * @return {@link HttpClient}
+	 * 
+	 * @throws NetException 网络异常
+	 */
+	private HttpClient executePooled(Method method, String body) throws NetException {
+		final HttpRequest.BodyPublisher publisher;
+		if(method == Method.GET || method == Method.HEAD) {
+			publisher = BodyPublishers.noBody();
+		} else if(method == Method.POST) {
+			publisher = body == null ? BodyPublishers.noBody() : BodyPublishers.ofByteArray(body.getBytes());
+		} else {
+			throw new NetException("不支持的请求方式：" + method);
+		}
+		try {
+			final var request = this.httpRequestBuilder.method(method.name(), publisher).build();
+			this.httpResponse = POOLED_CLIENT.send(request, BodyHandlers.ofInputStream());
+			// 设置状态码
+			this.code = this.httpResponse.statusCode();
+		} catch (IOException e) {
+			throw new NetException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NetException(e);
+		}
+		return this;
+	}
+	
 	/**
 	 * <p>获取状态码</p>
 	 * 
@@ -437,12 +544,22 @@ public final class HttpClient {
 	/**
 	 * <p>获取响应数据流</p>
 	 * <p>使用完成需要关闭（归还连接）：下次相同地址端口继续使用</p>
+	 * <p>连接池响应数据流没有读取超时：读取数据超过响应超时时间没有返回时关闭数据流</p>
 	 * 
 	 * @return 响应数据流
 	 * 
 	 * @throws NetException 网络异常
 	 */
 	public InputStream response() throws NetException {
+		if(this.httpRequestBuilder != null) {
+			if(this.httpResponse == null) {
+				throw new NetException("HTTP请求没有执行：" + this.url);
+			}
+			if(this.httpResponseStream == null) {
+				this.httpResponseStream = new TimeoutInputStream(this.httpResponse.body(), this.receiveTimeout);
+			}
+			return this.httpResponseStream;
+		}
 		try {
 			return this.httpURLConnection.getInputStream();
 		} catch (IOException e) {
@@ -460,14 +577,8 @@ public final class HttpClient {
 	public byte[] responseToBytes() throws NetException {
 		final var input = this.response();
 		try {
-			final int size = input.available();
-			final var bytes = new byte[size];
-			final int length = input.read(bytes);
-			if(length == size) {
-				return bytes;
-			} else {
-				return Arrays.copyOf(bytes, length);
-			}
+			// 连接池响应数据异步读取：不能使用可读数据大小
+			return input.readAllBytes();
 		} catch (IOException e) {
 			throw new NetException(e);
 		} finally {
@@ -506,7 +617,13 @@ public final class HttpClient {
 	 */
 	public HttpHeaderWrapper responseHeader() {
 		if(this.httpHeaderWrapper == null) {
-			this.httpHeaderWrapper = HttpHeaderWrapper.newInstance(this.httpURLConnection.getHeaderFields());
+			if(this.httpURLConnection != null) {
+				this.httpHeaderWrapper = HttpHeaderWrapper.newInstance(this.httpURLConnection.getHeaderFields());
+			} else if(this.httpResponse != null) {
+				this.httpHeaderWrapper = HttpHeaderWrapper.newInstance(this.httpResponse.headers().map());
+			} else {
+				this.httpHeaderWrapper = HttpHeaderWrapper.newInstance(Map.of());
+			}
 		}
 		return this.httpHeaderWrapper;
 	}
@@ -514,11 +631,18 @@ public final class HttpClient {
 	/**
 	 * <p>关闭连接</p>
 	 * <p>管理连接和底层Socket：不能保持长连接</p>
+	 * <p>使用连接池时关闭响应数据流：没有读取完成的连接不会放回连接池</p>
 	 * 
 	 * @return {@link HttpClient}
 	 */
 	public HttpClient shutdown() {
-		this.httpURLConnection.disconnect();
+		if(this.httpURLConnection != null) {
+			this.httpURLConnection.disconnect();
+		} else if(this.httpResponseStream != null) {
+			IoUtils.close(this.httpResponseStream);
+		} else if(this.httpResponse != null) {
+			IoUtils.close(this.httpResponse.body());
+		}
 		return this;
 	}
 	
@@ -552,6 +676,46 @@ public final class HttpClient {
 		}
 	}
 	
+	/**
+	 * <p>创建连接池请求地址</p>
+	 * <p>连接池地址校验比较严格：地址格式错误时使用请求连接</p>
+	 * 
+	 * @return 请求地址（格式错误：{@code null}）
+	 */
+	private URI buildURI() {
+		try {
+			return URI.create(this.url);
+		} catch (IllegalArgumentException e) {
+			LOGGER.debug("HTTP连接池地址格式错误：{}", this.url, e);
+		}
+		return null;
+	}
+	
+	/**
+	 * <p>创建连接池请求</p>
+	 * <p>HTTP协议使用HTTP/1.1：防止升级协议（h2c）导致部分服务器响应错误</p>
+	 * 
+	 * @param uri 请求地址
+	 * @param receiveTimeout 响应超时时间（单位：毫秒）
+	 * 
+	 * @return 连接池请求
+	 * 
+	 * @throws NetException 网络异常
+	 */
+	private HttpRequest.Builder buildHttpRequestBuilder(URI uri, int receiveTimeout) throws NetException {
+		try {
+			final var builder = HttpRequest.newBuilder(uri)
+				// 响应超时时间
+				.timeout(Duration.ofMillis(receiveTimeout));
+			if(!"https".equalsIgnoreCase(uri.getScheme())) {
+				builder.version(Version.HTTP_1_1);
+			}
+			return builder;
+		} catch (IllegalArgumentException e) {
+			throw new NetException(e);
+		}
+	}
+	
 	/**
 	 * <p>设置默认请求头</p>
 	 */
@@ -562,6 +726,27 @@ public final class HttpClient {
 		this.header(HttpHeaderWrapper.HEADER_USER_AGENT, USER_AGENT);
 	}
 
+	/**
+	 * <p>新建共享HTTP客户端（连接池）</p>
+	 * 
+	 * @param sslContext SSLContext
+	 * 
+	 * @return 共享HTTP客户端
+	 */
+	private static final java.net.http.HttpClient buildPooledClient(SSLContext sslContext) {
+		final var builder = java.net.http.HttpClient.newBuilder()
+			// HTTPS优先使用HTTP/2
+			.version(Version.HTTP_2)
+			// 是否自动重定向
+			.followRedirects(Redirect.NORMAL)
+			// 连接超时时间
+			.connectTimeout(Duration.ofMillis(SystemConfig.CONNECT_TIMEOUT_MILLIS));
+		if(sslContext != null) {
+			builder.sslContext(sslContext);
+		}
+		return builder.build();
+	}
+	
 	/**
 	 * <p>新建SSLContext</p>
 	 * 
@@ -607,6 +792,119 @@ public final class HttpClient {
 		
 	}
 	
+	/**
+	 * <p>连接池响应数据流</p>
+	 * <p>连接池只能设置响应头超时时间：读取数据超过超时时间没有返回时关闭数据流，读取线程抛出超时异常。</p>
+	 * <p>超时检测周期为超时时间的一半：实际超时时间误差不超过一个检测周期</p>
+	 * 
+	 * @author acgist
+	 */
+	private static final class TimeoutInputStream extends FilterInputStream {
+		
+		/**
+		 * <p>超时时间（单位：毫秒）</p>
+		 */
+		private final long timeout;
+		/**
+		 * <p>开始读取时间</p>
+		 * <p>没有读取：{@code 0}</p>
+		 */
+		private volatile long readTime;
+		/**
+		 * <p>是否超时</p>
+		 */
+		private volatile boolean timeoutClose;
+		/**
+		 * <p>超时检测定时器</p>
+		 */
+		private final ScheduledFuture<?> timer;
+		
+		/**
+		 * @param input 响应数据流
+		 * @param timeout 超时时间（单位：毫秒）
+		 */
+		private TimeoutInputStream(InputStream input, long timeout) {
+			super(input);
+			this.timeout = timeout;
+			final long period = Math.max(SystemConfig.ONE_SECOND_MILLIS, timeout / 2);
+			this.timer = SystemThreadContext.timerAtFixedRate(period, period, TimeUnit.MILLISECONDS, this::checkTimeout);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			this.readTime = System.currentTimeMillis();
+			try {
+				return this.readEnd(super.read());
+			} catch (IOException e) {
+				throw this.readException(e);
+			} finally {
+				this.readTime = 0L;
+			}
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			this.readTime = System.currentTimeMillis();
+			try {
+				return this.readEnd(super.read(bytes, offset, length));
+			} catch (IOException e) {
+				throw this.readException(e);
+			} finally {
+				this.readTime = 0L;
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			SystemThreadContext.shutdown(this.timer);
+			super.close();
+		}
+		
+		/**
+		 * <p>读取完成</p>
+		 * <p>读取结束关闭超时检测</p>
+		 * 
+		 * @param result 读取结果
+		 * 
+		 * @return 读取结果
+		 */
+		private int readEnd(int result) {
+			if(result < 0) {
+				SystemThreadContext.shutdown(this.timer);
+			}
+			return result;
+		}
+		
+		/**
+		 * <p>读取异常</p>
+		 * 
+		 * @param e 异常
+		 * 
+		 * @return 超时关闭：超时异常；其他：原始异常；
+		 */
+		private IOException readException(IOException e) {
+			if(this.timeoutClose) {
+				final SocketTimeoutException timeoutException = new SocketTimeoutException("HTTP响应数据读取超时");
+				timeoutException.initCause(e);
+				return timeoutException;
+			}
+			return e;
+		}
+		
+		/**
+		 * <p>超时检测</p>
+		 */
+		private void checkTimeout() {
+			final long readTime = this.readTime;
+			if(readTime > 0L && System.currentTimeMillis() - readTime >= this.timeout) {
+				LOGGER.debug("HTTP响应数据读取超时：{}", this.timeout);
+				this.timeoutClose = true;
+				IoUtils.close(this);
+			}
+		}
+		
+	}
+	
 	/**
 	 * <p>证书验证</p>
 	 * 
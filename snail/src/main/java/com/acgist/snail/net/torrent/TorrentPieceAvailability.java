@@ -0,0 +1,132 @@
+package com.acgist.snail.net.torrent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>Piece可用数量</p>
+ * <p>统计任务已经连接的Peer拥有每个Piece的数量：根据bitfield、have、haveAll、haveNone、dontHave消息维护</p>
+ * <p>磁力链接下载种子文件时不知道Piece数量：数组根据Piece索引自动扩容</p>
+ * 
+ * @author acgist
+ */
+public final class TorrentPieceAvailability {
+	
+	/**
+	 * <p>Piece可用数量</p>
+	 * <p>数组索引=Piece索引</p>
+	 */
+	private int[] counts;
+	
+	public TorrentPieceAvailability() {
+		this.counts = new int[0];
+	}
+	
+	/**
+	 * <p>增加Piece可用数量</p>
+	 * 
+	 * @param index Piece索引
+	 */
+	public synchronized void increment(int index) {
+		if(index < 0) {
+			return;
+		}
+		this.ensureCapacity(index + 1);
+		this.counts[index]++;
+	}
+	
+	/**
+	 * <p>增加Piece可用数量</p>
+	 * 
+	 * @param pieces Piece位图
+	 */
+	public synchronized void increment(BitSet pieces) {
+		this.ensureCapacity(pieces.length());
+		for (int index = pieces.nextSetBit(0); index >= 0; index = pieces.nextSetBit(index + 1)) {
+			this.counts[index]++;
+		}
+	}
+	
+	/**
+	 * <p>减少Piece可用数量</p>
+	 * 
+	 * @param index Piece索引
+	 */
+	public synchronized void decrement(int index) {
+		if(index < 0 || index >= this.counts.length) {
+			return;
+		}
+		if(this.counts[index] > 0) {
+			this.counts[index]--;
+		}
+	}
+	
+	/**
+	 * <p>减少Piece可用数量</p>
+	 * 
+	 * @param pieces Piece位图
+	 */
+	public synchronized void decrement(BitSet pieces) {
+		for (int index = pieces.nextSetBit(0); index >= 0 && index < this.counts.length; index = pieces.nextSetBit(index + 1)) {
+			if(this.counts[index] > 0) {
+				this.counts[index]--;
+			}
+		}
+	}
+	
+	/**
+	 * <p>获取Piece可用数量</p>
+	 * 
+	 * @param index Piece索引
+	 * 
+	 * @return Piece可用数量
+	 */
+	public synchronized int count(int index) {
+		if(index < 0 || index >= this.counts.length) {
+			return 0;
+		}
+		return this.counts[index];
+	}
+	
+	/**
+	 * <p>选择最少可用Piece</p>
+	 * <p>可用数量相同时随机选择：防止所有Peer选择相同Piece</p>
+	 * 
+	 * @param pieces 可以选择的Piece位图
+	 * 
+	 * @return Piece索引（没有可以选择的Piece：-1）
+	 */
+	public synchronized int rarest(BitSet pieces) {
+		int rarest = -1;
+		int rarestCount = Integer.MAX_VALUE;
+		int sameCount = 0;
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int index = pieces.nextSetBit(0); index >= 0; index = pieces.nextSetBit(index + 1)) {
+			final int count = index < this.counts.length ? this.counts[index] : 0;
+			if(count < rarestCount) {
+				rarest = index;
+				rarestCount = count;
+				sameCount = 1;
+			} else if(count == rarestCount) {
+				// 蓄水池抽样：相同数量等概率选择
+				if(random.nextInt(++sameCount) == 0) {
+					rarest = index;
+				}
+			}
+		}
+		return rarest;
+	}
+	
+	/**
+	 * <p>扩容</p>
+	 * 
+	 * @param length 最小长度
+	 */
+	private void ensureCapacity(int length) {
+		if(length > this.counts.length) {
+			this.counts = Arrays.copyOf(this.counts, Math.max(length, this.counts.length * 2));
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.acgist.snail.net.torrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.pojo.bean.TorrentPiece;
+
+/**
+ * <p>Piece缓存</p>
+ * <p>文件流组所有文件流共享的写回缓存</p>
+ * <p>索引：Piece开始偏移（任务中的绝对偏移）</p>
+ * <p>Piece按照文件拆分下载（一个Piece不会跨越多个文件），所以开始偏移可以唯一确定一个缓存Piece。</p>
+ * <p>刷出时按照偏移顺序写入文件：顺序写入</p>
+ * 
+ * @author acgist
+ */
+public final class TorrentPieceCache {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(TorrentPieceCache.class);
+	
+	/**
+	 * <p>缓存Piece</p>
+	 * <p>Piece开始偏移=Piece</p>
+	 */
+	private final ConcurrentNavigableMap<Long, TorrentPiece> pieces;
+	/**
+	 * <p>缓存大小</p>
+	 */
+	private final AtomicLong size;
+	/**
+	 * <p>命中次数</p>
+	 */
+	private final AtomicLong hitCount;
+	/**
+	 * <p>没有命中次数</p>
+	 */
+	private final AtomicLong missCount;
+	
+	public TorrentPieceCache() {
+		this.pieces = new ConcurrentSkipListMap<>();
+		this.size = new AtomicLong(0);
+		this.hitCount = new AtomicLong(0);
+		this.missCount = new AtomicLong(0);
+	}
+	
+	/**
+	 * <p>添加缓存Piece</p>
+	 * 
+	 * @param piece Piece
+	 * 
+	 * @return 是否添加成功（已经存在相同偏移Piece：失败）
+	 */
+	public boolean put(TorrentPiece piece) {
+		if(this.pieces.putIfAbsent(piece.beginPos(), piece) == null) {
+			this.size.addAndGet(piece.getLength());
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * <p>获取缓存Piece</p>
+	 * 
+	 * @param beginPos Piece开始偏移
+	 * 
+	 * @return Piece（没有缓存：null）
+	 */
+	public TorrentPiece get(long beginPos) {
+		final TorrentPiece piece = this.pieces.get(beginPos);
+		if(piece == null) {
+			this.missCount.incrementAndGet();
+		} else {
+			this.hitCount.incrementAndGet();
+		}
+		return piece;
+	}
+	
+	/**
+	 * <p>删除缓存Piece</p>
+	 * <p>只有缓存Piece和指定Piece相同时才删除</p>
+	 * 
+	 * @param piece Piece
+	 * 
+	 * @return 是否删除成功
+	 */
+	public boolean remove(TorrentPiece piece) {
+		if(this.pieces.remove(piece.beginPos(), piece)) {
+			this.size.addAndGet(-piece.getLength());
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * <p>获取范围内的缓存Piece</p>
+	 * <p>按照开始偏移排序</p>
+	 * 
+	 * @param beginPos 开始偏移：包含
+	 * @param endPos 结束偏移：不包含
+	 * 
+	 * @return 缓存Piece
+	 */
+	public List<TorrentPiece> pieces(long beginPos, long endPos) {
+		if(beginPos >= endPos) {
+			return List.of();
+		}
+		return new ArrayList<>(this.pieces.subMap(beginPos, endPos).values());
+	}
+	
+	/**
+	 * <p>判断缓存大小是否超过限制</p>
+	 * 
+	 * @param limit 限制大小
+	 * 
+	 * @return 是否超过
+	 */
+	public boolean overflow(long limit) {
+		return this.size.get() > limit;
+	}
+	
+	/**
+	 * <p>获取缓存大小</p>
+	 * 
+	 * @return 缓存大小
+	 */
+	public long size() {
+		return this.size.get();
+	}
+	
+	/**
+	 * <p>获取命中次数</p>
+	 * 
+	 * @return 命中次数
+	 */
+	public long hitCount() {
+		return this.hitCount.get();
+	}
+	
+	/**
+	 * <p>获取没有命中次数</p>
+	 * 
+	 * @return 没有命中次数
+	 */
+	public long missCount() {
+		return this.missCount.get();
+	}
+	
+	/**
+	 * <p>记录缓存信息</p>
+	 */
+	public void logger() {
+		if(LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Piece缓存信息，缓存数量：{}，缓存大小：{}，命中次数：{}，没有命中次数：{}",
+				this.pieces.size(),
+				this.size.get(),
+				this.hitCount.get(),
+				this.missCount.get()
+			);
+		}
+	}
+
+}
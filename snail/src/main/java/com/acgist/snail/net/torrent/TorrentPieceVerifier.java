@@ -0,0 +1,286 @@
+package com.acgist.snail.net.torrent;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.SystemThreadContext;
+import com.acgist.snail.utils.DigestUtils;
+
+/**
+ * <p>Piece校验器</p>
+ * <p>按照Piece索引顺序读取数据（跨越文件读取），读取的数据交给校验线程池并行计算Hash。</p>
+ * <p>预读Piece数量等于校验线程数量乘以{@link #READ_AHEAD_SIZE}：缓冲全部使用时等待校验完成</p>
+ * <p>Piece数据不完整（跨越没有加载的文件）时不能校验Hash：直接验证是否含有数据</p>
+ * 
+ * @author acgist
+ */
+public final class TorrentPieceVerifier {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(TorrentPieceVerifier.class);
+	
+	/**
+	 * <p>每个校验线程预读Piece数量：{@value}</p>
+	 */
+	private static final int READ_AHEAD_SIZE = 2;
+	
+	/**
+	 * <p>Piece数据读取器</p>
+	 * 
+	 * @author acgist
+	 */
+	@FunctionalInterface
+	public interface PieceReader {
+	
+		/**
+		 * <p>读取Piece数据写入缓冲</p>
+		 * 
+		 * @param index Piece索引
+		 * @param length Piece大小
+		 * @param buffer 数据缓冲
+		 * 
+		 * @return 是否读取完整Piece数据
+		 */
+		boolean read(int index, int length, ByteBuffer buffer);
+	
+	}
+	
+	/**
+	 * <p>Piece大小</p>
+	 */
+	private final long pieceLength;
+	/**
+	 * <p>任务大小</p>
+	 */
+	private final long totalLength;
+	/**
+	 * <p>Piece的Hash数据</p>
+	 */
+	private final byte[] pieceHashs;
+	/**
+	 * <p>Piece数据读取器</p>
+	 */
+	private final PieceReader pieceReader;
+	/**
+	 * <p>校验线程数量</p>
+	 */
+	private final int threadSize;
+	/**
+	 * <p>需要校验Piece数量</p>
+	 */
+	private volatile int verifySize;
+	/**
+	 * <p>已经校验Piece数量</p>
+	 */
+	private final AtomicInteger finishSize;
+	/**
+	 * <p>SHA-1算法工具</p>
+	 * <p>每个校验线程单独使用</p>
+	 */
+	private final ThreadLocal<MessageDigest> digests;
+	
+	/**
+	 * @param pieceLength Piece大小
+	 * @param totalLength 任务大小
+	 * @param pieceHashs Piece的Hash数据
+	 * @param pieceReader Piece数据读取器
+	 * @param threadSize 校验线程数量
+	 */
+	private TorrentPieceVerifier(long pieceLength, long totalLength, byte[] pieceHashs, PieceReader pieceReader, int threadSize) {
+		this.pieceLength = pieceLength;
+		this.totalLength = totalLength;
+		this.pieceHashs = pieceHashs;
+		this.pieceReader = pieceReader;
+		this.threadSize = Math.max(1, threadSize);
+		this.finishSize = new AtomicInteger(0);
+		this.digests = ThreadLocal.withInitial(DigestUtils::sha1);
+	}
+	
+	/**
+	 * <p>创建Piece校验器</p>
+	 * <p>校验线程数量：{@link SystemConfig#getVerifyThreadSize()}</p>
+	 * 
+	 * @param pieceLength Piece大小
+	 * @param totalLength 任务大小
+	 * @param pieceHashs Piece的Hash数据
+	 * @param pieceReader Piece数据读取器
+	 * 
+	 * @return Piece校验器
+	 */
+	public static final TorrentPieceVerifier newInstance(long pieceLength, long totalLength, byte[] pieceHashs, PieceReader pieceReader) {
+		return newInstance(pieceLength, totalLength, pieceHashs, pieceReader, SystemConfig.getVerifyThreadSize());
+	}
+	
+	/**
+	 * <p>创建Piece校验器</p>
+	 * 
+	 * @param pieceLength Piece大小
+	 * @param totalLength 任务大小
+	 * @param pieceHashs Piece的Hash数据
+	 * @param pieceReader Piece数据读取器
+	 * @param threadSize 校验线程数量
+	 * 
+	 * @return Piece校验器
+	 */
+	public static final TorrentPieceVerifier newInstance(long pieceLength, long totalLength, byte[] pieceHashs, PieceReader pieceReader, int threadSize) {
+		return new TorrentPieceVerifier(pieceLength, totalLength, pieceHashs, pieceReader, threadSize);
+	}
+	
+	/**
+	 * <p>校验Piece</p>
+	 * 
+	 * @param pieces 需要校验Piece位图
+	 * 
+	 * @return 校验成功Piece位图
+	 * 
+	 * @throws InterruptedIOException 校验中断
+	 */
+	public BitSet verify(BitSet pieces) throws InterruptedIOException {
+		final int pieceSize = this.pieceHashs.length / SystemConfig.SHA1_HASH_LENGTH;
+		final BitSet verifyPieces = new BitSet();
+		verifyPieces.or(pieces);
+		// 排除超过Piece数量的索引
+		verifyPieces.clear(pieceSize, Math.max(pieceSize, verifyPieces.length()));
+		this.verifySize = verifyPieces.cardinality();
+		this.finishSize.set(0);
+		final BitSet successPieces = new BitSet();
+		final int bufferSize = this.threadSize * READ_AHEAD_SIZE;
+		// 空闲缓冲：限制预读Piece数量
+		final BlockingQueue<ByteBuffer> buffers = new LinkedBlockingQueue<>(bufferSize);
+		final ExecutorService executor = SystemThreadContext.newExecutor(this.threadSize, this.threadSize, bufferSize, 60L, SystemThreadContext.SNAIL_THREAD_BT_VERIFY);
+		final long startTime = System.currentTimeMillis();
+		int buildSize = 0;
+		try {
+			int index = verifyPieces.nextSetBit(0);
+			while(index >= 0) {
+				final ByteBuffer buffer;
+				if(buildSize < bufferSize) {
+					buildSize++;
+					buffer = ByteBuffer.allocate((int) this.pieceLength);
+				} else {
+					buffer = buffers.take();
+				}
+				final int pieceIndex = index;
+				final int length = this.pieceLength(pieceIndex);
+				buffer.clear().limit(length);
+				final boolean complete = this.pieceReader.read(pieceIndex, length, buffer);
+				buffer.flip();
+				executor.execute(() -> {
+					try {
+						if(this.verify(pieceIndex, complete, buffer)) {
+							synchronized (successPieces) {
+								successPieces.set(pieceIndex);
+							}
+						}
+					} catch (Exception e) {
+						LOGGER.error("Piece校验异常：{}", pieceIndex, e);
+					} finally {
+						this.finish();
+						buffers.offer(buffer);
+					}
+				});
+				index = verifyPieces.nextSetBit(index + 1);
+			}
+			// 等待所有缓冲回收：所有Piece校验完成
+			for (int count = 0; count < buildSize; count++) {
+				buffers.take();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Piece校验中断");
+		} finally {
+			SystemThreadContext.shutdownNow(executor);
+		}
+		LOGGER.debug("Piece校验完成：{}-{}-{}", this.verifySize, successPieces.cardinality(), System.currentTimeMillis() - startTime);
+		return successPieces;
+	}
+	
+	/**
+	 * <p>获取校验进度</p>
+	 * <p>校验进度范围：{@code 0} ~ {@code 100}</p>
+	 * 
+	 * @return 校验进度
+	 */
+	public int progress() {
+		final int verifySize = this.verifySize;
+		if(verifySize <= 0) {
+			return 100;
+		}
+		return (int) (this.finishSize.get() * 100L / verifySize);
+	}
+	
+	/**
+	 * <p>完成Piece校验</p>
+	 * <p>每完成十分之一记录一次进度</p>
+	 */
+	private void finish() {
+		final int finishSize = this.finishSize.incrementAndGet();
+		final int step = Math.max(1, this.verifySize / 10);
+		if(finishSize % step == 0 && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Piece校验进度：{}-{}", finishSize, this.verifySize);
+		}
+	}
+	
+	/**
+	 * <p>校验Piece数据</p>
+	 * 
+	 * @param index Piece索引
+	 * @param complete 是否完整Piece数据
+	 * @param buffer Piece数据
+	 * 
+	 * @return 是否校验成功
+	 */
+	private boolean verify(int index, boolean complete, ByteBuffer buffer) {
+		if(!complete) {
+			// 数据不完整：验证是否含有数据
+			return this.hasData(buffer);
+		}
+		final MessageDigest digest = this.digests.get();
+		digest.update(buffer);
+		final byte[] hash = digest.digest();
+		final int offset = index * SystemConfig.SHA1_HASH_LENGTH;
+		return Arrays.equals(
+			hash, 0, SystemConfig.SHA1_HASH_LENGTH,
+			this.pieceHashs, offset, offset + SystemConfig.SHA1_HASH_LENGTH
+		);
+	}
+	
+	/**
+	 * <p>获取Piece大小</p>
+	 * <p>最后一块Piece大小可能小于{@link #pieceLength}</p>
+	 * 
+	 * @param index Piece索引
+	 * 
+	 * @return Piece大小
+	 */
+	private int pieceLength(int index) {
+		return (int) Math.min(this.pieceLength, this.totalLength - index * this.pieceLength);
+	}
+	
+	/**
+	 * <p>判断是否含有数据</p>
+	 * 
+	 * @param buffer 数据
+	 * 
+	 * @return 是否含有
+	 */
+	private boolean hasData(ByteBuffer buffer) {
+		while(buffer.hasRemaining()) {
+			if(buffer.get() != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
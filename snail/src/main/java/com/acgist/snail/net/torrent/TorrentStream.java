@@ -1,19 +1,21 @@
 package com.acgist.snail.net.torrent;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
-import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.MetricsContext;
 import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.pojo.bean.TorrentPiece;
 import com.acgist.snail.utils.ArrayUtils;
@@ -33,10 +35,16 @@ public final class TorrentStream {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TorrentStream.class);
 	
 	/**
-	 * <p>文件流模式：{@value}</p>
+	 * <p>Piece写入文件时间</p>
 	 */
-	private static final String STREAM_MODE = "rw";
-
+	private static final MetricsContext.Histogram FLUSH_HISTOGRAM = MetricsContext.getInstance().histogram("snail_torrent_flush_seconds", "Piece写入文件时间");
+	
+	/**
+	 * <p>内存映射分段大小：{@value}</p>
+	 * <p>单个映射不能超过2GB</p>
+	 */
+	private static final long MAPPED_SEGMENT_SIZE = 1024L * SystemConfig.ONE_MB;
+	
 	/**
 	 * <p>文件是否选择下载</p>
 	 */
@@ -73,12 +81,6 @@ public final class TorrentStream {
 	 * <p>文件Piece数量</p>
 	 */
 	private final int filePieceSize;
-	/**
-	 * <p>缓冲大小</p>
-	 * 
-	 * @see TorrentStreamGroup#fileBufferSize
-	 */
-	private final AtomicLong fileBufferSize;
 	/**
 	 * <p>已下载大小</p>
 	 */
@@ -90,7 +92,7 @@ public final class TorrentStream {
 	private final BitSet pieces;
 	/**
 	 * <p>暂停Piece位图</p>
-	 * <p>上次下载失败的Piece，下次选择Piece时排除这些Piece，成功选择Piece后清空。</p>
+	 * <p>下载失败的Piece，选择Piece时优先排除这些Piece，重新选中或者下载完成后清除。</p>
 	 */
 	private final BitSet pausePieces;
 	/**
@@ -99,14 +101,29 @@ public final class TorrentStream {
 	 */
 	private final BitSet downloadPieces;
 	/**
-	 * <p>Piece缓存队列</p>
+	 * <p>Piece缓存</p>
+	 * 
+	 * @see TorrentStreamGroup#pieceCache
+	 */
+	private final TorrentPieceCache pieceCache;
+	/**
+	 * <p>刷出锁</p>
+	 */
+	private final Object flushLock = new Object();
+	/**
+	 * <p>文件通道</p>
+	 * <p>使用绝对位置读写（没有共享文件指针）：读取数据和刷出缓存不用加锁</p>
+	 */
+	private final FileChannel fileChannel;
+	/**
+	 * <p>内存映射</p>
+	 * <p>文件下载完成（做种）后使用内存映射读取数据</p>
 	 */
-	private final BlockingQueue<TorrentPiece> cachePieces;
+	private volatile MappedByteBuffer[] mappedBuffers;
 	/**
-	 * <p>文件流</p>
-	 * <p>不用使用NIO（FileChannel）没有性能提升</p>
+	 * <p>内存映射大小</p>
 	 */
-	private final RandomAccessFile fileStream;
+	private volatile long mappedSize;
 	/**
 	 * <p>文件流组</p>
 	 */
@@ -118,14 +135,14 @@ public final class TorrentStream {
 	 * @param size 文件大小
 	 * @param pos 文件开始偏移
 	 * @param completed 是否完成
-	 * @param fileBufferSize 缓冲大小
+	 * @param pieceCache Piece缓存
 	 * @param torrentStreamGroup 文件流组
 	 * 
 	 * @throws DownloadException 下载异常
 	 */
 	private TorrentStream(
 		long pieceLength, String path, long size, long pos, boolean completed,
-		AtomicLong fileBufferSize, TorrentStreamGroup torrentStreamGroup
+		TorrentPieceCache pieceCache, TorrentStreamGroup torrentStreamGroup
 	) throws DownloadException {
 		this.pieceLength = pieceLength;
 		this.filePath = path;
@@ -143,16 +160,18 @@ public final class TorrentStream {
 			// 最后一块没有数据
 			this.filePieceSize = filePieceSize;
 		}
-		this.fileBufferSize = fileBufferSize;
 		this.fileDownloadSize = new AtomicLong(0);
 		this.pieces = new BitSet();
 		this.pausePieces = new BitSet();
 		this.downloadPieces = new BitSet();
-		this.cachePieces = new LinkedBlockingQueue<>();
-		this.fileStream = this.buildFileStream();
+		this.pieceCache = pieceCache;
+		this.fileChannel = this.buildFileChannel();
 		this.torrentStreamGroup = torrentStreamGroup;
 		this.buildPieces(completed);
 		this.buildFileDownloadSize();
+		if(this.completed()) {
+			this.buildMappedBuffers();
+		}
 	}
 	
 	/**
@@ -163,7 +182,7 @@ public final class TorrentStream {
 	 * @param size 文件大小
 	 * @param pos 文件开始偏移
 	 * @param completed 是否完成
-	 * @param fileBufferSize 缓冲大小
+	 * @param pieceCache Piece缓存
 	 * @param torrentStreamGroup 文件流组
 	 * 
 	 * @return 文件流
@@ -172,9 +191,9 @@ public final class TorrentStream {
 	 */
 	public static final TorrentStream newInstance(
 		long pieceLength, String path, long size, long pos, boolean completed,
-		AtomicLong fileBufferSize, TorrentStreamGroup torrentStreamGroup
+		TorrentPieceCache pieceCache, TorrentStreamGroup torrentStreamGroup
 	) throws DownloadException {
-		final var stream = new TorrentStream(pieceLength, path, size, pos, completed, fileBufferSize, torrentStreamGroup);
+		final var stream = new TorrentStream(pieceLength, path, size, pos, completed, pieceCache, torrentStreamGroup);
 		// TODO：{}，使用多行文本
 		LOGGER.debug(
 			"创建文件流信息，Piece大小：{}，文件路径：{}，文件大小：{}，文件开始偏移：{}，文件结束偏移：{}，文件Piece数量：{}，文件Piece开始索引：{}，文件Piece结束索引：{}",
@@ -191,18 +210,23 @@ public final class TorrentStream {
 	}
 	
 	/**
-	 * <p>创建文件流</p>
+	 * <p>创建文件通道</p>
 	 * 
-	 * @return 文件流
+	 * @return 文件通道
 	 * 
 	 * @throws DownloadException 下载异常
 	 */
-	private RandomAccessFile buildFileStream() throws DownloadException {
-		// 创建文件上级目录：上级目录不存在会抛出FileNotFoundException
+	private FileChannel buildFileChannel() throws DownloadException {
+		// 创建文件上级目录：上级目录不存在会抛出NoSuchFileException
 		FileUtils.buildFolder(this.filePath, true);
 		try {
-			return new RandomAccessFile(this.filePath, STREAM_MODE);
-		} catch (FileNotFoundException e) {
+			return FileChannel.open(
+				Paths.get(this.filePath),
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE
+			);
+		} catch (IOException e) {
 			throw new DownloadException("创建文件流失败：" + this.filePath, e);
 		}
 	}
@@ -241,6 +265,24 @@ public final class TorrentStream {
 		return StringUtils.equals(path, this.filePath);
 	}
 	
+	/**
+	 * <p>获取文件开始偏移</p>
+	 * 
+	 * @return 文件开始偏移（包含）
+	 */
+	long fileBeginPos() {
+		return this.fileBeginPos;
+	}
+	
+	/**
+	 * <p>获取文件结束偏移</p>
+	 * 
+	 * @return 文件结束偏移（不包含）
+	 */
+	long fileEndPos() {
+		return this.fileEndPos;
+	}
+	
 	/**
 	 * <p>加载选择下载Piece</p>
 	 * 
@@ -284,29 +326,110 @@ public final class TorrentStream {
 				return null;
 			}
 			LOGGER.debug("选择Piece（选中）：{}-{}", index, this.downloadPieces);
-			this.downloadPieces.set(index); // 设置下载中
-			int begin = 0; // Piece开始内偏移
-			boolean verify = true; // 是否验证
-			// 第一块获取开始偏移
-			if(index == this.fileBeginPieceIndex) {
-				verify = false;
-				begin = this.firstPiecePos();
-			}
-			int end = (int) this.pieceLength; // Piece结束内偏移
-			// 最后一块获取结束偏移
-			if(index == this.fileEndPieceIndex) {
-				verify = false;
-				end = this.lastPiecePos();
+			return this.buildPiece(index);
+		}
+	}
+	
+	/**
+	 * <p>选择指定的Piece</p>
+	 * <p>选择期间Piece可能已经被其他Peer选择，所以需要重新判断是否可以选择。</p>
+	 * 
+	 * @param index Piece索引
+	 * @param repeat 是否重复选择下载中的Piece
+	 * 
+	 * @return Piece（不能选择：null）
+	 * 
+	 * @see TorrentStreamGroup#pickRarest(BitSet, BitSet)
+	 */
+	public TorrentPiece pickIndex(int index, boolean repeat) {
+		synchronized (this) {
+			if(
+				this.pieces.get(index) || // 已经下载
+				(this.downloadPieces.get(index) && !repeat) // 正在下载并且不能重复下载
+			) {
+				LOGGER.debug("选择Piece（已经选择）：{}", index);
+				return null;
 			}
-			// 快速循环挑选Piece时：创建Piece数据块消耗性能
-			return TorrentPiece.newInstance(this.pieceLength, index, begin, end, this.torrentStreamGroup.pieceHash(index), verify);
+			LOGGER.debug("选择Piece（选中）：{}-{}", index, this.downloadPieces);
+			return this.buildPiece(index);
 		}
 	}
+	
+	/**
+	 * <p>选择文件边界可以下载的Piece</p>
+	 * <p>一个Piece跨越多个文件时每个文件分别下载自己的部分，文件流组已下载Piece位图不能判断文件边界Piece是否下载完成。</p>
+	 * 
+	 * @param pickPieces 候选Piece位图
+	 * @param sourcePieces Peer已下载Piece位图
+	 * @param repeat 是否重复选择下载中的Piece
+	 * @param excludePause 是否排除暂停中的Piece
+	 * 
+	 * @see TorrentStreamGroup#pickRarest(BitSet, BitSet)
+	 */
+	void pickableBoundaryPieces(final BitSet pickPieces, final BitSet sourcePieces, boolean repeat, boolean excludePause) {
+		synchronized (this) {
+			this.pickableBoundaryPiece(this.fileBeginPieceIndex, pickPieces, sourcePieces, repeat, excludePause);
+			this.pickableBoundaryPiece(this.fileEndPieceIndex, pickPieces, sourcePieces, repeat, excludePause);
+		}
+	}
+	
+	/**
+	 * <p>判断文件边界Piece是否可以下载</p>
+	 * 
+	 * @param index Piece索引
+	 * @param pickPieces 候选Piece位图
+	 * @param sourcePieces Peer已下载Piece位图
+	 * @param repeat 是否重复选择下载中的Piece
+	 * @param excludePause 是否排除暂停中的Piece
+	 */
+	private void pickableBoundaryPiece(int index, final BitSet pickPieces, final BitSet sourcePieces, boolean repeat, boolean excludePause) {
+		if(
+			sourcePieces.get(index) &&
+			!this.pieces.get(index) &&
+			(repeat || !this.downloadPieces.get(index)) &&
+			(!excludePause || !this.pausePieces.get(index))
+		) {
+			pickPieces.set(index);
+		}
+	}
+	
+	/**
+	 * <p>创建下载Piece</p>
+	 * <p>设置Piece下载中状态</p>
+	 * 
+	 * @param index Piece索引
+	 * 
+	 * @return Piece（借用Piece缓冲失败：null）
+	 */
+	private TorrentPiece buildPiece(int index) {
+		int begin = 0; // Piece开始内偏移
+		boolean verify = true; // 是否验证
+		// 第一块获取开始偏移
+		if(index == this.fileBeginPieceIndex) {
+			verify = false;
+			begin = this.firstPiecePos();
+		}
+		int end = (int) this.pieceLength; // Piece结束内偏移
+		// 最后一块获取结束偏移
+		if(index == this.fileEndPieceIndex) {
+			verify = false;
+			end = this.lastPiecePos();
+		}
+		// 快速循环挑选Piece时：创建Piece数据块消耗性能
+		final TorrentPiece piece = TorrentPiece.newInstance(this.pieceLength, index, begin, end, this.torrentStreamGroup.pieceHash(index), verify);
+		if(piece == null) {
+			LOGGER.debug("选择Piece（Piece缓冲不足）：{}", index);
+			return null;
+		}
+		this.pausePieces.clear(index); // 清除暂停Piece位图
+		this.downloadPieces.set(index); // 设置下载中
+		this.torrentStreamGroup.download(index); // 设置Piece下载中
+		return piece;
+	}
 
 	/**
 	 * <p>选择未下载的Piece位图</p>
 	 * <p>选择Piece位图条件：没有下载完成、不是暂停中的Piece、不是下载中的Piece</p>
-	 * <p>选择完成后清除暂停Piece</p>
 	 * <p>如果挑选不到数据（任务接近完成）：重复挑选下载中的Piece</p>
 	 * <p>如果挑选不到数据（任务正常下载）：可以挑选暂停中的Piece</p>
 	 * 
@@ -353,13 +476,13 @@ public final class TorrentStream {
 				LOGGER.debug("选择Piece：没有可用Piece");
 			}
 		}
-		this.pausePieces.clear(); // 清空暂停Piece位图
 		return pickPieces;
 	}
 	
 	/**
 	 * <p>保存Piece</p>
 	 * <p>每次保存的必须是一个完成的Piece</p>
+	 * <p>Piece数据放入{@linkplain #pieceCache Piece缓存}，缓存刷出时写入文件。</p>
 	 * 
 	 * @param piece Piece
 	 * 
@@ -370,6 +493,7 @@ public final class TorrentStream {
 		if(!piece.contain(this.fileBeginPos, this.fileEndPos)) {
 			return false;
 		}
+		final boolean completed;
 		synchronized (this) {
 			final int index = piece.getIndex();
 			if(this.hasPiece(index)) {
@@ -377,25 +501,21 @@ public final class TorrentStream {
 				LOGGER.debug("Piece已经下载完成（忽略）：{}", index);
 				return false;
 			}
-			// 加入缓存队列
-			if(this.cachePieces.offer(piece)) {
-				LOGGER.debug("保存Piece：{}", index);
-				this.done(index);
-				// 更新缓存大小
-				this.fileBufferSize.addAndGet(piece.getLength());
-				// 设置已下载大小
-				this.buildFileDownloadSize();
-				// 下载完成数据刷出
-				if(this.completed()) {
-					this.flush();
-					// 可以将文件流变为读取模式
-				}
-				return true;
-			} else {
-				LOGGER.warn("保存Piece失败：{}", index);
-				return false;
-			}
+			LOGGER.debug("保存Piece：{}", index);
+			// 加入缓存：设置下载完成之前加入
+			this.pieceCache.put(piece);
+			this.done(index);
+			// 设置已下载大小
+			this.buildFileDownloadSize();
+			completed = this.completed();
 		}
+		// 下载完成数据刷出：不能持有文件流锁（刷出需要获取刷出锁）
+		if(completed) {
+			this.flush();
+			// 文件下载完成使用内存映射读取数据
+			this.buildMappedBuffers();
+		}
+		return true;
 	}
 	
 	/**
@@ -430,6 +550,7 @@ public final class TorrentStream {
 	
 	/**
 	 * <p>读取Piece数据</p>
+	 * <p>只有判断Piece状态和查询缓存时加锁，文件数据使用绝对位置读取不用加锁。</p>
 	 * 
 	 * @param index Piece索引
 	 * @param size 数据大小
@@ -440,9 +561,7 @@ public final class TorrentStream {
 	 * @see #read(int, int, int, boolean)
 	 */
 	public byte[] read(int index, int size, int pos) {
-		synchronized (this) {
-			return this.read(index, size, pos, false);
-		}
+		return this.read(index, size, pos, false);
 	}
 	
 	/**
@@ -456,26 +575,73 @@ public final class TorrentStream {
 	 * @param ignoreHasPiece 是否忽略已下载Piece位图
 	 * 
 	 * @return Piece数据
+	 * 
+	 * @see #read(int, int, int, boolean, ByteBuffer)
 	 */
 	private byte[] read(int index, int size, int pos, boolean ignoreHasPiece) {
-		// 判断Piece数据是否已经下载
-		if(!ignoreHasPiece && !this.hasPiece(index)) {
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		final int length = this.read(index, size, pos, ignoreHasPiece, buffer);
+		if(length <= 0) {
 			return null;
 		}
-		// 从Piece缓存中读取数据
-		final TorrentPiece cachePiece = this.cachePiece(index);
-		if(cachePiece != null) {
-			return cachePiece.read(pos, size);
+		if(length == size) {
+			return buffer.array();
+		}
+		final byte[] bytes = new byte[length];
+		System.arraycopy(buffer.array(), 0, bytes, 0, length);
+		return bytes;
+	}
+	
+	/**
+	 * <p>读取Piece数据写入缓冲</p>
+	 * <p>如果读取数据只有部分符合文件的范围，只读取符合部分数据写入。</p>
+	 * 
+	 * @param index Piece索引
+	 * @param size 数据大小
+	 * @param pos 数据偏移
+	 * @param buffer 数据缓冲
+	 * 
+	 * @return 读取数据长度（没有数据：{@code -1}）
+	 * 
+	 * @see #read(int, int, int, boolean, ByteBuffer)
+	 */
+	public int read(int index, int size, int pos, ByteBuffer buffer) {
+		return this.read(index, size, pos, false, buffer);
+	}
+	
+	/**
+	 * <p>读取Piece数据写入缓冲</p>
+	 * <p>读取顺序：Piece缓存、内存映射、文件通道</p>
+	 * 
+	 * @param index Piece索引
+	 * @param size 数据大小
+	 * @param pos 数据偏移
+	 * @param ignoreHasPiece 是否忽略已下载Piece位图
+	 * @param buffer 数据缓冲
+	 * 
+	 * @return 读取数据长度（没有数据：{@code -1}）
+	 */
+	int read(int index, int size, int pos, boolean ignoreHasPiece, ByteBuffer buffer) {
+		synchronized (this) {
+			// 判断Piece数据是否已经下载
+			if(!ignoreHasPiece && !this.hasPiece(index)) {
+				return -1;
+			}
+			// 从Piece缓存中读取数据：Piece刷出后会被释放（需要加锁）
+			final TorrentPiece cachePiece = this.cachePiece(index);
+			if(cachePiece != null) {
+				return cachePiece.read(pos, size, buffer);
+			}
 		}
 		// 从文件中读取数据
 		long seek = 0L; // 文件偏移
 		final long beginPos = this.pieceLength * index + pos; // 开始偏移
 		final long endPos = beginPos + size; // 结束偏移
 		if(beginPos >= this.fileEndPos) {
-			return null;
+			return -1;
 		}
 		if(endPos <= this.fileBeginPos) {
-			return null;
+			return -1;
 		}
 		if(beginPos <= this.fileBeginPos) {
 			// Piece包含文件开始
@@ -489,17 +655,95 @@ public final class TorrentStream {
 			size = (int) (size - (endPos - this.fileEndPos));
 		}
 		if(size <= 0) {
-			return null;
+			return -1;
 		}
+		// 从内存映射中读取数据
+		if(this.readMapped(seek, size, buffer)) {
+			return size;
+		}
+		final int position = buffer.position();
+		final int limit = buffer.limit();
 		try {
-			final byte[] bytes = new byte[size];
-			this.fileStream.seek(seek); // 注意线程安全
-			this.fileStream.read(bytes);
-			return bytes;
+			buffer.limit(position + size);
+			// 绝对位置读取：不会修改文件通道位置
+			while(buffer.hasRemaining()) {
+				if(this.fileChannel.read(buffer, seek + buffer.position() - position) < 0) {
+					// 文件数据不足：剩余数据填充零
+					buffer.position(buffer.limit());
+				}
+			}
+			return size;
 		} catch (IOException e) {
 			LOGGER.error("Piece读取异常：{}-{}-{}-{}", index, seek, size, pos, e);
+			buffer.position(position);
+		} finally {
+			buffer.limit(limit);
 		}
-		return null;
+		return -1;
+	}
+	
+	/**
+	 * <p>从内存映射中读取数据</p>
+	 * 
+	 * @param seek 文件偏移
+	 * @param size 数据大小
+	 * @param buffer 数据缓冲
+	 * 
+	 * @return 是否读取成功
+	 */
+	private boolean readMapped(long seek, int size, ByteBuffer buffer) {
+		final MappedByteBuffer[] mappedBuffers = this.mappedBuffers;
+		if(mappedBuffers == null || seek + size > this.mappedSize) {
+			return false;
+		}
+		while(size > 0) {
+			final int segment = (int) (seek / MAPPED_SEGMENT_SIZE);
+			final int segmentPos = (int) (seek % MAPPED_SEGMENT_SIZE);
+			final ByteBuffer slice = mappedBuffers[segment].duplicate();
+			final int length = Math.min(size, slice.limit() - segmentPos);
+			slice.position(segmentPos).limit(segmentPos + length);
+			buffer.put(slice);
+			seek += length;
+			size -= length;
+		}
+		return true;
+	}
+	
+	/**
+	 * <p>创建内存映射</p>
+	 * <p>文件下载完成后只读映射，超过{@link #MAPPED_SEGMENT_SIZE}的文件分段映射。</p>
+	 */
+	private void buildMappedBuffers() {
+		if(!SystemConfig.isSeedMapped() || this.mappedBuffers != null) {
+			return;
+		}
+		try {
+			// 文件大小可能小于下载大小：只映射已有数据
+			final long size = Math.min(this.fileChannel.size(), this.fileSize);
+			if(size <= 0) {
+				return;
+			}
+			final int segmentSize = (int) ((size + MAPPED_SEGMENT_SIZE - 1) / MAPPED_SEGMENT_SIZE);
+			final MappedByteBuffer[] mappedBuffers = new MappedByteBuffer[segmentSize];
+			for (int index = 0; index < segmentSize; index++) {
+				final long position = (long) index * MAPPED_SEGMENT_SIZE;
+				mappedBuffers[index] = this.fileChannel.map(MapMode.READ_ONLY, position, Math.min(MAPPED_SEGMENT_SIZE, size - position));
+			}
+			this.mappedSize = size;
+			this.mappedBuffers = mappedBuffers;
+			LOGGER.debug("创建内存映射：{}-{}", this.filePath, segmentSize);
+		} catch (IOException e) {
+			LOGGER.error("创建内存映射异常：{}", this.filePath, e);
+		}
+	}
+	
+	/**
+	 * <p>释放内存映射</p>
+	 * <p>映射内存由垃圾回收释放</p>
+	 */
+	private void releaseMappedBuffers() {
+		this.mappedBuffers = null;
+		this.mappedSize = 0L;
 	}
 	
 	/**
@@ -518,6 +762,7 @@ public final class TorrentStream {
 	 */
 	private void done(int index) {
 		this.pieces.set(index); // 下载成功
+		this.pausePieces.clear(index); // 清除暂停Piece位图
 		this.downloadPieces.clear(index); // 清除下载中的位图
 		this.torrentStreamGroup.done(index); // 设置Piece下载完成
 	}
@@ -529,6 +774,7 @@ public final class TorrentStream {
 	 */
 	private void undone(int index) {
 		LOGGER.debug("文件校验失败：{}", index);
+		this.releaseMappedBuffers(); // 文件没有完成：释放内存映射
 		this.pieces.clear(index); // 清除下载成功
 		this.torrentStreamGroup.undone(index); // 设置Piece下载失败
 	}
@@ -566,8 +812,9 @@ public final class TorrentStream {
 	 */
 	public void release() {
 		this.flush();
+		this.releaseMappedBuffers();
 		try {
-			this.fileStream.close();
+			this.fileChannel.close();
 		} catch (IOException e) {
 			LOGGER.error("TorrentStream关闭异常", e);
 		}
@@ -625,7 +872,7 @@ public final class TorrentStream {
 	 */
 	public boolean verify() throws IOException {
 		int verifyFailCount = 0; // 失败计数
-		final boolean empty = this.fileStream.length() == 0; // 文件没有数据
+		final boolean empty = this.fileChannel.size() == 0; // 文件没有数据
 		synchronized (this) {
 			final MessageDigest digest = DigestUtils.sha1();
 			for (int index = this.fileBeginPieceIndex; index <= this.fileEndPieceIndex; index++) {
@@ -642,6 +889,46 @@ public final class TorrentStream {
 				}
 			}
 			this.buildFileDownloadSize();
+			if(this.completed()) {
+				this.buildMappedBuffers();
+			}
+		}
+		if(LOGGER.isDebugEnabled()) {
+			LOGGER.debug("当前文件流已下载Piece数量：{}，剩余下载Piece数量：{}",
+				this.pieces.cardinality(),
+				this.filePieceSize - this.pieces.cardinality()
+			);
+		}
+		return verifyFailCount == 0;
+	}
+	
+	/**
+	 * <p>校验文件</p>
+	 * <p>使用文件流组校验结果重新设置已下载文件信息</p>
+	 * 
+	 * @param verifyPieces 校验成功Piece位图
+	 * 
+	 * @return 校验结果
+	 * 
+	 * @see TorrentPieceVerifier
+	 */
+	boolean verify(BitSet verifyPieces) {
+		int verifyFailCount = 0; // 失败计数
+		synchronized (this) {
+			// 文件结束偏移刚好等于Piece结束偏移时最后一块Piece没有数据
+			final int endIndex = this.fileBeginPieceIndex + this.filePieceSize;
+			for (int index = this.fileBeginPieceIndex; index < endIndex; index++) {
+				if(verifyPieces.get(index)) {
+					this.done(index);
+				} else {
+					verifyFailCount++;
+					this.undone(index);
+				}
+			}
+			this.buildFileDownloadSize();
+			if(this.completed()) {
+				this.buildMappedBuffers();
+			}
 		}
 		if(LOGGER.isDebugEnabled()) {
 			LOGGER.debug("当前文件流已下载Piece数量：{}，剩余下载Piece数量：{}",
@@ -654,12 +941,25 @@ public final class TorrentStream {
 	
 	/**
 	 * <p>将Piece缓存写入文件</p>
+	 * <p>按照偏移顺序写入文件中的缓存Piece</p>
+	 * <p>写入文件时不用加锁，写入完成后才从缓存中删除：读取数据时总能读取缓存或者文件中的数据。</p>
 	 */
 	public void flush() {
-		synchronized (this) {
-			final var list = new ArrayList<TorrentPiece>();
-			this.cachePieces.drainTo(list);
+		// 刷出加锁：防止多个线程同时刷出（写入已经释放的Piece数据）
+		synchronized (this.flushLock) {
+			final var list = this.pieceCache.pieces(this.fileBeginPos, this.fileEndPos);
+			if(list.isEmpty()) {
+				return;
+			}
 			list.forEach(this::flush);
+			synchronized (this) {
+				list.forEach(piece -> {
+					if(this.pieceCache.remove(piece)) {
+						// 释放Piece数据
+						piece.release();
+					}
+				});
+			}
 		}
 	}
 	
@@ -691,10 +991,19 @@ public final class TorrentStream {
 		if(length <= 0) {
 			return;
 		}
+		final ByteBuffer buffer = piece.getData();
+		if(buffer == null) {
+			LOGGER.warn("Piece写入文件失败（已经释放）：{}", index);
+			return;
+		}
+		final long beginNanos = System.nanoTime();
 		try {
-			final byte[] bytes = piece.getData();
-			this.fileStream.seek(seek); // 注意线程安全
-			this.fileStream.write(bytes, offset, length);
+			buffer.limit(offset + length).position(offset);
+			// 绝对位置写入：不会修改文件通道位置
+			while(buffer.hasRemaining()) {
+				this.fileChannel.write(buffer, seek + buffer.position() - offset);
+			}
+			FLUSH_HISTOGRAM.recordSince(beginNanos);
 		} catch (IOException e) {
 			LOGGER.error("Piece写入文件异常：{}-{}-{}-{}", index, seek, offset, length, e);
 		}
@@ -702,21 +1011,18 @@ public final class TorrentStream {
 	
 	/**
 	 * <p>读取缓存中的Piece数据</p>
+	 * <p>Piece按照文件拆分下载：缓存Piece开始偏移等于Piece开始偏移和文件开始偏移的最大值</p>
 	 * 
 	 * @param index Piece索引
 	 * 
 	 * @return Piece数据
 	 */
 	private TorrentPiece cachePiece(int index) {
-		TorrentPiece torrentPiece;
-		final var iterator = this.cachePieces.iterator();
-		while(iterator.hasNext()) {
-			torrentPiece = iterator.next();
-			if(torrentPiece.getIndex() == index) {
-				return torrentPiece;
-			}
+		final long beginPos = Math.max(this.pieceLength * index, this.fileBeginPos);
+		if(beginPos >= this.fileEndPos) {
+			return null;
 		}
-		return null;
+		return this.pieceCache.get(beginPos);
 	}
 	
 	/**
@@ -781,6 +1087,17 @@ public final class TorrentStream {
 		this.fileDownloadSize.set(size + downloadPieceSize * this.pieceLength);
 	}
 	
+	/**
+	 * <p>判断文件是否包含Piece</p>
+	 * 
+	 * @param index Piece索引
+	 * 
+	 * @return 是否包含
+	 */
+	public boolean containPiece(int index) {
+		return index >= this.fileBeginPieceIndex && index <= this.fileEndPieceIndex;
+	}
+	
 	/**
 	 * <p>判断文件是否处于单个Piece</p>
 	 * 
@@ -5,7 +5,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -50,6 +50,19 @@ public final class TorrentStreamGroup {
 	 * <p>选择下载Piece位图</p>
 	 */
 	private final BitSet selectPieces;
+	/**
+	 * <p>下载中Piece位图</p>
+	 * <p>文件流选中或者下载完成、下载失败时更新：最少优先选择时直接使用，不用遍历文件流。</p>
+	 * <p>使用下载中Piece位图加锁：同时保护暂停Piece位图</p>
+	 */
+	private final BitSet downloadPieces;
+	/**
+	 * <p>暂停Piece位图</p>
+	 * <p>下载失败的Piece，重新选中或者下载完成后清除。</p>
+	 * 
+	 * @see #downloadPieces
+	 */
+	private final BitSet pausePieces;
 	/**
 	 * <p>是否含有完整选择下载Piece位图</p>
 	 * <p>含有完整数据健康度等于：100</p>
@@ -67,10 +80,15 @@ public final class TorrentStreamGroup {
 	 */
 	private final BitSet fullPieces;
 	/**
-	 * <p>Piece缓存大小</p>
-	 * <p>所有文件流中Piece缓存队列数据大小</p>
+	 * <p>Piece缓存</p>
+	 * <p>所有文件流共享</p>
 	 */
-	private final AtomicLong fileBufferSize;
+	private final TorrentPieceCache pieceCache;
+	/**
+	 * <p>是否正在刷出缓存</p>
+	 * <p>缓存占满时只需要一个线程刷出缓存</p>
+	 */
+	private final AtomicBoolean flushing;
 	/**
 	 * <p>种子信息</p>
 	 */
@@ -104,6 +122,14 @@ public final class TorrentStreamGroup {
 	 * @see #readWriteLock
 	 */
 	private final Lock writeLock;
+	/**
+	 * <p>Piece校验器</p>
+	 * <p>正在校验文件时获取校验进度</p>
+	 * 
+	 * @see #verify()
+	 * @see #verifyProgress()
+	 */
+	private volatile TorrentPieceVerifier verifier;
 
 	/**
 	 * @param torrentSession BT任务信息
@@ -112,10 +138,13 @@ public final class TorrentStreamGroup {
 		final Torrent torrent = torrentSession.torrent();
 		this.pieces = torrentSession.buildPieces();
 		this.selectPieces = new BitSet(torrent.getInfo().pieceSize());
+		this.downloadPieces = new BitSet();
+		this.pausePieces = new BitSet();
 		this.full = false;
 		this.fullPieces = new BitSet();
 		this.fullPieces(this.pieces);
-		this.fileBufferSize = new AtomicLong(0);
+		this.pieceCache = new TorrentPieceCache();
+		this.flushing = new AtomicBoolean(false);
 		this.torrent = torrent;
 		this.streams = new ArrayList<>();
 		this.torrentSession = torrentSession;
@@ -190,7 +219,7 @@ public final class TorrentStreamGroup {
 							loadFileCount++;
 							final TorrentStream newStream = TorrentStream.newInstance(
 								pieceLength, filePath, fileSize, pos, completed,
-								this.fileBufferSize, this
+								this.pieceCache, this
 							);
 							this.streams.add(newStream);
 							newStream.buildSelectPieces(this.selectPieces);
@@ -284,15 +313,128 @@ public final class TorrentStreamGroup {
 	
 	/**
 	 * <p>挑选下载Piece</p>
+	 * <p>指定下载Piece索引时使用顺序选择，否则根据配置使用最少优先选择或者顺序选择。</p>
 	 * 
 	 * @param peerPieces Peer已下载Piece位图
 	 * @param suggestPieces Peer推荐Piece位图
 	 * 
 	 * @return 下载Piece
 	 * 
-	 * @see TorrentStream#pick(int, BitSet, BitSet)
+	 * @see #pickRarest(BitSet, BitSet)
+	 * @see #pickSequential(BitSet, BitSet)
 	 */
 	public TorrentPiece pick(final BitSet peerPieces, final BitSet suggestPieces) {
+		if(this.piecePos == 0 && SystemConfig.isPieceRarest()) {
+			return this.pickRarest(peerPieces, suggestPieces);
+		}
+		return this.pickSequential(peerPieces, suggestPieces);
+	}
+	
+	/**
+	 * <p>最少优先选择下载Piece</p>
+	 * <p>选择所有选择下载文件中可用数量最少的Piece，可用数量相同时随机选择。</p>
+	 * <p>候选Piece位图使用文件流组的Piece状态计算，文件边界Piece使用文件流各自的Piece状态计算，选中以后交给包含Piece并且可以选择的文件流创建。</p>
+	 * <p>选择期间Piece可能被其他Peer选择：重新选择</p>
+	 * 
+	 * @param peerPieces Peer已下载Piece位图
+	 * @param suggestPieces Peer推荐Piece位图
+	 * 
+	 * @return 下载Piece
+	 * 
+	 * @see TorrentPieceAvailability#rarest(BitSet)
+	 * @see TorrentStream#pickIndex(int, boolean)
+	 */
+	private TorrentPiece pickRarest(final BitSet peerPieces, final BitSet suggestPieces) {
+		if(peerPieces.isEmpty() && suggestPieces.isEmpty()) {
+			// Peer没有已下载Piece位图
+			return null;
+		}
+		final TorrentPieceAvailability pieceAvailability = this.torrentSession.pieceAvailability();
+		final BitSet pickPieces = new BitSet();
+		boolean repeat = false;
+		this.readLock.lock();
+		try {
+			if(!suggestPieces.isEmpty()) {
+				// 优先使用Peer推荐Piece位图
+				this.pickablePieces(pickPieces, suggestPieces, false, true);
+			}
+			if(pickPieces.isEmpty()) {
+				// 没有数据使用Peer已下载Piece位图
+				this.pickablePieces(pickPieces, peerPieces, false, true);
+			}
+			if(pickPieces.isEmpty()) {
+				final int remainingPieceSize = this.remainingPieceSize();
+				if(remainingPieceSize > 0 && remainingPieceSize <= SystemConfig.getPieceRepeatSize()) {
+					// 任务接近完成：重复挑选下载中的Piece
+					repeat = true;
+					this.pickablePieces(pickPieces, peerPieces, true, false);
+				} else {
+					// 任务正常：可以挑选暂停中的Piece
+					this.pickablePieces(pickPieces, peerPieces, false, false);
+				}
+			}
+			int index;
+			while((index = pieceAvailability.rarest(pickPieces)) >= 0) {
+				pickPieces.clear(index);
+				for (TorrentStream torrentStream : this.streams) {
+					// 一个Piece跨越多个文件时每个文件分别下载自己的部分：依次尝试所有包含Piece的文件
+					if(torrentStream.selected() && torrentStream.containPiece(index)) {
+						final TorrentPiece pickPiece = torrentStream.pickIndex(index, repeat);
+						if(pickPiece != null) {
+							return pickPiece;
+						}
+					}
+				}
+			}
+		} finally {
+			this.readLock.unlock();
+		}
+		return null;
+	}
+	
+	/**
+	 * <p>选择可以下载的Piece</p>
+	 * <p>排除没有选择下载、已经下载、下载中的Piece</p>
+	 * <p>已下载Piece位图只要一个文件保存Piece就会设置：文件边界Piece使用文件流各自的Piece状态判断</p>
+	 * 
+	 * @param pickPieces 候选Piece位图
+	 * @param sourcePieces Peer已下载Piece位图
+	 * @param repeat 是否重复选择下载中的Piece
+	 * @param excludePause 是否排除暂停中的Piece
+	 * 
+	 * @see TorrentStream#pickableBoundaryPieces(BitSet, BitSet, boolean, boolean)
+	 */
+	private void pickablePieces(final BitSet pickPieces, final BitSet sourcePieces, boolean repeat, boolean excludePause) {
+		pickPieces.or(sourcePieces);
+		synchronized (this.downloadPieces) {
+			pickPieces.and(this.selectPieces);
+			pickPieces.andNot(this.pieces);
+			if(!repeat) {
+				pickPieces.andNot(this.downloadPieces);
+			}
+			if(excludePause) {
+				pickPieces.andNot(this.pausePieces);
+			}
+		}
+		// 文件流加锁不能持有下载中Piece位图锁：文件流选中Piece时需要获取下载中Piece位图锁
+		for (TorrentStream torrentStream : this.streams) {
+			if(torrentStream.selected()) {
+				torrentStream.pickableBoundaryPieces(pickPieces, sourcePieces, repeat, excludePause);
+			}
+		}
+	}
+	
+	/**
+	 * <p>顺序选择下载Piece</p>
+	 * 
+	 * @param peerPieces Peer已下载Piece位图
+	 * @param suggestPieces Peer推荐Piece位图
+	 * 
+	 * @return 下载Piece
+	 * 
+	 * @see TorrentStream#pick(int, BitSet, BitSet)
+	 */
+	private TorrentPiece pickSequential(final BitSet peerPieces, final BitSet suggestPieces) {
 		TorrentPiece pickPiece = null;
 		this.readLock.lock();
 		try {
@@ -327,19 +469,41 @@ public final class TorrentStreamGroup {
 	 * 
 	 * @throws NetException 网络异常
 	 * 
-	 * @see TorrentStream#read(int, int, int)
+	 * @see #read(int, int, int, ByteBuffer)
 	 */
 	public byte[] read(final int index, final int begin, final int length) throws NetException {
 		PacketSizeException.verify(length);
 		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		if(this.read(index, begin, length, buffer)) {
+			return buffer.array();
+		}
+		return null;
+	}
+	
+	/**
+	 * <p>读取Piece数据写入缓冲</p>
+	 * <p>数据直接写入缓冲当前位置：缓冲剩余空间不能小于数据长度</p>
+	 * 
+	 * @param index Piece索引
+	 * @param begin Piece偏移
+	 * @param length 数据长度
+	 * @param buffer 数据缓冲
+	 * 
+	 * @return 是否读取成功
+	 * 
+	 * @throws NetException 网络异常
+	 * 
+	 * @see TorrentStream#read(int, int, int, ByteBuffer)
+	 */
+	public boolean read(final int index, final int begin, final int length, final ByteBuffer buffer) throws NetException {
+		PacketSizeException.verify(length);
+		final int position = buffer.position();
 		this.readLock.lock();
 		try {
-			// 如果跨越多个文件则合并返回
+			// 如果跨越多个文件则合并返回：直接写入缓冲
 			for (TorrentStream torrentStream : this.streams) {
-				final byte[] bytes = torrentStream.read(index, length, begin);
-				if(bytes != null) {
-					buffer.put(bytes);
-					if(buffer.position() >= length) {
+				if(torrentStream.read(index, length, begin, buffer) > 0) {
+					if(buffer.position() - position >= length) {
 						break;
 					}
 				}
@@ -347,11 +511,11 @@ public final class TorrentStreamGroup {
 		} finally {
 			this.readLock.unlock();
 		}
-		if(buffer.position() < length) {
+		if(buffer.position() - position < length) {
 			LOGGER.warn("读取Piece数据错误：{}-{}-{}", index, length, buffer);
-			return null;
+			return false;
 		}
-		return buffer.array();
+		return true;
 	}
 
 	/**
@@ -376,14 +540,21 @@ public final class TorrentStreamGroup {
 		} finally {
 			this.readLock.unlock();
 		}
+		if(!success) {
+			// 没有保存（重复下载）：释放Piece数据
+			piece.release();
+		}
 		// 判断是否刷出缓存
-		final long oldValue = this.fileBufferSize.get();
 		if(
-			oldValue > DownloadConfig.getMemoryBufferByte() &&
-			this.fileBufferSize.compareAndSet(oldValue, 0)
+			this.pieceCache.overflow(DownloadConfig.getMemoryBufferByte()) &&
+			this.flushing.compareAndSet(false, true)
 		) {
 			LOGGER.debug("缓冲区被占满");
-			this.flush();
+			try {
+				this.flush();
+			} finally {
+				this.flushing.set(false);
+			}
 		}
 		// 保存成功发送have消息
 		if(success) {
@@ -423,6 +594,23 @@ public final class TorrentStreamGroup {
 		synchronized (this.pieces) {
 			this.pieces.set(index);
 		}
+		synchronized (this.downloadPieces) {
+			this.pausePieces.clear(index);
+			this.downloadPieces.clear(index);
+		}
+	}
+	
+	/**
+	 * <p>设置下载中Piece</p>
+	 * <p>文件流选中Piece使用</p>
+	 * 
+	 * @param index Piece索引
+	 */
+	void download(int index) {
+		synchronized (this.downloadPieces) {
+			this.pausePieces.clear(index);
+			this.downloadPieces.set(index);
+		}
 	}
 	
 	/**
@@ -453,6 +641,10 @@ public final class TorrentStreamGroup {
 		} finally {
 			this.readLock.unlock();
 		}
+		synchronized (this.downloadPieces) {
+			this.pausePieces.set(piece.getIndex());
+			this.downloadPieces.clear(piece.getIndex());
+		}
 	}
 	
 	/**
@@ -548,25 +740,122 @@ public final class TorrentStreamGroup {
 
 	/**
 	 * <p>校验文件</p>
+	 * <p>所有选择下载文件的Piece统一校验：跨越文件的Piece读取完整数据校验Hash</p>
+	 * 
+	 * @return 是否校验成功
 	 * 
 	 * @throws IOException IO异常
+	 * 
+	 * @see TorrentPieceVerifier
+	 * @see TorrentStream#verify(BitSet)
 	 */
 	public boolean verify() throws IOException {
 		int verifyFailCount = 0;
 		this.readLock.lock();
 		try {
+			final BitSet pieces = new BitSet();
 			for (TorrentStream torrentStream : this.streams) {
-				if(torrentStream.selected() && !torrentStream.verify()) {
+				if(torrentStream.selected()) {
+					torrentStream.buildSelectPieces(pieces);
+				}
+			}
+			final long totalLength = this.torrent.getInfo().files().stream()
+				.mapToLong(TorrentFile::getLength)
+				.sum();
+			this.verifier = TorrentPieceVerifier.newInstance(
+				this.torrent.getInfo().getPieceLength(),
+				totalLength,
+				this.torrent.getInfo().getPieces(),
+				this::verifyRead
+			);
+			final BitSet verifyPieces = this.verifier.verify(pieces);
+			for (TorrentStream torrentStream : this.streams) {
+				if(torrentStream.selected() && !torrentStream.verify(verifyPieces)) {
 					verifyFailCount++;
 				}
 			}
 			this.torrentSession.downloadSize(this.downloadSize());
 		} finally {
+			this.verifier = null;
 			this.readLock.unlock();
 		}
 		return verifyFailCount == 0;
 	}
 	
+	/**
+	 * <p>读取校验Piece数据</p>
+	 * <p>忽略已下载Piece位图，跨越文件的数据按照文件在Piece中的偏移写入缓冲。</p>
+	 * <p>Piece数据存在没有加载的文件或者读取失败时数据不完整：缺失数据填充零</p>
+	 * 
+	 * @param index Piece索引
+	 * @param length Piece大小
+	 * @param buffer 数据缓冲
+	 * 
+	 * @return 是否读取完整Piece数据
+	 */
+	private boolean verifyRead(int index, int length, ByteBuffer buffer) {
+		final long beginPos = this.torrent.getInfo().getPieceLength() * index;
+		final long endPos = beginPos + length;
+		boolean complete = true;
+		// 加载文件时已经按照文件偏移排序
+		for (TorrentStream torrentStream : this.streams) {
+			final long fileBeginPos = torrentStream.fileBeginPos();
+			final long fileEndPos = torrentStream.fileEndPos();
+			if(fileEndPos <= beginPos || fileBeginPos >= endPos || fileEndPos == fileBeginPos) {
+				continue;
+			}
+			final int position = (int) Math.max(0L, fileBeginPos - beginPos);
+			if(position < buffer.position()) {
+				// 文件重叠
+				continue;
+			}
+			if(position > buffer.position()) {
+				// 文件没有加载
+				complete = false;
+				this.verifyFill(buffer, position);
+			}
+			final int end = (int) (Math.min(endPos, fileEndPos) - beginPos);
+			if(torrentStream.read(index, length, 0, true, buffer) < 0 || buffer.position() != end) {
+				// 读取失败
+				complete = false;
+				buffer.position(Math.min(buffer.position(), end));
+				this.verifyFill(buffer, end);
+			}
+		}
+		if(buffer.position() < length) {
+			complete = false;
+			this.verifyFill(buffer, length);
+		}
+		return complete;
+	}
+	
+	/**
+	 * <p>缺失数据填充零</p>
+	 * <p>缓冲重复使用：防止使用上次读取的数据</p>
+	 * 
+	 * @param buffer 数据缓冲
+	 * @param position 填充结束位置
+	 */
+	private void verifyFill(ByteBuffer buffer, int position) {
+		while(buffer.position() < position) {
+			buffer.put((byte) 0);
+		}
+	}
+	
+	/**
+	 * <p>获取校验进度</p>
+	 * <p>校验进度范围：{@code 0} ~ {@code 100}</p>
+	 * 
+	 * @return 校验进度（没有校验：{@code 100}）
+	 */
+	public int verifyProgress() {
+		final TorrentPieceVerifier verifier = this.verifier;
+		if(verifier == null) {
+			return 100;
+		}
+		return verifier.progress();
+	}
+	
 	/**
 	 * <p>获取Piece的Hash数据</p>
 	 * 
@@ -586,6 +875,7 @@ public final class TorrentStreamGroup {
 	 */
 	public void flush() {
 		LOGGER.debug("刷出缓存");
+		this.pieceCache.logger();
 		this.readLock.lock();
 		try {
 			for (TorrentStream torrentStream : this.streams) {
@@ -598,6 +888,24 @@ public final class TorrentStreamGroup {
 		this.torrentSession.updatePieces(false);
 	}
 	
+	/**
+	 * <p>获取Piece缓存命中次数</p>
+	 * 
+	 * @return 命中次数
+	 */
+	public long cacheHitCount() {
+		return this.pieceCache.hitCount();
+	}
+	
+	/**
+	 * <p>获取Piece缓存没有命中次数</p>
+	 * 
+	 * @return 没有命中次数
+	 */
+	public long cacheMissCount() {
+		return this.pieceCache.missCount();
+	}
+	
 	/**
 	 * <p>获取任务已下载大小</p>
 	 * 
@@ -64,6 +64,14 @@ public final class DhtClient extends UdpClient<DhtMessageHandler> {
 		return this.handler.ping(this.socketAddress);
 	}
 	
+	/**
+	 * <p>验证节点</p>
+	 * <p>发送Ping不等待响应</p>
+	 */
+	public void verify() {
+		this.handler.verify(this.socketAddress);
+	}
+	
 	/**
 	 * <p>查询节点</p>
 	 * 
@@ -14,7 +14,7 @@ import com.acgist.snail.context.DhtContext;
 import com.acgist.snail.context.NodeContext;
 import com.acgist.snail.context.TorrentContext;
 import com.acgist.snail.context.exception.NetException;
-import com.acgist.snail.format.BEncodeDecoder;
+import com.acgist.snail.format.BEncodeCursor;
 import com.acgist.snail.net.UdpMessageHandler;
 import com.acgist.snail.net.torrent.dht.request.AnnouncePeerRequest;
 import com.acgist.snail.net.torrent.dht.request.FindNodeRequest;
@@ -42,23 +42,31 @@ public final class DhtMessageHandler extends UdpMessageHandler {
 	 */
 	private static final Predicate<DhtResponse> RESPONSE_SUCCESS = response -> response != null && response.success();
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>使用游标读取消息：只解析需要的键（不用解析完整消息）</p>
+	 */
 	@Override
 	public void onReceive(ByteBuffer buffer, InetSocketAddress socketAddress) throws NetException {
-		final var decoder = BEncodeDecoder.newInstance(buffer);
-		decoder.nextMap();
-		if(decoder.isEmpty()) {
-			if(LOGGER.isWarnEnabled()) {
-				LOGGER.warn("处理DHT消息错误（格式）：{}", decoder.oddString());
-			}
+		final BEncodeCursor cursor;
+		try {
+			cursor = BEncodeCursor.newInstance(buffer);
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("处理DHT消息错误（格式）：{}", e.getMessage());
+			return;
+		}
+		if(!cursor.isMap()) {
+			LOGGER.warn("处理DHT消息错误（格式）：{}", socketAddress);
 			return;
 		}
-		final String y = decoder.getString(DhtConfig.KEY_Y); // 消息类型
+		final String y = cursor.getString(DhtConfig.KEY_Y); // 消息类型
 		if(DhtConfig.KEY_Q.equals(y)) {
-			final DhtRequest request = DhtRequest.valueOf(decoder);
+			final DhtRequest request = DhtRequest.valueOf(cursor);
 			request.setSocketAddress(socketAddress);
 			this.onRequest(request, socketAddress);
 		} else if(DhtConfig.KEY_R.equals(y)) {
-			final DhtResponse response = DhtResponse.valueOf(decoder);
+			final DhtResponse response = DhtResponse.valueOf(cursor);
 			response.setSocketAddress(socketAddress);
 			this.onResponse(response);
 		} else {
@@ -164,6 +172,17 @@ public final class DhtMessageHandler extends UdpMessageHandler {
 		return null;
 	}
 
+	/**
+	 * <p>发送请求：ping</p>
+	 * <p>验证节点是否可用，该方法不等待响应，收到响应后设置节点可用状态。</p>
+	 * 
+	 * @param socketAddress 地址
+	 */
+	public void verify(InetSocketAddress socketAddress) {
+		LOGGER.debug("发送DHT请求：ping（验证节点）");
+		this.pushRequest(PingRequest.newRequest(), socketAddress);
+	}
+	
 	/**
 	 * <p>处理请求：ping</p>
 	 * 
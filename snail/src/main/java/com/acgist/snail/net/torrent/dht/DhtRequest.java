@@ -14,7 +14,7 @@ import com.acgist.snail.config.DhtConfig;
 import com.acgist.snail.config.DhtConfig.QType;
 import com.acgist.snail.context.DhtContext;
 import com.acgist.snail.context.NodeContext;
-import com.acgist.snail.format.BEncodeDecoder;
+import com.acgist.snail.format.BEncodeCursor;
 import com.acgist.snail.format.BEncodeEncoder;
 import com.acgist.snail.pojo.session.NodeSession;
 import com.acgist.snail.utils.ArrayUtils;
@@ -82,16 +82,16 @@ public class DhtRequest extends DhtMessage {
 	/**
 	 * <p>读取请求</p>
 	 * 
-	 * @param decoder 消息
+	 * @param cursor 消息
 	 * 
 	 * @return 请求
 	 */
-	public static final DhtRequest valueOf(final BEncodeDecoder decoder) {
-		final byte[] t = decoder.getBytes(DhtConfig.KEY_T);
-		final String y = decoder.getString(DhtConfig.KEY_Y);
-		final String q = decoder.getString(DhtConfig.KEY_Q);
+	public static final DhtRequest valueOf(final BEncodeCursor cursor) {
+		final byte[] t = cursor.getBytes(DhtConfig.KEY_T);
+		final String y = cursor.getString(DhtConfig.KEY_Y);
+		final String q = cursor.getString(DhtConfig.KEY_Q);
 		final QType type = DhtConfig.QType.of(q);
-		final Map<String, Object> a = decoder.getMap(DhtConfig.KEY_A);
+		final Map<String, Object> a = cursor.getMap(DhtConfig.KEY_A);
 		return new DhtRequest(t, y, type, a);
 	}
 	
@@ -0,0 +1,231 @@
+package com.acgist.snail.net.torrent.dht;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>DHT请求事务表</p>
+ * <p>消息ID只有两个字节：直接使用消息ID作为数组索引，插入和查找都是O(1)。</p>
+ * <p>超时请求使用时间轮管理：每个刻度只处理对应槽位的请求，不用遍历所有请求。</p>
+ * 
+ * @author acgist
+ */
+public final class DhtRequestTable {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(DhtRequestTable.class);
+	
+	/**
+	 * <p>事务表大小：{@value}</p>
+	 * <p>两字节消息ID所有取值</p>
+	 */
+	private static final int TABLE_SIZE = 1 << 16;
+	
+	/**
+	 * <p>请求超时时间（毫秒）</p>
+	 */
+	private final long timeout;
+	/**
+	 * <p>时间轮刻度（毫秒）</p>
+	 */
+	private final long tick;
+	/**
+	 * <p>时间轮掩码</p>
+	 */
+	private final int mask;
+	/**
+	 * <p>已经处理的刻度</p>
+	 * <p>只有超时处理线程修改</p>
+	 */
+	private long currentTick;
+	/**
+	 * <p>事务表</p>
+	 * <p>数组索引=消息ID</p>
+	 */
+	private final AtomicReferenceArray<DhtRequest> requests;
+	/**
+	 * <p>时间轮</p>
+	 * <p>请求按照超时时间放入对应槽位</p>
+	 */
+	private final Queue<DhtRequest>[] wheel;
+	/**
+	 * <p>等待响应请求数量</p>
+	 */
+	private final AtomicInteger inflightSize = new AtomicInteger();
+	/**
+	 * <p>超时请求数量</p>
+	 */
+	private final AtomicLong timeoutCount = new AtomicLong();
+	/**
+	 * <p>响应请求数量</p>
+	 */
+	private final AtomicLong responseCount = new AtomicLong();
+	
+	/**
+	 * @param timeout 请求超时时间（毫秒）
+	 * @param tick 时间轮刻度（毫秒）
+	 */
+	@SuppressWarnings("unchecked")
+	public DhtRequestTable(long timeout, long tick) {
+		this.timeout = timeout;
+		this.tick = tick;
+		// 槽位数量必须大于超时刻度：保证同一槽位请求属于同一轮
+		final int size = Integer.highestOneBit((int) (timeout / tick) + 1) << 1;
+		this.mask = size - 1;
+		this.currentTick = System.currentTimeMillis() / tick;
+		this.requests = new AtomicReferenceArray<>(TABLE_SIZE);
+		this.wheel = (Queue<DhtRequest>[]) new Queue<?>[size];
+		for (int index = 0; index < size; index++) {
+			this.wheel[index] = new ConcurrentLinkedQueue<>();
+		}
+	}
+	
+	/**
+	 * <p>放入请求</p>
+	 * <p>如果事务表中有相同ID的请求删除旧请求</p>
+	 * 
+	 * @param request 请求
+	 */
+	public void put(DhtRequest request) {
+		final int key = key(request.getT());
+		if(key < 0) {
+			return;
+		}
+		final DhtRequest oldRequest = this.requests.getAndSet(key, request);
+		if(oldRequest == null) {
+			this.inflightSize.incrementAndGet();
+		} else {
+			LOGGER.warn("旧DHT请求没有收到响应（删除）");
+			this.timeoutCount.incrementAndGet();
+		}
+		this.wheel[this.slot(request)].offer(request);
+	}
+	
+	/**
+	 * <p>移除并返回请求</p>
+	 * 
+	 * @param t 消息ID
+	 * 
+	 * @return 请求
+	 */
+	public DhtRequest remove(byte[] t) {
+		final int key = key(t);
+		if(key < 0) {
+			return null;
+		}
+		final DhtRequest request = this.requests.getAndSet(key, null);
+		if(request != null) {
+			this.inflightSize.decrementAndGet();
+			this.responseCount.incrementAndGet();
+		}
+		return request;
+	}
+	
+	/**
+	 * <p>处理超时请求</p>
+	 * <p>处理上次执行到当前时间之间所有刻度对应的槽位</p>
+	 * 
+	 * @param timestamp 当前时间
+	 * 
+	 * @return 超时请求数量
+	 */
+	public int timeout(long timestamp) {
+		final long nowTick = timestamp / this.tick;
+		// 超过一轮只需处理所有槽位一次
+		final long beginTick = Math.max(this.currentTick + 1, nowTick - this.mask);
+		int count = 0;
+		for (long index = beginTick; index <= nowTick; index++) {
+			count += this.timeout(this.wheel[(int) (index & this.mask)], timestamp);
+		}
+		this.currentTick = Math.max(this.currentTick, nowTick);
+		return count;
+	}
+	
+	/**
+	 * <p>处理槽位超时请求</p>
+	 * <p>没有超时的请求重新放回槽位</p>
+	 * 
+	 * @param queue 槽位
+	 * @param timestamp 当前时间
+	 * 
+	 * @return 超时请求数量
+	 */
+	private int timeout(Queue<DhtRequest> queue, long timestamp) {
+		int count = 0;
+		DhtRequest request;
+		final List<DhtRequest> waits = new ArrayList<>();
+		while((request = queue.poll()) != null) {
+			if(timestamp - request.getTimestamp() < this.timeout) {
+				waits.add(request);
+			} else if(this.requests.compareAndSet(key(request.getT()), request, null)) {
+				// 已经响应或者已被新请求替换的请求直接丢弃
+				count++;
+				this.inflightSize.decrementAndGet();
+				this.timeoutCount.incrementAndGet();
+			}
+		}
+		waits.forEach(queue::offer);
+		return count;
+	}
+	
+	/**
+	 * <p>获取等待响应请求数量</p>
+	 * 
+	 * @return 等待响应请求数量
+	 */
+	public int inflightSize() {
+		return this.inflightSize.get();
+	}
+	
+	/**
+	 * <p>获取超时请求数量</p>
+	 * 
+	 * @return 超时请求数量
+	 */
+	public long timeoutCount() {
+		return this.timeoutCount.get();
+	}
+	
+	/**
+	 * <p>获取响应请求数量</p>
+	 * 
+	 * @return 响应请求数量
+	 */
+	public long responseCount() {
+		return this.responseCount.get();
+	}
+	
+	/**
+	 * <p>获取请求所在槽位</p>
+	 * <p>超时时间向上取整：保证处理槽位时请求已经超时</p>
+	 * 
+	 * @param request 请求
+	 * 
+	 * @return 槽位
+	 */
+	private int slot(DhtRequest request) {
+		return (int) (((request.getTimestamp() + this.timeout + this.tick - 1) / this.tick) & this.mask);
+	}
+	
+	/**
+	 * <p>获取消息ID对应的事务表索引</p>
+	 * 
+	 * @param t 消息ID
+	 * 
+	 * @return 索引（消息ID格式错误：-1）
+	 */
+	private static final int key(byte[] t) {
+		if(t == null || t.length != 2) {
+			return -1;
+		}
+		return ((t[0] & 0xFF) << 8) | (t[1] & 0xFF);
+	}
+
+}
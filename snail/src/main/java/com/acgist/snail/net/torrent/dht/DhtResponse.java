@@ -13,7 +13,7 @@ import org.slf4j.LoggerFactory;
 import com.acgist.snail.config.DhtConfig;
 import com.acgist.snail.config.DhtConfig.ErrorCode;
 import com.acgist.snail.context.NodeContext;
-import com.acgist.snail.format.BEncodeDecoder;
+import com.acgist.snail.format.BEncodeCursor;
 import com.acgist.snail.format.BEncodeEncoder;
 import com.acgist.snail.pojo.session.NodeSession;
 import com.acgist.snail.utils.ArrayUtils;
@@ -72,15 +72,15 @@ public class DhtResponse extends DhtMessage {
 	/**
 	 * <p>读取响应</p>
 	 * 
-	 * @param decoder 消息
+	 * @param cursor 消息
 	 * 
 	 * @return 响应
 	 */
-	public static final DhtResponse valueOf(final BEncodeDecoder decoder) {
-		final byte[] t = decoder.getBytes(DhtConfig.KEY_T);
-		final String y = decoder.getString(DhtConfig.KEY_Y);
-		final Map<String, Object> r = decoder.getMap(DhtConfig.KEY_R);
-		final List<Object> e = decoder.getList(DhtConfig.KEY_E);
+	public static final DhtResponse valueOf(final BEncodeCursor cursor) {
+		final byte[] t = cursor.getBytes(DhtConfig.KEY_T);
+		final String y = cursor.getString(DhtConfig.KEY_Y);
+		final Map<String, Object> r = cursor.getMap(DhtConfig.KEY_R);
+		final List<Object> e = cursor.getList(DhtConfig.KEY_E);
 		return new DhtResponse(t, y, r, e);
 	}
 	
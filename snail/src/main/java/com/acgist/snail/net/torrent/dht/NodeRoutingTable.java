@@ -0,0 +1,486 @@
+package com.acgist.snail.net.torrent.dht;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.acgist.snail.config.DhtConfig;
+import com.acgist.snail.pojo.session.NodeSession;
+import com.acgist.snail.utils.ArrayUtils;
+
+/**
+ * <p>DHT路由表</p>
+ * <p>Kademlia路由表：根据节点ID和系统NodeId的公共前缀长度（XOR距离）将节点放入K桶</p>
+ * <p>只有包含系统NodeId的K桶（最后一个K桶）满了才会拆分，其他K桶满了以后新节点替换失效节点，没有失效节点时放入替换缓存并且验证最早响应的节点。</p>
+ * <p>失效节点：验证状态超过超时时间没有响应的节点（等待响应的节点不会被替换）</p>
+ * <p>K桶节点按照最后响应时间排序：最早响应的节点在前面</p>
+ * <p>读取不加锁（写时复制），修改只锁定单个K桶，拆分时才锁定整个路由表。</p>
+ * <p>协议链接：http://www.bittorrent.org/beps/bep_0005.html</p>
+ * 
+ * @author acgist
+ */
+public final class NodeRoutingTable {
+	
+	/**
+	 * <p>K桶大小：{@value}</p>
+	 */
+	public static final int BUCKET_SIZE = 8;
+	/**
+	 * <p>替换缓存大小：{@value}</p>
+	 */
+	private static final int REPLACEMENT_SIZE = 8;
+	/**
+	 * <p>最大K桶数量：{@value}</p>
+	 * <p>NodeId位数</p>
+	 */
+	private static final int MAX_BUCKET_SIZE = DhtConfig.NODE_ID_LENGTH * 8;
+	/**
+	 * <p>空节点数组</p>
+	 */
+	private static final NodeSession[] EMPTY = new NodeSession[0];
+	
+	/**
+	 * <p>系统NodeId</p>
+	 */
+	private final byte[] nodeId;
+	/**
+	 * <p>节点验证超时时间（毫秒）</p>
+	 */
+	private final long timeout;
+	/**
+	 * <p>节点验证</p>
+	 * <p>验证最早响应的节点：不能阻塞（持有K桶锁）</p>
+	 */
+	private final Consumer<NodeSession> ping;
+	/**
+	 * <p>K桶</p>
+	 * <p>K桶索引=节点ID和系统NodeId的公共前缀长度（最后一个K桶包含所有更长的公共前缀）</p>
+	 */
+	private volatile Bucket[] buckets;
+	
+	/**
+	 * @param nodeId 系统NodeId
+	 */
+	public NodeRoutingTable(byte[] nodeId) {
+		this(nodeId, DhtConfig.DHT_TIMEOUT, null);
+	}
+	
+	/**
+	 * @param nodeId 系统NodeId
+	 * @param timeout 节点验证超时时间（毫秒）
+	 * @param ping 节点验证
+	 */
+	public NodeRoutingTable(byte[] nodeId, long timeout, Consumer<NodeSession> ping) {
+		this.nodeId = nodeId;
+		this.timeout = timeout;
+		this.ping = ping;
+		this.buckets = new Bucket[] { new Bucket() };
+	}
+	
+	/**
+	 * <p>添加节点</p>
+	 * <p>节点已经存在（包含替换缓存）返回已经存在的节点</p>
+	 * <p>K桶已满：可以拆分时拆分K桶；不能拆分时替换失效节点，没有失效节点时放入替换缓存并且验证最早响应的节点。</p>
+	 * 
+	 * @param nodeSession 节点
+	 * 
+	 * @return 节点
+	 */
+	public NodeSession put(NodeSession nodeSession) {
+		final byte[] id = nodeSession.getId();
+		final int prefix = this.prefix(id);
+		if(prefix >= MAX_BUCKET_SIZE) {
+			// 系统节点
+			return nodeSession;
+		}
+		while(true) {
+			final Bucket[] buckets = this.buckets;
+			final int index = Math.min(prefix, buckets.length - 1);
+			final Bucket bucket = buckets[index];
+			synchronized (bucket) {
+				if(bucket.split) {
+					// 已经拆分：重新查找K桶
+					continue;
+				}
+				final NodeSession oldSession = bucket.select(id);
+				if(oldSession != null) {
+					return oldSession;
+				}
+				if(bucket.nodes.length < BUCKET_SIZE) {
+					bucket.nodes = append(bucket.nodes, nodeSession, Integer.MAX_VALUE);
+					return nodeSession;
+				}
+				if(index != buckets.length - 1 || index >= MAX_BUCKET_SIZE - 1) {
+					// 不能拆分
+					if(!bucket.replace(nodeSession, this.timeout)) {
+						bucket.replacements = append(bucket.replacements, nodeSession, REPLACEMENT_SIZE);
+						this.verify(bucket);
+					}
+					return nodeSession;
+				}
+			}
+			this.split(bucket);
+		}
+	}
+	
+	/**
+	 * <p>获取节点</p>
+	 * 
+	 * @param id 节点ID
+	 * 
+	 * @return 节点
+	 */
+	public NodeSession get(byte[] id) {
+		final Bucket[] buckets = this.buckets;
+		final Bucket bucket = buckets[Math.min(this.prefix(id), buckets.length - 1)];
+		return find(bucket.nodes, id);
+	}
+	
+	/**
+	 * <p>节点响应</p>
+	 * <p>设置节点可用状态并且移动到K桶最后（最后响应时间）</p>
+	 * <p>替换缓存中的节点响应时：如果K桶存在失效节点，使用响应节点替换失效节点。</p>
+	 * 
+	 * @param id 节点ID
+	 * 
+	 * @return 节点（不存在：null）
+	 */
+	public NodeSession available(byte[] id) {
+		final int prefix = this.prefix(id);
+		while(true) {
+			final Bucket[] buckets = this.buckets;
+			final Bucket bucket = buckets[Math.min(prefix, buckets.length - 1)];
+			synchronized (bucket) {
+				if(bucket.split) {
+					continue;
+				}
+				NodeSession nodeSession = find(bucket.nodes, id);
+				if(nodeSession != null) {
+					nodeSession.setStatus(NodeSession.Status.AVAILABLE);
+					bucket.nodes = append(remove(bucket.nodes, nodeSession), nodeSession, Integer.MAX_VALUE);
+					return nodeSession;
+				}
+				nodeSession = find(bucket.replacements, id);
+				if(nodeSession != null) {
+					nodeSession.setStatus(NodeSession.Status.AVAILABLE);
+					if(bucket.replace(nodeSession, this.timeout)) {
+						bucket.replacements = remove(bucket.replacements, nodeSession);
+					}
+				}
+				return nodeSession;
+			}
+		}
+	}
+	
+	/**
+	 * <p>节点验证失败</p>
+	 * <p>使用替换缓存中最后加入的节点替换失效节点：没有替换节点时保留失效节点</p>
+	 * 
+	 * @param nodeSession 节点
+	 */
+	public void unavailable(NodeSession nodeSession) {
+		final int prefix = this.prefix(nodeSession.getId());
+		while(true) {
+			final Bucket[] buckets = this.buckets;
+			final Bucket bucket = buckets[Math.min(prefix, buckets.length - 1)];
+			synchronized (bucket) {
+				if(bucket.split) {
+					continue;
+				}
+				final NodeSession[] replacements = bucket.replacements;
+				if(replacements.length == 0 || find(bucket.nodes, nodeSession.getId()) != nodeSession) {
+					return;
+				}
+				final NodeSession replacement = replacements[replacements.length - 1];
+				bucket.replacements = remove(replacements, replacement);
+				bucket.nodes = append(remove(bucket.nodes, nodeSession), replacement, Integer.MAX_VALUE);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * <p>验证K桶最早响应的节点</p>
+	 * <p>已经在验证中的节点不用重复验证：超时以后可以被替换</p>
+	 * 
+	 * @param bucket K桶
+	 */
+	private void verify(Bucket bucket) {
+		if(this.ping == null || bucket.nodes.length == 0) {
+			return;
+		}
+		final NodeSession nodeSession = bucket.nodes[0];
+		if(nodeSession.getStatus() == NodeSession.Status.VERIFY) {
+			return;
+		}
+		nodeSession.verify();
+		this.ping.accept(nodeSession);
+	}
+	
+	/**
+	 * <p>查找最近节点</p>
+	 * <p>按照XOR距离从近到远查找K桶：目标K桶、后面所有K桶、前面K桶（倒序）</p>
+	 * 
+	 * @param target 目标ID
+	 * @param size 节点数量
+	 * @param filter 节点过滤
+	 * 
+	 * @return 节点列表（按照XOR距离排序）
+	 */
+	public List<NodeSession> findNode(byte[] target, int size, Predicate<NodeSession> filter) {
+		final List<NodeSession> closeNodes = new ArrayList<>(size);
+		final Bucket[] buckets = this.buckets;
+		final int index = Math.min(this.prefix(target), buckets.length - 1);
+		final List<NodeSession> nodes = new ArrayList<>();
+		// 目标K桶
+		Collections.addAll(nodes, buckets[index].nodes);
+		this.findNode(target, size, filter, nodes, closeNodes);
+		// 后面K桶：距离相同等级
+		for (int jndex = index + 1; jndex < buckets.length; jndex++) {
+			Collections.addAll(nodes, buckets[jndex].nodes);
+		}
+		this.findNode(target, size, filter, nodes, closeNodes);
+		// 前面K桶
+		for (int jndex = index - 1; jndex >= 0 && closeNodes.size() < size; jndex--) {
+			Collections.addAll(nodes, buckets[jndex].nodes);
+			this.findNode(target, size, filter, nodes, closeNodes);
+		}
+		return closeNodes;
+	}
+	
+	/**
+	 * <p>按照XOR距离排序节点并且过滤加入最近节点</p>
+	 * 
+	 * @param target 目标ID
+	 * @param size 节点数量
+	 * @param filter 节点过滤
+	 * @param nodes 相同距离等级节点（使用后清空）
+	 * @param closeNodes 最近节点
+	 */
+	private void findNode(byte[] target, int size, Predicate<NodeSession> filter, List<NodeSession> nodes, List<NodeSession> closeNodes) {
+		if(closeNodes.size() >= size || nodes.isEmpty()) {
+			nodes.clear();
+			return;
+		}
+		nodes.sort(Comparator.comparing(node -> ArrayUtils.xor(node.getId(), target), ArrayUtils::compareUnsigned));
+		for (NodeSession nodeSession : nodes) {
+			if(closeNodes.size() >= size) {
+				break;
+			}
+			if(filter.test(nodeSession)) {
+				closeNodes.add(nodeSession);
+			}
+		}
+		nodes.clear();
+	}
+	
+	/**
+	 * <p>获取所有节点（不包含替换缓存）</p>
+	 * 
+	 * @return 所有节点
+	 */
+	public List<NodeSession> nodes() {
+		final List<NodeSession> nodes = new ArrayList<>();
+		for (Bucket bucket : this.buckets) {
+			Collections.addAll(nodes, bucket.nodes);
+		}
+		return nodes;
+	}
+	
+	/**
+	 * <p>获取节点数量（不包含替换缓存）</p>
+	 * 
+	 * @return 节点数量
+	 */
+	public int size() {
+		int size = 0;
+		for (Bucket bucket : this.buckets) {
+			size += bucket.nodes.length;
+		}
+		return size;
+	}
+	
+	/**
+	 * <p>获取K桶数量</p>
+	 * 
+	 * @return K桶数量
+	 */
+	public int bucketSize() {
+		return this.buckets.length;
+	}
+	
+	/**
+	 * <p>拆分最后一个K桶</p>
+	 * 
+	 * @param bucket K桶
+	 */
+	private void split(Bucket bucket) {
+		synchronized (this) {
+			final Bucket[] buckets = this.buckets;
+			final int index = buckets.length - 1;
+			if(buckets[index] != bucket) {
+				// 已经拆分
+				return;
+			}
+			synchronized (bucket) {
+				final Bucket far = new Bucket();
+				final Bucket near = new Bucket();
+				for (NodeSession nodeSession : bucket.nodes) {
+					if(this.prefix(nodeSession.getId()) == index) {
+						far.nodes = append(far.nodes, nodeSession, Integer.MAX_VALUE);
+					} else {
+						near.nodes = append(near.nodes, nodeSession, Integer.MAX_VALUE);
+					}
+				}
+				for (NodeSession nodeSession : bucket.replacements) {
+					if(this.prefix(nodeSession.getId()) == index) {
+						far.replacements = append(far.replacements, nodeSession, REPLACEMENT_SIZE);
+					} else {
+						near.replacements = append(near.replacements, nodeSession, REPLACEMENT_SIZE);
+					}
+				}
+				final Bucket[] newBuckets = Arrays.copyOf(buckets, index + 2);
+				newBuckets[index] = far;
+				newBuckets[index + 1] = near;
+				bucket.split = true;
+				this.buckets = newBuckets;
+			}
+		}
+	}
+	
+	/**
+	 * <p>计算节点ID和系统NodeId的公共前缀长度</p>
+	 * 
+	 * @param id 节点ID
+	 * 
+	 * @return 公共前缀长度
+	 */
+	private int prefix(byte[] id) {
+		final int length = Math.min(id.length, this.nodeId.length);
+		for (int index = 0; index < length; index++) {
+			final int value = (id[index] ^ this.nodeId[index]) & 0xFF;
+			if(value != 0) {
+				return index * 8 + Integer.numberOfLeadingZeros(value) - 24;
+			}
+		}
+		return length * 8;
+	}
+	
+	/**
+	 * <p>查找节点</p>
+	 * 
+	 * @param nodes 节点数组
+	 * @param id 节点ID
+	 * 
+	 * @return 节点
+	 */
+	private static final NodeSession find(NodeSession[] nodes, byte[] id) {
+		for (NodeSession nodeSession : nodes) {
+			if(ArrayUtils.equals(id, nodeSession.getId())) {
+				return nodeSession;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * <p>添加节点</p>
+	 * <p>超过最大数量删除最前面的节点</p>
+	 * 
+	 * @param nodes 节点数组
+	 * @param nodeSession 节点
+	 * @param maxSize 最大数量
+	 * 
+	 * @return 新的节点数组
+	 */
+	private static final NodeSession[] append(NodeSession[] nodes, NodeSession nodeSession, int maxSize) {
+		final int from = nodes.length >= maxSize ? nodes.length - maxSize + 1 : 0;
+		final NodeSession[] newNodes = Arrays.copyOfRange(nodes, from, nodes.length + 1);
+		newNodes[newNodes.length - 1] = nodeSession;
+		return newNodes;
+	}
+	
+	/**
+	 * <p>删除节点</p>
+	 * 
+	 * @param nodes 节点数组
+	 * @param nodeSession 节点
+	 * 
+	 * @return 新的节点数组
+	 */
+	private static final NodeSession[] remove(NodeSession[] nodes, NodeSession nodeSession) {
+		for (int index = 0; index < nodes.length; index++) {
+			if(nodes[index] == nodeSession) {
+				final NodeSession[] newNodes = new NodeSession[nodes.length - 1];
+				System.arraycopy(nodes, 0, newNodes, 0, index);
+				System.arraycopy(nodes, index + 1, newNodes, index, nodes.length - index - 1);
+				return newNodes;
+			}
+		}
+		return nodes;
+	}
+	
+	/**
+	 * <p>K桶</p>
+	 * <p>修改需要锁定K桶，修改时创建新的数组（写时复制）。</p>
+	 * 
+	 * @author acgist
+	 */
+	private static final class Bucket {
+	
+		/**
+		 * <p>节点</p>
+		 * <p>按照最后响应时间排序：最早响应的节点在前面</p>
+		 */
+		private volatile NodeSession[] nodes = EMPTY;
+		/**
+		 * <p>替换缓存</p>
+		 * <p>K桶已满并且没有失效节点时新的节点放入替换缓存：超过数量删除最早加入的节点</p>
+		 */
+		private volatile NodeSession[] replacements = EMPTY;
+		/**
+		 * <p>是否已经拆分</p>
+		 */
+		private volatile boolean split = false;
+	
+		/**
+		 * <p>查找节点（包含替换缓存）</p>
+		 * 
+		 * @param id 节点ID
+		 * 
+		 * @return 节点
+		 */
+		private NodeSession select(byte[] id) {
+			final NodeSession nodeSession = find(this.nodes, id);
+			if(nodeSession != null) {
+				return nodeSession;
+			}
+			return find(this.replacements, id);
+		}
+	
+		/**
+		 * <p>使用节点替换最早响应的失效节点</p>
+		 * <p>等待响应的节点不能替换</p>
+		 * 
+		 * @param nodeSession 节点
+		 * @param timeout 节点验证超时时间（毫秒）
+		 * 
+		 * @return 是否替换成功
+		 */
+		private boolean replace(NodeSession nodeSession, long timeout) {
+			for (NodeSession oldSession : this.nodes) {
+				if(oldSession.verifyTimeout(timeout)) {
+					this.nodes = append(remove(this.nodes, oldSession), nodeSession, Integer.MAX_VALUE);
+					return true;
+				}
+			}
+			return false;
+		}
+	
+	}
+
+}
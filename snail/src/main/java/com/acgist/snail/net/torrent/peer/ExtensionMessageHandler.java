@@ -56,7 +56,7 @@ public final class ExtensionMessageHandler implements IExtensionMessageHandler {
 	/**
 	 * <p>默认支持未完成请求数量：{@value}</p>
 	 */
-	private static final int DEFAULT_REQQ = 128;
+	static final int DEFAULT_REQQ = 128;
 	/**
 	 * <p>扩展协议信息：{@value}</p>
 	 */
@@ -290,6 +290,11 @@ public final class ExtensionMessageHandler implements IExtensionMessageHandler {
 		if(encrypt != null && encrypt.intValue() == PREFER_ENCRYPT) {
 			this.peerSession.flags(PeerConfig.PEX_PREFER_ENCRYPTION);
 		}
+		// 支持未完成请求数量
+		final Long reqq = decoder.getLong(EX_REQQ);
+		if(reqq != null && reqq.longValue() > 0) {
+			this.peerSession.reqq((int) Math.min(reqq.longValue(), Integer.MAX_VALUE));
+		}
 		// 只上传不下载
 		final Long uploadOnly = decoder.getLong(EX_UPLOAD_ONLY);
 		if(uploadOnly != null && uploadOnly.intValue() == UPLOAD_ONLY) {
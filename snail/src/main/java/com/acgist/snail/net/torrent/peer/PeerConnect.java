@@ -1,12 +1,21 @@
 package com.acgist.snail.net.torrent.peer;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.SystemThreadContext;
 import com.acgist.snail.pojo.IStatisticsSession;
 import com.acgist.snail.pojo.bean.TorrentPiece;
 import com.acgist.snail.pojo.session.PeerConnectSession;
@@ -26,25 +35,38 @@ public abstract class PeerConnect {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PeerConnect.class);
 
 	/**
-	 * <p>SLICE请求数量：{@value}</p>
-	 * <p>注：过大会导致UTP信号量阻塞</p>
+	 * <p>最小请求队列长度：{@value}</p>
+	 */
+	private static final int MIN_REQUEST_SIZE = 2;
+	/**
+	 * <p>初始请求队列长度：{@value}</p>
+	 * <p>没有统计下载速度时使用</p>
+	 */
+	private static final int INIT_REQUEST_SIZE = 4;
+	/**
+	 * <p>最大请求队列长度：{@value}</p>
+	 * <p>同时不能超过Peer支持未完成请求数量</p>
 	 * 
-	 * TODO：根据速度优化
+	 * @see PeerSession#reqq()
 	 */
-	private static final int SLICE_REQUEST_SIZE = 2;
+	private static final int MAX_REQUEST_SIZE = 256;
 	/**
-	 * <p>SLICE最大请求数量：{@value}</p>
-	 * <p>超过这个数量跳出请求</p>
+	 * <p>最大同时下载Piece数量：{@value}</p>
 	 */
-	private static final int SLICE_REQUEST_MAX_SIZE = 4;
+	private static final int MAX_PIECE_SIZE = 16;
 	/**
-	 * <p>SLICE请求等待时间：{@value}</p>
+	 * <p>请求队列时间：{@value}</p>
+	 * <p>请求队列长度=下载速度*请求队列时间/SLICE大小：保证响应返回之前Peer一直有请求需要处理</p>
 	 */
-	private static final int SLICE_TIMEOUT = 10 * SystemConfig.ONE_SECOND_MILLIS;
+	private static final int REQUEST_QUEUE_TIME = 3 * SystemConfig.ONE_SECOND_MILLIS;
+	/**
+	 * <p>下载速度统计间隔：{@value}</p>
+	 */
+	private static final int RATE_INTERVAL = SystemConfig.ONE_SECOND_MILLIS;
 	/**
-	 * <p>PICEC完成等待时间：{@value}</p>
+	 * <p>SLICE请求超时时间：{@value}</p>
 	 */
-	private static final int COMPLETED_TIMEOUT = 30 * SystemConfig.ONE_SECOND_MILLIS;
+	private static final int SLICE_TIMEOUT = 10 * SystemConfig.ONE_SECOND_MILLIS;
 	/**
 	 * <p>释放等待时间：{@value}</p>
 	 */
@@ -59,29 +81,62 @@ public abstract class PeerConnect {
 	 */
 	private volatile boolean downloading = false;
 	/**
-	 * <p>当前下载Piece信息</p>
+	 * <p>是否需要调度请求</p>
 	 */
-	private TorrentPiece downloadPiece;
+	private final AtomicBoolean schedule = new AtomicBoolean(false);
 	/**
-	 * <p>slice锁</p>
-	 * 
-	 * @see #SLICE_TIMEOUT
-	 * @see #SLICE_REQUEST_SIZE
-	 * @see #SLICE_REQUEST_MAX_SIZE
+	 * <p>是否正在调度请求</p>
+	 * <p>同一个Peer同时只有一个调度任务执行</p>
 	 */
-	private final AtomicInteger sliceLock = new AtomicInteger(0);
+	private final AtomicBoolean scheduling = new AtomicBoolean(false);
 	/**
-	 * <p>完成锁</p>
-	 * 
-	 * @see #COMPLETED_TIMEOUT
+	 * <p>是否统计Piece可用数量</p>
+	 */
+	private final AtomicBoolean pieceAvailability = new AtomicBoolean(false);
+	/**
+	 * <p>请求锁</p>
+	 * <p>保护下载中的Piece、等待响应的请求和下载速度统计，同时用于释放下载时等待请求响应。</p>
+	 */
+	private final Object requestLock = new Object();
+	/**
+	 * <p>请求超时定时器</p>
+	 * <p>定时调度请求：检查请求是否超时</p>
 	 */
-	private final AtomicBoolean completedLock = new AtomicBoolean(false);
+	private ScheduledFuture<?> timeoutTimer;
 	/**
-	 * <p>释放锁</p>
+	 * <p>限速定时器</p>
+	 * <p>令牌不足时延迟请求：等待结束后重新调度请求</p>
+	 */
+	private ScheduledFuture<?> limitTimer;
+	/**
+	 * <p>下载中的Piece</p>
+	 * <p>同一个Piece索引跨越多个文件时会被拆分为多个Piece</p>
+	 */
+	private final List<TorrentPiece> downloadPieces = new ArrayList<>();
+	/**
+	 * <p>等待响应的请求</p>
+	 * <p>请求标识=请求</p>
 	 * 
-	 * @see #RELEASE_TIMEOUT
+	 * @see #requestKey(int, int)
 	 */
-	private final AtomicBoolean releaseLock = new AtomicBoolean(false);
+	private final Map<Long, SliceRequest> requests = new HashMap<>();
+	/**
+	 * <p>请求队列长度</p>
+	 * <p>根据下载速度动态调整</p>
+	 */
+	private int requestSize = INIT_REQUEST_SIZE;
+	/**
+	 * <p>下载速度（B/s）</p>
+	 */
+	private long rate = 0L;
+	/**
+	 * <p>统计周期下载大小</p>
+	 */
+	private long rateSize = 0L;
+	/**
+	 * <p>统计周期开始时间</p>
+	 */
+	private long rateTime = System.currentTimeMillis();
 	/**
 	 * <p>Peer信息</p>
 	 */
@@ -219,6 +274,17 @@ public abstract class PeerConnect {
 		this.statisticsSession.uploadLimit(buffer);
 	}
 	
+	/**
+	 * <p>获取上传需要等待时间</p>
+	 * 
+	 * @return 上传需要等待时间（毫秒）
+	 * 
+	 * @see IStatisticsSession#uploadDelay()
+	 */
+	public final long uploadDelay() {
+		return this.statisticsSession.uploadDelay();
+	}
+	
 	/**
 	 * <p>Peer上传评分</p>
 	 * 
@@ -247,42 +313,123 @@ public abstract class PeerConnect {
 		return this.peerConnectSession.downloadMark();
 	}
 
+	/**
+	 * <p>开始统计Piece可用数量</p>
+	 * <p>连接成功后调用</p>
+	 * 
+	 * @see PeerSession#attachPieceAvailability(com.acgist.snail.net.torrent.TorrentPieceAvailability)
+	 */
+	protected final void attachPieceAvailability() {
+		if(this.pieceAvailability.compareAndSet(false, true)) {
+			this.peerSession.attachPieceAvailability(this.torrentSession.pieceAvailability());
+		}
+	}
+	
+	/**
+	 * <p>结束统计Piece可用数量</p>
+	 * 
+	 * @see PeerSession#detachPieceAvailability()
+	 */
+	private void detachPieceAvailability() {
+		if(this.pieceAvailability.compareAndSet(true, false)) {
+			this.peerSession.detachPieceAvailability();
+		}
+	}
+	
 	/**
 	 * <p>开始下载</p>
+	 * <p>下载不会占用线程：数据响应、拒绝、阻塞、超时检查等事件触发调度请求</p>
 	 */
 	public void download() {
-		if(!this.downloading) {
-			synchronized (this) {
-				if(!this.downloading) {
-					this.downloading = true;
-					this.torrentSession.submit(() -> this.requests());
-				}
+		synchronized (this.requestLock) {
+			if(!this.downloading) {
+				LOGGER.debug("开始请求下载：{}", this.peerSession);
+				this.downloading = true;
+				this.timeoutTimer = this.torrentSession.timerAtFixedRate(SLICE_TIMEOUT, SLICE_TIMEOUT, TimeUnit.MILLISECONDS, this::schedule);
 			}
 		}
+		this.schedule();
 	}
 	
 	/**
 	 * <p>保存Piece数据</p>
+	 * <p>没有对应请求的数据（取消、拒绝、超时）直接丢弃</p>
+	 * <p>数据直接写入Piece缓冲，不会保留消息缓冲。</p>
 	 * 
 	 * @param index Piece索引
 	 * @param begin Piece偏移
-	 * @param bytes Piece数据
+	 * @param buffer Piece数据
 	 */
-	public final void piece(int index, int begin, byte[] bytes) {
-		// 数据不完整抛弃当前Piece：重新选择下载Piece
-		if(bytes == null || this.downloadPiece == null) {
+	public final void piece(int index, int begin, ByteBuffer buffer) {
+		if(buffer == null) {
 			return;
 		}
-		if(index != this.downloadPiece.getIndex()) {
-			LOGGER.warn("下载Piece索引和当前Piece索引不符：{}-{}", index, this.downloadPiece.getIndex());
+		synchronized (this.requestLock) {
+			final long key = requestKey(index, begin);
+			final int length = buffer.remaining();
+			final SliceRequest request = this.requests.get(key);
+			if(request == null) {
+				LOGGER.debug("下载Piece没有对应请求：{}-{}", index, begin);
+				return;
+			}
+			if(request.length != length) {
+				// 数据长度错误：等待请求超时
+				LOGGER.debug("下载Piece数据长度错误：{}-{}-{}", index, begin, length);
+				return;
+			}
+			this.requests.remove(key);
+			this.rate(length);
+			final TorrentPiece piece = this.downloadPiece(index, begin);
+			if(piece == null) {
+				LOGGER.debug("下载Piece没有对应Piece：{}-{}", index, begin);
+			} else {
+				piece.write(begin, buffer);
+			}
+			this.notifyRequest();
+		}
+	}
+	
+	/**
+	 * <p>请求被拒绝</p>
+	 * <p>放弃请求所在Piece：取消Piece其他请求、标记失败</p>
+	 * 
+	 * @param index Piece索引
+	 * @param begin Piece偏移
+	 * @param length 数据长度
+	 */
+	public final void reject(int index, int begin, int length) {
+		final List<SliceRequest> cancels = new ArrayList<>();
+		synchronized (this.requestLock) {
+			if(this.requests.remove(requestKey(index, begin)) == null) {
+				return;
+			}
+			final TorrentPiece piece = this.downloadPiece(index, begin);
+			if(piece != null) {
+				LOGGER.debug("Piece请求被拒绝：{}-{}-{}", index, begin, length);
+				this.giveUp(piece, cancels);
+			}
+			this.notifyRequest();
+		}
+		this.cancel(cancels);
+	}
+	
+	/**
+	 * <p>Peer阻塞</p>
+	 * <p>不支持Fast扩展：Peer丢弃所有未完成请求，标记所有下载中的Piece失败。</p>
+	 * <p>支持Fast扩展：Peer会发送拒绝消息，不用处理。</p>
+	 * 
+	 * @see #reject(int, int, int)
+	 */
+	public final void choke() {
+		if(this.peerSession.supportFastExtensionProtocol()) {
 			return;
 		}
-		// 释放slice锁
-		this.unlockSlice();
-		final boolean completed = this.downloadPiece.write(begin, bytes);
-		// 下载完成：释放完成锁
-		if(completed) {
-			this.unlockCompleted();
+		synchronized (this.requestLock) {
+			this.requests.clear();
+			while(!this.downloadPieces.isEmpty()) {
+				this.giveUp(this.downloadPieces.get(0), null);
+			}
+			this.notifyRequest();
 		}
 	}
 
@@ -292,42 +439,58 @@ public abstract class PeerConnect {
 	 */
 	public void release() {
 		this.available = false;
+		this.detachPieceAvailability();
 		this.releaseDownload();
 		this.peerSubMessageHandler.choke();
 		this.peerSubMessageHandler.close();
 	}
 	
+	
 	/**
-	 * <p>请求下载</p>
-	 * <p>跳出请求循环：设置完成状态、释放下载资源、完成检测、验证Piece状态</p>
+	 * <p>调度请求</p>
+	 * <p>多个事件同时触发时合并执行：同一个Peer同时只有一个调度任务</p>
 	 */
-	private void requests() {
-		LOGGER.debug("开始请求下载：{}", this.peerSession);
-		boolean success = true;
-		while(success) {
-			try {
-				success = this.request();
-			} catch (Exception e) {
-				LOGGER.error("Peer请求异常", e);
-				success = false;
+	private void schedule() {
+		this.schedule.set(true);
+		if(this.downloading && this.scheduling.compareAndSet(false, true)) {
+			this.torrentSession.submit(this::execute);
+		}
+	}
+	
+	/**
+	 * <p>执行调度请求</p>
+	 * <p>执行完成立即释放线程，执行期间触发的事件在本次任务中继续处理。</p>
+	 */
+	private void execute() {
+		try {
+			while(this.downloading && this.schedule.getAndSet(false)) {
+				boolean success;
+				try {
+					success = this.request();
+				} catch (Exception e) {
+					LOGGER.error("Peer请求异常", e);
+					success = false;
+				}
+				if(!success) {
+					this.finish();
+					break;
+				}
 			}
+		} finally {
+			this.scheduling.set(false);
 		}
-		this.completedLock.set(true); // 设置完成
-		this.releaseDownload();
-		// 验证任务是否完成
-		this.torrentSession.checkCompletedAndDone();
-		// 验证最后选择的Piece是否下载完成
-		if(this.downloadPiece != null && !this.downloadPiece.completed()) {
-			this.undone();
+		// 释放调度状态之前触发的事件
+		if(this.schedule.get()) {
+			this.schedule();
 		}
-		LOGGER.debug("结束请求下载：{}", this.peerSession);
 	}
 	
 	/**
 	 * <p>请求数据</p>
-	 * <p>每次发送{@value #SLICE_REQUEST_SIZE}个请求，然后进入等待，当全部数据响应后，又开始发送请求，直到Piece下载完成。</p>
-	 * <p>请求发送完成后必须进入完成等待</p>
-	 * <p>请求等待队列数量超过{@value #SLICE_REQUEST_MAX_SIZE}个时跳出循环</p>
+	 * <p>保存下载完成的Piece，放弃超时和已经被其他Peer下载完成的Piece，然后补充请求直到请求队列满。</p>
+	 * <p>请求队列可以跨越多个Piece，请求队列长度根据下载速度动态调整。</p>
+	 * <p>令牌不足（限速）时不补充请求：延迟调度请求，不会阻塞网络线程。</p>
+	 * <p>消息在请求锁外发送：发送可能阻塞（UTP窗口）</p>
 	 * 
 	 * @return 是否可以继续下载
 	 */
@@ -339,198 +502,457 @@ public abstract class PeerConnect {
 			LOGGER.debug("释放Peer：任务不可下载");
 			return false;
 		}
-		this.pick(); // 挑选Piece
-		if(this.downloadPiece == null) {
-			LOGGER.debug("释放Peer：没有匹配Piece下载");
-			this.peerSubMessageHandler.notInterested(); // 发送不感兴趣消息
-			return false;
-		}
-		final int index = this.downloadPiece.getIndex();
-		while(this.available()) {
-			// 超过slice请求数量进入等待
-			if (this.sliceLock.get() >= SLICE_REQUEST_SIZE) {
-				this.lockSlice();
+		final boolean downloadable;
+		final List<TorrentPiece> completes = new ArrayList<>();
+		final List<SliceRequest> cancels = new ArrayList<>();
+		final List<SliceRequest> sends = new ArrayList<>();
+		synchronized (this.requestLock) {
+			if(!this.downloading) {
+				// 已经释放下载
+				return false;
 			}
-			// 超过slice最大请求数量跳出循环
-			if (this.sliceLock.get() >= SLICE_REQUEST_MAX_SIZE) {
-				LOGGER.debug("超过slice最大请求数量跳出循环：{}-{}", this.downloadPiece.getIndex(), this.sliceLock.get());
-				break;
+			this.completedPieces(completes);
+			this.timeoutPieces(cancels);
+			this.downloadedPieces(cancels);
+			final long delay = this.statisticsSession.downloadDelay();
+			if(delay > 0L) {
+				this.limitSchedule(delay);
+			} else {
+				this.pickRequests(sends);
 			}
-			this.sliceLock.incrementAndGet();
-			// 顺序不能调换：position、length
-			final int begin = this.downloadPiece.position();
-			final int length = this.downloadPiece.length();
-			this.peerSubMessageHandler.request(index, begin, length);
-			// 是否还有更多SLICE
-			if(!this.downloadPiece.hasMoreSlice()) {
-				break;
+			// 限速等待期间继续下载
+			downloadable = delay > 0L || !this.downloadPieces.isEmpty();
+		}
+		completes.forEach(this::save);
+		this.cancel(cancels);
+		sends.forEach(request -> this.peerSubMessageHandler.request(request.index, request.begin, request.length));
+		if(!downloadable) {
+			if(this.peerConnectSession.isPeerUnchoked()) {
+				LOGGER.debug("释放Peer：没有匹配Piece下载");
+				this.peerSubMessageHandler.notInterested(); // 发送不感兴趣消息
+			} else {
+				LOGGER.debug("释放Peer：Peer阻塞");
 			}
+			return false;
 		}
-		// 添加完成锁
-		this.lockCompleted();
-		// 释放释放锁
-		this.unlockRelease();
 		return true;
 	}
 	
 	/**
-	 * <p>选择下载Piece</p>
-	 * <p>如果上个Piece没有完成：标记失败</p>
-	 */
-	private void pick() {
-		if(this.downloadPiece == null) {
-			// 没有Piece
-		} else if(this.downloadPiece.completed()) {
-			// 下载完成
-			if(this.downloadPiece.verify()) {
-				// 验证数据：保存数据
-				final boolean success = this.torrentSession.write(this.downloadPiece);
-				if(success) {
-					// 统计下载有效数据
-					this.statisticsSession.download(this.downloadPiece.getLength());
-				} else {
-					LOGGER.debug("Piece保存失败：{}", this.downloadPiece.getIndex());
-					this.undone();
+	 * <p>延迟调度请求</p>
+	 * <p>已经存在限速定时器时忽略</p>
+	 * 
+	 * @param delay 延迟时间（毫秒）
+	 */
+	private void limitSchedule(long delay) {
+		if(this.limitTimer == null || this.limitTimer.isDone()) {
+			LOGGER.debug("Peer限速：{}", delay);
+			this.limitTimer = this.torrentSession.timer(delay, TimeUnit.MILLISECONDS, this::schedule);
+		}
+	}
+	
+	/**
+	 * <p>结束下载</p>
+	 * <p>没有可以下载的Piece或者Peer不可用时结束下载：释放请求、完成检测</p>
+	 */
+	private void finish() {
+		if(!this.stopDownload()) {
+			return;
+		}
+		this.releaseRequests(false);
+		// 验证任务是否完成
+		this.torrentSession.checkCompletedAndDone();
+		LOGGER.debug("结束请求下载：{}", this.peerSession);
+	}
+	
+	/**
+	 * <p>设置结束下载状态</p>
+	 * 
+	 * @return 是否成功设置（已经结束：false）
+	 */
+	private boolean stopDownload() {
+		synchronized (this.requestLock) {
+			if(!this.downloading) {
+				return false;
+			}
+			this.downloading = false;
+			SystemThreadContext.shutdown(this.timeoutTimer);
+			this.timeoutTimer = null;
+			SystemThreadContext.shutdown(this.limitTimer);
+			this.limitTimer = null;
+			this.requestLock.notifyAll();
+			return true;
+		}
+	}
+	
+	/**
+	 * <p>获取下载完成的Piece</p>
+	 * <p>下载完成的Piece从下载中的Piece中删除</p>
+	 * 
+	 * @param completes 下载完成的Piece
+	 */
+	private void completedPieces(List<TorrentPiece> completes) {
+		final Iterator<TorrentPiece> iterator = this.downloadPieces.iterator();
+		while(iterator.hasNext()) {
+			final TorrentPiece piece = iterator.next();
+			if(piece.completed()) {
+				iterator.remove();
+				completes.add(piece);
+			}
+		}
+	}
+	
+	/**
+	 * <p>放弃请求超时的Piece</p>
+	 * <p>请求超时时请求队列长度减半</p>
+	 * 
+	 * @param cancels 需要取消的请求
+	 */
+	private void timeoutPieces(List<SliceRequest> cancels) {
+		final long timeout = System.currentTimeMillis() - SLICE_TIMEOUT;
+		final List<TorrentPiece> timeoutPieces = new ArrayList<>();
+		for (SliceRequest request : this.requests.values()) {
+			if(request.time < timeout) {
+				final TorrentPiece piece = this.downloadPiece(request.index, request.begin);
+				if(piece != null && !timeoutPieces.contains(piece)) {
+					timeoutPieces.add(piece);
 				}
-			} else {
-				LOGGER.warn("Piece校验失败：{}", this.downloadPiece.getIndex());
-				this.peerSession.badPieces(this.downloadPiece.getIndex());
-				this.undone();
 			}
-		} else { // Piece没有下载完成
-			LOGGER.debug("Piece没有下载完成：{}", this.downloadPiece.getIndex());
-			this.undone();
 		}
-		// 挑选Piece
+		if(timeoutPieces.isEmpty()) {
+			return;
+		}
+		LOGGER.debug("Piece请求超时：{}", timeoutPieces.size());
+		timeoutPieces.forEach(piece -> this.giveUp(piece, cancels));
+		this.requestSize = Math.max(MIN_REQUEST_SIZE, this.requestSize / 2);
+	}
+	
+	/**
+	 * <p>放弃已经被其他Peer下载完成的Piece</p>
+	 * <p>任务接近完成时多个Peer重复下载同一个Piece，其中一个Peer下载完成后其他Peer取消请求。</p>
+	 * <p>只处理完整Piece：跨越文件的Piece不能通过Piece索引判断是否下载完成</p>
+	 * 
+	 * @param cancels 需要取消的请求
+	 */
+	private void downloadedPieces(List<SliceRequest> cancels) {
+		final List<TorrentPiece> downloadedPieces = new ArrayList<>();
+		for (TorrentPiece piece : this.downloadPieces) {
+			if(
+				piece.getLength() == piece.getPieceLength() &&
+				this.torrentSession.hasPiece(piece.getIndex())
+			) {
+				downloadedPieces.add(piece);
+			}
+		}
+		downloadedPieces.forEach(piece -> {
+			LOGGER.debug("Piece已经下载完成（取消请求）：{}", piece.getIndex());
+			this.giveUp(piece, cancels);
+		});
+	}
+	
+	/**
+	 * <p>补充请求</p>
+	 * <p>优先请求下载中的Piece，下载中的Piece全部请求完成后选择新的Piece。</p>
+	 * 
+	 * @param sends 需要发送的请求
+	 */
+	private void pickRequests(List<SliceRequest> sends) {
+		if(this.requests.isEmpty()) {
+			// 没有等待响应的请求：重新开始统计周期
+			this.rateSize = 0L;
+			this.rateTime = System.currentTimeMillis();
+		}
+		final int size = Math.min(this.requestSize, this.peerSession.reqq());
+		for (TorrentPiece piece : this.downloadPieces) {
+			this.pickRequests(piece, size, sends);
+		}
+		while(this.requests.size() < size && this.downloadPieces.size() < MAX_PIECE_SIZE) {
+			final TorrentPiece piece = this.pick();
+			if(piece == null) {
+				break;
+			}
+			this.downloadPieces.add(piece);
+			this.pickRequests(piece, size, sends);
+		}
+	}
+	
+	/**
+	 * <p>补充Piece请求</p>
+	 * 
+	 * @param piece Piece
+	 * @param size 请求队列长度
+	 * @param sends 需要发送的请求
+	 */
+	private void pickRequests(TorrentPiece piece, int size, List<SliceRequest> sends) {
+		if(
+			!this.peerConnectSession.isPeerUnchoked() &&
+			!this.peerSession.allowedPieces().get(piece.getIndex())
+		) {
+			// Peer阻塞：只能请求快速允许Piece
+			return;
+		}
+		final long time = System.currentTimeMillis();
+		while(this.requests.size() < size && piece.hasMoreSlice()) {
+			// 顺序不能调换：position、length
+			final int begin = piece.position();
+			final int length = piece.length();
+			final SliceRequest request = new SliceRequest(piece.getIndex(), begin, length, time);
+			this.requests.put(requestKey(request.index, request.begin), request);
+			sends.add(request);
+		}
+	}
+	
+	/**
+	 * <p>选择下载Piece</p>
+	 * <p>排除下载中的Piece：任务接近完成时可能重复选择下载中的Piece</p>
+	 * 
+	 * @return 下载Piece
+	 */
+	private TorrentPiece pick() {
+		final BitSet peerPieces;
+		final BitSet suggestPieces;
 		if(this.peerConnectSession.isPeerUnchoked()) { // 解除阻塞
 			LOGGER.debug("选择下载Piece：解除阻塞");
-			this.downloadPiece = this.torrentSession.pick(this.peerSession.availablePieces(), this.peerSession.suggestPieces());
+			peerPieces = this.peerSession.availablePieces();
+			suggestPieces = (BitSet) this.peerSession.suggestPieces().clone();
 		} else { // 快速允许
 			LOGGER.debug("选择下载Piece：快速允许");
-			this.downloadPiece = this.torrentSession.pick(this.peerSession.allowedPieces(), this.peerSession.allowedPieces());
+			peerPieces = (BitSet) this.peerSession.allowedPieces().clone();
+			suggestPieces = (BitSet) this.peerSession.allowedPieces().clone();
 		}
-		if(this.downloadPiece != null) {
-			LOGGER.debug("选取Piece：{}-{}-{}", this.downloadPiece.getIndex(), this.downloadPiece.getBegin(), this.downloadPiece.getEnd());
+		for (TorrentPiece piece : this.downloadPieces) {
+			peerPieces.clear(piece.getIndex());
+			suggestPieces.clear(piece.getIndex());
 		}
-		// 设置状态
-		this.sliceLock.set(0);
-		this.completedLock.set(false);
+		final TorrentPiece piece = this.torrentSession.pick(peerPieces, suggestPieces);
+		if(piece != null) {
+			LOGGER.debug("选取Piece：{}-{}-{}", piece.getIndex(), piece.getBegin(), piece.getEnd());
+		}
+		return piece;
 	}
 	
 	/**
-	 * <p>下载失败</p>
-	 */
-	private void undone() {
-		LOGGER.debug("Piece下载失败：{}", this.downloadPiece.getIndex());
-		this.torrentSession.undone(this.downloadPiece);
+	 * <p>保存下载完成的Piece</p>
+	 * 
+	 * @param piece Piece
+	 */
+	private void save(TorrentPiece piece) {
+		if(piece.verify()) {
+			// 验证数据：保存数据
+			final boolean success = this.torrentSession.write(piece);
+			if(success) {
+				// 统计下载有效数据
+				this.statisticsSession.download(piece.getLength());
+			} else {
+				LOGGER.debug("Piece保存失败：{}", piece.getIndex());
+				this.undone(piece);
+			}
+		} else {
+			LOGGER.warn("Piece校验失败：{}", piece.getIndex());
+			this.peerSession.badPieces(piece.getIndex());
+			this.undone(piece);
+			// 下载完成没有更多数据：释放Piece数据
+			piece.release();
+		}
 	}
 	
 	/**
-	 * <p>PeerConnect释放下载</p>
-	 */
-	protected final void releaseDownload() {
-		try {
-			if(this.downloading) {
-				LOGGER.debug("PeerConnect释放下载：{}-{}", this.peerSession.host(), this.peerSession.port());
-				this.downloading = false;
-				// 没有完成：等待下载完成
-				if(!this.completedLock.get()) {
-					// 添加释放锁
-					this.lockRelease();
+	 * <p>放弃下载中的Piece</p>
+	 * <p>删除Piece所有等待响应的请求、标记失败、释放Piece数据</p>
+	 * <p>Piece放弃以后响应的数据没有对应请求直接丢弃，所以可以释放Piece数据。</p>
+	 * 
+	 * @param piece Piece
+	 * @param cancels 需要取消的请求：null-不用取消
+	 */
+	private void giveUp(TorrentPiece piece, List<SliceRequest> cancels) {
+		final Iterator<SliceRequest> iterator = this.requests.values().iterator();
+		while(iterator.hasNext()) {
+			final SliceRequest request = iterator.next();
+			if(this.downloadPiece(request.index, request.begin) == piece) {
+				iterator.remove();
+				if(cancels != null) {
+					cancels.add(request);
 				}
 			}
-		} catch (Exception e) {
-			LOGGER.error("PeerConnect释放下载异常", e);
 		}
+		this.downloadPieces.remove(piece);
+		this.undone(piece);
+		piece.release();
 	}
 	
 	/**
-	 * <p>添加slice锁</p>
-	 */
-	private void lockSlice() {
-		synchronized (this.sliceLock) {
-			try {
-				this.sliceLock.wait(SLICE_TIMEOUT);
-			} catch (InterruptedException e) {
-				LOGGER.debug("线程等待异常", e);
-				Thread.currentThread().interrupt();
+	 * <p>获取请求对应的下载中Piece</p>
+	 * 
+	 * @param index Piece索引
+	 * @param begin Piece内偏移
+	 * 
+	 * @return 下载中Piece
+	 */
+	private TorrentPiece downloadPiece(int index, int begin) {
+		for (TorrentPiece piece : this.downloadPieces) {
+			if(
+				piece.getIndex() == index &&
+				piece.getBegin() <= begin &&
+				begin < piece.getEnd()
+			) {
+				return piece;
 			}
 		}
+		return null;
 	}
 	
 	/**
-	 * <p>释放slice锁</p>
+	 * <p>统计下载速度</p>
+	 * <p>每个统计周期根据下载速度调整请求队列长度</p>
+	 * 
+	 * @param length 数据长度
+	 * 
+	 * @see #REQUEST_QUEUE_TIME
 	 */
-	private void unlockSlice() {
-		// 请求数据下载完成：释放锁
-		if (this.sliceLock.decrementAndGet() <= 0) {
-			synchronized (this.sliceLock) {
-				this.sliceLock.notifyAll();
-			}
+	private void rate(int length) {
+		this.rateSize += length;
+		final long time = System.currentTimeMillis();
+		final long interval = time - this.rateTime;
+		if(interval < RATE_INTERVAL) {
+			return;
 		}
+		final long rate = this.rateSize * SystemConfig.ONE_SECOND_MILLIS / interval;
+		this.rate = this.rate == 0L ? rate : (this.rate + rate) / 2;
+		this.rateSize = 0L;
+		this.rateTime = time;
+		final long size = this.rate * REQUEST_QUEUE_TIME / SystemConfig.ONE_SECOND_MILLIS / TorrentPiece.SLICE_LENGTH;
+		this.requestSize = (int) Math.max(MIN_REQUEST_SIZE, Math.min(MAX_REQUEST_SIZE, size));
+		LOGGER.debug("Peer下载速度：{}-{}", this.rate, this.requestSize);
 	}
 	
 	/**
-	 * <p>添加完成锁</p>
-	 * <p>无论是否有数据返回都需要进行结束等待，防止数据小于{@value #SLICE_REQUEST_SIZE}个slice时直接跳出了slice wait（sliceLock）导致响应还没有收到就直接结束了。</p>
+	 * <p>通知请求变化</p>
+	 * <p>调度请求、唤醒释放下载等待</p>
 	 */
-	private void lockCompleted() {
-		if(!this.completedLock.get()) {
-			synchronized (this.completedLock) {
-				if(!this.completedLock.get()) {
-					try {
-						this.completedLock.wait(COMPLETED_TIMEOUT);
-					} catch (InterruptedException e) {
-						LOGGER.debug("线程等待异常", e);
-						Thread.currentThread().interrupt();
-					}
-				}
-			}
-		}
+	private void notifyRequest() {
+		this.requestLock.notifyAll();
+		this.schedule();
 	}
 	
 	/**
-	 * <p>释放完成锁</p>
+	 * <p>发送取消请求</p>
+	 * 
+	 * @param cancels 需要取消的请求
 	 */
-	private void unlockCompleted() {
-		synchronized (this.completedLock) {
-			this.completedLock.set(true);
-			this.completedLock.notifyAll();
+	private void cancel(List<SliceRequest> cancels) {
+		if(!this.peerSubMessageHandler.available()) {
+			return;
 		}
+		cancels.forEach(request -> this.peerSubMessageHandler.cancel(request.index, request.begin, request.length));
 	}
-
+	
 	/**
-	 * <p>添加释放锁</p>
-	 */
-	private void lockRelease() {
-		if(!this.releaseLock.get()) {
-			synchronized (this.releaseLock) {
-				if(!this.releaseLock.get()) {
-					// 设置释放状态
-					this.releaseLock.set(true);
-					try {
-						this.releaseLock.wait(RELEASE_TIMEOUT);
-					} catch (InterruptedException e) {
-						LOGGER.debug("线程等待异常", e);
-						Thread.currentThread().interrupt();
-					}
+	 * <p>释放请求</p>
+	 * <p>保存下载完成的Piece、取消没有响应的请求、标记没有完成的Piece失败</p>
+	 * 
+	 * @param await 是否等待已经发送的请求响应（最长等待{@value #RELEASE_TIMEOUT}毫秒）
+	 */
+	private void releaseRequests(boolean await) {
+		final long timeout = System.currentTimeMillis() + RELEASE_TIMEOUT;
+		final List<TorrentPiece> completes = new ArrayList<>();
+		final List<SliceRequest> cancels = new ArrayList<>();
+		synchronized (this.requestLock) {
+			long wait;
+			while(
+				await &&
+				!this.requests.isEmpty() &&
+				this.peerSubMessageHandler.available() &&
+				(wait = timeout - System.currentTimeMillis()) > 0
+			) {
+				try {
+					this.requestLock.wait(wait);
+				} catch (InterruptedException e) {
+					LOGGER.debug("线程等待异常", e);
+					Thread.currentThread().interrupt();
+					break;
 				}
 			}
+			this.completedPieces(completes);
+			while(!this.downloadPieces.isEmpty()) {
+				this.giveUp(this.downloadPieces.get(0), cancels);
+			}
+			this.requests.clear();
 		}
+		completes.forEach(this::save);
+		this.cancel(cancels);
 	}
-
+	
 	/**
-	 * <p>释放释放锁</p>
+	 * <p>下载失败</p>
+	 * 
+	 * @param piece Piece
 	 */
-	private void unlockRelease() {
-		// 释放状态
-		if(this.releaseLock.get()) {
-			synchronized (this.releaseLock) {
-				if(this.releaseLock.get()) {
-					this.releaseLock.notifyAll();
-				}
-			}
+	private void undone(TorrentPiece piece) {
+		LOGGER.debug("Piece下载失败：{}", piece.getIndex());
+		this.torrentSession.undone(piece);
+	}
+	
+	/**
+	 * <p>PeerConnect释放下载</p>
+	 * <p>等待已经发送的请求响应：最长等待{@value #RELEASE_TIMEOUT}毫秒</p>
+	 */
+	protected final void releaseDownload() {
+		if(!this.stopDownload()) {
+			return;
+		}
+		LOGGER.debug("PeerConnect释放下载：{}-{}", this.peerSession.host(), this.peerSession.port());
+		try {
+			this.releaseRequests(true);
+		} catch (Exception e) {
+			LOGGER.error("PeerConnect释放下载异常", e);
+		}
+		// 验证任务是否完成
+		this.torrentSession.checkCompletedAndDone();
+	}
+	
+	/**
+	 * <p>请求标识</p>
+	 * 
+	 * @param index Piece索引
+	 * @param begin Piece内偏移
+	 * 
+	 * @return 请求标识
+	 */
+	private static final long requestKey(int index, int begin) {
+		return ((long) index << 32) | (begin & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * <p>SLICE请求</p>
+	 * 
+	 * @author acgist
+	 */
+	private static final class SliceRequest {
+		
+		/**
+		 * <p>Piece索引</p>
+		 */
+		private final int index;
+		/**
+		 * <p>Piece内偏移</p>
+		 */
+		private final int begin;
+		/**
+		 * <p>数据长度</p>
+		 */
+		private final int length;
+		/**
+		 * <p>发送时间</p>
+		 */
+		private final long time;
+		
+		private SliceRequest(int index, int begin, int length, long time) {
+			this.index = index;
+			this.begin = begin;
+			this.length = length;
+			this.time = time;
 		}
+		
 	}
 	
 	@Override
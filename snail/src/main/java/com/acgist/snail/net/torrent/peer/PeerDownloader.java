@@ -52,6 +52,9 @@ public final class PeerDownloader extends PeerConnect {
 			this.peerSession.fail(); // 记录失败次数
 		}
 		this.available = success;
+		if(success) {
+			this.attachPieceAvailability();
+		}
 		return success;
 	}
 	
@@ -99,6 +99,15 @@ public final class PeerDownloaderGroup {
 		}
 	}
 	
+	/**
+	 * <p>获取PeerDownloader数量</p>
+	 * 
+	 * @return PeerDownloader数量
+	 */
+	public int size() {
+		return this.peerDownloaders.size();
+	}
+	
 	/**
 	 * <p>资源释放</p>
 	 * <p>释放所有PeerDownloader</p>
@@ -40,10 +40,17 @@ public final class PeerMessageHandler extends TcpMessageHandler implements IMess
 		this.peerSubMessageHandler.messageEncryptSender(this);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>加密和放入发送队列需要加锁：保证加密顺序和发送顺序一致</p>
+	 */
 	@Override
 	public void sendEncrypt(ByteBuffer buffer, int timeout) throws NetException {
-		this.messageCodec.encode(buffer);
-		this.send(buffer, timeout);
+		synchronized (this) {
+			this.messageCodec.encode(buffer);
+			this.send(buffer, timeout);
+		}
 	}
 
 }
@@ -2,7 +2,14 @@ package com.acgist.snail.net.torrent.peer;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,9 +17,12 @@ import org.slf4j.LoggerFactory;
 import com.acgist.snail.config.PeerConfig;
 import com.acgist.snail.config.PeerConfig.Type;
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.NetBufferContext;
 import com.acgist.snail.context.PeerContext;
+import com.acgist.snail.context.SystemThreadContext;
 import com.acgist.snail.context.TorrentContext;
 import com.acgist.snail.context.exception.NetException;
+import com.acgist.snail.context.exception.PacketSizeException;
 import com.acgist.snail.net.IMessageEncryptSender;
 import com.acgist.snail.net.codec.IMessageCodec;
 import com.acgist.snail.pojo.session.PeerConnectSession;
@@ -63,6 +73,13 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 	 * <p>握手超时时间：{@value}</p>
 	 */
 	public static final int HANDSHAKE_TIMEOUT = SystemConfig.CONNECT_TIMEOUT;
+	/**
+	 * <p>上传队列最大长度：{@value}</p>
+	 * <p>不超过扩展协议握手声明的未完成请求数量：超过时拒绝请求</p>
+	 * 
+	 * @see ExtensionMessageHandler#DEFAULT_REQQ
+	 */
+	private static final int MAX_UPLOAD_SIZE = ExtensionMessageHandler.DEFAULT_REQQ;
 	
 	/**
 	 * <p>是否已经发送握手</p>
@@ -104,6 +121,16 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 	 * <p>DHT扩展消息代理</p>
 	 */
 	private DhtExtensionMessageHandler dhtExtensionMessageHandler;
+	/**
+	 * <p>上传队列</p>
+	 * <p>限速时等待令牌的请求：令牌足够时按照请求顺序发送</p>
+	 */
+	private final Deque<UploadRequest> uploadRequests = new ArrayDeque<>();
+	/**
+	 * <p>上传队列定时器</p>
+	 * <p>不为空：上传队列正在等待令牌或者正在发送</p>
+	 */
+	private ScheduledFuture<?> uploadTimer;
 	
 	/**
 	 * <p>服务端</p>
@@ -433,6 +460,8 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 		LOGGER.debug("发送阻塞消息");
 		this.peerConnectSession.amChoked();
 		this.pushMessage(PeerConfig.Type.CHOKE, null);
+		// 阻塞后不再上传：拒绝上传队列中的请求
+		this.releaseUpload().forEach(request -> this.rejectRequest(request.index, request.begin, request.length));
 	}
 
 	/**
@@ -445,6 +474,9 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 		this.peerConnectSession.peerChoked();
 		// 不释放资源：让系统自动优化剔除
 //		this.peerConnect.release();
+		if(this.peerConnect != null) {
+			this.peerConnect.choke();
+		}
 	}
 	
 	/**
@@ -733,6 +765,9 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 		final int begin = buffer.getInt();
 		final int length = buffer.getInt();
 		LOGGER.debug("处理rejectRequest消息：{}-{}-{}", index, begin, length);
+		if(this.peerConnect != null) {
+			this.peerConnect.reject(index, begin, length);
+		}
 	}
 	
 	/**
@@ -926,12 +961,98 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 		}
 		LOGGER.debug("处理request消息：{}-{}-{}", index, begin, length);
 		if(this.torrentSession.hasPiece(index)) {
-			try {
-				final byte[] bytes = this.torrentSession.read(index, begin, length);
-				this.piece(index, begin, bytes);
-			} catch (NetException e) {
-				LOGGER.error("处理request消息异常", e);
+			this.upload(index, begin, length);
+		}
+	}
+	
+	/**
+	 * <p>上传数据</p>
+	 * <p>令牌足够并且上传队列为空时直接发送，否者加入上传队列等待令牌（不能阻塞网络线程）。</p>
+	 * <p>上传队列已满时拒绝请求</p>
+	 * 
+	 * @param index Piece索引
+	 * @param begin Piece内偏移
+	 * @param length 数据长度
+	 */
+	private void upload(int index, int begin, int length) {
+		final boolean reject;
+		synchronized (this.uploadRequests) {
+			final long delay = this.uploadRequests.isEmpty() ? this.peerConnect.uploadDelay() : 0L;
+			if(this.uploadRequests.isEmpty() && delay <= 0L) {
+				reject = false;
+			} else if(this.uploadRequests.size() < MAX_UPLOAD_SIZE) {
+				this.uploadRequests.offer(new UploadRequest(index, begin, length));
+				if(this.uploadTimer == null) {
+					LOGGER.debug("Peer上传限速：{}", delay);
+					this.uploadTimer = this.torrentSession.timer(delay, TimeUnit.MILLISECONDS, this::uploadQueue);
+				}
+				return;
+			} else {
+				reject = true;
+			}
+		}
+		if(reject) {
+			LOGGER.debug("上传队列已满：{}-{}-{}", index, begin, length);
+			this.rejectRequest(index, begin, length);
+		} else {
+			this.pieceQuietly(index, begin, length);
+		}
+	}
+	
+	/**
+	 * <p>发送上传队列中的请求</p>
+	 * <p>令牌不足时等待令牌生成后继续发送：上传队列为空时结束</p>
+	 */
+	private void uploadQueue() {
+		while(true) {
+			final UploadRequest request;
+			synchronized (this.uploadRequests) {
+				if(this.uploadRequests.isEmpty()) {
+					this.uploadTimer = null;
+					return;
+				}
+				final long delay = this.peerConnect.uploadDelay();
+				if(delay > 0L) {
+					this.uploadTimer = this.torrentSession.timer(delay, TimeUnit.MILLISECONDS, this::uploadQueue);
+					return;
+				}
+				request = this.uploadRequests.poll();
 			}
+			this.pieceQuietly(request.index, request.begin, request.length);
+		}
+	}
+	
+	/**
+	 * <p>释放上传队列</p>
+	 * <p>取消上传队列定时器</p>
+	 * 
+	 * @return 上传队列中没有发送的请求
+	 */
+	private List<UploadRequest> releaseUpload() {
+		synchronized (this.uploadRequests) {
+			final List<UploadRequest> requests = new ArrayList<>(this.uploadRequests);
+			this.uploadRequests.clear();
+			SystemThreadContext.shutdown(this.uploadTimer);
+			this.uploadTimer = null;
+			return requests;
+		}
+	}
+	
+	/**
+	 * <p>发送piece消息</p>
+	 * <p>忽略异常</p>
+	 * 
+	 * @param index Piece索引
+	 * @param begin Piece内偏移
+	 * @param length 数据长度
+	 * 
+	 * @see #piece(int, int, int)
+	 */
+	private void pieceQuietly(int index, int begin, int length) {
+		try {
+			this.piece(index, begin, length);
+		} catch (NetException e) {
+			LOGGER.error("处理request消息异常", e);
 		}
 	}
 
@@ -944,26 +1065,39 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 	 * X：block长度（默认16KB）
 	 * </pre>
 	 * 
+	 * <p>直接创建完整消息，Piece数据从文件（内存映射、缓存）直接读入消息：不用创建中间数据。</p>
+	 * <p>消息使用{@linkplain NetBufferContext 网络缓冲}：发送完成后由发送者回收</p>
+	 * 
 	 * @param index Piece索引
 	 * @param begin Piece内偏移
-	 * @param bytes Piece数据
+	 * @param length 数据长度
+	 * 
+	 * @throws NetException 网络异常
 	 */
-	private void piece(int index, int begin, byte[] bytes) {
+	private void piece(int index, int begin, int length) throws NetException {
 		if(!this.torrentSession.uploadable()) {
 			LOGGER.debug("发送piece消息：任务不可上传");
 			return;
 		}
-		if(ArrayUtils.isEmpty(bytes)) {
+		PacketSizeException.verify(length);
+		if(length <= 0) {
 			LOGGER.debug("发送piece消息：数据为空");
 			return;
 		}
 		LOGGER.debug("发送piece消息：{}-{}", index, begin);
-		this.peerConnect.uploadMark(bytes.length);
-		final ByteBuffer buffer = ByteBuffer.allocate(8 + bytes.length);
+		// length_prefix（4字节） + message_id（1字节） + index（4字节） + begin（4字节） + block
+		final ByteBuffer buffer = NetBufferContext.getInstance().borrow(13 + length);
+		buffer.putInt(9 + length);
+		buffer.put(PeerConfig.Type.PIECE.id());
 		buffer.putInt(index);
 		buffer.putInt(begin);
-		buffer.put(bytes);
-		this.pushMessage(PeerConfig.Type.PIECE, buffer.array());
+		if(!this.torrentSession.read(index, begin, length, buffer)) {
+			LOGGER.debug("发送piece消息：读取数据失败");
+			NetBufferContext.getInstance().recycle(buffer);
+			return;
+		}
+		this.peerConnect.uploadMark(length);
+		this.sendEncrypt(buffer);
 	}
 
 	/**
@@ -979,13 +1113,10 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 		final int index = buffer.getInt();
 		final int begin = buffer.getInt();
 		LOGGER.debug("处理piece消息：{}-{}", index, begin);
-		if(buffer.hasRemaining()) {
-			final byte[] bytes = new byte[buffer.remaining()];
-			buffer.get(bytes);
-			if(this.peerConnect != null) {
-				this.peerConnect.downloadMark(bytes.length);
-				this.peerConnect.piece(index, begin, bytes);
-			}
+		if(buffer.hasRemaining() && this.peerConnect != null) {
+			// 直接写入Piece缓冲：不用复制数据
+			this.peerConnect.downloadMark(buffer.remaining());
+			this.peerConnect.piece(index, begin, buffer);
 		}
 	}
 
@@ -1009,11 +1140,32 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 	
 	/**
 	 * <p>处理cancel消息</p>
+	 * <p>FAST扩展：取消的请求也要响应，删除上传队列中没有发送的请求后发送rejectRequest消息。</p>
 	 * 
 	 * @param buffer 消息
 	 */
 	private void cancel(ByteBuffer buffer) {
-		LOGGER.debug("处理cancel消息");
+		final int index = buffer.getInt();
+		final int begin = buffer.getInt();
+		final int length = buffer.getInt();
+		LOGGER.debug("处理cancel消息：{}-{}-{}", index, begin, length);
+		// 删除上传队列中没有发送的请求
+		int cancelSize = 0;
+		synchronized (this.uploadRequests) {
+			final Iterator<UploadRequest> iterator = this.uploadRequests.iterator();
+			while(iterator.hasNext()) {
+				final UploadRequest request = iterator.next();
+				if(request.index == index && request.begin == begin && request.length == length) {
+					iterator.remove();
+					cancelSize++;
+				}
+			}
+		}
+		if(cancelSize > 0 && this.peerSession.supportFastExtensionProtocol()) {
+			for (int count = 0; count < cancelSize; count++) {
+				this.rejectRequest(index, begin, length);
+			}
+		}
 	}
 	
 	/**
@@ -1163,6 +1315,7 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 	 * @see IMessageEncryptSender#close()
 	 */
 	public void close() {
+		this.releaseUpload();
 		this.messageEncryptSender.close();
 	}
 	
@@ -1277,5 +1430,32 @@ public final class PeerSubMessageHandler implements IMessageCodec<ByteBuffer> {
 			}
 		}
 	}
+		/**
+	 * <p>上传请求</p>
+	 * 
+	 * @author acgist
+	 */
+	private static final class UploadRequest {
+		
+		/**
+		 * <p>Piece索引</p>
+		 */
+		private final int index;
+		/**
+		 * <p>Piece内偏移</p>
+		 */
+		private final int begin;
+		/**
+		 * <p>数据长度</p>
+		 */
+		private final int length;
+		
+		private UploadRequest(int index, int begin, int length) {
+			this.index = index;
+			this.begin = begin;
+			this.length = length;
+		}
+		
+	}
 	
 }
\ No newline at end of file
@@ -45,24 +45,30 @@ public final class PeerUnpackMessageCodec extends MessageCodec<ByteBuffer, ByteB
 		this.peerSubMessageHandler = peerSubMessageHandler;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>完整消息直接使用接收缓冲切片处理，只有消息跨越多次读取时才缓存消息。</p>
+	 * <p>注意：消息处理完成后接收缓冲会被回收，消息代理需要保留的数据必须复制。</p>
+	 */
 	@Override
 	public void doDecode(ByteBuffer buffer, InetSocketAddress address) throws NetException {
 		int length = 0; // 消息数据长度
-		while(true) {
+		while(buffer.hasRemaining()) {
 			if(this.buffer == null) {
 				if(this.peerSubMessageHandler.handshake()) {
-					for (int index = 0; index < buffer.limit() && buffer.hasRemaining(); index++) {
-						this.lengthStick.put(buffer.get());
-						if(this.lengthStick.position() == INT_BYTE_LENGTH) {
+					if(this.lengthStick.position() == 0 && buffer.remaining() >= INT_BYTE_LENGTH) {
+						length = buffer.getInt();
+					} else {
+						while(buffer.hasRemaining() && this.lengthStick.hasRemaining()) {
+							this.lengthStick.put(buffer.get());
+						}
+						if(this.lengthStick.hasRemaining()) { // 消息长度读取不完整跳出
 							break;
 						}
-					}
-					if(this.lengthStick.position() == INT_BYTE_LENGTH) {
 						this.lengthStick.flip();
 						length = this.lengthStick.getInt();
-						this.lengthStick.compact();
-					} else { // 消息长度读取不完整跳出
-						break;
+						this.lengthStick.clear();
 					}
 				} else { // 握手消息长度
 					length = PeerConfig.HANDSHAKE_LENGTH;
@@ -70,39 +76,32 @@ public final class PeerUnpackMessageCodec extends MessageCodec<ByteBuffer, ByteB
 				// 心跳消息
 				if(length <= 0) {
 					this.peerSubMessageHandler.keepAlive();
-					if(buffer.hasRemaining()) { // 还有消息：继续处理
-						continue;
-					} else { // 没有消息：跳出循环
-						break;
-					}
+					continue;
 				}
 				PacketSizeException.verify(length);
+				if(buffer.remaining() >= length) { // 包含一条完整消息：直接处理切片
+					final ByteBuffer message = buffer.slice();
+					message.limit(length);
+					buffer.position(buffer.position() + length);
+					this.doNext(message, address);
+					continue;
+				}
+				// 不是一条完整消息：缓存消息
 				this.buffer = ByteBuffer.allocate(length);
-			} else {
-				// 上次消息没有读取完成：计算剩余消息数据长度
-				length = this.buffer.capacity() - this.buffer.position();
 			}
-			final int remaining = buffer.remaining();
-			if(remaining > length) { // 包含一条完整消息：处理完成后继续读取
-				final byte[] bytes = new byte[length];
-				buffer.get(bytes);
-				this.buffer.put(bytes);
-				this.buffer.flip();
-				this.doNext(this.buffer, address);
-				this.buffer = null;
-			} else if(remaining == length) { // 刚好一条完整消息：处理完成后跳出循环
-				final byte[] bytes = new byte[length];
-				buffer.get(bytes);
-				this.buffer.put(bytes);
+			// 上次消息没有读取完成：计算剩余消息数据长度
+			length = this.buffer.remaining();
+			if(buffer.remaining() >= length) { // 消息读取完成：处理完成后继续读取
+				final ByteBuffer message = buffer.slice();
+				message.limit(length);
+				buffer.position(buffer.position() + length);
+				this.buffer.put(message);
 				this.buffer.flip();
-				this.doNext(this.buffer, address);
+				final ByteBuffer completeMessage = this.buffer;
 				this.buffer = null;
-				break;
-			} else if(remaining < length) { // 不是一条完整消息：跳出循环等待后续数据
-				final byte[] bytes = new byte[remaining];
-				buffer.get(bytes);
-				this.buffer.put(bytes);
-				break;
+				this.doNext(completeMessage, address);
+			} else { // 消息没有读取完成：跳出循环等待后续数据
+				this.buffer.put(buffer);
 			}
 		}
 	}
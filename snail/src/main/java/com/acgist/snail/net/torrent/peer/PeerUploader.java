@@ -25,6 +25,7 @@ public final class PeerUploader extends PeerConnect {
 	private PeerUploader(PeerSession peerSession, TorrentSession torrentSession, PeerSubMessageHandler peerSubMessageHandler) {
 		super(peerSession, torrentSession, peerSubMessageHandler);
 		this.available = true;
+		this.attachPieceAvailability();
 	}
 	
 	/**
@@ -120,6 +120,15 @@ public final class PeerUploaderGroup {
 		}
 	}
 	
+	/**
+	 * <p>获取PeerUploader数量</p>
+	 * 
+	 * @return PeerUploader数量
+	 */
+	public int size() {
+		return this.peerUploaders.size();
+	}
+	
 	/**
 	 * <p>释放资源</p>
 	 * <p>释放所有PeerUploader</p>
@@ -12,7 +12,7 @@ import com.acgist.snail.config.PeerConfig.ExtensionType;
 import com.acgist.snail.config.PeerConfig.MetadataType;
 import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.context.exception.NetException;
-import com.acgist.snail.format.BEncodeDecoder;
+import com.acgist.snail.format.BEncodeCursor;
 import com.acgist.snail.format.BEncodeEncoder;
 import com.acgist.snail.net.torrent.peer.ExtensionMessageHandler;
 import com.acgist.snail.net.torrent.peer.ExtensionTypeMessageHandler;
@@ -87,17 +87,25 @@ public final class MetadataMessageHandler extends ExtensionTypeMessageHandler {
 		return new MetadataMessageHandler(peerSession, torrentSession, extensionMessageHandler);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>使用游标读取消息：Slice数据直接从缓冲复制到种子信息</p>
+	 */
 	@Override
 	public void doMessage(ByteBuffer buffer) throws NetException {
-		final var decoder = BEncodeDecoder.newInstance(buffer);
-		decoder.nextMap();
-		if(decoder.isEmpty()) {
-			if(LOGGER.isWarnEnabled()) {
-				LOGGER.warn("处理metadata消息错误（格式）：{}", decoder.oddString());
-			}
+		final BEncodeCursor cursor;
+		try {
+			cursor = BEncodeCursor.newInstance(buffer);
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("处理metadata消息错误（格式）：{}", e.getMessage());
+			return;
+		}
+		if(!cursor.isMap()) {
+			LOGGER.warn("处理metadata消息错误（格式）：{}", this.peerSession);
 			return;
 		}
-		final Byte typeId = decoder.getByte(ARG_MSG_TYPE);
+		final Byte typeId = cursor.getByte(ARG_MSG_TYPE);
 		final MetadataType metadataType = PeerConfig.MetadataType.of(typeId);
 		if(metadataType == null) {
 			LOGGER.warn("处理metadata消息错误（未知类型）：{}", typeId);
@@ -106,13 +114,13 @@ public final class MetadataMessageHandler extends ExtensionTypeMessageHandler {
 		LOGGER.debug("处理metadata消息：{}", metadataType);
 		switch (metadataType) {
 		case REQUEST:
-			this.request(decoder);
+			this.request(cursor);
 			break;
 		case DATA:
-			this.data(decoder);
+			this.data(cursor);
 			break;
 		case REJECT:
-			this.reject(decoder);
+			this.reject(cursor);
 			break;
 		default:
 			LOGGER.warn("处理metadata消息错误（类型未适配）：{}", metadataType);
@@ -136,11 +144,11 @@ public final class MetadataMessageHandler extends ExtensionTypeMessageHandler {
 	/**
 	 * <p>处理消息：request</p>
 	 * 
-	 * @param decoder 消息
+	 * @param cursor 消息
 	 */
-	private void request(BEncodeDecoder decoder) {
+	private void request(BEncodeCursor cursor) {
 		LOGGER.debug("处理metadata消息-request");
-		final int piece = decoder.getInteger(ARG_PIECE);
+		final int piece = cursor.getInteger(ARG_PIECE);
 		this.data(piece);
 	}
 
@@ -175,18 +183,18 @@ public final class MetadataMessageHandler extends ExtensionTypeMessageHandler {
 	/**
 	 * <p>处理消息：data</p>
 	 * 
-	 * @param decoder 消息
+	 * @param cursor 消息
 	 */
-	private void data(BEncodeDecoder decoder) {
+	private void data(BEncodeCursor cursor) {
 		LOGGER.debug("处理metadata消息-data");
 		byte[] bytes = this.infoHash.info();
 		if(bytes == null) {
 			// 设置种子Info
-			final int totalSize = decoder.getInteger(ARG_TOTAL_SIZE);
+			final int totalSize = cursor.getInteger(ARG_TOTAL_SIZE);
 			bytes = new byte[totalSize];
 			this.infoHash.info(bytes);
 		}
-		final int piece = decoder.getInteger(ARG_PIECE);
+		final int piece = cursor.getInteger(ARG_PIECE);
 		final int pos = piece * SLICE_LENGTH;
 		if(pos > bytes.length) {
 			LOGGER.warn("处理metadata消息-data失败（数据长度错误）：{}-{}", pos, bytes.length);
@@ -196,8 +204,8 @@ public final class MetadataMessageHandler extends ExtensionTypeMessageHandler {
 		if(pos + SLICE_LENGTH > bytes.length) {
 			length = bytes.length - pos;
 		}
-		final byte[] x = decoder.oddBytes(); // 剩余数据作为Slice数据
-		System.arraycopy(x, 0, bytes, pos, length);
+		final ByteBuffer x = cursor.oddBuffer(); // 剩余数据作为Slice数据
+		x.get(bytes, pos, Math.min(length, x.remaining()));
 		final byte[] sourceHash = this.infoHash.infoHash();
 		final byte[] targetHash = StringUtils.sha1(bytes);
 		// 判断Hash值是否相等（相等表示已经下载完成：完成后保存种子文件）
@@ -218,11 +226,11 @@ public final class MetadataMessageHandler extends ExtensionTypeMessageHandler {
 	/**
 	 * <p>处理消息：reject</p>
 	 * 
-	 * @param decoder 消息
+	 * @param cursor 消息
 	 */
-	private void reject(BEncodeDecoder decoder) {
+	private void reject(BEncodeCursor cursor) {
 		if(LOGGER.isDebugEnabled()) {
-			LOGGER.debug("处理metadata消息-reject：{}", decoder.oddString());
+			LOGGER.debug("处理metadata消息-reject：{}", cursor.getInteger(ARG_PIECE));
 		}
 	}
 	
@@ -86,6 +86,7 @@ public final class HttpTrackerSession extends TrackerSession {
 			.newInstance(announceMessage)
 			.get();
 		if(!client.ok()) {
+			client.shutdown();
 			throw new NetException("HTTP Tracker声明失败");
 		}
 		final var body = client.responseToBytes();
@@ -102,13 +103,13 @@ public final class HttpTrackerSession extends TrackerSession {
 	@Override
 	public void completed(Integer sid, TorrentSession torrentSession) throws NetException {
 		final String announceMessage = (String) this.buildAnnounceMessage(sid, torrentSession, TrackerConfig.Event.COMPLETED);
-		HttpClient.newInstance(announceMessage).get();
+		HttpClient.newInstance(announceMessage).get().shutdown();
 	}
 	
 	@Override
 	public void stopped(Integer sid, TorrentSession torrentSession) throws NetException {
 		final String announceMessage = (String) this.buildAnnounceMessage(sid, torrentSession, TrackerConfig.Event.STOPPED);
-		HttpClient.newInstance(announceMessage).get();
+		HttpClient.newInstance(announceMessage).get().shutdown();
 	}
 	
 	@Override
@@ -122,6 +123,7 @@ public final class HttpTrackerSession extends TrackerSession {
 			.newInstance(scrapeMessage)
 			.get();
 		if(!client.ok()) {
+			client.shutdown();
 			throw new NetException("HTTP Tracker刮檫失败");
 		}
 		final var body = client.responseToBytes();
@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.config.UtpConfig;
+import com.acgist.snail.context.NetBufferContext;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.net.IMessageEncryptSender;
 import com.acgist.snail.net.UdpMessageHandler;
@@ -226,19 +227,24 @@ public final class UtpMessageHandler extends UdpMessageHandler implements IMessa
 	 * @throws NetException 网络异常
 	 */
 	private void sendPacket(ByteBuffer buffer) throws NetException {
-		this.check(buffer);
-		byte[] bytes;
-		int remaining;
-		while((remaining = buffer.remaining()) > 0) {
-			// UDP拆包
-			if(remaining > UtpConfig.UTP_PACKET_MAX_LENGTH) {
-				bytes = new byte[UtpConfig.UTP_PACKET_MAX_LENGTH];
-			} else {
-				bytes = new byte[remaining];
+		try {
+			this.check(buffer);
+			byte[] bytes;
+			int remaining;
+			while((remaining = buffer.remaining()) > 0) {
+				// UDP拆包
+				if(remaining > UtpConfig.UTP_PACKET_MAX_LENGTH) {
+					bytes = new byte[UtpConfig.UTP_PACKET_MAX_LENGTH];
+				} else {
+					bytes = new byte[remaining];
+				}
+				buffer.get(bytes);
+				final UtpWindowData windowData = this.sendWindow.build(bytes);
+				this.data(windowData);
 			}
-			buffer.get(bytes);
-			final UtpWindowData windowData = this.sendWindow.build(bytes);
-			this.data(windowData);
+		} finally {
+			// 数据已经复制到发送窗口
+			NetBufferContext.getInstance().recycle(buffer);
 		}
 	}
 	
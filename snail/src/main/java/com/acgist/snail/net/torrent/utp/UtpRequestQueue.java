@@ -10,6 +10,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.acgist.snail.context.MetricsContext;
 import com.acgist.snail.context.SystemThreadContext;
 import com.acgist.snail.context.exception.NetException;
 
@@ -55,6 +56,8 @@ public final class UtpRequestQueue {
 		this.queues = new ArrayList<>(QUEUE_SIZE);
 		this.executor = SystemThreadContext.newExecutor(QUEUE_SIZE, QUEUE_SIZE, 1000, 60, SystemThreadContext.SNAIL_THREAD_UTP_QUEUE);
 		this.buildQueues();
+		SystemThreadContext.metrics(SystemThreadContext.SNAIL_THREAD_UTP_QUEUE, this.executor);
+		MetricsContext.getInstance().gauge("snail_utp_request_queue", "UTP等待处理请求数量", this::queueSize);
 	}
 	
 	/**
@@ -67,6 +70,15 @@ public final class UtpRequestQueue {
 		return this.queues.get(Math.abs(index));
 	}
 	
+	/**
+	 * <p>获取等待处理请求数量</p>
+	 * 
+	 * @return 等待处理请求数量
+	 */
+	public int queueSize() {
+		return this.queues.stream().mapToInt(BlockingQueue::size).sum();
+	}
+	
 	/**
 	 * <p>创建请求队列和处理线程</p>
 	 */
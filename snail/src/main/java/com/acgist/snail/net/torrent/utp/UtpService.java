@@ -9,6 +9,7 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.acgist.snail.context.MetricsContext;
 import com.acgist.snail.context.SystemThreadContext;
 import com.acgist.snail.net.UdpMessageHandler;
 
@@ -58,6 +59,7 @@ public final class UtpService {
 			TimeUnit.SECONDS,
 			this::timeout
 		);
+		MetricsContext.getInstance().gauge("snail_utp_connection", "UTP连接数量", this.utpMessageHandlers::size);
 	}
 	
 	/**
@@ -191,6 +191,8 @@ public final class UpnpService {
 			.header("SOAPAction", "\"" + this.serviceType + "#GetSpecificPortMappingEntry\"")
 			.post(xml);
 		if(client.internalServerError()) {
+			// 没有读取响应数据：关闭连接
+			client.shutdown();
 			return Status.MAPABLE;
 		}
 		final var body = client.responseToString();
@@ -221,11 +223,16 @@ public final class UpnpService {
 		}
 		final var upnpRequest = UpnpRequest.newRequest(this.serviceType);
 		final var xml = upnpRequest.buildAddPortMapping(port, NetUtils.LOCAL_HOST_ADDRESS, portExt, protocol);
-		return HttpClient
+		final var client = HttpClient
 			.newInstance(this.controlUrl)
 			.header("SOAPAction", "\"" + this.serviceType + "#AddPortMapping\"")
-			.post(xml)
-			.ok();
+			.post(xml);
+		try {
+			return client.ok();
+		} finally {
+			// 不用读取响应数据：关闭连接
+			client.shutdown();
+		}
 	}
 	
 	/**
@@ -245,11 +252,16 @@ public final class UpnpService {
 		}
 		final var upnpRequest = UpnpRequest.newRequest(this.serviceType);
 		final var xml = upnpRequest.buildDeletePortMapping(portExt, protocol);
-		return HttpClient
+		final var client = HttpClient
 			.newInstance(this.controlUrl)
 			.header("SOAPAction", "\"" + this.serviceType + "#DeletePortMapping\"")
-			.post(xml)
-			.ok();
+			.post(xml);
+		try {
+			return client.ok();
+		} finally {
+			// 不用读取响应数据：关闭连接
+			client.shutdown();
+		}
 	}
 	
 	/**
@@ -24,18 +24,40 @@ public interface IStatisticsSession extends ISpeedGetter {
 	
 	/**
 	 * <p>上传限速</p>
+	 * <p>统计上传速度并且扣除令牌：不会阻塞</p>
 	 * 
 	 * @param buffer 上传数据大小
+	 * 
+	 * @see #uploadDelay()
 	 */
 	void uploadLimit(int buffer);
 	
 	/**
 	 * <p>下载限速</p>
+	 * <p>统计下载速度并且扣除令牌：不会阻塞</p>
 	 * 
 	 * @param buffer 下载数据大小
+	 * 
+	 * @see #downloadDelay()
 	 */
 	void downloadLimit(int buffer);
 	
+	/**
+	 * <p>获取上传需要等待时间</p>
+	 * <p>上级统计信息需要等待时间取最大值</p>
+	 * 
+	 * @return 上传需要等待时间（毫秒）
+	 */
+	long uploadDelay();
+	
+	/**
+	 * <p>获取下载需要等待时间</p>
+	 * <p>上级统计信息需要等待时间取最大值</p>
+	 * 
+	 * @return 下载需要等待时间（毫秒）
+	 */
+	long downloadDelay();
+	
 	/**
 	 * <p>获取累计上传大小</p>
 	 * 
@@ -1,5 +1,6 @@
 package com.acgist.snail.pojo.bean;
 
+import java.security.Key;
 import java.util.List;
 
 import javax.crypto.Cipher;
@@ -83,11 +84,31 @@ public final class M3u8 {
 	 * <p>为空时表示不加密</p>
 	 */
 	private final Cipher cipher;
+	/**
+	 * <p>密钥</p>
+	 * <p>每个文件解密时重新初始化加密套件</p>
+	 */
+	private final Key secret;
+	/**
+	 * <p>IV</p>
+	 * <p>为空时使用文件序列号作为IV</p>
+	 */
+	private final byte[] iv;
 	/**
 	 * <p>文件列表</p>
 	 * <p>多级M3U8列表：按照码率从小到大排序</p>
 	 */
 	private final List<String> links;
+	/**
+	 * <p>序列号</p>
+	 * <p>第一个文件序列号：直播流媒体使用序列号去重</p>
+	 */
+	private final long sequence;
+	/**
+	 * <p>文件最大时长（秒）</p>
+	 * <p>直播流媒体使用文件最大时长作为刷新周期</p>
+	 */
+	private final int duration;
 	
 	/**
 	 * @param type 类型
@@ -95,9 +116,37 @@ public final class M3u8 {
 	 * @param links 文件列表
 	 */
 	public M3u8(Type type, Cipher cipher, List<String> links) {
+		this(type, cipher, links, 0L, 0);
+	}
+	
+	/**
+	 * @param type 类型
+	 * @param cipher 加密套件
+	 * @param links 文件列表
+	 * @param sequence 序列号
+	 * @param duration 文件最大时长（秒）
+	 */
+	public M3u8(Type type, Cipher cipher, List<String> links, long sequence, int duration) {
+		this(type, cipher, null, null, links, sequence, duration);
+	}
+	
+	/**
+	 * @param type 类型
+	 * @param cipher 加密套件
+	 * @param secret 密钥
+	 * @param iv IV
+	 * @param links 文件列表
+	 * @param sequence 序列号
+	 * @param duration 文件最大时长（秒）
+	 */
+	public M3u8(Type type, Cipher cipher, Key secret, byte[] iv, List<String> links, long sequence, int duration) {
 		this.type = type;
 		this.cipher = cipher;
+		this.secret = secret;
+		this.iv = iv;
 		this.links = links;
+		this.sequence = sequence;
+		this.duration = duration;
 	}
 	
 	/**
@@ -118,6 +167,24 @@ public final class M3u8 {
 		return this.cipher;
 	}
 	
+	/**
+	 * <p>获取密钥</p>
+	 * 
+	 * @return 密钥
+	 */
+	public Key getSecret() {
+		return this.secret;
+	}
+	
+	/**
+	 * <p>获取IV</p>
+	 * 
+	 * @return IV
+	 */
+	public byte[] getIv() {
+		return this.iv;
+	}
+	
 	/**
 	 * <p>获取文件列表</p>
 	 * 
@@ -127,6 +194,24 @@ public final class M3u8 {
 		return this.links;
 	}
 	
+	/**
+	 * <p>获取序列号</p>
+	 * 
+	 * @return 序列号
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+	
+	/**
+	 * <p>获取文件最大时长（秒）</p>
+	 * 
+	 * @return 文件最大时长（秒）
+	 */
+	public int getDuration() {
+		return this.duration;
+	}
+	
 	/**
 	 * <p>获取码率最大的链接</p>
 	 * 
@@ -139,7 +224,7 @@ public final class M3u8 {
 
 	@Override
 	public String toString() {
-		return BeanUtils.toString(this, this.type, this.cipher, this.links);
+		return BeanUtils.toString(this, this.type, this.cipher, this.sequence, this.duration, this.links);
 	}
 	
 }
\ No newline at end of file
@@ -1,12 +1,19 @@
 package com.acgist.snail.pojo.bean;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.BitSet;
+
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.PieceBufferContext;
 import com.acgist.snail.utils.ArrayUtils;
-import com.acgist.snail.utils.StringUtils;
+import com.acgist.snail.utils.DigestUtils;
 
 /**
  * <p>Piece下载信息</p>
  * <p>下载基于文件下载，所以当某个Piece处于两个文件交接处时，该Piece会被分为两次下载。</p>
+ * <p>数据使用{@linkplain PieceBufferContext Piece缓冲}，使用完成后需要{@linkplain #release() 释放}。</p>
+ * <p>Piece缓冲回收后重复使用不会清空数据：按照Slice记录已经写入的数据，所有Slice写入后才算下载完成。</p>
  * 
  * @author acgist
  */
@@ -39,8 +46,9 @@ public final class TorrentPiece {
 	private final int length;
 	/**
 	 * <p>数据</p>
+	 * <p>释放后：null</p>
 	 */
-	private final byte[] data;
+	private volatile ByteBuffer data;
 	/**
 	 * <p>校验数据</p>
 	 */
@@ -50,6 +58,11 @@ public final class TorrentPiece {
 	 * <p>文件第一块和最后一块不验证：多文件可能不同时下载</p>
 	 */
 	private final boolean verify;
+	/**
+	 * <p>已下载Slice位图</p>
+	 * <p>重复写入的Slice不会重复统计</p>
+	 */
+	private final BitSet slices;
 	/**
 	 * <p>已下载大小</p>
 	 * <p>每次获取到Slice数据后修改</p>
@@ -68,8 +81,9 @@ public final class TorrentPiece {
 	 * @param end Piece结束偏移
 	 * @param hash 校验数据
 	 * @param verify 是否校验
+	 * @param data 数据
 	 */
-	private TorrentPiece(long pieceLength, int index, int begin, int end, byte[] hash, boolean verify) {
+	private TorrentPiece(long pieceLength, int index, int begin, int end, byte[] hash, boolean verify, ByteBuffer data) {
 		this.pieceLength = pieceLength;
 		this.index = index;
 		this.begin = begin;
@@ -77,13 +91,15 @@ public final class TorrentPiece {
 		this.hash = hash;
 		this.verify = verify;
 		this.length = end - begin;
-		this.data = new byte[this.length];
+		this.data = data;
+		this.slices = new BitSet();
 		this.size = 0;
 		this.position = 0;
 	}
 
 	/**
 	 * <p>创建Piece下载信息</p>
+	 * <p>借用Piece缓冲失败（超过借用限制）返回{@code null}</p>
 	 * 
 	 * @param pieceLength Piece大小
 	 * @param index Piece索引
@@ -93,9 +109,15 @@ public final class TorrentPiece {
 	 * @param verify 是否校验
 	 * 
 	 * @return Piece下载信息
+	 * 
+	 * @see PieceBufferContext#borrow(int)
 	 */
 	public static final TorrentPiece newInstance(long pieceLength, int index, int begin, int end, byte[] hash, boolean verify) {
-		return new TorrentPiece(pieceLength, index, begin, end, hash, verify);
+		final ByteBuffer data = PieceBufferContext.getInstance().borrow(end - begin);
+		if(data == null) {
+			return null;
+		}
+		return new TorrentPiece(pieceLength, index, begin, end, hash, verify, data);
 	}
 	
 	/**
@@ -198,9 +220,45 @@ public final class TorrentPiece {
 	 * @return true-完成；false-没有完成；
 	 */
 	public boolean write(final int begin, final byte[] bytes) {
+		return this.write(begin, ByteBuffer.wrap(bytes));
+	}
+	
+	/**
+	 * <p>写入Slice数据</p>
+	 * <p>数据直接复制到Piece缓冲，写入后修改{@link #size}</p>
+	 * <p>只统计完整写入的Slice：重复写入不会重复统计</p>
+	 * 
+	 * @param begin 数据开始位移：整个Piece内偏移
+	 * @param bytes 数据
+	 * 
+	 * @return true-完成；false-没有完成；
+	 */
+	public boolean write(final int begin, final ByteBuffer bytes) {
 		synchronized (this) {
-			System.arraycopy(bytes, 0, this.data, begin - this.begin, bytes.length);
-			this.size += bytes.length;
+			final ByteBuffer data = this.data;
+			if(data == null) {
+				return false;
+			}
+			final int position = begin - this.begin;
+			final int length = bytes.remaining();
+			if(position < 0 || length > this.length - position) {
+				// 超出Piece范围
+				return this.completed();
+			}
+			final ByteBuffer buffer = data.duplicate();
+			buffer.position(position);
+			buffer.put(bytes);
+			final int endPos = position + length;
+			// 第一个完整写入的Slice
+			int slice = (position + SLICE_LENGTH - 1) / SLICE_LENGTH;
+			for (; slice * SLICE_LENGTH < endPos; slice++) {
+				final int sliceLength = Math.min(SLICE_LENGTH, this.length - slice * SLICE_LENGTH);
+				if(slice * SLICE_LENGTH + sliceLength > endPos || this.slices.get(slice)) {
+					continue;
+				}
+				this.slices.set(slice);
+				this.size += sliceLength;
+			}
 			return this.completed();
 		}
 	}
@@ -214,6 +272,47 @@ public final class TorrentPiece {
 	 * @return Slice数据
 	 */
 	public byte[] read(final int begin, final int size) {
+		final ByteBuffer buffer = this.slice(begin, size);
+		if(buffer == null) {
+			return null;
+		}
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * <p>读取Slice数据写入缓冲</p>
+	 * 
+	 * @param begin 数据开始位移：整个Piece内偏移
+	 * @param size 长度
+	 * @param buffer 缓冲
+	 * 
+	 * @return 读取数据长度（没有数据：{@code -1}）
+	 */
+	public int read(final int begin, final int size, final ByteBuffer buffer) {
+		final ByteBuffer slice = this.slice(begin, size);
+		if(slice == null) {
+			return -1;
+		}
+		final int length = slice.remaining();
+		buffer.put(slice);
+		return length;
+	}
+	
+	/**
+	 * <p>获取Slice数据视图</p>
+	 * 
+	 * @param begin 数据开始位移：整个Piece内偏移
+	 * @param size 长度
+	 * 
+	 * @return Slice数据视图
+	 */
+	private ByteBuffer slice(final int begin, final int size) {
+		final ByteBuffer data = this.data;
+		if(data == null) {
+			return null;
+		}
 		if(begin >= this.end) {
 			return null;
 		}
@@ -228,17 +327,17 @@ public final class TorrentPiece {
 		}
 		// 当前数据结束偏移
 		int endPos = end - this.begin;
-		if (endPos > this.data.length) {
-			endPos = this.data.length;
+		if (endPos > this.length) {
+			endPos = this.length;
 		}
 		// 读取数据真实长度
 		final int length = endPos - beginPos;
 		if(length <= 0) {
 			return null;
 		}
-		final byte[] bytes = new byte[length];
-		System.arraycopy(this.data, beginPos, bytes, 0, length);
-		return bytes;
+		final ByteBuffer buffer = data.duplicate();
+		buffer.limit(endPos).position(beginPos);
+		return buffer;
 	}
 	
 	/**
@@ -248,11 +347,30 @@ public final class TorrentPiece {
 	 */
 	public boolean verify() {
 		if(this.verify) {
-			final var hash = StringUtils.sha1(this.data);
-			return ArrayUtils.equals(hash, this.hash);
+			final ByteBuffer data = this.data;
+			if(data == null) {
+				return false;
+			}
+			final MessageDigest digest = DigestUtils.sha1();
+			digest.update(data.duplicate());
+			return ArrayUtils.equals(digest.digest(), this.hash);
 		}
 		return true;
 	}
+	
+	/**
+	 * <p>释放数据</p>
+	 * <p>回收Piece缓冲：释放后不能读写数据</p>
+	 * <p>放弃下载的Piece同样释放：释放后写入数据直接忽略</p>
+	 */
+	public void release() {
+		synchronized (this) {
+			if(this.data != null) {
+				PieceBufferContext.getInstance().recycle(this.data);
+				this.data = null;
+			}
+		}
+	}
 
 	/**
 	 * <p>获取Piece大小</p>
@@ -301,11 +419,16 @@ public final class TorrentPiece {
 
 	/**
 	 * <p>获取数据</p>
+	 * <p>返回数据视图：位置{@code 0}，限制数据长度</p>
 	 * 
-	 * @return 数据
+	 * @return 数据（释放后：null）
 	 */
-	public byte[] getData() {
-		return this.data;
+	public ByteBuffer getData() {
+		final ByteBuffer data = this.data;
+		if(data == null) {
+			return null;
+		}
+		return data.duplicate();
 	}
 
 }
@@ -55,6 +55,8 @@ public class ApplicationMessage {
 		TASK_PAUSE,
 		/** 删除任务 */
 		TASK_DELETE,
+		/** 运行指标 */
+		METRICS,
 		
 		//================主动消息（系统通知）================//
 		
@@ -1,8 +1,13 @@
 package com.acgist.snail.pojo.session;
 
+import java.security.Key;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
@@ -13,13 +18,19 @@ import org.slf4j.LoggerFactory;
 import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.context.HlsContext;
 import com.acgist.snail.context.SystemThreadContext;
+import com.acgist.snail.context.exception.DownloadException;
+import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.net.hls.HlsClient;
+import com.acgist.snail.net.hls.TsLinker;
 import com.acgist.snail.pojo.IStatisticsSession;
 import com.acgist.snail.pojo.ITaskSession;
 import com.acgist.snail.pojo.bean.M3u8;
+import com.acgist.snail.protocol.hls.M3u8Builder;
+import com.acgist.snail.utils.ThreadUtils;
 
 /**
  * <p>HSL任务信息</p>
+ * <p>直播流媒体：按照文件最大时长定时刷新M3U8，使用序列号去重后下载新的文件，直到直播结束或者暂停任务。</p>
  * 
  * @author acgist
  */
@@ -31,6 +42,11 @@ public final class HlsSession {
 	 * <p>下载线程数量</p>
 	 */
 	private static final int POOL_SIZE = SystemConfig.getHlsThreadSize();
+	/**
+	 * <p>直播流媒体默认刷新周期（秒）：{@value}</p>
+	 * <p>M3U8没有文件最大时长时使用</p>
+	 */
+	private static final int DEFAULT_LIVE_INTERVAL = 10;
 	
 	/**
 	 * <p>下载状态</p>
@@ -42,8 +58,28 @@ public final class HlsSession {
 	private final M3u8 m3u8;
 	/**
 	 * <p>文件总数量</p>
+	 * <p>直播流媒体文件数量不断增加</p>
+	 */
+	private int fileSize;
+	/**
+	 * <p>是否直播流媒体</p>
+	 * <p>直播结束（M3U8含有结束标记）设置为否</p>
+	 */
+	private volatile boolean live;
+	/**
+	 * <p>直播流媒体下一个文件序列号</p>
+	 * <p>没有开始下载：-1</p>
+	 */
+	private long sequence = -1L;
+	/**
+	 * <p>直播流媒体刷新定时任务</p>
+	 */
+	private ScheduledFuture<?> liveTimer;
+	/**
+	 * <p>直播流媒体密钥缓存</p>
+	 * <p>密钥链接=密钥：刷新M3U8时不用重新下载密钥</p>
 	 */
-	private final int fileSize;
+	private final Map<String, Key> secrets;
 	/**
 	 * <p>累计下载大小</p>
 	 */
@@ -52,6 +88,10 @@ public final class HlsSession {
 	 * <p>任务信息</p>
 	 */
 	private final ITaskSession taskSession;
+	/**
+	 * <p>TS文件连接器</p>
+	 */
+	private final TsLinker linker;
 	/**
 	 * <p>HLS下载客户端</p>
 	 * <p>如果客户端下载成功移除列表，否者重新添加继续下载。</p>
@@ -73,14 +113,22 @@ public final class HlsSession {
 	private HlsSession(M3u8 m3u8, ITaskSession taskSession) {
 		this.m3u8 = m3u8;
 		this.downloadSize = new AtomicLong();
+		this.secrets = new HashMap<>();
 		this.taskSession = taskSession;
 		this.statistics = taskSession.statistics();
-		final var links = taskSession.multifileSelected();
+		this.live = m3u8 != null && m3u8.getType() == M3u8.Type.STREAM;
+		// 直播流媒体开始下载后添加文件
+		final var links = this.live ? List.<String>of() : taskSession.multifileSelected();
 		this.fileSize = links.size();
+		this.linker = TsLinker.newInstance(taskSession.getName(), taskSession.getFile(), this.cipher(), this.fileSize);
 		this.clients = new ArrayList<>(this.fileSize);
-		for (String link : links) {
-			final var client = new HlsClient(link, taskSession, this);
+		for (int index = 0; index < this.fileSize; index++) {
+			final var client = new HlsClient(links.get(index), index, this, this.linker);
 			this.clients.add(client);
+			if(m3u8 != null) {
+				// 文件序列号：第一个文件序列号+文件索引
+				this.linker.crypt(index, m3u8.getSequence() + index, m3u8);
+			}
 		}
 	}
 	
@@ -113,21 +161,125 @@ public final class HlsSession {
 	 * <p>任务全部下载结束后，如果任务可以下载并且没有完成将继续下载。</p>
 	 * 
 	 * @return 是否下载完成
+	 * 
+	 * @throws DownloadException 下载异常
 	 */
-	public boolean download() {
+	public boolean download() throws DownloadException {
 		if(this.downloadable) {
 			LOGGER.debug("HLS任务已经开始下载");
 			return false;
 		}
+		// 已经写入完成的文件不用下载
+		final int index = this.linker.open(this.taskSession.getPayload());
+		final boolean remove;
+		synchronized (this.clients) {
+			if(this.live && this.fileSize < index) {
+				// 直播流媒体重新开始：文件索引继续增加
+				this.fileSize = index;
+				this.linker.linkSize(index);
+				remove = true;
+			} else {
+				remove = this.clients.removeIf(client -> client.index() < index);
+			}
+		}
+		if(remove) {
+			this.downloadSize(this.linker.position());
+		}
 		// 修改开始下载：提交client需要判断
 		this.downloadable = true;
 		this.executor = SystemThreadContext.newExecutor(POOL_SIZE, POOL_SIZE, 10000, 60L, SystemThreadContext.SNAIL_THREAD_HLS);
 		synchronized (this.clients) {
 			this.clients.forEach(this::download);
 		}
+		if(this.live) {
+			if(this.sequence < 0L) {
+				// 第一次下载直接使用任务创建时的M3U8
+				this.live(this.m3u8);
+				this.liveTimer(this.m3u8.getDuration());
+			} else {
+				this.liveTimer(0);
+			}
+		}
 		return this.checkCompleted();
 	}
 	
+	/**
+	 * <p>添加直播流媒体文件</p>
+	 * <p>使用序列号去重：只添加没有下载的文件</p>
+	 * 
+	 * @param m3u8 M3U8
+	 * 
+	 * @return 是否含有新的文件
+	 */
+	private boolean live(M3u8 m3u8) {
+		final List<String> links = m3u8.getLinks();
+		final long sequence = m3u8.getSequence();
+		int count = 0;
+		synchronized (this.clients) {
+			if(this.sequence >= 0L && sequence > this.sequence) {
+				LOGGER.warn("HLS直播文件丢失：{}-{}", this.sequence, sequence);
+			}
+			for (int index = 0; index < links.size(); index++) {
+				if(this.sequence >= 0L && sequence + index < this.sequence) {
+					// 已经下载
+					continue;
+				}
+				final int fileIndex = this.fileSize++;
+				// 文件序列号：每个文件使用自己的序列号解密
+				this.linker.crypt(fileIndex, sequence + index, m3u8);
+				final var client = new HlsClient(links.get(index), fileIndex, this, this.linker);
+				this.clients.add(client);
+				this.download(client);
+				count++;
+			}
+			this.sequence = Math.max(this.sequence, sequence + links.size());
+			this.linker.linkSize(this.fileSize);
+		}
+		if(m3u8.getType() != M3u8.Type.STREAM) {
+			LOGGER.debug("HLS直播结束：{}", this.taskSession.getName());
+			this.live = false;
+			this.checkCompletedAndDone();
+		}
+		return count > 0;
+	}
+	
+	/**
+	 * <p>刷新直播流媒体</p>
+	 * <p>M3U8没有变化时使用一半文件最大时长作为刷新周期</p>
+	 * <p>刷新失败使用默认刷新周期</p>
+	 */
+	private void liveRefresh() {
+		if(!this.live || !this.downloadable) {
+			return;
+		}
+		int interval = DEFAULT_LIVE_INTERVAL;
+		try {
+			final M3u8 m3u8 = M3u8Builder.load(this.taskSession.getUrl(), this.secrets);
+			final int duration = m3u8.getDuration() > 0 ? m3u8.getDuration() : DEFAULT_LIVE_INTERVAL;
+			interval = this.live(m3u8) ? duration : Math.max(1, duration / 2);
+		} catch (NetException | DownloadException | RuntimeException e) {
+			// 非受检异常（M3U8格式错误）：记录日志继续刷新
+			LOGGER.error("HLS直播刷新异常：{}", this.taskSession.getUrl(), e);
+		} finally {
+			// 任何异常都要重新设置定时任务：防止直播停止刷新
+			this.liveTimer(interval);
+		}
+	}
+	
+	/**
+	 * <p>设置直播流媒体刷新定时任务</p>
+	 * 
+	 * @param interval 刷新周期（秒）
+	 */
+	private void liveTimer(int interval) {
+		synchronized (this) {
+			if(!this.live || !this.downloadable) {
+				return;
+			}
+			this.liveTimer = SystemThreadContext.timer(Math.max(0, interval), TimeUnit.SECONDS, this::liveRefresh);
+		}
+	}
+	
 	/**
 	 * <p>添加下载客户端</p>
 	 * 
@@ -150,6 +302,25 @@ public final class HlsSession {
 		}
 	}
 	
+	/**
+	 * <p>任务失败</p>
+	 * <p>数据写入失败（解密失败）不能通过重新下载恢复：标记任务失败并且解锁任务下载锁</p>
+	 * 
+	 * @param message 失败信息
+	 */
+	public void fail(String message) {
+		if(!this.downloadable) {
+			// 任务已经暂停或者失败
+			return;
+		}
+		this.downloadable = false;
+		final var downloader = this.taskSession.downloader();
+		if(downloader != null) {
+			downloader.fail(message);
+		}
+		this.taskSession.unlockDownload();
+	}
+	
 	/**
 	 * <p>设置下载速度</p>
 	 * 
@@ -158,6 +329,11 @@ public final class HlsSession {
 	public void download(int buffer) {
 		this.statistics.download(buffer);
 		this.statistics.downloadLimit(buffer);
+		// 限速：延迟读取数据（下载线程）
+		final long delay = this.statistics.downloadDelay();
+		if(delay > 0L) {
+			ThreadUtils.sleep(delay);
+		}
 	}
 	
 	/**
@@ -180,6 +356,15 @@ public final class HlsSession {
 		this.taskSession.setSize(taskFileSize);
 	}
 	
+	/**
+	 * <p>获取TS文件大小</p>
+	 * 
+	 * @return TS文件大小
+	 */
+	public long tsSize() {
+		return this.linker.position();
+	}
+	
 	/**
 	 * <p>判断是否可以下载</p>
 	 * 
@@ -195,6 +380,10 @@ public final class HlsSession {
 	 * @return 是否完成
 	 */
 	public boolean checkCompleted() {
+		if(this.live) {
+			// 直播没有结束
+			return false;
+		}
 		synchronized (this.clients) {
 			return this.clients.isEmpty();
 		}
@@ -217,16 +406,24 @@ public final class HlsSession {
 	public void release() {
 		LOGGER.debug("HLS任务释放资源：{}", this.taskSession.getName());
 		this.downloadable = false;
+		synchronized (this) {
+			SystemThreadContext.shutdown(this.liveTimer);
+		}
 		synchronized (this.clients) {
 			this.clients.forEach(HlsClient::release);
 		}
 		SystemThreadContext.shutdownNow(this.executor);
+		this.linker.release();
+		// 保存写入进度：下载完成删除
+		this.taskSession.setPayload(this.checkCompleted() ? null : this.linker.payload());
+		this.taskSession.update();
 	}
 
 	/**
 	 * <p>删除任务信息</p>
 	 */
 	public void delete() {
+		this.linker.delete();
 		HlsContext.getInstance().remove(this.taskSession);
 	}
 	
@@ -1,18 +1,19 @@
 package com.acgist.snail.pojo.session;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import com.acgist.snail.config.DownloadConfig;
 import com.acgist.snail.config.SystemConfig;
-import com.acgist.snail.utils.ThreadUtils;
 
 /**
  * <p>限速信息</p>
+ * <p>令牌桶：按照限制速度生成令牌，令牌数量不超过桶容量（限制速度乘以突发时间）。</p>
+ * <p>读写数据时直接扣除令牌（允许预支），令牌不足时返回需要等待的时间，由调用者延迟后续请求或者读取：不会阻塞当前线程。</p>
  * 
  * @author acgist
  */
 public final class LimitSession {
-
+	
 	/**
 	 * <p>限制类型</p>
 	 * 
@@ -28,72 +29,154 @@ public final class LimitSession {
 	}
 	
 	/**
-	 * <p>限制类型</p>
+	 * <p>一秒纳秒数：{@value}</p>
 	 */
-	private final Type type;
+	private static final long ONE_SECOND_NANOS = 1_000_000_000L;
+	
 	/**
-	 * <p>限速采样</p>
+	 * <p>限制速度（字节/秒）</p>
+	 * <p>小于等于零：不限速</p>
+	 * <p>每次获取：设置限速后不用重启</p>
 	 */
-	private final AtomicLong limitBuffer;
+	private final LongSupplier maxLimitBuffer;
 	/**
-	 * <p>限速最后一次采样时间</p>
+	 * <p>令牌数量</p>
+	 * <p>负数：预支令牌</p>
 	 */
-	private volatile long lastLimitTime;
+	private long tokens;
+	/**
+	 * <p>最后一次生成令牌时间（纳秒）</p>
+	 */
+	private long lastTime;
 	
 	/**
+	 * <p>任务限速</p>
+	 * 
 	 * @param type 限制类型
 	 */
 	public LimitSession(Type type) {
-		this.type = type;
-		this.limitBuffer = new AtomicLong(0);
-		this.lastLimitTime = System.currentTimeMillis();
+		this(() -> type == Type.UPLOAD ? DownloadConfig.getUploadBufferByte() : DownloadConfig.getDownloadBufferByte());
+	}
+	
+	/**
+	 * @param maxLimitBuffer 限制速度（字节/秒）
+	 */
+	public LimitSession(LongSupplier maxLimitBuffer) {
+		this.maxLimitBuffer = maxLimitBuffer;
+		this.tokens = 0L;
+		this.lastTime = System.nanoTime();
+	}
+	
+	/**
+	 * <p>创建全局限速</p>
+	 * 
+	 * @param type 限制类型
+	 * 
+	 * @return 全局限速
+	 * 
+	 * @see SystemConfig#getLimitGlobal()
+	 */
+	public static final LimitSession newGlobalInstance(Type type) {
+		return new LimitSession(() -> buffer(type, SystemConfig.getLimitGlobal()));
+	}
+	
+	/**
+	 * <p>创建Peer限速</p>
+	 * 
+	 * @param type 限制类型
+	 * 
+	 * @return Peer限速
+	 * 
+	 * @see SystemConfig#getLimitPeer()
+	 */
+	public static final LimitSession newPeerInstance(Type type) {
+		return new LimitSession(() -> buffer(type, SystemConfig.getLimitPeer()));
 	}
 	
 	/**
-	 * <p>限制速度</p>
+	 * <p>计算限制速度</p>
+	 * 
+	 * @param type 限制类型
+	 * @param downloadBuffer 下载速度（KB）
+	 * 
+	 * @return 限制速度（字节/秒）
+	 */
+	private static final long buffer(Type type, int downloadBuffer) {
+		final long buffer = (long) downloadBuffer * SystemConfig.ONE_KB;
+		return type == Type.UPLOAD ? buffer / DownloadConfig.DOWNLOAD_UPLOAD_SCALE : buffer;
+	}
+	
+	/**
+	 * <p>扣除令牌</p>
 	 * 
 	 * @param buffer 数据大小
+	 * 
+	 * @return 需要等待时间（毫秒）
 	 */
-	public void limit(long buffer) {
-		final long interval = System.currentTimeMillis() - this.lastLimitTime;
-		final long limitBuffer = this.limitBuffer.addAndGet(buffer);
-		final long maxLimitBuffer = this.maxLimitBuffer();
-		if(limitBuffer >= maxLimitBuffer || interval >= SystemConfig.ONE_SECOND_MILLIS) { // 限速控制
-			synchronized (this.limitBuffer) { // 阻塞其他线程
-				if(limitBuffer == this.limitBuffer.get()) { // 验证
-					// 直接使用一秒：如果缓存较大就会出现误差
-//					final long expectTime = SystemConfig.ONE_SECOND_MILLIS;
-					// 通过实际下载大小计算
-//					final long expectTime = BigDecimal.valueOf(limitBuffer)
-//						.multiply(BigDecimal.valueOf(SystemConfig.ONE_SECOND_MILLIS))
-//						.divide(BigDecimal.valueOf(maxLimitBuffer), RoundingMode.HALF_UP)
-//						.longValue();
-					// 通过实际下载大小计算
-					final long expectTime = limitBuffer * SystemConfig.ONE_SECOND_MILLIS / maxLimitBuffer;
-					if(interval < expectTime) { // 限速时间
-						ThreadUtils.sleep(expectTime - interval);
-					}
-					this.limitBuffer.set(0); // 清零：不能在休眠前清零
-					this.lastLimitTime = System.currentTimeMillis();
-				} else { // 防止误差
-					this.limitBuffer.addAndGet(buffer);
-				}
-			}
+	public long acquire(long buffer) {
+		final long maxLimitBuffer = this.maxLimitBuffer.getAsLong();
+		if(maxLimitBuffer <= 0L) {
+			// 没有限速：不用加锁（全局限速所有线程共享）
+			return 0L;
+		}
+		synchronized (this) {
+			this.refill(maxLimitBuffer);
+			this.tokens -= buffer;
+			return this.delay(maxLimitBuffer);
 		}
 	}
 	
 	/**
-	 * <p>获取限制速度</p>
-	 * <p>不能初始化成常量，否者设置限速后需要重启才生效。</p>
+	 * <p>获取需要等待时间</p>
+	 * <p>不扣除令牌：请求数据之前判断是否可以请求</p>
 	 * 
-	 * @return 限制速度
+	 * @return 需要等待时间（毫秒）
 	 */
-	private long maxLimitBuffer() {
-		if(this.type == Type.UPLOAD) {
-			return DownloadConfig.getUploadBufferByte();
-		} else {
-			return DownloadConfig.getDownloadBufferByte();
+	public long delay() {
+		final long maxLimitBuffer = this.maxLimitBuffer.getAsLong();
+		if(maxLimitBuffer <= 0L) {
+			return 0L;
+		}
+		synchronized (this) {
+			this.refill(maxLimitBuffer);
+			return this.delay(maxLimitBuffer);
 		}
 	}
 	
+	/**
+	 * <p>计算需要等待时间</p>
+	 * 
+	 * @param maxLimitBuffer 限制速度
+	 * 
+	 * @return 需要等待时间（毫秒）
+	 */
+	private long delay(long maxLimitBuffer) {
+		if(this.tokens >= 0L) {
+			return 0L;
+		}
+		// 向上取整：防止等待结束后令牌依然不足
+		return (-this.tokens * SystemConfig.ONE_SECOND_MILLIS + maxLimitBuffer - 1) / maxLimitBuffer;
+	}
+	
+	/**
+	 * <p>生成令牌</p>
+	 * <p>生成令牌数量不足一个字节时不更新时间：防止低速限速时令牌丢失</p>
+	 * <p>没有限速时不会生成令牌：重新限速时按照间隔时间生成令牌（不超过桶容量）</p>
+	 * 
+	 * @param maxLimitBuffer 限制速度
+	 */
+	private void refill(long maxLimitBuffer) {
+		final long now = System.nanoTime();
+		final long capacity = maxLimitBuffer * Math.max(1, SystemConfig.getLimitBurst());
+		final long interval = now - this.lastTime;
+		// 防止溢出：超过突发时间直接填满
+		final long tokens = interval >= ONE_SECOND_NANOS * Math.max(1, SystemConfig.getLimitBurst()) ?
+			capacity :
+			interval * maxLimitBuffer / ONE_SECOND_NANOS;
+		if(tokens > 0L) {
+			this.tokens = Math.min(capacity, this.tokens + tokens);
+			this.lastTime = now;
+		}
+	}
+
 }
@@ -43,7 +43,12 @@ public final class NodeSession implements Comparable<NodeSession> {
 	/**
 	 * <p>节点状态</p>
 	 */
-	private Status status;
+	private volatile Status status;
+	/**
+	 * <p>验证时间</p>
+	 * <p>标记验证状态的时间：超过超时时间没有响应的节点视为失效节点</p>
+	 */
+	private volatile long verifyTimestamp;
 
 	/**
 	 * @param id 节点ID
@@ -76,9 +81,9 @@ public final class NodeSession implements Comparable<NodeSession> {
 	 * 
 	 * @return 是否可以使用
 	 */
-	public boolean useableAndMark() {
+	public synchronized boolean useableAndMark() {
 		if(this.getStatus() == NodeSession.Status.UNUSE) {
-			this.setStatus(NodeSession.Status.VERIFY);
+			this.verify();
 			return true;
 		} else if(this.getStatus() == NodeSession.Status.VERIFY) {
 			return false;
@@ -89,6 +94,27 @@ public final class NodeSession implements Comparable<NodeSession> {
 		}
 	}
 	
+	/**
+	 * <p>标记验证状态</p>
+	 * <p>记录验证时间</p>
+	 */
+	public synchronized void verify() {
+		this.verifyTimestamp = System.currentTimeMillis();
+		this.status = Status.VERIFY;
+	}
+	
+	/**
+	 * <p>判断节点是否失效</p>
+	 * <p>验证状态超过超时时间没有响应</p>
+	 * 
+	 * @param timeout 超时时间（毫秒）
+	 * 
+	 * @return 是否失效
+	 */
+	public boolean verifyTimeout(long timeout) {
+		return this.status == Status.VERIFY && System.currentTimeMillis() - this.verifyTimestamp >= timeout;
+	}
+	
 	/**
 	 * <p>判断节点是否可以保存</p>
 	 * 
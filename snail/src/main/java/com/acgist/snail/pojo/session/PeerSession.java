@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.PeerConfig;
 import com.acgist.snail.config.PeerConfig.Source;
+import com.acgist.snail.net.torrent.TorrentPieceAvailability;
 import com.acgist.snail.net.torrent.peer.PeerConnect;
 import com.acgist.snail.net.torrent.peer.PeerDownloader;
 import com.acgist.snail.net.torrent.peer.PeerUploader;
@@ -34,6 +35,12 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(PeerSession.class);
 	
+	/**
+	 * <p>默认Peer支持未完成请求数量：{@value}</p>
+	 * <p>Peer没有声明时使用：大多数客户端默认支持数量</p>
+	 */
+	private static final int DEFAULT_REQQ = 250;
+	
 	/**
 	 * <p>PeerId</p>
 	 */
@@ -71,6 +78,11 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	 * <p>DHT端口</p>
 	 */
 	private Integer dhtPort;
+	/**
+	 * <p>Peer支持未完成请求数量</p>
+	 * <p>扩展协议握手reqq：没有设置使用默认值</p>
+	 */
+	private volatile int reqq = DEFAULT_REQQ;
 	/**
 	 * <p>保留位</p>
 	 * <p>协议链接：http://www.bittorrent.org/beps/bep_0004.html</p>
@@ -97,6 +109,16 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	 * <p>即是被Peer阻塞依然可以下载的Piece</p>
 	 */
 	private final BitSet allowedPieces;
+	/**
+	 * <p>Piece可用数量</p>
+	 * <p>Peer连接期间统计Peer拥有的Piece</p>
+	 */
+	private TorrentPieceAvailability pieceAvailability;
+	/**
+	 * <p>Piece可用数量统计连接数量</p>
+	 * <p>同一个Peer可能同时存在连接和接入：只统计一次</p>
+	 */
+	private int pieceAvailabilityCount = 0;
 	/**
 	 * <p>holepunch是否等待</p>
 	 */
@@ -143,7 +165,12 @@ public final class PeerSession implements IStatisticsSessionGetter {
 		this.suggestPieces = new BitSet();
 		this.allowedPieces = new BitSet();
 		this.extension = new EnumMap<>(PeerConfig.ExtensionType.class);
-		this.statistics = new StatisticsSession(false, false, parent);
+		this.statistics = new StatisticsSession(
+			LimitSession.newPeerInstance(LimitSession.Type.UPLOAD),
+			LimitSession.newPeerInstance(LimitSession.Type.DOWNLOAD),
+			false,
+			parent
+		);
 	}
 	
 	/**
@@ -262,12 +289,35 @@ public final class PeerSession implements IStatisticsSessionGetter {
 		this.dhtPort = dhtPort;
 	}
 	
+	/**
+	 * <p>获取Peer支持未完成请求数量</p>
+	 * 
+	 * @return Peer支持未完成请求数量
+	 */
+	public int reqq() {
+		return this.reqq;
+	}
+	
+	/**
+	 * <p>设置Peer支持未完成请求数量</p>
+	 * 
+	 * @param reqq Peer支持未完成请求数量
+	 */
+	public void reqq(int reqq) {
+		this.reqq = reqq;
+	}
+	
 	/**
 	 * <p>清空Piece位图</p>
 	 * <p>清空：已下载Piece位图、下载错误Piece位图、推荐下载Piece位图、快速允许下载Piece位图</p>
 	 */
 	public void cleanPieces() {
-		this.pieces.clear();
+		synchronized (this.pieces) {
+			if(this.pieceAvailability != null) {
+				this.pieceAvailability.decrement(this.pieces);
+			}
+			this.pieces.clear();
+		}
 		this.badPieces.clear();
 		this.suggestPieces.clear();
 		this.allowedPieces.clear();
@@ -279,7 +329,15 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	 * @param pieces 已下载Piece位图
 	 */
 	public void pieces(BitSet pieces) {
-		this.pieces.or(pieces);
+		synchronized (this.pieces) {
+			if(this.pieceAvailability != null) {
+				// 只统计新增Piece
+				final BitSet newPieces = (BitSet) pieces.clone();
+				newPieces.andNot(this.pieces);
+				this.pieceAvailability.increment(newPieces);
+			}
+			this.pieces.or(pieces);
+		}
 	}
 
 	/**
@@ -288,7 +346,15 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	 * @param index Piece索引
 	 */
 	public void piece(int index) {
-		this.pieces.set(index);
+		synchronized (this.pieces) {
+			if(this.pieces.get(index)) {
+				return;
+			}
+			this.pieces.set(index);
+			if(this.pieceAvailability != null) {
+				this.pieceAvailability.increment(index);
+			}
+		}
 	}
 	
 	/**
@@ -297,7 +363,43 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	 * @param index Piece索引
 	 */
 	public void pieceOff(int index) {
-		this.pieces.clear(index);
+		synchronized (this.pieces) {
+			if(!this.pieces.get(index)) {
+				return;
+			}
+			this.pieces.clear(index);
+			if(this.pieceAvailability != null) {
+				this.pieceAvailability.decrement(index);
+			}
+		}
+	}
+	
+	/**
+	 * <p>开始统计Piece可用数量</p>
+	 * <p>Peer连接成功后调用，必须和{@link #detachPieceAvailability()}成对使用。</p>
+	 * 
+	 * @param pieceAvailability Piece可用数量
+	 */
+	public void attachPieceAvailability(TorrentPieceAvailability pieceAvailability) {
+		synchronized (this.pieces) {
+			if(this.pieceAvailabilityCount++ == 0) {
+				this.pieceAvailability = pieceAvailability;
+				this.pieceAvailability.increment(this.pieces);
+			}
+		}
+	}
+	
+	/**
+	 * <p>结束统计Piece可用数量</p>
+	 * <p>Peer连接关闭后调用</p>
+	 */
+	public void detachPieceAvailability() {
+		synchronized (this.pieces) {
+			if(this.pieceAvailabilityCount > 0 && --this.pieceAvailabilityCount == 0) {
+				this.pieceAvailability.decrement(this.pieces);
+				this.pieceAvailability = null;
+			}
+		}
 	}
 	
 	/**
@@ -343,7 +445,7 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	 * @param index Piece索引
 	 */
 	public void suggestPieces(int index) {
-		this.pieces.set(index);
+		this.piece(index);
 		this.suggestPieces.set(index);
 	}
 
@@ -363,7 +465,7 @@ public final class PeerSession implements IStatisticsSessionGetter {
 	 * @param index Piece索引
 	 */
 	public void allowedPieces(int index) {
-		this.pieces.set(index);
+		this.piece(index);
 		this.allowedPieces.set(index);
 	}
 
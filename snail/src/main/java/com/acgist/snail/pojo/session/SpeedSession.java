@@ -1,11 +1,14 @@
 package com.acgist.snail.pojo.session;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.acgist.snail.config.SystemConfig;
 
 /**
  * <p>速度信息</p>
+ * <p>滑动窗口：写入数据只累加分段计数（不加锁），读取速度时采样并计算窗口内平均速度。</p>
+ * <p>采样使用CAS竞争：同一时间只有一个线程采样，其他线程直接返回上次速度。</p>
  * 
  * @author acgist
  */
@@ -20,28 +23,31 @@ public final class SpeedSession {
 	 * <p>小于刷新时间：防止统计误差</p>
 	 */
 	private static final long SAMPLE_TIME = 4L * SystemConfig.ONE_SECOND_MILLIS;
-
+	
 	/**
 	 * <p>速度</p>
 	 */
-	private long speed = 0L;
+	private volatile long speed = 0L;
 	/**
 	 * <p>当前采样位置</p>
+	 * <p>只有获取采样权限的线程修改</p>
 	 */
 	private byte index = 0;
 	/**
 	 * <p>速度累计采样</p>
+	 * <p>分段累加：防止多个线程写入竞争</p>
 	 */
-	private final AtomicInteger bufferSample = new AtomicInteger(0);
+	private final LongAdder bufferSample = new LongAdder();
 	/**
 	 * <p>最后一次采样时间</p>
+	 * <p>CAS更新成功的线程获取采样权限</p>
 	 */
-	private long bufferSampleTime = System.currentTimeMillis();
+	private final AtomicLong bufferSampleTime = new AtomicLong(System.currentTimeMillis());
 	/**
 	 * <p>速度采样集合</p>
 	 * <p>每次计算速度时采样一次放入到集合</p>
 	 */
-	private final int[] bufferSamples = new int[SAMPLE_SIZE];
+	private final long[] bufferSamples = new long[SAMPLE_SIZE];
 	/**
 	 * <p>速度采样时间</p>
 	 */
@@ -53,9 +59,9 @@ public final class SpeedSession {
 	 * @param buffer 数据大小
 	 */
 	public void buffer(int buffer) {
-		this.bufferSample.addAndGet(buffer);
+		this.bufferSample.add(buffer);
 	}
-
+	
 	/**
 	 * <p>计算速度</p>
 	 * <p>超过采样时间：计算速度</p>
@@ -63,16 +69,16 @@ public final class SpeedSession {
 	 * 
 	 * @return 速度
 	 */
-	public synchronized long speed() {
+	public long speed() {
 		final long time = System.currentTimeMillis();
-		final long interval = time - this.bufferSampleTime;
-		if(interval >= SAMPLE_TIME) {
+		final long sampleTime = this.bufferSampleTime.get();
+		final long interval = time - sampleTime;
+		if(interval >= SAMPLE_TIME && this.bufferSampleTime.compareAndSet(sampleTime, time)) {
 			this.speed = this.calculateSpeed(interval);
-			this.bufferSampleTime = time;
 		}
 		return this.speed;
 	}
-
+	
 	/**
 	 * <p>计算速度</p>
 	 * 
@@ -81,7 +87,7 @@ public final class SpeedSession {
 	 * @return 速度
 	 */
 	private long calculateSpeed(long interval) {
-		this.bufferSamples[this.index] = this.bufferSample.getAndSet(0);
+		this.bufferSamples[this.index] = this.bufferSample.sumThenReset();
 		this.bufferSampleTimes[this.index] = interval;
 		if(++this.index >= SAMPLE_SIZE) {
 			this.index = 0;
@@ -98,15 +104,15 @@ public final class SpeedSession {
 			return buffer * SystemConfig.ONE_SECOND_MILLIS / bufferTime;
 		}
 	}
-
+	
 	/**
 	 * <p>重置速度统计</p>
 	 */
 	public void reset() {
 		for (int index = 0; index < SAMPLE_SIZE; index++) {
-			this.bufferSamples[index] = 0;
-			this.bufferSampleTimes[index] = 0;
+			this.bufferSamples[index] = 0L;
+			this.bufferSampleTimes[index] = 0L;
 		}
 	}
-	
+
 }
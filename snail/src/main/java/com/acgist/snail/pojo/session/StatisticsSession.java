@@ -1,6 +1,6 @@
 package com.acgist.snail.pojo.session;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.acgist.snail.pojo.IStatisticsSession;
 
@@ -10,9 +10,9 @@ import com.acgist.snail.pojo.IStatisticsSession;
  * <p>下载统计时大小必须统计有效下载数据，因为任务大小获取需要使用。</p>
  * <p>速度统计和速度限制使用实时下载数据，这样数据统计平滑和实时性。</p>
  * <p>由于下载数据大小是有效数据，但是速度统计时可能存在无效数据，所以下载时间预估不会非常准确。</p>
+ * <p>限速分为全局、任务、Peer三级：数据同时扣除所有上级令牌，等待时间取最大值。</p>
  * <p>无效数据：Piece安装Slice下载，速度统计按照Slice统计，但是Piece可能下载失败和验证失败，导致无效数据。</p>
- * 
- * TODO：伪共享
+ * <p>统计数据使用分段累加（{@link LongAdder}）：多个线程同时写入不会竞争同一个缓存行，读取（界面刷新）时才汇总。</p>
  * 
  * @author acgist
  */
@@ -33,11 +33,11 @@ public final class StatisticsSession implements IStatisticsSession {
 	/**
 	 * <p>累计上传大小</p>
 	 */
-	private final AtomicLong uploadSize;
+	private final LongAdder uploadSize;
 	/**
 	 * <p>累计下载大小</p>
 	 */
-	private final AtomicLong downloadSize;
+	private final LongAdder downloadSize;
 	/**
 	 * <p>上传限速</p>
 	 */
@@ -74,24 +74,37 @@ public final class StatisticsSession implements IStatisticsSession {
 	
 	/**
 	 * <p>统计信息</p>
+	 * <p>限速使用任务限速</p>
 	 * 
 	 * @param limit 是否限速
 	 * @param speed 是否统计速度
 	 * @param parent 上级统计信息
 	 */
 	public StatisticsSession(boolean limit, boolean speed, IStatisticsSession parent) {
-		this.limit = limit;
+		this(
+			limit ? new LimitSession(LimitSession.Type.UPLOAD) : null,
+			limit ? new LimitSession(LimitSession.Type.DOWNLOAD) : null,
+			speed,
+			parent
+		);
+	}
+	
+	/**
+	 * <p>统计信息</p>
+	 * 
+	 * @param uploadLimit 上传限速（不限速：{@code null}）
+	 * @param downloadLimit 下载限速（不限速：{@code null}）
+	 * @param speed 是否统计速度
+	 * @param parent 上级统计信息
+	 */
+	public StatisticsSession(LimitSession uploadLimit, LimitSession downloadLimit, boolean speed, IStatisticsSession parent) {
+		this.limit = uploadLimit != null && downloadLimit != null;
 		this.speed = speed;
 		this.parent = parent;
-		this.uploadSize = new AtomicLong(0);
-		this.downloadSize = new AtomicLong(0);
-		if(limit) {
-			this.uploadLimit = new LimitSession(LimitSession.Type.UPLOAD);
-			this.downloadLimit = new LimitSession(LimitSession.Type.DOWNLOAD);
-		} else {
-			this.uploadLimit = null;
-			this.downloadLimit = null;
-		}
+		this.uploadSize = new LongAdder();
+		this.downloadSize = new LongAdder();
+		this.uploadLimit = uploadLimit;
+		this.downloadLimit = downloadLimit;
 		if(speed) {
 			this.uploadSpeed = new SpeedSession();
 			this.downloadSpeed = new SpeedSession();
@@ -111,7 +124,7 @@ public final class StatisticsSession implements IStatisticsSession {
 		if(this.parent != null) {
 			this.parent.upload(buffer);
 		}
-		this.uploadSize.addAndGet(buffer);
+		this.uploadSize.add(buffer);
 	}
 	
 	/**
@@ -124,7 +137,7 @@ public final class StatisticsSession implements IStatisticsSession {
 		if(this.parent != null) {
 			this.parent.download(buffer);
 		}
-		this.downloadSize.addAndGet(buffer);
+		this.downloadSize.add(buffer);
 	}
 
 	/**
@@ -138,7 +151,7 @@ public final class StatisticsSession implements IStatisticsSession {
 			this.parent.uploadLimit(buffer);
 		}
 		if(this.limit) {
-			this.uploadLimit.limit(buffer);
+			this.uploadLimit.acquire(buffer);
 		}
 		if(this.speed) {
 			this.uploadSpeed.buffer(buffer);
@@ -156,13 +169,37 @@ public final class StatisticsSession implements IStatisticsSession {
 			this.parent.downloadLimit(buffer);
 		}
 		if(this.limit) {
-			this.downloadLimit.limit(buffer);
+			this.downloadLimit.acquire(buffer);
 		}
 		if(this.speed) {
 			this.downloadSpeed.buffer(buffer);
 		}
 	}
 	
+	@Override
+	public long uploadDelay() {
+		long delay = 0L;
+		if(this.parent != null) {
+			delay = this.parent.uploadDelay();
+		}
+		if(this.limit) {
+			delay = Math.max(delay, this.uploadLimit.delay());
+		}
+		return delay;
+	}
+	
+	@Override
+	public long downloadDelay() {
+		long delay = 0L;
+		if(this.parent != null) {
+			delay = this.parent.downloadDelay();
+		}
+		if(this.limit) {
+			delay = Math.max(delay, this.downloadLimit.delay());
+		}
+		return delay;
+	}
+	
 	@Override
 	public long uploadSpeed() {
 		if(this.speed) {
@@ -181,22 +218,34 @@ public final class StatisticsSession implements IStatisticsSession {
 	
 	@Override
 	public long uploadSize() {
-		return this.uploadSize.get();
+		return this.uploadSize.sum();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>设置大小时如果同时写入数据可能丢失部分数据：只在任务开始和结束时设置</p>
+	 */
 	@Override
 	public void uploadSize(long size) {
-		this.uploadSize.set(size);
+		this.uploadSize.reset();
+		this.uploadSize.add(size);
 	}
 	
 	@Override
 	public long downloadSize() {
-		return this.downloadSize.get();
+		return this.downloadSize.sum();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>设置大小时如果同时写入数据可能丢失部分数据：只在任务开始和结束时设置</p>
+	 */
 	@Override
 	public void downloadSize(long size) {
-		this.downloadSize.set(size);
+		this.downloadSize.reset();
+		this.downloadSize.add(size);
 	}
 
 	@Override
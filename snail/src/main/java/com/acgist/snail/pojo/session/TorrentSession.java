@@ -1,6 +1,7 @@
 package com.acgist.snail.pojo.session;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -13,12 +14,14 @@ import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.PeerConfig.Action;
 import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.context.MetricsContext;
 import com.acgist.snail.context.PeerContext;
 import com.acgist.snail.context.SystemThreadContext;
 import com.acgist.snail.context.TorrentContext;
 import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.context.exception.TimerException;
+import com.acgist.snail.net.torrent.TorrentPieceAvailability;
 import com.acgist.snail.net.torrent.TorrentStreamGroup;
 import com.acgist.snail.net.torrent.dht.DhtLauncher;
 import com.acgist.snail.net.torrent.peer.PeerDownloaderGroup;
@@ -98,6 +101,10 @@ public final class TorrentSession {
 	 * <p>文件流组</p>
 	 */
 	private TorrentStreamGroup torrentStreamGroup;
+	/**
+	 * <p>Piece可用数量</p>
+	 */
+	private final TorrentPieceAvailability pieceAvailability;
 	/**
 	 * <p>Tracker组</p>
 	 */
@@ -147,6 +154,7 @@ public final class TorrentSession {
 		}
 		this.torrent = torrent;
 		this.infoHash = infoHash;
+		this.pieceAvailability = new TorrentPieceAvailability();
 	}
 	
 	/**
@@ -221,6 +229,7 @@ public final class TorrentSession {
 		this.loadTorrentStreamGroup();
 		this.loadPeerUploaderGroup();
 		this.loadPeerUploaderGroupTimer();
+		this.loadMetrics();
 		this.useable = true;
 		this.uploadable = true;
 		return this;
@@ -348,6 +357,50 @@ public final class TorrentSession {
 		this.peerUploaderGroup = PeerUploaderGroup.newInstance(this);
 	}
 	
+	/**
+	 * <p>加载任务指标</p>
+	 * <p>指标标签：InfoHash</p>
+	 */
+	private void loadMetrics() {
+		final String label = this.metricsLabel();
+		final MetricsContext metricsContext = MetricsContext.getInstance();
+		metricsContext.gauge("snail_torrent_peer_upload" + label, "BT任务PeerUploader数量", () -> {
+			final var group = this.peerUploaderGroup;
+			return group == null ? 0 : group.size();
+		});
+		metricsContext.gauge("snail_torrent_peer_download" + label, "BT任务PeerDownloader数量", () -> {
+			final var group = this.peerDownloaderGroup;
+			return group == null ? 0 : group.size();
+		});
+		metricsContext.counter("snail_torrent_cache_hit_total" + label, "BT任务Piece缓存命中次数", this.torrentStreamGroup::cacheHitCount);
+		metricsContext.counter("snail_torrent_cache_miss_total" + label, "BT任务Piece缓存没有命中次数", this.torrentStreamGroup::cacheMissCount);
+		metricsContext.gauge("snail_torrent_upload_speed" + label, "BT任务上传速度", this.statistics()::uploadSpeed);
+		metricsContext.gauge("snail_torrent_download_speed" + label, "BT任务下载速度", this.statistics()::downloadSpeed);
+	}
+	
+	/**
+	 * <p>删除任务指标</p>
+	 */
+	private void releaseMetrics() {
+		final String label = this.metricsLabel();
+		final MetricsContext metricsContext = MetricsContext.getInstance();
+		metricsContext.remove("snail_torrent_peer_upload" + label);
+		metricsContext.remove("snail_torrent_peer_download" + label);
+		metricsContext.remove("snail_torrent_cache_hit_total" + label);
+		metricsContext.remove("snail_torrent_cache_miss_total" + label);
+		metricsContext.remove("snail_torrent_upload_speed" + label);
+		metricsContext.remove("snail_torrent_download_speed" + label);
+	}
+	
+	/**
+	 * <p>获取任务指标标签</p>
+	 * 
+	 * @return 任务指标标签
+	 */
+	private String metricsLabel() {
+		return "{infohash=\"" + this.infoHashHex() + "\"}";
+	}
+	
 	/**
 	 * <p>加载PeerUploader定时任务</p>
 	 */
@@ -577,6 +630,7 @@ public final class TorrentSession {
 		if(this.torrentStreamGroup != null) {
 			this.torrentStreamGroup.release();
 		}
+		this.releaseMetrics();
 		SystemThreadContext.shutdownNow(this.executorTimer);
 	}
 
@@ -729,6 +783,15 @@ public final class TorrentSession {
 		return this.torrentStreamGroup;
 	}
 	
+	/**
+	 * <p>获取Piece可用数量</p>
+	 * 
+	 * @return Piece可用数量
+	 */
+	public TorrentPieceAvailability pieceAvailability() {
+		return this.pieceAvailability;
+	}
+	
 	/**
 	 * <p>判断是否是私有种子</p>
 	 * 
@@ -863,6 +926,22 @@ public final class TorrentSession {
 	public byte[] read(int index, int begin, int length) throws NetException {
 		return this.torrentStreamGroup.read(index, begin, length);
 	}
+	
+	/**
+	 * @param index Piece索引
+	 * @param begin Piece偏移
+	 * @param length 数据长度
+	 * @param buffer 数据缓冲
+	 * 
+	 * @return 是否读取成功
+	 * 
+	 * @throws NetException 网络异常
+	 * 
+	 * @see TorrentStreamGroup#read(int, int, int, ByteBuffer)
+	 */
+	public boolean read(int index, int begin, int length, ByteBuffer buffer) throws NetException {
+		return this.torrentStreamGroup.read(index, begin, length, buffer);
+	}
 
 	/**
 	 * @param piece Piece数据
@@ -934,6 +1013,15 @@ public final class TorrentSession {
 		return false;
 	}
 	
+	/**
+	 * @return 校验进度
+	 * 
+	 * @see TorrentStreamGroup#verifyProgress()
+	 */
+	public int verifyProgress() {
+		return this.torrentStreamGroup.verifyProgress();
+	}
+	
 	/**
 	 * @return 已下载Piece位图
 	 * 
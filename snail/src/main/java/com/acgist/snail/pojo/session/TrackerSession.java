@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.acgist.snail.config.TrackerConfig;
+import com.acgist.snail.context.MetricsContext;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.net.torrent.tracker.TrackerLauncher;
 import com.acgist.snail.protocol.Protocol;
@@ -24,6 +25,15 @@ public abstract class TrackerSession implements Comparable<TrackerSession> {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(TrackerSession.class);
 	
+	/**
+	 * <p>Tracker声明数量</p>
+	 */
+	private static final MetricsContext.Counter ANNOUNCE_COUNTER = MetricsContext.getInstance().counter("snail_tracker_announce_total", "Tracker声明数量");
+	/**
+	 * <p>Tracker声明失败数量</p>
+	 */
+	private static final MetricsContext.Counter ANNOUNCE_FAIL_COUNTER = MetricsContext.getInstance().counter("snail_tracker_announce_fail_total", "Tracker声明失败数量");
+	
 	/**
 	 * <p>想要获取的Peer数量：{@value}</p>
 	 */
@@ -96,11 +106,13 @@ public abstract class TrackerSession implements Comparable<TrackerSession> {
 		if(!this.available()) {
 			return;
 		}
+		ANNOUNCE_COUNTER.increment();
 		try {
 			this.started(sid, torrentSession); // 发送声明消息
 			this.weight++;
 			this.failTimes = 0; // 成功直接清空失败次数
 		} catch (Exception e) {
+			ANNOUNCE_FAIL_COUNTER.increment();
 			LOGGER.error("查找Peer异常，失败次数：{}，声明地址：{}", this.failTimes, this.announceUrl, e);
 			this.weight--;
 			if(++this.failTimes >= TrackerConfig.MAX_FAIL_TIMES) {
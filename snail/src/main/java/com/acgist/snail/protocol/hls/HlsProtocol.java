@@ -5,7 +5,6 @@ import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
 import com.acgist.snail.downloader.IDownloader;
 import com.acgist.snail.downloader.hls.HlsDownloader;
-import com.acgist.snail.net.http.HttpClient;
 import com.acgist.snail.pojo.ITaskSession;
 import com.acgist.snail.pojo.bean.M3u8;
 import com.acgist.snail.pojo.wrapper.MultifileSelectorWrapper;
@@ -79,17 +78,12 @@ public final class HlsProtocol extends Protocol {
 	 * @throws DownloadException 下载异常
 	 */
 	private void buildM3u8() throws NetException, DownloadException {
-		final var response = HttpClient
-			.newInstance(this.url)
-			.get()
-			.responseToString();
-		final var m3u8 = M3u8Builder.newInstance(response, this.url).build();
+		final var m3u8 = M3u8Builder.load(this.url);
 		if(m3u8.getType() == M3u8.Type.M3U8) {
 			this.url = m3u8.maxRateLink();
 			this.buildM3u8();
-		} else if(m3u8.getType() == M3u8.Type.STREAM) {
-			throw new DownloadException("不支持直播流媒体下载");
 		} else {
+			// 文件列表和直播流媒体
 			this.m3u8 = m3u8;
 		}
 	}
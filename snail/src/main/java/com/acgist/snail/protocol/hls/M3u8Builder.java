@@ -2,12 +2,15 @@ package com.acgist.snail.protocol.hls;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.crypto.Cipher;
@@ -70,6 +73,10 @@ public final class M3u8Builder {
 	 * <p>IV长度（16进制开头）：{@value}</p>
 	 */
 	private static final int IV_PREFIX_LENGTH = 34;
+	/**
+	 * <p>IV字节长度：{@value}</p>
+	 */
+	private static final int IV_BYTES_LENGTH = 16;
 	/**
 	 * <p>类型标签</p>
 	 */
@@ -92,6 +99,11 @@ public final class M3u8Builder {
 	 * <p>如果没有这个标记表示为直播流媒体</p>
 	 */
 	private static final String LABEL_EXT_X_ENDLIST = "EXT-X-ENDLIST";
+	/**
+	 * <p>文件最大时长（秒）</p>
+	 * <p>直播流媒体刷新周期</p>
+	 */
+	private static final String LABEL_EXT_X_TARGETDURATION = "EXT-X-TARGETDURATION";
 	/**
 	 * <p>多级M3U8列表</p>
 	 */
@@ -119,6 +131,20 @@ public final class M3u8Builder {
 	 * <p>标签</p>
 	 */
 	private final List<Label> labels;
+	/**
+	 * <p>密钥</p>
+	 */
+	private Key secret;
+	/**
+	 * <p>IV</p>
+	 * <p>没有IV使用文件序列号</p>
+	 */
+	private byte[] iv;
+	/**
+	 * <p>密钥缓存</p>
+	 * <p>密钥链接=密钥</p>
+	 */
+	private Map<String, Key> secrets;
 	
 	/**
 	 * @param source 原始链接地址
@@ -163,6 +189,42 @@ public final class M3u8Builder {
 		return new M3u8Builder(source, lines);
 	}
 	
+	/**
+	 * <p>下载并解析M3U8</p>
+	 * 
+	 * @param url M3U8链接地址
+	 * 
+	 * @return M3U8
+	 * 
+	 * @throws NetException 网络异常
+	 * @throws DownloadException 下载异常
+	 */
+	public static final M3u8 load(String url) throws NetException, DownloadException {
+		return load(url, null);
+	}
+	
+	/**
+	 * <p>下载并解析M3U8</p>
+	 * <p>密钥缓存：已经缓存的密钥不用重新下载</p>
+	 * 
+	 * @param url M3U8链接地址
+	 * @param secrets 密钥缓存（密钥链接=密钥）
+	 * 
+	 * @return M3U8
+	 * 
+	 * @throws NetException 网络异常
+	 * @throws DownloadException 下载异常
+	 */
+	public static final M3u8 load(String url, Map<String, Key> secrets) throws NetException, DownloadException {
+		final var response = HttpClient
+			.newInstance(url)
+			.get()
+			.responseToString();
+		final M3u8Builder builder = newInstance(response, url);
+		builder.secrets = secrets;
+		return builder.build();
+	}
+	
 	/**
 	 * <p>解析M3U8</p>
 	 * 
@@ -268,7 +330,48 @@ public final class M3u8Builder {
 				throw new NetException("没有下载文件");
 			}
 		}
-		return new M3u8(type, cipher, links);
+		return new M3u8(type, cipher, this.secret, this.iv, links, this.buildSequence(), this.buildDuration());
+	}
+	
+	/**
+	 * <p>获取序列号</p>
+	 * 
+	 * @return 序列号（没有序列号：0）
+	 */
+	private long buildSequence() {
+		final String sequence = this.labelValue(LABEL_EXT_X_MEDIA_SEQUENCE);
+		if(StringUtils.isNumeric(sequence)) {
+			return Long.parseLong(sequence);
+		}
+		return 0L;
+	}
+	
+	/**
+	 * <p>获取文件最大时长（秒）</p>
+	 * 
+	 * @return 文件最大时长（没有时长：0）
+	 */
+	private int buildDuration() {
+		final String duration = this.labelValue(LABEL_EXT_X_TARGETDURATION);
+		if(StringUtils.isNumeric(duration)) {
+			return Integer.parseInt(duration);
+		}
+		return 0;
+	}
+	
+	/**
+	 * <p>获取标签数据</p>
+	 * 
+	 * @param name 标签名称
+	 * 
+	 * @return 标签数据
+	 */
+	private String labelValue(String name) {
+		return this.labels.stream()
+			.filter(label -> name.equalsIgnoreCase(label.getName()))
+			.findFirst()
+			.map(Label::getValue)
+			.orElse(null);
 	}
 
 	/**
@@ -317,12 +420,24 @@ public final class M3u8Builder {
 	 */
 	private Cipher buildCipherAes128(String iv, String uri) throws NetException {
 		final String requestURI = UrlUtils.redirect(this.source, uri);
-		final byte[] secret = HttpClient
-			.newInstance(requestURI)
-			.get()
-			.responseToBytes();
+		this.secret = this.secrets == null ? null : this.secrets.get(requestURI);
+		if(this.secret == null) {
+			final byte[] secret = HttpClient
+				.newInstance(requestURI)
+				.get()
+				.responseToBytes();
+			this.secret = new SecretKeySpec(secret, "AES");
+			if(this.secrets != null) {
+				// 密钥轮换：只缓存最新密钥
+				this.secrets.clear();
+				this.secrets.put(requestURI, this.secret);
+			}
+		}
+		this.iv = this.buildIv(iv);
 		try {
-			return this.buildCipher(this.buildIv(iv), secret, "AES", "AES/CBC/NoPadding");
+			// 每个文件单独加密：填充使用PKCS7（兼容PKCS5）
+			final byte[] cipherIv = this.iv == null ? buildIv(this.buildSequence()) : this.iv;
+			return this.buildCipher(cipherIv, this.secret, "AES/CBC/PKCS5Padding");
 		} catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
 			throw new NetException("获取加密套件失败", e);
 		}
@@ -330,50 +445,45 @@ public final class M3u8Builder {
 	
 	/**
 	 * <p>创建IV</p>
-	 * <p>如果IV不存在使用序列号代替</p>
 	 * 
 	 * @param iv 原始IV
 	 * 
-	 * @return IV
+	 * @return IV（IV不存在或者格式错误：null）
 	 */
 	private byte[] buildIv(String iv) {
 		if(iv == null) {
-			final var optional = this.labels.stream()
-				.filter(label -> LABEL_EXT_X_MEDIA_SEQUENCE.equalsIgnoreCase(label.getName()))
-				.findFirst();
-			if(optional.isEmpty()) {
-				LOGGER.error("HLS数据缺少序列号：{}", this.source);
-				return null;
-			}
-			final String sequence = optional.get().getValue();
-			final int length = sequence.length();
-			if(length > IV_LEHGTH) {
-				LOGGER.error("HLS数据序列号错误：{}-{}", this.source, sequence);
-				return null;
-			} else {
-				// 填充：0
-				final String padding = "0".repeat(IV_LEHGTH - length);
-				return StringUtils.unhex(padding + sequence);
-			}
+			return null;
+		}
+		if(iv.length() == IV_LEHGTH) {
+			return StringUtils.unhex(iv);
+		} else if(iv.length() == IV_PREFIX_LENGTH) {
+			// 0x....
+			return StringUtils.unhex(iv.substring(IV_PREFIX_LENGTH - IV_LEHGTH));
 		} else {
-			if(iv.length() == IV_LEHGTH) {
-				return StringUtils.unhex(iv);
-			} else if(iv.length() == IV_PREFIX_LENGTH) {
-				// 0x....
-				return StringUtils.unhex(iv.substring(IV_PREFIX_LENGTH - IV_LEHGTH));
-			} else {
-				LOGGER.error("HLS数据IV错误：{}-{}", this.source, iv);
-				return null;
-			}
+			LOGGER.error("HLS数据IV错误（使用序列号）：{}-{}", this.source, iv);
+			return null;
 		}
 	}
 	
+	/**
+	 * <p>使用文件序列号创建IV</p>
+	 * <p>没有IV时每个文件使用自己的序列号（大端十六字节）作为IV</p>
+	 * 
+	 * @param sequence 文件序列号
+	 * 
+	 * @return IV
+	 */
+	public static final byte[] buildIv(long sequence) {
+		final ByteBuffer buffer = ByteBuffer.allocate(IV_BYTES_LENGTH);
+		buffer.putLong(IV_BYTES_LENGTH - Long.BYTES, sequence);
+		return buffer.array();
+	}
+	
 	/**
 	 * <p>创建加密套件</p>
 	 * 
 	 * @param iv IV
 	 * @param secret 密钥
-	 * @param algorithm 加密算法名称
 	 * @param transformation 算法描述
 	 * 
 	 * @return 加密套件
@@ -383,11 +493,10 @@ public final class M3u8Builder {
 	 * @throws NoSuchAlgorithmException 算法异常
 	 * @throws InvalidAlgorithmParameterException 参数异常
 	 */
-	private Cipher buildCipher(byte[] iv, byte[] secret, String algorithm, String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
-		final SecretKeySpec secretKeySpec = new SecretKeySpec(secret, algorithm);
+	private Cipher buildCipher(byte[] iv, Key secret, String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
 		final IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
 		final Cipher cipher = Cipher.getInstance(transformation);
-		cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivParameterSpec);
+		cipher.init(Cipher.DECRYPT_MODE, secret, ivParameterSpec);
 		return cipher;
 	}
 	
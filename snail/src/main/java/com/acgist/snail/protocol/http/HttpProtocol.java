@@ -80,10 +80,12 @@ public final class HttpProtocol extends Protocol {
 	 */
 	private void buildHttpHeader() throws DownloadException {
 		try {
-			this.httpHeaderWrapper = HttpClient
+			final var client = HttpClient
 				.newInstance(this.url)
-				.head()
-				.responseHeader();
+				.head();
+			this.httpHeaderWrapper = client.responseHeader();
+			// 只读取响应头：关闭连接
+			client.shutdown();
 		} catch (NetException e) {
 			throw new DownloadException("获取HTTP头部信息失败", e);
 		}
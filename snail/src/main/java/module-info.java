@@ -44,6 +44,8 @@ open module com.acgist.snail {
 	requires java.base;
 	// XML依赖
 	requires transitive java.xml;
+	// HTTP连接池依赖
+	requires java.net.http;
 	
 	//================依赖================//
 	requires transitive org.slf4j;
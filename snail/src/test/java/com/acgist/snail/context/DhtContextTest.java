@@ -1,6 +1,8 @@
 package com.acgist.snail.context;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 import org.junit.jupiter.api.Test;
 
@@ -18,6 +20,20 @@ public class DhtContextTest extends Performance {
 		assertNotNull(response);
 	}
 	
+	@Test
+	public void testCount() {
+		final var context = DhtContext.getInstance();
+		final int inflightSize = context.inflightSize();
+		final long responseCount = context.responseCount();
+		final var request = PingRequest.newRequest();
+		context.request(request);
+		assertEquals(inflightSize + 1, context.inflightSize());
+		assertNotNull(context.response(PingResponse.newInstance(request)));
+		assertNull(context.response(PingResponse.newInstance(request)));
+		assertEquals(inflightSize, context.inflightSize());
+		assertEquals(responseCount + 1, context.responseCount());
+	}
+	
 	@Test
 	public void testCosted() {
 		this.costed(100000, () -> this.testRequest());
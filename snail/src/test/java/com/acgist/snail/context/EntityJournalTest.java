@@ -0,0 +1,116 @@
+package com.acgist.snail.context;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.pojo.ITaskSession.FileType;
+import com.acgist.snail.pojo.ITaskSessionStatus.Status;
+import com.acgist.snail.pojo.entity.ConfigEntity;
+import com.acgist.snail.pojo.entity.Entity;
+import com.acgist.snail.pojo.entity.TaskEntity;
+import com.acgist.snail.protocol.Protocol.Type;
+import com.acgist.snail.utils.Performance;
+
+public class EntityJournalTest extends Performance {
+	
+	@Test
+	public void testReplay() throws IOException {
+		final Path path = Files.createTempFile("snail", ".journal");
+		final EntityJournal journal = new EntityJournal(path.toString());
+		final TaskEntity task = this.task();
+		final ConfigEntity config = new ConfigEntity();
+		config.setId(UUID.randomUUID().toString());
+		config.setName("acgist");
+		config.setValue("测试");
+		journal.save(task);
+		journal.save(config);
+		task.setStatus(Status.COMPLETED);
+		task.setPayload(new byte[] {1, 2, 3});
+		journal.save(task);
+		journal.delete(config.getId());
+		final long size = journal.size();
+		journal.close();
+		// 模拟写入时程序崩溃
+		Files.write(path, new byte[] {1, 0, 0, 0, 100, 1, 2}, StandardOpenOption.APPEND);
+		final Map<String, Entity> entities = new LinkedHashMap<>();
+		final EntityJournal replay = new EntityJournal(path.toString());
+		assertEquals(4, replay.replay(entity -> entities.put(entity.getId(), entity), entities::remove));
+		assertEquals(size, replay.size());
+		assertEquals(size, Files.size(path));
+		assertEquals(1, entities.size());
+		final TaskEntity entity = (TaskEntity) entities.get(task.getId());
+		assertEquals(task.getName(), entity.getName());
+		assertEquals(Type.HTTP, entity.getType());
+		assertEquals(FileType.VIDEO, entity.getFileType());
+		assertEquals(Status.COMPLETED, entity.getStatus());
+		assertEquals(task.getCreateDate(), entity.getCreateDate());
+		assertEquals(task.getSize(), entity.getSize());
+		assertNull(entity.getTorrent());
+		assertArrayEquals(task.getPayload(), entity.getPayload());
+		replay.reset();
+		assertEquals(0, Files.size(path));
+		replay.close();
+		Files.delete(path);
+	}
+	
+	@Test
+	public void testResetPosition() throws IOException {
+		final Path path = Files.createTempFile("snail", ".journal");
+		final EntityJournal journal = new EntityJournal(path.toString());
+		final TaskEntity task = this.task();
+		journal.save(task);
+		final long position = journal.size();
+		// 模拟保存快照期间修改实体
+		task.setStatus(Status.COMPLETED);
+		journal.save(task);
+		final long size = journal.size();
+		journal.reset(position);
+		assertEquals(size - position, journal.size());
+		assertEquals(size - position, Files.size(path));
+		journal.close();
+		final Map<String, Entity> entities = new LinkedHashMap<>();
+		final EntityJournal replay = new EntityJournal(path.toString());
+		assertEquals(1, replay.replay(entity -> entities.put(entity.getId(), entity), entities::remove));
+		assertEquals(Status.COMPLETED, ((TaskEntity) entities.get(task.getId())).getStatus());
+		replay.close();
+		Files.delete(path);
+	}
+	
+	@Test
+	public void testCosted() throws IOException {
+		final Path path = Files.createTempFile("snail", ".journal");
+		final EntityJournal journal = new EntityJournal(path.toString());
+		final TaskEntity task = this.task();
+		task.setPayload(new byte[1024]);
+		this.costed(10000, () -> journal.save(task));
+		this.log("日志大小：{}", journal.size());
+		journal.close();
+		Files.delete(path);
+	}
+	
+	private TaskEntity task() {
+		final TaskEntity task = new TaskEntity();
+		task.setId(UUID.randomUUID().toString());
+		task.setCreateDate(new Date());
+		task.setModifyDate(new Date());
+		task.setName("测试");
+		task.setType(Type.HTTP);
+		task.setFileType(FileType.VIDEO);
+		task.setStatus(Status.DOWNLOAD);
+		task.setSize(1024L);
+		return task;
+	}
+
+}
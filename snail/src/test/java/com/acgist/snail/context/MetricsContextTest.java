@@ -0,0 +1,51 @@
+package com.acgist.snail.context;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.utils.Performance;
+
+public class MetricsContextTest extends Performance {
+	
+	@Test
+	public void testMetrics() {
+		final MetricsContext context = MetricsContext.getInstance();
+		final var counter = context.counter("snail_test_total", "测试计数");
+		counter.increment();
+		counter.add(9);
+		assertEquals(10, context.counter("snail_test_total", "测试计数").get());
+		context.gauge("snail_test_gauge{name=\"a\"}", "测试仪表", () -> 1);
+		context.gauge("snail_test_gauge{name=\"b\"}", "测试仪表", () -> 2);
+		final var histogram = context.histogram("snail_test_seconds", "测试时间");
+		histogram.record(50_000L);
+		histogram.record(2_000_000L);
+		histogram.record(10_000_000_000L);
+		assertEquals(3, histogram.count());
+		final String metrics = context.export();
+		this.log(metrics);
+		assertTrue(metrics.contains("# TYPE snail_test_total counter\nsnail_test_total 10\n"));
+		assertTrue(metrics.contains("# TYPE snail_test_gauge gauge\nsnail_test_gauge{name=\"a\"} 1\nsnail_test_gauge{name=\"b\"} 2\n"));
+		assertTrue(metrics.contains("snail_test_seconds_bucket{le=\"1.0E-4\"} 1\n"));
+		assertTrue(metrics.contains("snail_test_seconds_bucket{le=\"0.005\"} 2\n"));
+		assertTrue(metrics.contains("snail_test_seconds_bucket{le=\"+Inf\"} 3\n"));
+		assertTrue(metrics.contains("snail_test_seconds_count 3\n"));
+		context.remove("snail_test_total");
+		assertNull(context.get("snail_test_total"));
+	}
+	
+	@Test
+	public void testCosted() {
+		final var counter = MetricsContext.getInstance().counter("snail_test_costed_total", "测试计数");
+		final var histogram = MetricsContext.getInstance().histogram("snail_test_costed_seconds", "测试时间");
+		this.costed(100000, 10, () -> {
+			counter.increment();
+			histogram.record(1000L);
+		});
+		assertEquals(100000, counter.get());
+		assertEquals(100000, histogram.count());
+	}
+
+}
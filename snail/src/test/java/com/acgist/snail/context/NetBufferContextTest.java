@@ -0,0 +1,65 @@
+package com.acgist.snail.context;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.utils.Performance;
+
+public class NetBufferContextTest extends Performance {
+
+	@Test
+	public void testBorrow() {
+		final var context = NetBufferContext.getInstance();
+		final int borrowSize = context.borrowSize();
+		final var buffer = context.borrow(SystemConfig.UDP_BUFFER_LENGTH);
+		assertTrue(buffer.isDirect());
+		assertEquals(0, buffer.position());
+		assertEquals(SystemConfig.UDP_BUFFER_LENGTH, buffer.limit());
+		assertEquals(SystemConfig.UDP_BUFFER_LENGTH, buffer.capacity());
+		assertEquals(SystemConfig.ONE_KB, context.borrow(100).capacity());
+		assertEquals(32 * SystemConfig.ONE_KB, context.borrow(16 * SystemConfig.ONE_KB + 1).capacity());
+		assertEquals(borrowSize + 3, context.borrowSize());
+		context.recycle(buffer);
+		final long hitCount = context.hitCount();
+		final var reuse = context.borrow(SystemConfig.UDP_BUFFER_LENGTH - 1);
+		assertEquals(hitCount + 1, context.hitCount());
+		assertEquals(SystemConfig.UDP_BUFFER_LENGTH - 1, reuse.limit());
+	}
+	
+	@Test
+	public void testRecycleForeign() {
+		final var context = NetBufferContext.getInstance();
+		final var buffer = context.borrow(SystemConfig.UDP_BUFFER_LENGTH);
+		final int borrowSize = context.borrowSize();
+		final long size = context.size();
+		// 切片、副本和没有借出的缓冲不会回收
+		context.recycle(buffer.slice());
+		context.recycle(buffer.duplicate());
+		context.recycle(ByteBuffer.allocateDirect(SystemConfig.UDP_BUFFER_LENGTH));
+		assertEquals(borrowSize, context.borrowSize());
+		assertEquals(size, context.size());
+		context.recycle(buffer);
+		assertEquals(borrowSize - 1, context.borrowSize());
+		assertEquals(size + buffer.capacity(), context.size());
+		// 重复回收
+		context.recycle(buffer);
+		assertEquals(borrowSize - 1, context.borrowSize());
+		assertEquals(size + buffer.capacity(), context.size());
+	}
+	
+	@Test
+	public void testCost() {
+		final var context = NetBufferContext.getInstance();
+		this.cost();
+		for (int index = 0; index < 100000; index++) {
+			context.recycle(context.borrow(SystemConfig.TCP_BUFFER_LENGTH));
+		}
+		this.costed();
+	}
+	
+}
@@ -12,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.logger.LoggerConfig;
 import com.acgist.snail.pojo.session.NodeSession;
+import com.acgist.snail.utils.ArrayUtils;
 import com.acgist.snail.utils.Performance;
 import com.acgist.snail.utils.StringUtils;
 
@@ -59,7 +60,8 @@ public class NodeContextTest extends Performance {
 		nodes.forEach(node -> this.log(StringUtils.hex(node.getId())));
 //		this.log("----");
 		final var newNodes = new ArrayList<>(nodes);
-		Collections.sort(newNodes);
+		final byte[] targetId = StringUtils.unhex(target);
+		newNodes.sort((source, dest) -> ArrayUtils.compareUnsigned(ArrayUtils.xor(source.getId(), targetId), ArrayUtils.xor(dest.getId(), targetId)));
 //		newNodes.forEach(node -> this.log(StringUtils.hex(node.getId())));
 		for (int index = 0; index < nodes.size(); index++) {
 			assertEquals(nodes.get(index), newNodes.get(index));
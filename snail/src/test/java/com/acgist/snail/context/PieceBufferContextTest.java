@@ -0,0 +1,50 @@
+package com.acgist.snail.context;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.utils.Performance;
+
+public class PieceBufferContextTest extends Performance {
+
+	@Test
+	public void testBorrow() {
+		final var context = PieceBufferContext.getInstance();
+		final var buffer = context.borrow(100);
+		assertTrue(buffer.isDirect());
+		assertEquals(0, buffer.position());
+		assertEquals(100, buffer.limit());
+		assertEquals(16 * SystemConfig.ONE_KB, buffer.capacity());
+		final var large = context.borrow(SystemConfig.ONE_MB + 1);
+		assertEquals(2 * SystemConfig.ONE_MB, large.capacity());
+		context.recycle(buffer);
+		final long hitCount = context.hitCount();
+		final var reuse = context.borrow(1000);
+		assertEquals(hitCount + 1, context.hitCount());
+		assertEquals(1000, reuse.limit());
+	}
+	
+	@Test
+	public void testBorrowSize() {
+		final var context = PieceBufferContext.getInstance();
+		final long borrowSize = context.borrowSize();
+		final var buffer = context.borrow(SystemConfig.ONE_MB);
+		assertEquals(borrowSize + SystemConfig.ONE_MB, context.borrowSize());
+		context.recycle(buffer);
+		assertEquals(borrowSize, context.borrowSize());
+	}
+	
+	@Test
+	public void testCost() {
+		final var context = PieceBufferContext.getInstance();
+		this.cost();
+		for (int index = 0; index < 10000; index++) {
+			context.recycle(context.borrow(SystemConfig.ONE_MB));
+		}
+		this.costed();
+	}
+	
+}
@@ -0,0 +1,59 @@
+package com.acgist.snail.downloader.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.utils.Performance;
+
+public class HttpSegmentTest extends Performance {
+
+	@Test
+	public void testSplit() {
+		final long size = 4 * HttpSegment.MIN_SEGMENT_SIZE;
+		final var segment = new HttpSegment(0, size);
+		final var split = segment.split();
+		assertEquals(size / 2, segment.end());
+		assertEquals(size / 2, split.position());
+		assertEquals(size, split.end());
+		assertNull(segment.split().split());
+	}
+	
+	@Test
+	public void testWrite() throws IOException {
+		final var path = Files.createTempFile("snail", "segment");
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			final var segment = new HttpSegment(10, 20);
+			final var buffer = ByteBuffer.wrap(new byte[16]);
+			assertEquals(10, segment.write(channel, buffer));
+			assertTrue(segment.completed());
+			assertEquals(0, segment.write(channel, ByteBuffer.wrap(new byte[16])));
+			assertEquals(20, Files.size(path));
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void testPayload() {
+		final var first = new HttpSegment(0, 10);
+		final var segment = new HttpSegment(20, 100);
+		final byte[] payload = HttpSegment.toPayload(List.of(first, new HttpSegment(10, 10), segment));
+		final var segments = HttpSegment.ofPayload(payload, 100);
+		assertEquals(2, segments.size());
+		assertEquals(20, segments.get(1).position());
+		assertEquals(100, segments.get(1).end());
+		assertNull(HttpSegment.ofPayload(payload, 50));
+		assertNull(HttpSegment.ofPayload(new byte[3], 100));
+	}
+	
+}
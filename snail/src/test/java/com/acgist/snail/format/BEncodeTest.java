@@ -1,8 +1,13 @@
 package com.acgist.snail.format;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -65,6 +70,96 @@ public class BEncodeTest extends Performance {
 		assertTrue(map.size() == decodeMap.size());
 	}
 	
+	@Test
+	public void testBuffer() throws PacketSizeException {
+		final ByteBuffer buffer = ByteBuffer.wrap("xxd1:ai-10e1:bl1:c1:deexxxx".getBytes());
+		buffer.position(2);
+		final var decoder = BEncodeDecoder.newInstance(buffer);
+		assertEquals(buffer.limit(), buffer.position());
+		final var map = decoder.nextMap();
+		assertEquals(-10L, map.get("a"));
+		assertEquals(2, ((List<?>) map.get("b")).size());
+		assertEquals("xxxx", decoder.oddString());
+		assertThrows(IllegalArgumentException.class, () -> BEncodeDecoder.newInstance("d1:ai1-2ee").nextMap());
+	}
+	
+	@Test
+	public void testCursor() throws PacketSizeException {
+		final Map<String, Object> a = new LinkedHashMap<>();
+		a.put("id", "1".repeat(20));
+		a.put("target", "2".repeat(20));
+		final Map<String, Object> map = new LinkedHashMap<>();
+		map.put("t", "aa");
+		map.put("y", "q");
+		map.put("q", "find_node");
+		map.put("a", a);
+		map.put("l", List.of(1, "b", List.of()));
+		map.put("中文", "中文");
+		final byte[] bytes = BEncodeEncoder.encodeMap(map);
+		final ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 4);
+		buffer.put(bytes).put("xxxx".getBytes()).flip();
+		final var cursor = BEncodeCursor.newInstance(buffer);
+		assertEquals(0, buffer.position());
+		assertTrue(cursor.isMap());
+		assertEquals(6, cursor.size());
+		assertEquals(bytes.length, cursor.length());
+		assertEquals("q", cursor.getString("y"));
+		assertEquals("find_node", cursor.getString("q"));
+		assertArrayEquals("aa".getBytes(), cursor.getBytes("t"));
+		assertEquals("中文", cursor.getString("中文"));
+		assertNull(cursor.get("x"));
+		assertNull(cursor.get("i"));
+		assertEquals(ByteBuffer.wrap("2".repeat(20).getBytes()), cursor.get("a").getBuffer("target"));
+		assertEquals(BEncodeDecoder.getMap(BEncodeDecoder.newInstance(bytes).nextMap(), "a").keySet(), cursor.getMap("a").keySet());
+		final var list = cursor.get("l");
+		assertEquals(3, list.size());
+		assertEquals(Long.valueOf(1L), list.get(0).longValue());
+		assertEquals("b", list.get(1).string());
+		assertTrue(list.get(2).isList());
+		assertNull(list.get(3));
+		assertEquals(3, cursor.getList("l").size());
+		assertEquals(ByteBuffer.wrap("xxxx".getBytes()), cursor.oddBuffer());
+		assertArrayEquals(bytes, cursor.rawBytes());
+		// 键使用UTF-8编码：不受默认编码影响
+		final byte[] key = "中文".getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer utf8 = ByteBuffer.allocate(key.length + 7);
+		utf8.put(("d" + key.length + ":").getBytes()).put(key).put("1:ae".getBytes()).flip();
+		assertEquals("a", BEncodeCursor.newInstance(utf8).getString("中文"));
+		assertThrows(IllegalArgumentException.class, () -> BEncodeCursor.newInstance("d1:a".getBytes()));
+		assertThrows(IllegalArgumentException.class, () -> BEncodeCursor.newInstance("d1:ae".getBytes()));
+		assertThrows(IllegalArgumentException.class, () -> BEncodeCursor.newInstance("di1e1:ae".getBytes()));
+		assertThrows(IllegalArgumentException.class, () -> BEncodeCursor.newInstance("li1-2ee".getBytes()));
+		assertThrows(PacketSizeException.class, () -> BEncodeCursor.newInstance("l99999999:e".getBytes()));
+	}
+	
+	@Test
+	public void testCursorCosted() throws PacketSizeException {
+		final Map<String, Object> a = new LinkedHashMap<>();
+		a.put("id", "1".repeat(20));
+		a.put("info_hash", "2".repeat(20));
+		final Map<String, Object> map = new LinkedHashMap<>();
+		map.put("a", a);
+		map.put("q", "get_peers");
+		map.put("t", "aa");
+		map.put("y", "q");
+		final ByteBuffer buffer = ByteBuffer.wrap(BEncodeEncoder.encodeMap(map));
+		final long decoderCosted = this.costed(100000, () -> {
+			try {
+				BEncodeDecoder.newInstance(buffer.duplicate()).nextMap();
+			} catch (PacketSizeException e) {
+				this.log("B编码解析异常", e);
+			}
+		});
+		final long cursorCosted = this.costed(100000, () -> {
+			try {
+				BEncodeCursor.newInstance(buffer).getString("y");
+			} catch (PacketSizeException e) {
+				this.log("B编码解析异常", e);
+			}
+		});
+		this.log("解码器：{}，游标：{}", decoderCosted, cursorCosted);
+	}
+	
 	@Test
 	public void testEncode() {
 		final String map = BEncodeEncoder.encodeMapString(Map.of("1", "2"));
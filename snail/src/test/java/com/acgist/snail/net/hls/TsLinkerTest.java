@@ -1,48 +1,205 @@
 package com.acgist.snail.net.hls;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Random;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.junit.jupiter.api.Test;
 
+import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.context.exception.DownloadException;
+import com.acgist.snail.pojo.bean.M3u8;
+import com.acgist.snail.pojo.bean.M3u8.Type;
+import com.acgist.snail.protocol.hls.M3u8Builder;
 import com.acgist.snail.utils.FileUtils;
 import com.acgist.snail.utils.Performance;
 
 public class TsLinkerTest extends Performance {
-
+	
+	private static final String NAME = "测试";
+	
+	@Test
+	public void testLink() throws DownloadException, IOException {
+		final Path path = Files.createTempDirectory("snail");
+		final var links = List.of("https://www.acgist.com/0.ts", "https://www.acgist.com/1.ts", "https://www.acgist.com/2.ts");
+		final var datas = this.datas(links.size(), 100000);
+		final TsLinker linker = TsLinker.newInstance(NAME, path.toString(), null, links.size());
+		assertEquals(0, linker.open(null));
+		// 乱序写入
+		this.write(linker, 2, datas.get(2));
+		linker.complete(2);
+		this.write(linker, 1, datas.get(1));
+		this.write(linker, 0, datas.get(0));
+		assertEquals(datas.get(0).length, linker.size(0));
+		assertEquals(datas.get(1).length, linker.size(1));
+		assertFalse(linker.completed());
+		linker.complete(0);
+		assertEquals(1, linker.index());
+		linker.complete(1);
+		assertTrue(linker.completed());
+		linker.release();
+		assertArrayEquals(this.concat(datas), Files.readAllBytes(path.resolve(NAME + ".ts")));
+		FileUtils.delete(path.toFile());
+	}
+	
+	@Test
+	public void testCipher() throws DownloadException, IOException, GeneralSecurityException {
+		final Path path = Files.createTempDirectory("snail");
+		final var links = List.of("https://www.acgist.com/100.ts", "https://www.acgist.com/101.ts", "https://www.acgist.com/102.ts");
+		final var datas = this.datas(links.size(), 10000);
+		final long sequence = 100L;
+		final byte[] secret = new byte[16];
+		new Random().nextBytes(secret);
+		// 没有IV：使用文件序列号
+		final M3u8 m3u8 = new M3u8(Type.FILE, this.cipher(Cipher.DECRYPT_MODE, secret, this.iv(sequence)), new SecretKeySpec(secret, "AES"), null, links, sequence, 0);
+		assertArrayEquals(this.iv(sequence + 1), M3u8Builder.buildIv(sequence + 1));
+		final TsLinker linker = TsLinker.newInstance(NAME, path.toString(), m3u8.getCipher(), links.size());
+		for (int index = 0; index < links.size(); index++) {
+			linker.crypt(index, sequence + index, m3u8);
+		}
+		linker.open(null);
+		for (int index = links.size() - 1; index >= 0; index--) {
+			// 每个文件单独加密：IV使用文件序列号
+			this.write(linker, index, this.cipher(Cipher.ENCRYPT_MODE, secret, this.iv(sequence + index)).doFinal(datas.get(index)));
+			linker.complete(index);
+		}
+		assertTrue(linker.completed());
+		linker.release();
+		assertArrayEquals(this.concat(datas), Files.readAllBytes(path.resolve(NAME + ".ts")));
+		FileUtils.delete(path.toFile());
+	}
+	
+	@Test
+	public void testCipherFail() throws DownloadException, IOException, GeneralSecurityException {
+		final Path path = Files.createTempDirectory("snail");
+		final var links = List.of("https://www.acgist.com/0.ts", "https://www.acgist.com/1.ts");
+		final var datas = this.datas(links.size(), 10000);
+		final byte[] secret = new byte[16];
+		new Random().nextBytes(secret);
+		final M3u8 m3u8 = new M3u8(Type.FILE, this.cipher(Cipher.DECRYPT_MODE, secret, this.iv(0L)), new SecretKeySpec(secret, "AES"), null, links, 0L, 0);
+		final TsLinker linker = TsLinker.newInstance(NAME, path.toString(), m3u8.getCipher(), links.size());
+		linker.crypt(0, 0L, m3u8);
+		linker.crypt(1, 1L, m3u8);
+		linker.open(null);
+		final byte[] encrypt = this.cipher(Cipher.ENCRYPT_MODE, secret, this.iv(0L)).doFinal(datas.get(0));
+		this.write(linker, 0, encrypt);
+		linker.complete(0);
+		// 数据长度错误：解密失败
+		this.write(linker, 1, datas.get(1));
+		assertThrows(DownloadException.class, () -> linker.complete(1));
+		assertEquals(1, linker.index());
+		assertEquals(0, linker.size(1));
+		assertEquals(datas.get(0).length, Files.size(path.resolve(NAME + ".ts")));
+		linker.release();
+		FileUtils.delete(path.toFile());
+	}
+	
 	@Test
-	public void testLink() throws DownloadException {
-		if(SKIP_COSTED) {
-			this.log("跳过testLink测试");
-			return;
+	public void testSpill() throws DownloadException, IOException {
+		final Path path = Files.createTempDirectory("snail");
+		final var links = List.of("https://www.acgist.com/0.ts", "https://www.acgist.com/1.ts");
+		// 超过内存缓存：写入临时文件
+		final var datas = this.datas(links.size(), 10 * SystemConfig.ONE_MB);
+		final TsLinker linker = TsLinker.newInstance(NAME, path.toString(), null, links.size());
+		linker.open(null);
+		this.write(linker, 1, datas.get(1));
+		linker.complete(1);
+		assertTrue(new File(path.toFile(), NAME + "-1.ts").exists());
+		this.write(linker, 0, datas.get(0));
+		linker.complete(0);
+		assertTrue(linker.completed());
+		assertFalse(new File(path.toFile(), NAME + "-1.ts").exists());
+		linker.release();
+		assertArrayEquals(this.concat(datas), Files.readAllBytes(path.resolve(NAME + ".ts")));
+		FileUtils.delete(path.toFile());
+	}
+	
+	@Test
+	public void testResume() throws DownloadException, IOException {
+		final Path path = Files.createTempDirectory("snail");
+		final var links = List.of("https://www.acgist.com/0.ts", "https://www.acgist.com/1.ts", "https://www.acgist.com/2.ts");
+		final var datas = this.datas(links.size(), 100000);
+		TsLinker linker = TsLinker.newInstance(NAME, path.toString(), null, links.size());
+		linker.open(null);
+		this.write(linker, 0, datas.get(0));
+		linker.complete(0);
+		// 没有完成数据不会保存
+		this.write(linker, 1, datas.get(1));
+		this.write(linker, 2, datas.get(2));
+		linker.release();
+		final byte[] payload = linker.payload();
+		linker = TsLinker.newInstance(NAME, path.toString(), null, links.size());
+		assertEquals(1, linker.open(payload));
+		assertEquals(datas.get(0).length, Files.size(path.resolve(NAME + ".ts")));
+		this.write(linker, 1, datas.get(1));
+		this.write(linker, 2, datas.get(2));
+		// 重新下载
+		linker.reset(2);
+		assertEquals(0, linker.size(2));
+		this.write(linker, 2, datas.get(2));
+		linker.complete(2);
+		linker.complete(1);
+		assertTrue(linker.completed());
+		linker.release();
+		assertArrayEquals(this.concat(datas), Files.readAllBytes(path.resolve(NAME + ".ts")));
+		FileUtils.delete(path.toFile());
+	}
+	
+	/**
+	 * <p>分块写入数据</p>
+	 */
+	private void write(TsLinker linker, int index, byte[] bytes) throws DownloadException {
+		int position = 0;
+		while(position < bytes.length) {
+			final int length = Math.min(SystemConfig.DEFAULT_EXCHANGE_BYTES_LENGTH, bytes.length - position);
+			linker.write(index, ByteBuffer.wrap(bytes, position, length));
+			position += length;
+		}
+	}
+	
+	private List<byte[]> datas(int size, int length) {
+		final Random random = new Random();
+		final List<byte[]> datas = new ArrayList<>();
+		for (int index = 0; index < size; index++) {
+			// 长度不是加密块大小整数倍
+			final byte[] bytes = new byte[length + index];
+			random.nextBytes(bytes);
+			datas.add(bytes);
 		}
-		final String name = "测试";
-		final String filePath = "E:\\snail\\m3u8";
-		final File parent = new File(filePath);
-		final var links = List.of(parent.listFiles()).stream()
-			.map(file -> file.getAbsolutePath())
-			.filter(path -> !path.contains(name)) // 排除生成文件：防止重复读写
-			.collect(Collectors.toList());
-		Cipher cipher = null;
-//		final var builder = M3u8Builder.newInstance(new File("E://snail/index.m3u8"), "https://www.acgist.com/a/b?v=1234");
-//		cipher = builder.build().getCipher();
-		final TsLinker linker = TsLinker.newInstance(
-			name,
-			filePath,
-			cipher,
-			links
-		);
-		linker.link();
-		File file = Paths.get(filePath, "测试.ts").toFile();
-		assertTrue(file.exists());
-		FileUtils.delete(file);
+		return datas;
+	}
+	
+	private byte[] concat(List<byte[]> datas) {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		datas.forEach(output::writeBytes);
+		return output.toByteArray();
 	}
 	
+	private byte[] iv(long sequence) {
+		return ByteBuffer.allocate(16).putLong(8, sequence).array();
+	}
+	
+	private Cipher cipher(int mode, byte[] secret, byte[] iv) throws GeneralSecurityException {
+		final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(mode, new SecretKeySpec(secret, "AES"), new IvParameterSpec(iv));
+		return cipher;
+	}
+
 }
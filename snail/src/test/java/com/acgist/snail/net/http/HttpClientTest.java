@@ -46,6 +46,17 @@ public class HttpClientTest extends Performance {
 		this.log(client.responseToString());
 	}
 	
+	@Test
+	public void testRange() throws NetException {
+		final var client = HttpClient.newDownloader("https://gitee.com/acgist/snail/raw/master/README.md").range(10).get();
+		assertTrue(client.downloadable());
+		if(client.partialContent()) {
+			assertTrue(client.responseHeader().verifyBeginRange(10));
+		}
+		this.log(client.responseHeader());
+		this.log(client.responseToString());
+	}
+	
 	@Test
 	public void testCosted() {
 		final long costed = this.costed(100, 10, () -> {
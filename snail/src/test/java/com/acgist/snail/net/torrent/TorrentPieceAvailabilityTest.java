@@ -0,0 +1,59 @@
+package com.acgist.snail.net.torrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.utils.Performance;
+
+public class TorrentPieceAvailabilityTest extends Performance {
+	
+	@Test
+	public void testCount() {
+		final var availability = new TorrentPieceAvailability();
+		final BitSet pieces = new BitSet();
+		pieces.set(0, 10);
+		availability.increment(pieces);
+		availability.increment(4);
+		availability.increment(100);
+		assertEquals(1, availability.count(0));
+		assertEquals(2, availability.count(4));
+		assertEquals(1, availability.count(100));
+		assertEquals(0, availability.count(50));
+		availability.decrement(pieces);
+		availability.decrement(100);
+		availability.decrement(100);
+		assertEquals(0, availability.count(0));
+		assertEquals(1, availability.count(4));
+		assertEquals(0, availability.count(100));
+	}
+	
+	@Test
+	public void testRarest() {
+		final var availability = new TorrentPieceAvailability();
+		final BitSet pieces = new BitSet();
+		pieces.set(0, 10);
+		availability.increment(pieces);
+		availability.increment(pieces);
+		availability.increment(3);
+		availability.decrement(7);
+		final BitSet pickPieces = new BitSet();
+		pickPieces.set(2, 8);
+		assertEquals(7, availability.rarest(pickPieces));
+		pickPieces.clear(7);
+		final Set<Integer> indexs = new HashSet<>();
+		for (int index = 0; index < 1000; index++) {
+			indexs.add(availability.rarest(pickPieces));
+		}
+		this.log("最少可用Piece：{}", indexs);
+		assertTrue(!indexs.contains(3));
+		assertEquals(4, indexs.size());
+		assertEquals(-1, availability.rarest(new BitSet()));
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.acgist.snail.net.torrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.pojo.bean.TorrentPiece;
+import com.acgist.snail.utils.Performance;
+
+public class TorrentPieceCacheTest extends Performance {
+
+	@Test
+	public void testCache() {
+		final int pieceLength = 1024;
+		final var cache = new TorrentPieceCache();
+		final var first = TorrentPiece.newInstance(pieceLength, 0, 0, pieceLength, null, false);
+		final var second = TorrentPiece.newInstance(pieceLength, 1, 0, 100, null, false);
+		final var third = TorrentPiece.newInstance(pieceLength, 1, 100, pieceLength, null, false);
+		assertTrue(cache.put(third));
+		assertTrue(cache.put(second));
+		assertTrue(cache.put(first));
+		assertFalse(cache.put(TorrentPiece.newInstance(pieceLength, 0, 0, pieceLength, null, false)));
+		assertEquals(2L * pieceLength, cache.size());
+		assertNotNull(cache.get(pieceLength + 100));
+		assertNull(cache.get(pieceLength + 10));
+		assertEquals(1L, cache.hitCount());
+		assertEquals(1L, cache.missCount());
+		final var pieces = cache.pieces(0, pieceLength + 100);
+		assertEquals(2, pieces.size());
+		assertEquals(first, pieces.get(0));
+		assertEquals(second, pieces.get(1));
+		assertTrue(cache.overflow(pieceLength));
+		pieces.forEach(cache::remove);
+		assertEquals(pieceLength - 100, cache.size());
+		assertFalse(cache.overflow(pieceLength));
+	}
+	
+	@Test
+	public void testCost() {
+		final int pieceLength = 1024;
+		final var cache = new TorrentPieceCache();
+		for (int index = 0; index < 10000; index++) {
+			cache.put(TorrentPiece.newInstance(pieceLength, index, 0, pieceLength, null, false));
+		}
+		this.cost();
+		for (int index = 0; index < 100000; index++) {
+			cache.get((long) (index % 10000) * pieceLength);
+		}
+		this.costed();
+	}
+	
+}
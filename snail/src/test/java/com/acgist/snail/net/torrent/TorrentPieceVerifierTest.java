@@ -0,0 +1,89 @@
+package com.acgist.snail.net.torrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.utils.DigestUtils;
+import com.acgist.snail.utils.Performance;
+
+public class TorrentPieceVerifierTest extends Performance {
+	
+	private static final int PIECE_LENGTH = 16 * 1024;
+	
+	@Test
+	public void testVerify() throws IOException {
+		// 最后一块Piece不完整
+		final byte[] bytes = this.bytes(100 * PIECE_LENGTH + 100);
+		final byte[] pieceHashs = this.pieceHashs(bytes);
+		final int pieceSize = pieceHashs.length / SystemConfig.SHA1_HASH_LENGTH;
+		// 损坏数据
+		bytes[10 * PIECE_LENGTH] ^= 1;
+		bytes[bytes.length - 1] ^= 1;
+		final TorrentPieceVerifier verifier = TorrentPieceVerifier.newInstance(PIECE_LENGTH, bytes.length, pieceHashs, (index, length, buffer) -> {
+			buffer.put(bytes, index * PIECE_LENGTH, length);
+			return true;
+		}, 4);
+		final BitSet pieces = new BitSet();
+		pieces.set(0, pieceSize + 1);
+		this.cost();
+		final BitSet verifyPieces = verifier.verify(pieces);
+		this.costed();
+		assertEquals(100, verifier.progress());
+		assertEquals(pieceSize - 2, verifyPieces.cardinality());
+		assertFalse(verifyPieces.get(10));
+		assertFalse(verifyPieces.get(pieceSize - 1));
+		assertTrue(verifyPieces.get(11));
+	}
+	
+	@Test
+	public void testPartial() throws IOException {
+		final byte[] bytes = this.bytes(4 * PIECE_LENGTH);
+		final byte[] pieceHashs = this.pieceHashs(bytes);
+		// 第二块Piece前半部分数据没有加载（验证是否含有数据）、第三块Piece没有数据
+		final TorrentPieceVerifier verifier = TorrentPieceVerifier.newInstance(PIECE_LENGTH, bytes.length, pieceHashs, (index, length, buffer) -> {
+			if(index == 1) {
+				buffer.put(bytes, index * PIECE_LENGTH + length / 2, length / 2);
+				return false;
+			}
+			if(index == 2) {
+				buffer.put(new byte[length / 2]);
+				return false;
+			}
+			buffer.put(bytes, index * PIECE_LENGTH, length);
+			return true;
+		}, 1);
+		final BitSet pieces = new BitSet();
+		pieces.set(0, 4);
+		final BitSet verifyPieces = verifier.verify(pieces);
+		assertTrue(verifyPieces.get(0));
+		assertTrue(verifyPieces.get(1));
+		assertFalse(verifyPieces.get(2));
+		assertTrue(verifyPieces.get(3));
+	}
+	
+	private byte[] bytes(int length) {
+		final byte[] bytes = new byte[length];
+		new Random().nextBytes(bytes);
+		return bytes;
+	}
+	
+	private byte[] pieceHashs(byte[] bytes) {
+		final int pieceSize = (bytes.length + PIECE_LENGTH - 1) / PIECE_LENGTH;
+		final byte[] pieceHashs = new byte[pieceSize * SystemConfig.SHA1_HASH_LENGTH];
+		final var digest = DigestUtils.sha1();
+		for (int index = 0; index < pieceSize; index++) {
+			digest.update(bytes, index * PIECE_LENGTH, Math.min(PIECE_LENGTH, bytes.length - index * PIECE_LENGTH));
+			System.arraycopy(digest.digest(), 0, pieceHashs, index * SystemConfig.SHA1_HASH_LENGTH, SystemConfig.SHA1_HASH_LENGTH);
+		}
+		return pieceHashs;
+	}
+
+}
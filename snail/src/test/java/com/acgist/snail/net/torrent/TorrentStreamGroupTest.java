@@ -1,20 +1,32 @@
 package com.acgist.snail.net.torrent;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 
+import com.acgist.snail.config.SystemConfig;
 import com.acgist.snail.context.TorrentContext;
 import com.acgist.snail.context.exception.DownloadException;
 import com.acgist.snail.context.exception.NetException;
+import com.acgist.snail.format.BEncodeEncoder;
 import com.acgist.snail.logger.LoggerConfig;
 import com.acgist.snail.pojo.ITaskSessionStatus.Status;
+import com.acgist.snail.pojo.bean.Torrent;
+import com.acgist.snail.pojo.bean.TorrentFile;
+import com.acgist.snail.pojo.bean.TorrentInfo;
 import com.acgist.snail.pojo.bean.TorrentPiece;
 import com.acgist.snail.pojo.entity.TaskEntity;
 import com.acgist.snail.pojo.session.TaskSession;
@@ -22,6 +34,7 @@ import com.acgist.snail.pojo.wrapper.MultifileSelectorWrapper;
 import com.acgist.snail.protocol.Protocol.Type;
 import com.acgist.snail.utils.ArrayUtils;
 import com.acgist.snail.utils.DigestUtils;
+import com.acgist.snail.utils.FileUtils;
 import com.acgist.snail.utils.Performance;
 import com.acgist.snail.utils.StringUtils;
 import com.acgist.snail.utils.ThreadUtils;
@@ -126,6 +139,61 @@ public class TorrentStreamGroupTest extends Performance {
 //		indexSet.forEach(this::log);
 	}
 	
+	@Test
+	public void testPickRarestBoundary() throws IOException, DownloadException {
+		LoggerConfig.off();
+		assertTrue(SystemConfig.isPieceRarest());
+		final int pieceLength = 16 * SystemConfig.ONE_KB;
+		final int fileLength = 24 * SystemConfig.ONE_KB;
+		final File folder = Files.createTempDirectory("snail").toFile();
+		// 两个文件三个Piece：第二个Piece跨越两个文件
+		final List<Object> torrentFiles = new ArrayList<>();
+		for (int index = 0; index < 2; index++) {
+			final Map<String, Object> torrentFile = new LinkedHashMap<>();
+			torrentFile.put(TorrentFile.ATTR_LENGTH, (long) fileLength);
+			torrentFile.put(TorrentFile.ATTR_PATH, List.of("file-" + index + ".dat"));
+			torrentFiles.add(torrentFile);
+		}
+		final Map<String, Object> info = new LinkedHashMap<>();
+		info.put(TorrentInfo.ATTR_FILES, torrentFiles);
+		info.put(TorrentInfo.ATTR_NAME, folder.getName());
+		info.put(TorrentInfo.ATTR_PIECE_LENGTH, (long) pieceLength);
+		info.put(TorrentInfo.ATTR_PIECES, new byte[3 * SystemConfig.SHA1_HASH_LENGTH]);
+		final Map<String, Object> torrent = new LinkedHashMap<>();
+		torrent.put(Torrent.ATTR_INFO, info);
+		final File torrentFile = new File(folder, "boundary.torrent");
+		Files.write(torrentFile.toPath(), BEncodeEncoder.encodeMap(torrent));
+		final var session = TorrentContext.getInstance().newTorrentSession(torrentFile.getAbsolutePath());
+		final var entity = new TaskEntity();
+		entity.setFile(folder.getAbsolutePath());
+		entity.setType(Type.TORRENT);
+		entity.setStatus(Status.AWAIT);
+		final List<String> list = new ArrayList<>();
+		session.torrent().getInfo().files().forEach(file -> {
+			file.selected(true);
+			list.add(file.path());
+		});
+		entity.setDescription(MultifileSelectorWrapper.newEncoder(list).serialize());
+		session.upload(TaskSession.newInstance(entity));
+		final var group = session.torrentStreamGroup();
+		final BitSet peerPieces = new BitSet();
+		peerPieces.set(0, 3);
+		final BitSet suggestPieces = new BitSet();
+		int count = 0;
+		TorrentPiece piece;
+		while((piece = group.pick(peerPieces, suggestPieces)) != null && count < 10) {
+			count++;
+			piece.write(piece.getBegin(), new byte[piece.getLength()]);
+			assertTrue(group.write(piece));
+		}
+		// 跨越文件的Piece每个文件分别下载
+		assertEquals(4, count);
+		assertTrue(group.completed());
+		session.releaseUpload();
+		session.delete();
+		FileUtils.delete(folder);
+	}
+	
 	@Test
 	public void testVerify() throws DownloadException, NetException {
 		final var path = "e:/snail/verify.torrent";
@@ -6,7 +6,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.Test;
 
@@ -54,7 +53,7 @@ public class TorrentStreamTest extends Performance {
 			torrentFile.getLength(),
 			pos,
 			false,
-			new AtomicLong(),
+			new TorrentPieceCache(),
 			group
 		);
 		oldStream.install();
@@ -66,7 +65,7 @@ public class TorrentStreamTest extends Performance {
 			torrentFile.getLength(),
 			pos,
 			false,
-			new AtomicLong(),
+			new TorrentPieceCache(),
 			group
 		);
 		newStream.install();
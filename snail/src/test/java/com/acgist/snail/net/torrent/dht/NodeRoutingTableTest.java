@@ -0,0 +1,157 @@
+package com.acgist.snail.net.torrent.dht;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.pojo.session.NodeSession;
+import com.acgist.snail.utils.ArrayUtils;
+import com.acgist.snail.utils.Performance;
+import com.acgist.snail.utils.ThreadUtils;
+
+public class NodeRoutingTableTest extends Performance {
+
+	private final Random random = new Random();
+	
+	@Test
+	public void testPut() {
+		final byte[] nodeId = this.buildId();
+		final var routingTable = new NodeRoutingTable(nodeId);
+		final List<NodeSession> nodes = new ArrayList<>();
+		for (int index = 0; index < 10000; index++) {
+			final NodeSession nodeSession = NodeSession.newInstance(this.buildId(), "0", 0);
+			nodes.add(nodeSession);
+			routingTable.put(nodeSession);
+		}
+		this.log("节点数量：{}-{}", routingTable.size(), routingTable.bucketSize());
+		assertTrue(routingTable.bucketSize() > 1);
+		assertTrue(routingTable.size() <= routingTable.bucketSize() * NodeRoutingTable.BUCKET_SIZE);
+		assertTrue(routingTable.size() >= NodeRoutingTable.BUCKET_SIZE);
+		final NodeSession nodeSession = routingTable.nodes().get(0);
+		final NodeSession oldSession = routingTable.put(NodeSession.newInstance(nodeSession.getId(), "1", 1));
+		assertEquals(nodeSession, oldSession);
+		assertEquals("0", oldSession.getHost());
+		assertNotNull(routingTable.get(nodeSession.getId()));
+		assertNull(routingTable.get(this.buildId()));
+		// 系统节点不能加入
+		final int size = routingTable.size();
+		routingTable.put(NodeSession.newInstance(nodeId, "0", 0));
+		assertEquals(size, routingTable.size());
+	}
+	
+	@Test
+	public void testFindNode() {
+		final var routingTable = new NodeRoutingTable(this.buildId());
+		for (int index = 0; index < 10000; index++) {
+			routingTable.put(NodeSession.newInstance(this.buildId(), "0", 0));
+		}
+		final byte[] target = this.buildId();
+		final List<NodeSession> nodes = routingTable.findNode(target, 8, node -> true);
+		assertEquals(8, nodes.size());
+		// 暴力查找
+		final List<NodeSession> allNodes = routingTable.nodes();
+		allNodes.sort((source, dest) -> ArrayUtils.compareUnsigned(ArrayUtils.xor(source.getId(), target), ArrayUtils.xor(dest.getId(), target)));
+		assertEquals(allNodes.subList(0, 8), nodes);
+		this.costed(100000, () -> routingTable.findNode(target, 8, node -> true));
+		this.costed(100000, 10, () -> routingTable.findNode(this.buildId(), 8, node -> true));
+	}
+	
+	@Test
+	public void testAvailable() {
+		final byte[] nodeId = this.buildId();
+		final var routingTable = new NodeRoutingTable(nodeId);
+		// 相同K桶节点：第一位和系统NodeId不同
+		final List<NodeSession> nodes = new ArrayList<>();
+		for (int index = 0; index < NodeRoutingTable.BUCKET_SIZE; index++) {
+			final NodeSession nodeSession = NodeSession.newInstance(this.buildId(nodeId), "0", 0);
+			nodes.add(nodeSession);
+			routingTable.put(nodeSession);
+		}
+		// 拆分以后第一位不同的节点不能继续拆分
+		routingTable.put(NodeSession.newInstance(this.buildNearId(nodeId), "0", 0));
+		final NodeSession replacement = NodeSession.newInstance(this.buildId(nodeId), "0", 0);
+		routingTable.put(replacement);
+		assertNull(routingTable.get(replacement.getId()));
+		// 刷新最后响应时间
+		routingTable.available(nodes.get(0).getId());
+		assertEquals(NodeSession.Status.AVAILABLE, nodes.get(0).getStatus());
+		// 没有等待验证节点：不能替换
+		routingTable.available(replacement.getId());
+		assertNull(routingTable.get(replacement.getId()));
+		// 等待响应节点不能替换
+		nodes.get(1).useableAndMark();
+		routingTable.available(replacement.getId());
+		assertNull(routingTable.get(replacement.getId()));
+		assertNotNull(routingTable.get(nodes.get(1).getId()));
+	}
+	
+	@Test
+	public void testReplace() {
+		final byte[] nodeId = this.buildId();
+		final List<NodeSession> pings = new ArrayList<>();
+		final var routingTable = new NodeRoutingTable(nodeId, 100L, pings::add);
+		final List<NodeSession> nodes = new ArrayList<>();
+		for (int index = 0; index < NodeRoutingTable.BUCKET_SIZE; index++) {
+			final NodeSession nodeSession = NodeSession.newInstance(this.buildId(nodeId), "0", 0);
+			nodes.add(nodeSession);
+			routingTable.put(nodeSession);
+		}
+		routingTable.put(NodeSession.newInstance(this.buildNearId(nodeId), "0", 0));
+		// K桶已满：放入替换缓存并且验证最早响应的节点
+		final NodeSession replacement = NodeSession.newInstance(this.buildId(nodeId), "0", 0);
+		routingTable.put(replacement);
+		assertNull(routingTable.get(replacement.getId()));
+		assertEquals(List.of(nodes.get(0)), pings);
+		assertEquals(NodeSession.Status.VERIFY, nodes.get(0).getStatus());
+		// 正在验证：不用重复验证
+		final NodeSession nextReplacement = NodeSession.newInstance(this.buildId(nodeId), "0", 0);
+		routingTable.put(nextReplacement);
+		assertEquals(1, pings.size());
+		// 等待响应节点不能替换
+		routingTable.available(replacement.getId());
+		assertNull(routingTable.get(replacement.getId()));
+		assertNotNull(routingTable.get(nodes.get(0).getId()));
+		// 验证超时节点可以替换
+		ThreadUtils.sleep(200);
+		routingTable.available(replacement.getId());
+		assertNotNull(routingTable.get(replacement.getId()));
+		assertNull(routingTable.get(nodes.get(0).getId()));
+		// 验证失败：使用替换缓存节点替换
+		routingTable.unavailable(nodes.get(1));
+		assertNotNull(routingTable.get(nextReplacement.getId()));
+		assertNull(routingTable.get(nodes.get(1).getId()));
+		assertEquals(NodeRoutingTable.BUCKET_SIZE, routingTable.nodes().stream().filter(node -> ((node.getId()[0] ^ nodeId[0]) & 0x80) != 0).count());
+	}
+	
+	private byte[] buildId() {
+		final byte[] bytes = new byte[20];
+		this.random.nextBytes(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * <p>第一位和系统NodeId不同</p>
+	 */
+	private byte[] buildId(byte[] nodeId) {
+		final byte[] bytes = this.buildId();
+		bytes[0] = (byte) ((bytes[0] & 0x7F) | (~nodeId[0] & 0x80));
+		return bytes;
+	}
+	
+	/**
+	 * <p>第一位和系统NodeId相同</p>
+	 */
+	private byte[] buildNearId(byte[] nodeId) {
+		final byte[] bytes = this.buildId();
+		bytes[0] = (byte) ((bytes[0] & 0x7F) | (nodeId[0] & 0x80));
+		return bytes;
+	}
+	
+}
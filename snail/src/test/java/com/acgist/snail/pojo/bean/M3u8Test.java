@@ -1,5 +1,7 @@
 package com.acgist.snail.pojo.bean;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -62,4 +64,15 @@ public class M3u8Test extends Performance {
 		}
 	}
 	
+	@Test
+	public void testStream() throws NetException, DownloadException {
+		final String content = "#EXTM3U\n#EXT-X-TARGETDURATION:6\n#EXT-X-MEDIA-SEQUENCE:100\n#EXTINF:6.000,\n100.ts\n#EXTINF:6.000,\n101.ts\n";
+		final var m3u8 = M3u8Builder.newInstance(content, "https://www.acgist.com/live/index.m3u8").build();
+		this.log(m3u8);
+		assertEquals(Type.STREAM, m3u8.getType());
+		assertEquals(100L, m3u8.getSequence());
+		assertEquals(6, m3u8.getDuration());
+		assertEquals(2, m3u8.getLinks().size());
+	}
+	
 }
@@ -1,5 +1,11 @@
 package com.acgist.snail.pojo.bean;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
 import org.junit.jupiter.api.Test;
 
 import com.acgist.snail.utils.Performance;
@@ -25,7 +31,37 @@ public class TorrentPieceTest extends Performance {
 		this.log(piece.read(20, 10)); // 不包含
 	}
 	
+	@Test
+	public void testWriteBuffer() {
+		final int pieceLength = 1024;
+		final int begin = 10;
+		final int end = 20;
+		final var piece = TorrentPiece.newInstance(pieceLength, 0, begin, end, null, false);
+		final byte[] bytes = new byte[end - begin + 4];
+		for (int index = 0; index < bytes.length; index++) {
+			bytes[index] = (byte) index;
+		}
+		// 模拟消息切片：跳过消息头
+		final ByteBuffer message = ByteBuffer.wrap(bytes, 4, end - begin).slice();
+		assertTrue(piece.write(begin, message));
+		assertArrayEquals(new byte[] {4, 5, 6}, piece.read(begin, 3));
+	}
 
+	@Test
+	public void testWriteSlice() {
+		final int length = 2 * TorrentPiece.SLICE_LENGTH + 100;
+		final var piece = TorrentPiece.newInstance(length, 0, 0, length, null, false);
+		// 重复写入：不会重复统计
+		assertFalse(piece.write(0, new byte[TorrentPiece.SLICE_LENGTH]));
+		assertFalse(piece.write(0, new byte[TorrentPiece.SLICE_LENGTH]));
+		assertFalse(piece.write(TorrentPiece.SLICE_LENGTH * 2, new byte[100]));
+		// 超出Piece范围：忽略
+		assertFalse(piece.write(length, new byte[TorrentPiece.SLICE_LENGTH]));
+		assertTrue(piece.write(TorrentPiece.SLICE_LENGTH, new byte[TorrentPiece.SLICE_LENGTH]));
+		piece.release();
+		assertFalse(piece.write(0, new byte[TorrentPiece.SLICE_LENGTH]));
+	}
+	
 	@Test
 	public void testCost() {
 		final int pieceLength = 1024;
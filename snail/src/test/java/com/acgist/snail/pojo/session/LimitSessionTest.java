@@ -0,0 +1,78 @@
+package com.acgist.snail.pojo.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.config.SystemConfig;
+import com.acgist.snail.utils.Performance;
+import com.acgist.snail.utils.ThreadUtils;
+
+public class LimitSessionTest extends Performance {
+	
+	@Test
+	public void testAcquire() {
+		final long maxLimitBuffer = 1024L * SystemConfig.ONE_KB;
+		final LimitSession session = new LimitSession(() -> maxLimitBuffer);
+		// 加载配置
+		session.delay();
+		// 扣除令牌不会阻塞：返回等待时间
+		final long begin = System.currentTimeMillis();
+		final long delay = session.acquire(maxLimitBuffer);
+		assertTrue(System.currentTimeMillis() - begin < 100);
+		assertTrue(delay > 500 && delay <= 1000, "等待时间：" + delay);
+		assertTrue(session.delay() <= delay);
+	}
+	
+	@Test
+	public void testUnlimited() {
+		final LimitSession session = new LimitSession(() -> 0L);
+		assertEquals(0L, session.acquire(Integer.MAX_VALUE));
+		assertEquals(0L, session.delay());
+	}
+	
+	@Test
+	public void testSpeed() {
+		final long maxLimitBuffer = 512L * SystemConfig.ONE_KB;
+		final int buffer = 16 * SystemConfig.ONE_KB;
+		final LimitSession session = new LimitSession(() -> maxLimitBuffer);
+		long size = 0L;
+		final long begin = System.currentTimeMillis();
+		while(System.currentTimeMillis() - begin < 2000) {
+			final long delay = session.delay();
+			if(delay > 0L) {
+				ThreadUtils.sleep(delay);
+				continue;
+			}
+			session.acquire(buffer);
+			size += buffer;
+		}
+		final long speed = size * SystemConfig.ONE_SECOND_MILLIS / (System.currentTimeMillis() - begin);
+		this.log("限速：{}-{}", maxLimitBuffer, speed);
+		assertTrue(speed <= maxLimitBuffer * 1.1 && speed >= maxLimitBuffer * 0.8, "速度：" + speed);
+	}
+	
+	@Test
+	public void testStatistics() {
+		final long maxLimitBuffer = 1024L * SystemConfig.ONE_KB;
+		final StatisticsSession global = new StatisticsSession(
+			new LimitSession(() -> maxLimitBuffer / 4),
+			new LimitSession(() -> maxLimitBuffer),
+			true,
+			null
+		);
+		final StatisticsSession task = new StatisticsSession(
+			new LimitSession(() -> 0L),
+			new LimitSession(() -> 0L),
+			true,
+			global
+		);
+		final StatisticsSession other = new StatisticsSession(false, global);
+		// 全局令牌：所有任务共享
+		task.downloadLimit((int) maxLimitBuffer);
+		assertTrue(other.downloadDelay() > 900);
+		assertEquals(0L, other.uploadDelay());
+	}
+
+}
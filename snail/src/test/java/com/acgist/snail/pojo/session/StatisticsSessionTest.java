@@ -0,0 +1,46 @@
+package com.acgist.snail.pojo.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.acgist.snail.utils.Performance;
+
+public class StatisticsSessionTest extends Performance {
+	
+	@Test
+	public void testStatistics() {
+		final StatisticsSession global = new StatisticsSession();
+		final StatisticsSession task = new StatisticsSession(false, global);
+		final StatisticsSession peer = new StatisticsSession(false, false, task);
+		final int count = 100000;
+		this.costed(count, 10, () -> {
+			peer.upload(1);
+			peer.download(2);
+			peer.uploadLimit(1);
+			peer.downloadLimit(2);
+		});
+		assertEquals(count, peer.uploadSize());
+		assertEquals(count, task.uploadSize());
+		assertEquals(count, global.uploadSize());
+		assertEquals(2L * count, global.downloadSize());
+		assertEquals(0L, peer.downloadSpeed());
+		task.downloadSize(1024L);
+		assertEquals(1024L, task.downloadSize());
+	}
+	
+	@Test
+	public void testSpeed() {
+		if(SKIP_COSTED) {
+			this.log("跳过testSpeed测试");
+			return;
+		}
+		final SpeedSession session = new SpeedSession();
+		this.costed(100000, 10, () -> {
+			session.buffer(1024);
+			session.speed();
+		});
+		this.log("速度：{}", session.speed());
+	}
+
+}